@@ -0,0 +1,13 @@
+package com.stocktrading;
+
+/**
+ * What a bounded {@link TradeSink} does with a trade published while it is full.
+ */
+public enum BackpressurePolicy {
+    /** Wait for a consumer to free a slot, stalling the matcher. */
+    BLOCK,
+    /** Discard the trade and count it. */
+    DROP,
+    /** Append the trade to a {@link TradeSpillFile} on disk, from which it is drained later. */
+    SPILL
+}
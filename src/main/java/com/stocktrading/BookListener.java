@@ -0,0 +1,38 @@
+package com.stocktrading;
+
+/**
+ * Receives notice of book changes as they happen, on the thread that made them.
+ * Calls arrive from inside matching passes, so implementations must only record the
+ * change, e.g. mark the symbol for a later publish, and never block.
+ */
+public interface BookListener {
+    /**
+     * A listener that ignores every change.
+     */
+    BookListener NONE = new BookListener() {
+        @Override
+        public void onBookChanged(int symbolId) {
+        }
+
+        @Override
+        public void onTrade(int symbolId, long priceTicks, int quantity, long timestamp) {
+        }
+    };
+
+    /**
+     * Called after orders of a symbol have been added, filled, cancelled or amended.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     */
+    void onBookChanged(int symbolId);
+
+    /**
+     * Called for every executed trade, before the book change it causes is reported.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The trade price in ticks
+     * @param quantity The traded quantity
+     * @param timestamp The trade time
+     */
+    void onTrade(int symbolId, long priceTicks, int quantity, long timestamp);
+}
@@ -0,0 +1,201 @@
+package com.stocktrading;
+
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * One side of one symbol's book: price levels in priority order, each an intrusive
+ * {@link PriceLevel} queue. Behaves like a priority queue of orders (best price first,
+ * then arrival order) but can also unlink any resting order in O(1).
+ * Not thread-safe: {@link LockedOrderBook} guards each side with its monitor.
+ */
+public class BookSide {
+    // Best price first
+    private final TreeMap<Long, PriceLevel> levels;
+    private int orderCount;
+
+    // Shared id index kept in step with the resting orders; null if not indexed
+    private final OrderIndex index;
+
+    /**
+     * Creates an empty book side.
+     *
+     * @param highestFirst True for the buy side, false for the sell side
+     */
+    public BookSide(boolean highestFirst) {
+        this(highestFirst, null);
+    }
+
+    /**
+     * Creates an empty book side that registers its resting orders in an index.
+     *
+     * @param highestFirst True for the buy side, false for the sell side
+     * @param index The order index, or null
+     */
+    public BookSide(boolean highestFirst, OrderIndex index) {
+        this.levels = highestFirst ? new TreeMap<>(Collections.reverseOrder()) : new TreeMap<>();
+        this.index = index;
+    }
+
+    public int size() { return orderCount; }
+    public boolean isEmpty() { return orderCount == 0; }
+    public int getLevelCount() { return levels.size(); }
+
+    /**
+     * Gets the level at a price.
+     *
+     * @param priceTicks The price in ticks
+     * @return The level, or null if no orders rest at that price
+     */
+    public PriceLevel getLevel(long priceTicks) {
+        return levels.get(priceTicks);
+    }
+
+    /**
+     * Adds an order to the back of its price level.
+     *
+     * @param order The order to add
+     */
+    public void add(Order order) {
+        levels.computeIfAbsent(order.getPriceTicks(), PriceLevel::new).add(order);
+        orderCount++;
+        if (index != null) {
+            index.put(order);
+        }
+    }
+
+    /**
+     * Visits the resting orders in priority order: best price first, then arrival order.
+     *
+     * @param action Called for each order
+     */
+    public void forEach(Consumer<? super Order> action) {
+        for (PriceLevel level : levels.values()) {
+            level.forEach(action);
+        }
+    }
+
+    /**
+     * Copies the best levels into a depth buffer, see {@link OrderBook#depth}.
+     *
+     * @param bid True to fill the buffer's bid side, false for its ask side
+     * @param maxLevels The most levels to copy
+     * @param depth The buffer to append to
+     */
+    public void copyDepth(boolean bid, int maxLevels, MarketDepth depth) {
+        int copied = 0;
+        for (PriceLevel level : levels.values()) {
+            if (copied == maxLevels) {
+                return;
+            }
+            depth.addLevel(bid, level);
+            copied++;
+        }
+    }
+
+    /**
+     * Sums the quantity resting at the prices an incoming order would trade at, best
+     * price first, using each level's running total. Stops as soon as the sum reaches
+     * the given amount, so it visits at most the levels a fill would consume.
+     *
+     * @param incoming An order for the other side
+     * @param atLeast The amount that is enough
+     * @return The crossing quantity, or a value of at least {@code atLeast}
+     */
+    public long crossingQuantity(Order incoming, long atLeast) {
+        long quantity = 0;
+        for (PriceLevel level : levels.values()) {
+            if (quantity >= atLeast || !incoming.crosses(level.getPriceTicks())) {
+                break;
+            }
+            quantity += level.getTotalQuantity();
+        }
+        return quantity;
+    }
+
+    /**
+     * Gets the earliest order at the best price.
+     *
+     * @return The best order, or null if the side is empty
+     */
+    public Order peek() {
+        return levels.isEmpty() ? null : levels.firstEntry().getValue().peek();
+    }
+
+    /**
+     * Removes and returns the earliest order at the best price.
+     *
+     * @return The best order, or null if the side is empty
+     */
+    public Order poll() {
+        if (levels.isEmpty()) {
+            return null;
+        }
+        PriceLevel level = levels.firstEntry().getValue();
+        Order order = level.poll();
+        orderCount--;
+        if (level.isEmpty()) {
+            levels.pollFirstEntry();
+        }
+        if (index != null) {
+            index.remove(order.getId());
+        }
+        return order;
+    }
+
+    /**
+     * Unlinks a resting order from its level. The order carries its level, so this is
+     * O(1) unless the level empties and has to be dropped from the price map.
+     *
+     * @param order The order to remove, which must belong to this side
+     * @return True if the order was resting on this side
+     */
+    public boolean remove(Order order) {
+        PriceLevel level = order.level;
+        if (level == null || !level.remove(order)) {
+            return false;
+        }
+        orderCount--;
+        if (level.isEmpty()) {
+            levels.remove(level.getPriceTicks());
+        }
+        if (index != null) {
+            index.remove(order.getId());
+        }
+        return true;
+    }
+
+    /**
+     * Changes a resting order's quantity and price, see {@link OrderBook#amendOrder}.
+     *
+     * @param order The order to amend, which must belong to this side
+     * @param newQuantity The new quantity
+     * @param newPriceTicks The new price in ticks
+     * @return True if the order was resting on this side
+     */
+    public boolean amend(Order order, int newQuantity, long newPriceTicks) {
+        PriceLevel level = order.level;
+        if (level == null) {
+            return false;
+        }
+        if (order.keepsPriority(newQuantity, newPriceTicks)) {
+            level.reduceQuantity(order, order.reduceRemainingTo(newQuantity));
+            return true;
+        }
+        remove(order);
+        order.replace(newQuantity, newPriceTicks);
+        add(order);
+        return true;
+    }
+
+    /**
+     * Reduces a resting order's quantity without changing its priority.
+     *
+     * @param order The order to reduce
+     * @param amount The amount to reduce by
+     */
+    public void reduceQuantity(Order order, int amount) {
+        order.level.reduceQuantity(order, amount);
+    }
+}
@@ -0,0 +1,45 @@
+package com.stocktrading;
+
+/**
+ * A time source that returns the time of its last refresh.
+ * The owning thread refreshes it once per batch of work, so every order and trade
+ * in the batch shares one clock read instead of reading the clock each time.
+ * Reads from other threads see the latest refresh.
+ */
+public class CachedTimeSource implements TimeSource {
+    private final TimeSource delegate;
+    private volatile long now;
+
+    /**
+     * Creates a cached time source over the system clock.
+     */
+    public CachedTimeSource() {
+        this(TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a cached time source.
+     *
+     * @param delegate The time source to read on refresh
+     */
+    public CachedTimeSource(TimeSource delegate) {
+        this.delegate = delegate;
+        this.now = delegate.currentTimeMillis();
+    }
+
+    /**
+     * Reads the underlying time source.
+     *
+     * @return The new cached time
+     */
+    public long refresh() {
+        long time = delegate.currentTimeMillis();
+        now = time;
+        return time;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+}
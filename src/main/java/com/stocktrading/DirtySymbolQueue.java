@@ -0,0 +1,74 @@
+package com.stocktrading;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks the symbols whose books have changed since they were last matched.
+ * A symbol is queued at most once however many orders arrive for it, so a burst
+ * of orders costs the matcher a single pass and quiet symbols cost nothing.
+ */
+public class DirtySymbolQueue {
+    // One flag per known symbol; the map itself is never modified after construction
+    private final Map<String, AtomicBoolean> dirtyFlags;
+    private final BlockingQueue<String> dirtySymbols;
+
+    /**
+     * Creates a new dirty symbol queue.
+     *
+     * @param symbols The symbols that can be marked dirty
+     */
+    public DirtySymbolQueue(List<String> symbols) {
+        this.dirtyFlags = new HashMap<>();
+        for (String symbol : symbols) {
+            dirtyFlags.put(symbol, new AtomicBoolean(false));
+        }
+        this.dirtySymbols = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Marks a symbol as needing a matching pass. Unknown symbols are ignored.
+     *
+     * @param symbol The stock symbol
+     */
+    public void markDirty(String symbol) {
+        AtomicBoolean dirty = dirtyFlags.get(symbol);
+        if (dirty != null && dirty.compareAndSet(false, true)) {
+            dirtySymbols.add(symbol);
+        }
+    }
+
+    /**
+     * Waits for the next dirty symbol and clears its flag. The flag is cleared before
+     * the caller matches, so an order that arrives during the pass queues the symbol again.
+     *
+     * @return The symbol to match
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public String take() throws InterruptedException {
+        String symbol = dirtySymbols.take();
+        dirtyFlags.get(symbol).set(false);
+        return symbol;
+    }
+
+    /**
+     * Waits up to a timeout for the next dirty symbol and clears its flag, see {@link #take()}.
+     *
+     * @param timeout How long to wait, zero to not wait at all
+     * @param unit The unit of the timeout
+     * @return The symbol, or null if none became dirty in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        String symbol = dirtySymbols.poll(timeout, unit);
+        if (symbol != null) {
+            dirtyFlags.get(symbol).set(false);
+        }
+        return symbol;
+    }
+}
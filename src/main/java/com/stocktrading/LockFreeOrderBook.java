@@ -2,61 +2,294 @@ package com.stocktrading;
 
 import java.util.concurrent.*;
 import java.util.*;
+import java.util.function.Consumer;
 
-public class LockFreeOrderBook implements OrderBook {
-    // Map from symbol to buy orders for that symbol
-    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>>> buyOrdersBySymbol;
+/**
+ * Order book whose price levels live in lock-free skip lists.
+ * Each level is an intrusive {@link PriceLevel} guarded by its own lock, so
+ * adders and the matcher only contend when they touch the same price.
+ * A level that empties is retired before it is unlinked from the skip list;
+ * an adder that finds a retired level retries with a fresh one.
+ * Resting orders are also indexed by id, so cancels and amends find their order,
+ * and through it their level, without searching the book. Armed stop orders wait
+ * in a per-symbol {@link StopIndex} and are indexed by id too.
+ */
+public class LockFreeOrderBook implements SnapshottableOrderBook {
+    // Symbol id to buy orders for that symbol
+    private final SymbolTable<ConcurrentSkipListMap<Long, PriceLevel>> buyOrdersBySymbol;
     
-    // Map from symbol to sell orders for that symbol
-    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>>> sellOrdersBySymbol;
+    // Symbol id to sell orders for that symbol
+    private final SymbolTable<ConcurrentSkipListMap<Long, PriceLevel>> sellOrdersBySymbol;
+
+    // Symbol id to armed stop orders for that symbol
+    private final SymbolTable<StopIndex> stopsBySymbol;
+
+    // Resting orders by id; entries change under the lock of the order's level
+    private final OrderIndex orderIndex;
 
     public LockFreeOrderBook() {
-        buyOrdersBySymbol = new ConcurrentHashMap<>();
-        sellOrdersBySymbol = new ConcurrentHashMap<>();
+        buyOrdersBySymbol = new SymbolTable<>();
+        sellOrdersBySymbol = new SymbolTable<>();
+        stopsBySymbol = new SymbolTable<>();
+        orderIndex = new OrderIndex();
     }
 
     @Override
     public boolean hasBuyOrders(String symbol) {
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> map = buyOrdersBySymbol.get(symbol);
+        ConcurrentSkipListMap<Long, PriceLevel> map = buyOrdersBySymbol.get(symbol);
         return map != null && !map.isEmpty();
     }
 
     @Override
     public boolean hasSellOrders(String symbol) {
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> map = sellOrdersBySymbol.get(symbol);
+        ConcurrentSkipListMap<Long, PriceLevel> map = sellOrdersBySymbol.get(symbol);
         return map != null && !map.isEmpty();
     }
 
     @Override
     public void addOrder(Order order) {
-        String symbol = order.getSymbol();
+        // Keyed by the interned symbol id, so adding an order hashes no string
+        int symbolId = order.getSymbolId();
         
-        if (order.getType() == Order.Type.BUY) {
+        if (order.isStopArmed()) {
+            // Indexed first, so a cancel that finds the order finds it armed or triggered
+            orderIndex.put(order);
+            stopsBySymbol.computeIfAbsent(symbolId, k -> new StopIndex()).add(order);
+        } else if (order.getType() == Order.Type.BUY) {
             // Get or create the buy orders map for this symbol
-            ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = 
-                buyOrdersBySymbol.computeIfAbsent(symbol, k -> 
+            ConcurrentSkipListMap<Long, PriceLevel> buyOrders = 
+                buyOrdersBySymbol.computeIfAbsent(symbolId, k -> 
                     new ConcurrentSkipListMap<>(Collections.reverseOrder()));
             
             // Add the order to the appropriate price level
-            buyOrders.computeIfAbsent(order.getPrice(), price -> 
-                new ConcurrentLinkedQueue<>()).add(order);
+            addToLevel(buyOrders, order);
         } else {
             // Get or create the sell orders map for this symbol
-            ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = 
-                sellOrdersBySymbol.computeIfAbsent(symbol, k -> 
+            ConcurrentSkipListMap<Long, PriceLevel> sellOrders = 
+                sellOrdersBySymbol.computeIfAbsent(symbolId, k -> 
                     new ConcurrentSkipListMap<>());
             
             // Add the order to the appropriate price level
-            sellOrders.computeIfAbsent(order.getPrice(), price -> 
-                new ConcurrentLinkedQueue<>()).add(order);
+            addToLevel(sellOrders, order);
+        }
+    }
+
+    private void addToLevel(ConcurrentSkipListMap<Long, PriceLevel> levels, Order order) {
+        while (true) {
+            PriceLevel level = levels.computeIfAbsent(order.getPriceTicks(), price -> new PriceLevel(price, true));
+            level.lock();
+            try {
+                if (!level.isRetired()) {
+                    level.add(order);
+                    orderIndex.put(order);
+                    return;
+                }
+            } finally {
+                level.unlock();
+            }
+            // The level emptied and is being unlinked; retry with a fresh one
+        }
+    }
+
+    /**
+     * Unlinks a level from its skip list if it is empty. The caller must hold the level's lock.
+     *
+     * @param levels The skip list the level belongs to
+     * @param level The level to retire
+     * @return True if the level was empty and has been retired
+     */
+    static boolean retireIfEmpty(ConcurrentSkipListMap<Long, PriceLevel> levels, PriceLevel level) {
+        if (!level.isEmpty() || level.isRetired()) {
+            return false;
+        }
+        level.retire();
+        levels.remove(level.getPriceTicks(), level);
+        return true;
+    }
+
+    /**
+     * Visits a symbol's resting orders one level at a time, holding each level's lock
+     * while its orders are visited, then its armed stops.
+     *
+     * @param symbol The stock symbol
+     * @param action Called for each resting order
+     */
+    @Override
+    public void forEachOrder(String symbol, Consumer<? super Order> action) {
+        forEachOrder(buyOrdersBySymbol.get(symbol), action);
+        forEachOrder(sellOrdersBySymbol.get(symbol), action);
+        StopIndex stops = stopsBySymbol.get(symbol);
+        if (stops != null) {
+            stops.forEach(action);
+        }
+    }
+
+    private static void forEachOrder(ConcurrentSkipListMap<Long, PriceLevel> levels, Consumer<? super Order> action) {
+        if (levels == null) {
+            return;
+        }
+        for (PriceLevel level : levels.values()) {
+            level.lock();
+            try {
+                if (!level.isRetired()) {
+                    level.forEach(action);
+                }
+            } finally {
+                level.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies the best levels of a symbol without taking any lock, so the matcher is
+     * never held up. Each level's aggregate is read as the matcher last left it, and
+     * levels that have just emptied are skipped.
+     *
+     * @param symbol The stock symbol
+     * @param levels The most levels to copy per side
+     * @param depth The buffer to overwrite
+     * @return The buffer
+     */
+    @Override
+    public MarketDepth depth(String symbol, int levels, MarketDepth depth) {
+        int maxLevels = Math.min(levels, depth.getMaxLevels());
+        depth.reset(SymbolRegistry.intern(symbol));
+        copyDepth(buyOrdersBySymbol.get(symbol), true, maxLevels, depth);
+        copyDepth(sellOrdersBySymbol.get(symbol), false, maxLevels, depth);
+        return depth;
+    }
+
+    private static void copyDepth(ConcurrentSkipListMap<Long, PriceLevel> levels, boolean bid, int maxLevels,
+                                  MarketDepth depth) {
+        if (levels == null) {
+            return;
+        }
+        for (PriceLevel level : levels.values()) {
+            if ((bid ? depth.getBidLevels() : depth.getAskLevels()) == maxLevels) {
+                return;
+            }
+            depth.addLevel(bid, level);
         }
     }
 
-    public ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> getBuyOrdersMap(String symbol) {
+    @Override
+    public Order getOrder(long orderId) {
+        return orderIndex.get(orderId);
+    }
+
+    @Override
+    public boolean cancelOrder(long orderId) {
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        // A stop that triggers meanwhile is no longer in the stop index, and may be resting by now
+        if (order.isStopArmed() && stopsBySymbol.get(order.getSymbolId()).remove(order)) {
+            orderIndex.remove(orderId);
+            return true;
+        }
+        ConcurrentSkipListMap<Long, PriceLevel> levels = levelsOf(order);
+        while (true) {
+            PriceLevel level = order.level;
+            if (level == null) {
+                return false;
+            }
+            level.lock();
+            try {
+                // The order may have been filled or moved before we got the lock
+                if (order.level == level) {
+                    level.remove(order);
+                    orderIndex.remove(orderId);
+                    retireIfEmpty(levels, level);
+                    return true;
+                }
+            } finally {
+                level.unlock();
+            }
+        }
+    }
+
+    /**
+     * Amends a resting order. An amend that keeps priority is applied in place under
+     * the level's lock; otherwise the order is unlinked and re-added at its new
+     * price, and a cancel racing with the move finds the order in flight and fails.
+     */
+    @Override
+    public boolean amendOrder(long orderId, int newQuantity, double newPrice) {
+        Order.checkQuantity(newQuantity);
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        long newPriceTicks = TickSizes.toTicks(order.getSymbolId(), newPrice);
+        ConcurrentSkipListMap<Long, PriceLevel> levels = levelsOf(order);
+        while (true) {
+            PriceLevel level = order.level;
+            if (level == null) {
+                return false;
+            }
+            level.lock();
+            try {
+                if (order.level != level) {
+                    continue;
+                }
+                if (order.keepsPriority(newQuantity, newPriceTicks)) {
+                    level.reduceQuantity(order, order.reduceRemainingTo(newQuantity));
+                    return true;
+                }
+                level.remove(order);
+                retireIfEmpty(levels, level);
+                order.replace(newQuantity, newPriceTicks);
+            } finally {
+                level.unlock();
+            }
+            addToLevel(levels, order);
+            return true;
+        }
+    }
+
+    private ConcurrentSkipListMap<Long, PriceLevel> levelsOf(Order order) {
+        // An indexed order has rested, so its side exists
+        return order.getType() == Order.Type.BUY
+            ? buyOrdersBySymbol.get(order.getSymbolId()) : sellOrdersBySymbol.get(order.getSymbolId());
+    }
+
+    /**
+     * Gets the id index of resting orders. Entries must only change under the
+     * lock of the order's level.
+     *
+     * @return The order index
+     */
+    OrderIndex getOrderIndex() {
+        return orderIndex;
+    }
+
+    /**
+     * Gets the armed stop orders of a symbol.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The stop index, or null if the symbol has never had a stop order
+     */
+    StopIndex getStops(int symbolId) {
+        return stopsBySymbol.get(symbolId);
+    }
+
+    /**
+     * Gets the side an incoming order trades against.
+     *
+     * @param order The incoming order
+     * @return The other side's levels, best first, or null if that side has never held an order
+     */
+    ConcurrentSkipListMap<Long, PriceLevel> oppositeLevels(Order order) {
+        return order.getType() == Order.Type.BUY
+            ? sellOrdersBySymbol.get(order.getSymbolId()) : buyOrdersBySymbol.get(order.getSymbolId());
+    }
+
+    public ConcurrentSkipListMap<Long, PriceLevel> getBuyOrdersMap(String symbol) {
         return buyOrdersBySymbol.get(symbol);
     }
 
-    public ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> getSellOrdersMap(String symbol) {
+    public ConcurrentSkipListMap<Long, PriceLevel> getSellOrdersMap(String symbol) {
         return sellOrdersBySymbol.get(symbol);
     }
 }
@@ -1,6 +1,5 @@
 package com.stocktrading;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 public interface LockFreeOrderBookAccess extends OrderBook {
@@ -10,7 +9,7 @@ public interface LockFreeOrderBookAccess extends OrderBook {
 	 * @param symbol The stock symbol
 	 * @return Map of price to orders at that price
 	 */
-	ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> getBuyOrdersMap(String symbol);
+	ConcurrentSkipListMap<Long, PriceLevel> getBuyOrdersMap(String symbol);
 
 	/**
 	 * Gets the map of sell orders for a specific symbol.
@@ -18,5 +17,5 @@ public interface LockFreeOrderBookAccess extends OrderBook {
 	 * @param symbol The stock symbol
 	 * @return Map of price to orders at that price
 	 */
-	ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> getSellOrdersMap(String symbol);
+	ConcurrentSkipListMap<Long, PriceLevel> getSellOrdersMap(String symbol);
 }
\ No newline at end of file
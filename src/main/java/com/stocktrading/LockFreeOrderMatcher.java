@@ -1,29 +1,79 @@
 package com.stocktrading;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.LinkedBlockingQueue;
+
+import com.stocktrading.metrics.MatcherMetrics;
 
 public class LockFreeOrderMatcher implements OrderMatcher, Runnable {
 	private final LockFreeOrderBook orderBook;
 	private final List<String> symbols;
-	private final BlockingQueue<Trade> trades;
+	private final TradeSink trades;
+	private final TimeSource timeSource;
+	private final BookListener bookListener;
+	private final DirtySymbolQueue dirtySymbols;
+	private final MatcherMetrics metrics = new MatcherMetrics();
+	// The levels a fill-or-kill order holds while it sums their depth, per submitting thread
+	private final ThreadLocal<PriceLevel[]> heldLevels = ThreadLocal.withInitial(() -> new PriceLevel[16]);
 	private volatile boolean running = true;
+	private volatile Thread matcherThread;
 
 	/**
-	 * Creates a new order matcher.
+	 * Creates a new order matcher publishing to a trade ring of the default capacity, which
+	 * drops and counts trades once it is full rather than stall matching while nothing drains it.
 	 *
 	 * @param orderBook The order book to match orders from
 	 * @param symbols The list of stock symbols to match orders for
 	 */
 	public LockFreeOrderMatcher(LockFreeOrderBook orderBook, List<String> symbols) {
+		this(orderBook, symbols, new TradeRingBuffer(TradeRingBuffer.DEFAULT_CAPACITY, BackpressurePolicy.DROP));
+	}
+
+	/**
+	 * Creates a new order matcher.
+	 *
+	 * @param orderBook The order book to match orders from
+	 * @param symbols The list of stock symbols to match orders for
+	 * @param trades The sink to publish trades to
+	 */
+	public LockFreeOrderMatcher(LockFreeOrderBook orderBook, List<String> symbols, TradeSink trades) {
+		this(orderBook, symbols, trades, TimeSource.SYSTEM);
+	}
+
+	/**
+	 * Creates a new order matcher.
+	 *
+	 * @param orderBook The order book to match orders from
+	 * @param symbols The list of stock symbols to match orders for
+	 * @param trades The sink to publish trades to
+	 * @param timeSource The source of trade timestamps
+	 */
+	public LockFreeOrderMatcher(LockFreeOrderBook orderBook, List<String> symbols, TradeSink trades,
+			TimeSource timeSource) {
+		this(orderBook, symbols, trades, timeSource, BookListener.NONE);
+	}
+
+	/**
+	 * Creates a new order matcher that reports its trades and book changes, e.g. to a
+	 * market data publisher.
+	 *
+	 * @param orderBook The order book to match orders from
+	 * @param symbols The list of stock symbols to match orders for
+	 * @param trades The sink to publish trades to
+	 * @param timeSource The source of trade timestamps
+	 * @param bookListener The listener to report to
+	 */
+	public LockFreeOrderMatcher(LockFreeOrderBook orderBook, List<String> symbols, TradeSink trades,
+			TimeSource timeSource, BookListener bookListener) {
 		this.orderBook = orderBook;
-		this.trades = new LinkedBlockingQueue<>();
+		this.trades = trades;
+		this.timeSource = timeSource;
+		this.bookListener = bookListener;
 		this.symbols = new ArrayList<>(symbols);
+		this.dirtySymbols = new DirtySymbolQueue(this.symbols);
 	}
 
 	/**
@@ -31,108 +81,295 @@ public class LockFreeOrderMatcher implements OrderMatcher, Runnable {
 	 */
 	public void stop() {
 		running = false;
+		// Wake the matcher thread if it is waiting for a dirty symbol
+		Thread thread = matcherThread;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public void signal(String symbol) {
+		dirtySymbols.markDirty(symbol);
 	}
 
 	/**
 	 * Gets the trades that have been executed.
 	 *
-	 * @return The queue of trades
+	 * @return The trade sink
 	 */
-	public BlockingQueue<Trade> getTrades() {
+	public TradeSink getTrades() {
 		return trades;
 	}
 
+	@Override
+	public BookListener getBookListener() {
+		return bookListener;
+	}
+
+	@Override
+	public TimeSource getTimeSource() {
+		return timeSource;
+	}
+
+	@Override
+	public MatcherMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void run() {
+		matcherThread = Thread.currentThread();
 		try {
 			while (running) {
-				// Process each symbol
-				for (String symbol : symbols) {
-					matchOrders(symbol);
-				}
-
-				// Sleep a bit to avoid consuming too much CPU
-				Thread.sleep(10);
+				// Block until an order arrives, then match only the symbol it touched
+				matchOrders(dirtySymbols.take());
 			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
+		} finally {
+			matcherThread = null;
 		}
 	}
 
+	/**
+	 * Matches a symbol until its best prices no longer cross. Stop orders the trades
+	 * trigger are then brought into play and matching resumes, within the same pass,
+	 * until no more stops trigger.
+	 */
 	@Override
 	public void matchOrders(String symbol) {
+		int symbolId = SymbolRegistry.intern(symbol);
+		int tradeCount = 0;
+		do {
+			tradeCount += matchCrossing(symbol);
+		} while (releaseTriggeredStops(symbolId));
+		metrics.recordPass(tradeCount);
+		if (tradeCount > 0) {
+			bookListener.onBookChanged(symbolId);
+		}
+	}
+
+	private int matchCrossing(String symbol) {
+		int tradeCount = 0;
 		while (orderBook.hasBuyOrders(symbol) && orderBook.hasSellOrders(symbol)) {
-			ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap(symbol);
-			ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = orderBook.getSellOrdersMap(symbol);
+			ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap(symbol);
+			ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap(symbol);
 
 			// Get best bid (highest buy price) and best ask (lowest sell price)
-			Map.Entry<Double, ConcurrentLinkedQueue<Order>> bestBidEntry = buyOrders.firstEntry();
-			Map.Entry<Double, ConcurrentLinkedQueue<Order>> bestAskEntry = sellOrders.firstEntry();
+			Map.Entry<Long, PriceLevel> bestBidEntry = buyOrders.firstEntry();
+			Map.Entry<Long, PriceLevel> bestAskEntry = sellOrders.firstEntry();
 
 			if (bestBidEntry == null || bestAskEntry == null) {
 				break;
 			}
 
-			double bestBid = bestBidEntry.getKey();
-			double bestAsk = bestAskEntry.getKey();
+			long bestBid = bestBidEntry.getKey();
+			long bestAsk = bestAskEntry.getKey();
 
 			// If best bid is greater than or equal to best ask, we have a match
 			if (bestBid >= bestAsk) {
-				ConcurrentLinkedQueue<Order> buyQueue = bestBidEntry.getValue();
-				ConcurrentLinkedQueue<Order> sellQueue = bestAskEntry.getValue();
+				PriceLevel buyLevel = bestBidEntry.getValue();
+				PriceLevel sellLevel = bestAskEntry.getValue();
 
-				Order buyOrder = buyQueue.poll(); // Get the earliest buy order
-				if (buyOrder == null) {
-					// Remove empty queue
-					buyOrders.remove(bestBid);
-					continue;
-				}
+				// Always lock buy before sell, so concurrent matchers cannot deadlock
+				buyLevel.lock();
+				sellLevel.lock();
+				try {
+					if (buyLevel.isRetired() || sellLevel.isRetired()) {
+						// Lost a race with another matcher; re-read the best levels
+						continue;
+					}
 
-				Order sellOrder = sellQueue.poll(); // Get the earliest sell order
-				if (sellOrder == null) {
-					// Remove empty queue
-					sellOrders.remove(bestAsk);
-					// Put the buy order back
-					buyQueue.add(buyOrder);
-					continue;
-				}
+					Order buyOrder = buyLevel.peek(); // Get the earliest buy order
+					Order sellOrder = sellLevel.peek(); // Get the earliest sell order
+					if (buyOrder == null || sellOrder == null) {
+						// Remove empty levels
+						LockFreeOrderBook.retireIfEmpty(buyOrders, buyLevel);
+						LockFreeOrderBook.retireIfEmpty(sellOrders, sellLevel);
+						continue;
+					}
 
-				int matchedQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
+					int matchedQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
 
-				// Update quantities atomically
-				boolean buySuccess = buyOrder.reduceQuantity(matchedQuantity);
-				boolean sellSuccess = sellOrder.reduceQuantity(matchedQuantity);
+					// Fill both orders in place, so a partially filled order keeps its priority
+					buyLevel.reduceQuantity(buyOrder, matchedQuantity);
+					sellLevel.reduceQuantity(sellOrder, matchedQuantity);
+					recordTrade(buyOrder, sellOrder, sellOrder.getPriceTicks(), matchedQuantity);
+					tradeCount++;
 
-				if (buySuccess && sellSuccess) {
-					recordTrade(buyOrder, sellOrder, matchedQuantity);
-				}
+					if (buyOrder.getQuantity() == 0) {
+						buyLevel.poll();
+						orderBook.getOrderIndex().remove(buyOrder.getId());
+					}
+					if (sellOrder.getQuantity() == 0) {
+						sellLevel.poll();
+						orderBook.getOrderIndex().remove(sellOrder.getId());
+					}
 
-				// If orders have remaining quantity, add them back
-				if (buyOrder.getQuantity() > 0) {
-					buyQueue.add(buyOrder);
+					// Remove price levels if orders at that price are fully matched
+					LockFreeOrderBook.retireIfEmpty(buyOrders, buyLevel);
+					LockFreeOrderBook.retireIfEmpty(sellOrders, sellLevel);
+				} finally {
+					sellLevel.unlock();
+					buyLevel.unlock();
 				}
+			} else {
+				// No more matching orders
+				break;
+			}
+		}
+		return tradeCount;
+	}
+
+	/**
+	 * Brings the stop orders that trades have triggered into play, once the caller
+	 * holds no level: a stop-limit order joins the book, where the caller's matching
+	 * loop picks it up, and a stop order executes at once.
+	 *
+	 * @return True if a triggered order now rests in the book
+	 */
+	private boolean releaseTriggeredStops(int symbolId) {
+		StopIndex stops = orderBook.getStops(symbolId);
+		if (stops == null) {
+			return false;
+		}
+		boolean rested = false;
+		Order order;
+		while ((order = stops.pollTriggered()) != null) {
+			if (order.rests()) {
+				orderBook.addOrder(order);
+				rested = true;
+			} else {
+				orderBook.getOrderIndex().remove(order.getId());
+				matchIncoming(order);
+			}
+		}
+		return rested;
+	}
+
+	/**
+	 * Executes the order on the submitting thread. Each level is filled under its
+	 * lock; a fill-or-kill order first takes the locks of the crossing levels in
+	 * price order until they hold enough quantity, so nothing can drain them between
+	 * the depth check and the fills. Only one side is locked, in the same order every
+	 * other taker of that side uses, so this cannot deadlock with the matcher thread.
+	 * Stops its trades trigger come into play once no level is held.
+	 */
+	@Override
+	public int matchIncoming(Order order) {
+		int quantity = order.getQuantity();
+		int tradeCount = 0;
+		ConcurrentSkipListMap<Long, PriceLevel> levels = orderBook.oppositeLevels(order);
+		if (levels != null) {
+			tradeCount = order.getTimeInForce() == Order.TimeInForce.FOK
+				? fillOrKill(order, levels)
+				: fillAvailable(order, levels);
+		}
+		metrics.recordPass(tradeCount);
+		if (tradeCount > 0) {
+			bookListener.onBookChanged(order.getSymbolId());
+		}
+		int filled = quantity - order.getQuantity();
+		if (releaseTriggeredStops(order.getSymbolId())) {
+			matchOrders(order.getSymbol());
+		}
+		return filled;
+	}
 
-				if (sellOrder.getQuantity() > 0) {
-					sellQueue.add(sellOrder);
+	private int fillAvailable(Order order, ConcurrentSkipListMap<Long, PriceLevel> levels) {
+		int tradeCount = 0;
+		while (order.getQuantity() > 0) {
+			Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+			if (best == null || !order.crosses(best.getKey())) {
+				break;
+			}
+			PriceLevel level = best.getValue();
+			level.lock();
+			try {
+				if (!level.isRetired()) {
+					tradeCount += fillFromLevel(order, level, levels);
 				}
+			} finally {
+				level.unlock();
+			}
+		}
+		return tradeCount;
+	}
 
-				// Remove price levels if orders at that price are fully matched
-				if (buyQueue.isEmpty()) {
-					buyOrders.remove(bestBid);
+	// Locks the crossing levels best first until they cover the order, then fills from them; a loop rather
+	// than nested monitors, so the stack does not grow with the number of levels crossed
+	private int fillOrKill(Order order, ConcurrentSkipListMap<Long, PriceLevel> levels) {
+		PriceLevel[] held = heldLevels.get();
+		int heldCount = 0;
+		long heldQuantity = 0;
+		try {
+			for (PriceLevel level : levels.values()) {
+				if (heldQuantity >= order.getQuantity() || !order.crosses(level.getPriceTicks())) {
+					break;
+				}
+				if (heldCount == held.length) {
+					held = Arrays.copyOf(held, heldCount * 2);
+					heldLevels.set(held);
 				}
-				if (sellQueue.isEmpty()) {
-					sellOrders.remove(bestAsk);
+				level.lock();
+				if (level.isRetired()) {
+					level.unlock();
+					continue;
 				}
+				held[heldCount++] = level;
+				heldQuantity += level.getTotalQuantity();
+			}
+			if (heldQuantity < order.getQuantity()) {
+				return 0;
+			}
+			int tradeCount = 0;
+			for (int i = 0; i < heldCount; i++) {
+				tradeCount += fillFromLevel(order, held[i], levels);
+			}
+			return tradeCount;
+		} finally {
+			for (int i = heldCount - 1; i >= 0; i--) {
+				held[i].unlock();
+				held[i] = null;
+			}
+		}
+	}
+
+	// Fills an incoming order from the front of a level whose lock the caller holds
+	private int fillFromLevel(Order incoming, PriceLevel level, ConcurrentSkipListMap<Long, PriceLevel> levels) {
+		boolean buy = incoming.getType() == Order.Type.BUY;
+		int tradeCount = 0;
+		Order resting;
+		while (incoming.getQuantity() > 0 && (resting = level.peek()) != null) {
+			int matchedQuantity = Math.min(incoming.getQuantity(), resting.getQuantity());
+			level.reduceQuantity(resting, matchedQuantity);
+			incoming.reduceQuantity(matchedQuantity);
+			if (buy) {
+				recordTrade(incoming, resting, level.getPriceTicks(), matchedQuantity);
 			} else {
-				// No more matching orders
-				break;
+				recordTrade(resting, incoming, level.getPriceTicks(), matchedQuantity);
+			}
+			tradeCount++;
+			if (resting.getQuantity() == 0) {
+				level.poll();
+				orderBook.getOrderIndex().remove(resting.getId());
 			}
 		}
+		LockFreeOrderBook.retireIfEmpty(levels, level);
+		return tradeCount;
 	}
 
-	private void recordTrade(Order buyOrder, Order sellOrder, int quantity) {
-		Trade trade = new Trade(buyOrder.getSymbol(), sellOrder.getPrice(), quantity,
-			buyOrder.getId(), sellOrder.getId());
-		trades.add(trade);
+	private void recordTrade(Order buyOrder, Order sellOrder, long priceTicks, int quantity) {
+		Order.recordFirstTrade(buyOrder, sellOrder);
+		// Published field by field, so matching allocates no trade objects
+		long timestamp = timeSource.currentTimeMillis();
+		trades.publish(buyOrder.getSymbolId(), priceTicks, quantity, buyOrder.getId(), sellOrder.getId(),
+			buyOrder.getAccountId(), sellOrder.getAccountId(), timestamp);
+		bookListener.onTrade(buyOrder.getSymbolId(), priceTicks, quantity, timestamp);
+		StopIndex stops = orderBook.getStops(buyOrder.getSymbolId());
+		if (stops != null) {
+			stops.onTrade(priceTicks);
+		}
 	}
 }
\ No newline at end of file
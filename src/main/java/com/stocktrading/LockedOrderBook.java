@@ -1,26 +1,31 @@
 package com.stocktrading;
 
-import java.util.Comparator;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Manages the order book for different stock symbols.
- * Uses concurrent data structures to handle multiple threads safely.
+ * Each side of each symbol is a {@link BookSide} guarded by its own monitor.
+ * Armed stop orders wait in a per-symbol {@link StopIndex} and are indexed by id
+ * alongside the resting orders, so they can be cancelled the same way.
  */
-public class LockedOrderBook implements OrderBook {
-    // Maps stock symbols to their respective buy and sell order queues
-    private final Map<String, PriorityBlockingQueue<Order>> buyOrders;
-    private final Map<String, PriorityBlockingQueue<Order>> sellOrders;
+public class LockedOrderBook implements SnapshottableOrderBook {
+    // Maps stock symbols to their respective buy and sell sides
+    private final SymbolTable<BookSide> buyOrders;
+    private final SymbolTable<BookSide> sellOrders;
+    private final SymbolTable<StopIndex> stops;
+
+    // Resting orders by id, maintained by the sides under their monitors
+    private final OrderIndex orderIndex;
     
     /**
      * Creates a new order book.
      */
     public LockedOrderBook() {
-        // Using ConcurrentHashMap for thread safety
-        buyOrders = new ConcurrentHashMap<>();
-        sellOrders = new ConcurrentHashMap<>();
+        // Keyed by interned symbol id; lookups never lock
+        buyOrders = new SymbolTable<>();
+        sellOrders = new SymbolTable<>();
+        stops = new SymbolTable<>();
+        orderIndex = new OrderIndex();
     }
     
     /**
@@ -29,23 +34,47 @@ public class LockedOrderBook implements OrderBook {
      * @param order The order to add
      */
     public void addOrder(Order order) {
-        String symbol = order.getSymbol();
+        int symbolId = order.getSymbolId();
         
-        if (order.getType() == Order.Type.BUY) {
+        if (order.isStopArmed()) {
+            // Indexed first, so a cancel that finds the order finds it armed or triggered
+            orderIndex.put(order);
+            stops.computeIfAbsent(symbolId, k -> new StopIndex()).add(order);
+        } else if (order.getType() == Order.Type.BUY) {
             // For buy orders, we want higher prices to have higher priority
-            buyOrders.computeIfAbsent(symbol, k -> new PriorityBlockingQueue<>(
-                11, Comparator.<Order>comparingDouble(o -> -o.getPrice())
-                    .thenComparingLong(Order::getTimestamp)));
-            synchronized (buyOrders.get(symbol)) {
-                buyOrders.get(symbol).add(order);
+            BookSide buySide = buySide(symbolId);
+            synchronized (buySide) {
+                buySide.add(order);
             }
         } else {
             // For sell orders, we want lower prices to have higher priority
-            sellOrders.computeIfAbsent(symbol, k -> new PriorityBlockingQueue<>(
-                11, Comparator.<Order>comparingDouble(Order::getPrice)
-                    .thenComparingLong(Order::getTimestamp)));
-            synchronized (sellOrders.get(symbol)) {
-                sellOrders.get(symbol).add(order);
+            BookSide sellSide = sellSide(symbolId);
+            synchronized (sellSide) {
+                sellSide.add(order);
+            }
+        }
+    }
+    
+    /**
+     * Visits a symbol's resting orders, then its armed stops, while holding both of its
+     * sides' monitors, taken buy before sell as the matcher does.
+     * 
+     * @param symbol The stock symbol
+     * @param action Called for each resting order
+     */
+    @Override
+    public void forEachOrder(String symbol, Consumer<? super Order> action) {
+        int symbolId = SymbolRegistry.intern(symbol);
+        BookSide buySide = buySide(symbolId);
+        BookSide sellSide = sellSide(symbolId);
+        synchronized (buySide) {
+            synchronized (sellSide) {
+                buySide.forEach(action);
+                sellSide.forEach(action);
+                StopIndex symbolStops = stops.get(symbol);
+                if (symbolStops != null) {
+                    symbolStops.forEach(action);
+                }
             }
         }
     }
@@ -54,20 +83,43 @@ public class LockedOrderBook implements OrderBook {
      * Gets the buy orders for a specific symbol.
      * 
      * @param symbol The stock symbol
-     * @return The queue of buy orders
+     * @return The buy side, in price-time priority
      */
-    public PriorityBlockingQueue<Order> getBuyOrders(String symbol) {
-        return buyOrders.getOrDefault(symbol, new PriorityBlockingQueue<>());
+    public BookSide getBuyOrders(String symbol) {
+        BookSide side = buyOrders.get(symbol);
+        return side != null ? side : new BookSide(true);
     }
     
     /**
      * Gets the sell orders for a specific symbol.
      * 
      * @param symbol The stock symbol
-     * @return The queue of sell orders
+     * @return The sell side, in price-time priority
      */
-    public PriorityBlockingQueue<Order> getSellOrders(String symbol) {
-        return sellOrders.getOrDefault(symbol, new PriorityBlockingQueue<>());
+    public BookSide getSellOrders(String symbol) {
+        BookSide side = sellOrders.get(symbol);
+        return side != null ? side : new BookSide(false);
+    }
+    
+    /**
+     * Gets a symbol's buy side, creating it if the symbol has none yet, so its monitor
+     * is the one every other user of the side locks.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The buy side
+     */
+    BookSide buySide(int symbolId) {
+        return buyOrders.computeIfAbsent(symbolId, k -> new BookSide(true, orderIndex));
+    }
+
+    /**
+     * Gets a symbol's sell side, creating it if the symbol has none yet.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The sell side
+     */
+    BookSide sellSide(int symbolId) {
+        return sellOrders.computeIfAbsent(symbolId, k -> new BookSide(false, orderIndex));
     }
     
     /**
@@ -77,8 +129,8 @@ public class LockedOrderBook implements OrderBook {
      * @return True if there are buy orders, false otherwise
      */
     public boolean hasBuyOrders(String symbol) {
-        PriorityBlockingQueue<Order> queue = buyOrders.get(symbol);
-        return queue != null && !queue.isEmpty();
+        BookSide side = buyOrders.get(symbol);
+        return side != null && !side.isEmpty();
     }
     
     /**
@@ -88,9 +140,109 @@ public class LockedOrderBook implements OrderBook {
      * @return True if there are sell orders, false otherwise
      */
     public boolean hasSellOrders(String symbol) {
-        PriorityBlockingQueue<Order> queue = sellOrders.get(symbol);
-        return queue != null && !queue.isEmpty();
+        BookSide side = sellOrders.get(symbol);
+        return side != null && !side.isEmpty();
     }
 
+    /**
+     * Copies the best levels of a symbol, holding each side's monitor only while that
+     * side is copied.
+     *
+     * @param symbol The stock symbol
+     * @param levels The most levels to copy per side
+     * @param depth The buffer to overwrite
+     * @return The buffer
+     */
+    @Override
+    public MarketDepth depth(String symbol, int levels, MarketDepth depth) {
+        int maxLevels = Math.min(levels, depth.getMaxLevels());
+        depth.reset(SymbolRegistry.intern(symbol));
+        BookSide buySide = buyOrders.get(symbol);
+        if (buySide != null) {
+            synchronized (buySide) {
+                buySide.copyDepth(true, maxLevels, depth);
+            }
+        }
+        BookSide sellSide = sellOrders.get(symbol);
+        if (sellSide != null) {
+            synchronized (sellSide) {
+                sellSide.copyDepth(false, maxLevels, depth);
+            }
+        }
+        return depth;
+    }
 
-} 
\ No newline at end of file
+    @Override
+    public Order getOrder(long orderId) {
+        return orderIndex.get(orderId);
+    }
+
+    /**
+     * Gets the armed stop orders of a symbol.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The stop index, or null if the symbol has never had a stop order
+     */
+    StopIndex getStops(int symbolId) {
+        return stops.get(symbolId);
+    }
+
+    /**
+     * Gets the id index of resting orders and armed stops.
+     *
+     * @return The order index
+     */
+    OrderIndex getOrderIndex() {
+        return orderIndex;
+    }
+
+    /**
+     * Cancels a resting order or an armed stop. Finding the order is a hash lookup and
+     * unlinking it is O(1), under the monitor of its side only.
+     *
+     * @param orderId The order id
+     * @return True if the order was resting and has been cancelled
+     */
+    @Override
+    public boolean cancelOrder(long orderId) {
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        // A stop that triggers meanwhile is no longer in the stop index, and may be resting by now
+        if (order.isStopArmed() && stops.get(order.getSymbolId()).remove(order)) {
+            orderIndex.remove(orderId);
+            return true;
+        }
+        BookSide side = sideOf(order);
+        if (side == null) {
+            return false;
+        }
+        synchronized (side) {
+            return side.remove(order);
+        }
+    }
+
+    @Override
+    public boolean amendOrder(long orderId, int newQuantity, double newPrice) {
+        Order.checkQuantity(newQuantity);
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        long newPriceTicks = TickSizes.toTicks(order.getSymbolId(), newPrice);
+        BookSide side = sideOf(order);
+        if (side == null) {
+            return false;
+        }
+        synchronized (side) {
+            return side.amend(order, newQuantity, newPriceTicks);
+        }
+    }
+
+    private BookSide sideOf(Order order) {
+        // Null only for a stop that has never rested on a side yet
+        return order.getType() == Order.Type.BUY
+            ? buyOrders.get(order.getSymbolId()) : sellOrders.get(order.getSymbolId());
+    }
+}
@@ -3,8 +3,8 @@ package com.stocktrading;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+
+import com.stocktrading.metrics.MatcherMetrics;
 
 /**
  * Matches buy and sell orders based on price-time priority.
@@ -12,20 +12,68 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class LockedOrderMatcher implements OrderMatcher, Runnable {
     private final LockedOrderBook orderBook;
-    private final BlockingQueue<Trade> trades;
+    private final TradeSink trades;
+    private final TimeSource timeSource;
+    private final BookListener bookListener;
     private final List<String> symbols;
+    private final DirtySymbolQueue dirtySymbols;
+    private final MatcherMetrics metrics = new MatcherMetrics();
     private volatile boolean running = true;
+    private volatile Thread matcherThread;
     
     /**
-     * Creates a new order matcher.
+     * Creates a new order matcher publishing to a trade ring of the default capacity, which
+     * drops and counts trades once it is full rather than stall matching while nothing drains it.
      * 
      * @param orderBook The order book to match orders from
      * @param symbols The list of stock symbols to match orders for
      */
     public LockedOrderMatcher(LockedOrderBook orderBook, List<String> symbols) {
+        this(orderBook, symbols, new TradeRingBuffer(TradeRingBuffer.DEFAULT_CAPACITY, BackpressurePolicy.DROP));
+    }
+    
+    /**
+     * Creates a new order matcher.
+     * 
+     * @param orderBook The order book to match orders from
+     * @param symbols The list of stock symbols to match orders for
+     * @param trades The sink to publish trades to
+     */
+    public LockedOrderMatcher(LockedOrderBook orderBook, List<String> symbols, TradeSink trades) {
+        this(orderBook, symbols, trades, TimeSource.SYSTEM);
+    }
+    
+    /**
+     * Creates a new order matcher.
+     * 
+     * @param orderBook The order book to match orders from
+     * @param symbols The list of stock symbols to match orders for
+     * @param trades The sink to publish trades to
+     * @param timeSource The source of trade timestamps
+     */
+    public LockedOrderMatcher(LockedOrderBook orderBook, List<String> symbols, TradeSink trades,
+                              TimeSource timeSource) {
+        this(orderBook, symbols, trades, timeSource, BookListener.NONE);
+    }
+    
+    /**
+     * Creates a new order matcher that reports its trades and book changes, e.g. to a
+     * market data publisher.
+     * 
+     * @param orderBook The order book to match orders from
+     * @param symbols The list of stock symbols to match orders for
+     * @param trades The sink to publish trades to
+     * @param timeSource The source of trade timestamps
+     * @param bookListener The listener to report to
+     */
+    public LockedOrderMatcher(LockedOrderBook orderBook, List<String> symbols, TradeSink trades,
+                              TimeSource timeSource, BookListener bookListener) {
         this.orderBook = orderBook;
-        this.trades = new LinkedBlockingQueue<>();
+        this.trades = trades;
+        this.timeSource = timeSource;
+        this.bookListener = bookListener;
         this.symbols = new ArrayList<>(symbols);
+        this.dirtySymbols = new DirtySymbolQueue(this.symbols);
     }
     
     /**
@@ -33,31 +81,59 @@ public class LockedOrderMatcher implements OrderMatcher, Runnable {
      */
     public void stop() {
         running = false;
+        // Wake the matcher thread if it is waiting for a dirty symbol
+        Thread thread = matcherThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+    
+    /**
+     * Marks a symbol as needing a matching pass.
+     * 
+     * @param symbol The stock symbol
+     */
+    @Override
+    public void signal(String symbol) {
+        dirtySymbols.markDirty(symbol);
     }
     
     /**
      * Gets the trades that have been executed.
      * 
-     * @return The queue of trades
+     * @return The trade sink
      */
-    public BlockingQueue<Trade> getTrades() {
+    public TradeSink getTrades() {
         return trades;
     }
     
+    @Override
+    public BookListener getBookListener() {
+        return bookListener;
+    }
+
+    @Override
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+    
+    @Override
+    public MatcherMetrics getMetrics() {
+        return metrics;
+    }
+    
     @Override
     public void run() {
+        matcherThread = Thread.currentThread();
         try {
             while (running) {
-                // Process each symbol
-                for (String symbol : symbols) {
-                    matchOrders(symbol);
-                }
-                
-                // Sleep a bit to avoid consuming too much CPU
-                Thread.sleep(10);
+                // Block until an order arrives, then match only the symbol it touched
+                matchOrders(dirtySymbols.take());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            matcherThread = null;
         }
     }
     
@@ -67,6 +143,20 @@ public class LockedOrderMatcher implements OrderMatcher, Runnable {
      * @param symbol The stock symbol
      */
     public void matchOrders(String symbol) {
+        int symbolId = SymbolRegistry.intern(symbol);
+        int tradeCount = 0;
+        // Stops the trades trigger join in once the book stops crossing, within the same pass
+        do {
+            tradeCount += matchCrossing(symbol);
+        } while (releaseTriggeredStops(symbolId));
+        metrics.recordPass(tradeCount);
+        if (tradeCount > 0) {
+            bookListener.onBookChanged(symbolId);
+        }
+    }
+
+    private int matchCrossing(String symbol) {
+        int tradeCount = 0;
         // Continue matching as long as there are both buy and sell orders
         while (orderBook.hasBuyOrders(symbol) && orderBook.hasSellOrders(symbol)) {
             synchronized (orderBook.getBuyOrders(symbol)) {
@@ -80,36 +170,36 @@ public class LockedOrderMatcher implements OrderMatcher, Runnable {
                     }
                     
                     // Check if the orders can be matched (buy price >= sell price)
-                    if (sellOrder.getPrice() <= buyOrder.getPrice()) {
-                        // Remove the orders from the queues - must be the same as what we peeked
-                        // due to synchronization
-                        Order pollBuyOrder = orderBook.getBuyOrders(symbol).poll();
-                        Order pollSellOrder = orderBook.getSellOrders(symbol).poll();
-
-                        assert Objects.equals(pollBuyOrder, buyOrder) && Objects.equals(pollSellOrder, sellOrder) :
-                            "Race condition: peek/poll mismatch detected";
+                    if (sellOrder.getPriceTicks() <= buyOrder.getPriceTicks()) {
+                        BookSide buyOrders = orderBook.getBuyOrders(symbol);
+                        BookSide sellOrders = orderBook.getSellOrders(symbol);
 
                         // Determine the matched quantity and price
                         int matchedQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
-                        double tradePrice = sellOrder.getPrice(); // Use the sell price for the trade
+                        long tradePrice = sellOrder.getPriceTicks(); // Use the sell price for the trade
                         
-                        // Create a trade
-                        Trade trade = new Trade(symbol, tradePrice, matchedQuantity, buyOrder.getId(), sellOrder.getId());
-                        trades.add(trade);
-
-//                        System.out.println(trade);
+                        // Publish the trade
+                        Order.recordFirstTrade(buyOrder, sellOrder);
+                        long timestamp = timeSource.currentTimeMillis();
+                        trades.publish(buyOrder.getSymbolId(), tradePrice, matchedQuantity, buyOrder.getId(),
+                            sellOrder.getId(), buyOrder.getAccountId(), sellOrder.getAccountId(), timestamp);
+                        bookListener.onTrade(buyOrder.getSymbolId(), tradePrice, matchedQuantity, timestamp);
+                        triggerStops(buyOrder.getSymbolId(), tradePrice);
+                        tradeCount++;
                         
-                        // Handle partial matches
-                        if (matchedQuantity < buyOrder.getQuantity()) {
-                            // Create a new buy order with the remaining quantity
-                            buyOrder.reduceQuantity(matchedQuantity);
-                            orderBook.addOrder(buyOrder);
+                        // Fill both orders in place, so a partially filled order keeps its priority
+                        buyOrders.reduceQuantity(buyOrder, matchedQuantity);
+                        sellOrders.reduceQuantity(sellOrder, matchedQuantity);
+
+                        // Remove fully filled orders - must be the same as what we peeked
+                        // due to synchronization
+                        if (buyOrder.getQuantity() == 0) {
+                            Order pollBuyOrder = buyOrders.poll();
+                            assert Objects.equals(pollBuyOrder, buyOrder) : "Race condition: peek/poll mismatch detected";
                         }
-                        
-                        if (matchedQuantity < sellOrder.getQuantity()) {
-                            // Create a new sell order with the remaining quantity
-                            sellOrder.reduceQuantity(matchedQuantity);
-                            orderBook.addOrder(sellOrder);
+                        if (sellOrder.getQuantity() == 0) {
+                            Order pollSellOrder = sellOrders.poll();
+                            assert Objects.equals(pollSellOrder, sellOrder) : "Race condition: peek/poll mismatch detected";
                         }
                     } else {
                         // Orders cannot be matched, so stop trying
@@ -118,5 +208,97 @@ public class LockedOrderMatcher implements OrderMatcher, Runnable {
                 }
             }
         }
+        return tradeCount;
+    }
+
+    private void triggerStops(int symbolId, long tradePrice) {
+        StopIndex stops = orderBook.getStops(symbolId);
+        if (stops != null) {
+            stops.onTrade(tradePrice);
+        }
+    }
+
+    /**
+     * Brings the stop orders that trades have triggered into play, once the caller
+     * holds neither side: a stop-limit order joins the book, where the caller's
+     * matching loop picks it up, and a stop order executes at once.
+     *
+     * @return True if a triggered order now rests in the book
+     */
+    private boolean releaseTriggeredStops(int symbolId) {
+        StopIndex stops = orderBook.getStops(symbolId);
+        if (stops == null) {
+            return false;
+        }
+        boolean rested = false;
+        Order order;
+        while ((order = stops.pollTriggered()) != null) {
+            if (order.rests()) {
+                orderBook.addOrder(order);
+                rested = true;
+            } else {
+                orderBook.getOrderIndex().remove(order.getId());
+                matchIncoming(order);
+            }
+        }
+        return rested;
+    }
+
+    /**
+     * Executes the order on the submitting thread, holding both sides' monitors in the
+     * same order as {@link #matchOrders}, so the depth a fill-or-kill order sees is the
+     * depth it fills from. Stops its trades trigger come into play once both are released.
+     */
+    @Override
+    public int matchIncoming(Order order) {
+        String symbol = order.getSymbol();
+        boolean buy = order.getType() == Order.Type.BUY;
+        int quantity = order.getQuantity();
+        int tradeCount = 0;
+        // The canonical sides, created if need be, so the monitors are those matchOrders and the book take
+        BookSide buyOrders = orderBook.buySide(order.getSymbolId());
+        BookSide sellOrders = orderBook.sellSide(order.getSymbolId());
+        BookSide opposite = buy ? sellOrders : buyOrders;
+        synchronized (buyOrders) {
+            synchronized (sellOrders) {
+                if (order.getTimeInForce() != Order.TimeInForce.FOK
+                        || opposite.crossingQuantity(order, quantity) >= quantity) {
+                    while (order.getQuantity() > 0) {
+                        Order resting = opposite.peek();
+                        if (resting == null || !order.crosses(resting.getPriceTicks())) {
+                            break;
+                        }
+                        Order buyOrder = buy ? order : resting;
+                        Order sellOrder = buy ? resting : order;
+
+                        // Trade at the resting order's price
+                        int matchedQuantity = Math.min(order.getQuantity(), resting.getQuantity());
+                        long tradePrice = resting.getPriceTicks();
+                        Order.recordFirstTrade(buyOrder, sellOrder);
+                        long timestamp = timeSource.currentTimeMillis();
+                        trades.publish(order.getSymbolId(), tradePrice, matchedQuantity, buyOrder.getId(),
+                            sellOrder.getId(), buyOrder.getAccountId(), sellOrder.getAccountId(), timestamp);
+                        bookListener.onTrade(order.getSymbolId(), tradePrice, matchedQuantity, timestamp);
+                        triggerStops(order.getSymbolId(), tradePrice);
+                        tradeCount++;
+
+                        opposite.reduceQuantity(resting, matchedQuantity);
+                        order.reduceQuantity(matchedQuantity);
+                        if (resting.getQuantity() == 0) {
+                            opposite.poll();
+                        }
+                    }
+                }
+            }
+        }
+        metrics.recordPass(tradeCount);
+        if (tradeCount > 0) {
+            bookListener.onBookChanged(order.getSymbolId());
+        }
+        int filled = quantity - order.getQuantity();
+        if (releaseTriggeredStops(order.getSymbolId())) {
+            matchOrders(symbol);
+        }
+        return filled;
     }
-} 
\ No newline at end of file
+}
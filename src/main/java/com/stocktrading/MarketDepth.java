@@ -0,0 +1,149 @@
+package com.stocktrading;
+
+/**
+ * A reusable buffer of aggregated book levels for one symbol: price, total quantity
+ * and order count per level, best price first on each side.
+ * Filled by {@link OrderBook#depth} and {@link OrderBook#topOfBook}, which overwrite
+ * whatever the buffer held, so a caller can keep one buffer and query it repeatedly
+ * without allocating. Not thread-safe: each reading thread needs its own buffer.
+ */
+public class MarketDepth {
+    private final long[] bidPriceTicks;
+    private final long[] bidQuantities;
+    private final int[] bidOrderCounts;
+    private int bidLevels;
+
+    private final long[] askPriceTicks;
+    private final long[] askQuantities;
+    private final int[] askOrderCounts;
+    private int askLevels;
+
+    private int symbolId = -1;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param maxLevels The number of levels each side can hold
+     */
+    public MarketDepth(int maxLevels) {
+        if (maxLevels <= 0) {
+            throw new IllegalArgumentException("Number of levels must be positive");
+        }
+        bidPriceTicks = new long[maxLevels];
+        bidQuantities = new long[maxLevels];
+        bidOrderCounts = new int[maxLevels];
+        askPriceTicks = new long[maxLevels];
+        askQuantities = new long[maxLevels];
+        askOrderCounts = new int[maxLevels];
+    }
+
+    public int getMaxLevels() { return bidPriceTicks.length; }
+    public int getSymbolId() { return symbolId; }
+    public int getBidLevels() { return bidLevels; }
+    public int getAskLevels() { return askLevels; }
+
+    public long getBidPriceTicks(int level) { return bidPriceTicks[checkBid(level)]; }
+    public long getBidQuantity(int level) { return bidQuantities[checkBid(level)]; }
+    public int getBidOrderCount(int level) { return bidOrderCounts[checkBid(level)]; }
+
+    public long getAskPriceTicks(int level) { return askPriceTicks[checkAsk(level)]; }
+    public long getAskQuantity(int level) { return askQuantities[checkAsk(level)]; }
+    public int getAskOrderCount(int level) { return askOrderCounts[checkAsk(level)]; }
+
+    /**
+     * Gets the price of a bid level.
+     *
+     * @param level The level, 0 for the best bid
+     * @return The price per unit
+     */
+    public double getBidPrice(int level) {
+        return TickSizes.toPrice(symbolId, getBidPriceTicks(level));
+    }
+
+    /**
+     * Gets the price of an ask level.
+     *
+     * @param level The level, 0 for the best ask
+     * @return The price per unit
+     */
+    public double getAskPrice(int level) {
+        return TickSizes.toPrice(symbolId, getAskPriceTicks(level));
+    }
+
+    /**
+     * Overwrites this buffer with another's levels, as many as fit.
+     *
+     * @param other The buffer to copy
+     */
+    public void copyFrom(MarketDepth other) {
+        reset(other.symbolId);
+        int bids = Math.min(other.bidLevels, getMaxLevels());
+        for (int i = 0; i < bids; i++) {
+            addLevel(true, other.bidPriceTicks[i], other.bidQuantities[i], other.bidOrderCounts[i]);
+        }
+        int asks = Math.min(other.askLevels, getMaxLevels());
+        for (int i = 0; i < asks; i++) {
+            addLevel(false, other.askPriceTicks[i], other.askQuantities[i], other.askOrderCounts[i]);
+        }
+    }
+
+    /**
+     * Empties the buffer before it is filled for a symbol.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     */
+    public void reset(int symbolId) {
+        this.symbolId = symbolId;
+        bidLevels = 0;
+        askLevels = 0;
+    }
+
+    /**
+     * Appends a level below the ones already held on a side.
+     *
+     * @param bid True for the bid side, false for the ask side
+     * @param priceTicks The price of the level in ticks
+     * @param quantity The total quantity resting at the level
+     * @param orderCount The number of orders resting at the level
+     */
+    void addLevel(boolean bid, long priceTicks, long quantity, int orderCount) {
+        if (bid) {
+            bidPriceTicks[bidLevels] = priceTicks;
+            bidQuantities[bidLevels] = quantity;
+            bidOrderCounts[bidLevels] = orderCount;
+            bidLevels++;
+        } else {
+            askPriceTicks[askLevels] = priceTicks;
+            askQuantities[askLevels] = quantity;
+            askOrderCounts[askLevels] = orderCount;
+            askLevels++;
+        }
+    }
+
+    /**
+     * Appends a level if it holds any quantity.
+     *
+     * @param bid True for the bid side, false for the ask side
+     * @param level The level to copy
+     */
+    void addLevel(boolean bid, PriceLevel level) {
+        long quantity = level.getTotalQuantity();
+        if (quantity > 0) {
+            addLevel(bid, level.getPriceTicks(), quantity, level.size());
+        }
+    }
+
+    private int checkBid(int level) {
+        if (level < 0 || level >= bidLevels) {
+            throw new IndexOutOfBoundsException("Bid level " + level + " of " + bidLevels);
+        }
+        return level;
+    }
+
+    private int checkAsk(int level) {
+        if (level < 0 || level >= askLevels) {
+            throw new IndexOutOfBoundsException("Ask level " + level + " of " + askLevels);
+        }
+        return level;
+    }
+}
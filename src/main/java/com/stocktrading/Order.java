@@ -1,75 +1,618 @@
 package com.stocktrading;
 
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.stocktrading.metrics.LatencyTracker;
+
 /**
- * Represents a market order in the trading system.
+ * Represents an order in the trading system: a side, a limit price and a quantity,
+ * plus a {@link TimeInForce} that says whether the unfilled part may rest in the book.
+ * Orders are mutable so that they can be recycled through an {@link OrderPool};
+ * an order created with {@code new} is never recycled.
  */
 public class Order {
     public enum Type { BUY, SELL }
 
+    /**
+     * How long an order may stay in the book. Only LIMIT orders rest; the others are
+     * executed against the book as they arrive, see {@link OrderMatcher#matchIncoming}.
+     */
+    public enum TimeInForce {
+        /** Rests until it is filled, cancelled or amended. */
+        LIMIT,
+        /** Trades at any price; whatever cannot be filled at once is cancelled. */
+        MARKET,
+        /** Immediate or cancel: trades up to its limit price, and the rest is cancelled. */
+        IOC,
+        /** Fill or kill: trades in full up to its limit price, or not at all. */
+        FOK;
+
+        private static final TimeInForce[] VALUES = values();
+
+        /**
+         * Gets the time in force with an ordinal, without copying the values array.
+         */
+        public static TimeInForce fromOrdinal(int ordinal) {
+            return VALUES[ordinal];
+        }
+    }
+
+    /**
+     * The limit price in ticks of a market buy order, so that it crosses every resting price.
+     */
+    public static final long MARKET_BUY_TICKS = Long.MAX_VALUE;
+
+    /**
+     * The limit price in ticks of a market sell order, so that it crosses every resting price.
+     */
+    public static final long MARKET_SELL_TICKS = Long.MIN_VALUE;
+
     // Static counter for generating unique IDs
     private static final AtomicLong ID_GENERATOR = new AtomicLong(0);
     
-    private final long id;
-    private final String symbol;
-    private final Type type;
-    private final double price;
-    private final AtomicInteger quantity;
-    private final long timestamp;
+    private long id;
+    private String symbol;
+    // Interned id of the symbol, see SymbolRegistry
+    private int symbolId;
+    private Type type;
+    // Price in ticks of the symbol's tick size, see TickSizes.
+    // Only changed by an amend while the order is not resting.
+    private long price;
+    // Fills, cancels and amends are serialized by whatever guards the order's level,
+    // so a volatile int is enough and no atomic wrapper is allocated per order
+    private volatile int quantity;
+    private long timestamp;
+    private TimeInForce timeInForce;
+    // The trading account the order is for, an index into per-account state such as PreTradeRiskCheck's
+    private int accountId;
+    // An iceberg shows at most displayQuantity at a time and keeps the rest in hiddenQuantity;
+    // both are zero for other orders. The hidden part changes under the same guard as quantity.
+    private int displayQuantity;
+    private volatile int hiddenQuantity;
+    // A stop order waits in its book's StopIndex while armed, and once a trade reaches
+    // its stop price it is disarmed and acts as a plain order of its time in force
+    private long stopPrice;
+    private boolean stop;
+    private volatile boolean stopArmed;
+
+    // Pool the order goes back to once it leaves the book; null if created with new
+    OrderPool pool;
+    boolean inPool;
+
+    // Intrusive links into the price level the order rests in, see PriceLevel.
+    // Guarded by whatever guards that level; null while the order is not resting.
+    PriceLevel level;
+    Order prev;
+    Order next;
+
+    // Set when a latency-tracking engine submits the order, see recordFirstTrade
+    LatencyTracker latencyTracker;
+    long submitNanos;
+    boolean traded;
+
+    // Set just before the engine hands the order to its book, so a risk check can tell
+    // an order still on its way from one that has left the book
+    volatile boolean booked;
     
     /**
      * Creates a new order.
      * 
      * @param symbol The stock symbol
      * @param type The order type (BUY or SELL)
-     * @param price The price per unit
+     * @param price The price per unit, rounded to the symbol's tick size
      * @param quantity The quantity of units
      */
     public Order(String symbol, Type type, double price, int quantity) {
-        this.id = ID_GENERATOR.incrementAndGet();
-        this.symbol = symbol;
+        this(SymbolRegistry.intern(symbol), type, price, quantity);
+    }
+
+    /**
+     * Creates a new order with a time in force.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param price The limit price per unit, rounded to the symbol's tick size; ignored for MARKET
+     * @param quantity The quantity of units
+     * @param timeInForce Whether the unfilled part rests or is cancelled
+     */
+    public Order(String symbol, Type type, double price, int quantity, TimeInForce timeInForce) {
+        this(SymbolRegistry.intern(symbol), type, price, quantity);
+        setTimeInForce(timeInForce);
+    }
+
+    private Order(int symbolId, Type type, double price, int quantity) {
+        this(symbolId, type, TickSizes.toTicks(symbolId, price), quantity);
+    }
+
+    private Order(int symbolId, Type type, long priceTicks, int quantity) {
+        init(nextId(), symbolId, type, priceTicks, quantity, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a blank order for a pool to fill in.
+     */
+    Order() {
+    }
+
+    /**
+     * Sets every field of a new or recycled order.
+     */
+    void init(long id, int symbolId, Type type, long priceTicks, int quantity, long timestamp) {
+        this.id = id;
+        this.symbol = SymbolRegistry.getSymbol(symbolId);
+        this.symbolId = symbolId;
         this.type = type;
-        this.price = price;
-        this.quantity = new AtomicInteger(quantity);
-        this.timestamp = System.currentTimeMillis();
+        this.price = priceTicks;
+        this.quantity = quantity;
+        this.timestamp = timestamp;
+        this.timeInForce = TimeInForce.LIMIT;
+        this.accountId = 0;
+        this.displayQuantity = 0;
+        this.hiddenQuantity = 0;
+        this.stopPrice = 0;
+        this.stop = false;
+        this.stopArmed = false;
+        this.latencyTracker = null;
+        this.submitNanos = 0;
+        this.traded = false;
+        this.booked = false;
+    }
+
+    /**
+     * Takes the next order id.
+     *
+     * @return A unique order id
+     */
+    static long nextId() {
+        return ID_GENERATOR.incrementAndGet();
+    }
+
+    /**
+     * Creates a new order with a price already expressed in ticks.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks of the symbol's tick size
+     * @param quantity The quantity of units
+     * @return The new order
+     */
+    public static Order withPriceTicks(String symbol, Type type, long priceTicks, int quantity) {
+        return new Order(SymbolRegistry.intern(symbol), type, priceTicks, quantity);
+    }
+
+    /**
+     * Creates a new order for an interned symbol with a price already expressed in ticks.
+     * Used at the edge once the symbol has been resolved, so no string is hashed.
+     * 
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks of the symbol's tick size
+     * @param quantity The quantity of units
+     * @return The new order
+     */
+    public static Order withPriceTicks(int symbolId, Type type, long priceTicks, int quantity) {
+        return new Order(symbolId, type, priceTicks, quantity);
+    }
+
+    /**
+     * Creates a new market order, which trades at whatever prices rest in the book.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param quantity The quantity of units
+     * @return The new order
+     */
+    public static Order market(String symbol, Type type, int quantity) {
+        Order order = new Order(SymbolRegistry.intern(symbol), type, 0L, quantity);
+        order.setTimeInForce(TimeInForce.MARKET);
+        return order;
+    }
+
+    /**
+     * Creates a new iceberg order, which rests showing at most its display quantity.
+     * Each time the displayed part fills, the next part is drawn from the hidden
+     * reserve and joins the back of the queue at its price, like a new order would.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param price The price per unit, rounded to the symbol's tick size
+     * @param quantity The total quantity of units, displayed and hidden
+     * @param displayQuantity The most units shown at a time
+     * @return The new order
+     */
+    public static Order iceberg(String symbol, Type type, double price, int quantity, int displayQuantity) {
+        checkQuantity(displayQuantity);
+        Order order = new Order(symbol, type, price, quantity);
+        order.setDisplayQuantity(displayQuantity);
+        return order;
+    }
+
+    /**
+     * Creates a new stop order, which waits until a trade prints at or through its stop
+     * price (at or above it for a buy, at or below it for a sell) and then executes as
+     * a market order.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param stopPrice The price that triggers the order, rounded to the symbol's tick size
+     * @param quantity The quantity of units
+     * @return The new order
+     */
+    public static Order stop(String symbol, Type type, double stopPrice, int quantity) {
+        Order order = market(symbol, type, quantity);
+        order.setStopPrice(TickSizes.toTicks(order.symbolId, stopPrice));
+        return order;
+    }
+
+    /**
+     * Creates a new stop-limit order, which waits like {@link #stop} and then rests as
+     * a limit order.
+     * 
+     * @param symbol The stock symbol
+     * @param type The order type (BUY or SELL)
+     * @param stopPrice The price that triggers the order, rounded to the symbol's tick size
+     * @param price The limit price per unit once triggered, rounded to the symbol's tick size
+     * @param quantity The quantity of units
+     * @return The new order
+     */
+    public static Order stopLimit(String symbol, Type type, double stopPrice, double price, int quantity) {
+        Order order = new Order(symbol, type, price, quantity);
+        order.setStopPrice(TickSizes.toTicks(order.symbolId, stopPrice));
+        return order;
+    }
+
+    /**
+     * Recreates an order with a known id and timestamp, e.g. when replaying a journal.
+     * The id generator is moved past the id, so orders created afterwards never reuse it.
+     * 
+     * @param orderId The order id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks of the symbol's tick size
+     * @param quantity The quantity of units
+     * @param timestamp The order time in milliseconds
+     * @return The restored order
+     */
+    public static Order restore(long orderId, int symbolId, Type type, long priceTicks, int quantity, long timestamp) {
+        ID_GENERATOR.accumulateAndGet(orderId, Math::max);
+        Order order = new Order();
+        order.init(orderId, symbolId, type, priceTicks, quantity, timestamp);
+        return order;
+    }
+
+    /**
+     * Recreates an order with a known id, timestamp and time in force, see
+     * {@link #restore(long, int, Type, long, int, long)}.
+     * 
+     * @param orderId The order id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks of the symbol's tick size
+     * @param quantity The quantity of units
+     * @param timeInForce The time in force
+     * @param timestamp The order time in milliseconds
+     * @return The restored order
+     */
+    public static Order restore(long orderId, int symbolId, Type type, long priceTicks, int quantity,
+                                TimeInForce timeInForce, long timestamp) {
+        Order order = restore(orderId, symbolId, type, priceTicks, quantity, timestamp);
+        order.setTimeInForce(timeInForce);
+        return order;
+    }
+
+    /**
+     * Recreates an iceberg order with a known id, timestamp and split between the
+     * displayed and hidden quantity, e.g. when loading a snapshot.
+     * 
+     * @param orderId The order id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks of the symbol's tick size
+     * @param quantity The displayed quantity
+     * @param hiddenQuantity The hidden quantity
+     * @param displayQuantity The most units shown at a time
+     * @param timestamp The order time in milliseconds
+     * @return The restored order
+     */
+    public static Order restoreIceberg(long orderId, int symbolId, Type type, long priceTicks, int quantity,
+                                       int hiddenQuantity, int displayQuantity, long timestamp) {
+        Order order = restore(orderId, symbolId, type, priceTicks, quantity, timestamp);
+        order.displayQuantity = displayQuantity;
+        order.hiddenQuantity = hiddenQuantity;
+        return order;
+    }
+
+    /**
+     * Recreates an armed stop order with a known id and timestamp.
+     * 
+     * @param orderId The order id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The limit price per unit in ticks, ignored for a stop that triggers a market order
+     * @param quantity The quantity of units
+     * @param timeInForce MARKET for a stop order, LIMIT for a stop-limit order
+     * @param stopPriceTicks The stop price in ticks
+     * @param timestamp The order time in milliseconds
+     * @return The restored order
+     */
+    public static Order restoreStop(long orderId, int symbolId, Type type, long priceTicks, int quantity,
+                                    TimeInForce timeInForce, long stopPriceTicks, long timestamp) {
+        Order order = restore(orderId, symbolId, type, priceTicks, quantity, timeInForce, timestamp);
+        order.setStopPrice(stopPriceTicks);
+        return order;
     }
 
     public long getId() { return id; }
     public String getSymbol() { return symbol; }
+    public int getSymbolId() { return symbolId; }
     public Type getType() { return type; }
-    public double getPrice() { return price; }
+    public double getPrice() { return TickSizes.toPrice(symbolId, price); }
+    public long getPriceTicks() { return price; }
     public int getQuantity() { 
-        return quantity.get(); 
+        return quantity; 
     }
     public long getTimestamp() { return timestamp; }
+    public TimeInForce getTimeInForce() { return timeInForce; }
+    public int getAccountId() { return accountId; }
+    public int getDisplayQuantity() { return displayQuantity; }
+    public int getHiddenQuantity() { return hiddenQuantity; }
+    public boolean isIceberg() { return displayQuantity > 0; }
+    public boolean isStop() { return stop; }
+    public long getStopPriceTicks() { return stopPrice; }
+    public double getStopPrice() { return TickSizes.toPrice(symbolId, stopPrice); }
+
+    /**
+     * Assigns the order to a trading account. Orders belong to account 0 until given
+     * another, and the account must be set before the order is submitted.
+     *
+     * @param accountId The account id, a small non-negative number
+     * @throws IllegalArgumentException If the account id is negative
+     */
+    public void setAccountId(int accountId) {
+        if (accountId < 0) {
+            throw new IllegalArgumentException("Account id must not be negative");
+        }
+        this.accountId = accountId;
+    }
+
+    /**
+     * Checks whether the order is a stop order still waiting for its stop price.
+     *
+     * @return True until a trade triggers the order
+     */
+    public boolean isStopArmed() {
+        return stopArmed;
+    }
+
+    /**
+     * Gets the quantity left to fill, counting an iceberg's hidden reserve as well as
+     * the displayed quantity that {@link #getQuantity()} returns.
+     *
+     * @return The remaining quantity
+     */
+    public int getRemainingQuantity() {
+        return quantity + hiddenQuantity;
+    }
+
+    /**
+     * Checks whether the order goes into the book rather than executing on arrival:
+     * a LIMIT order rests in its price level, and an armed stop order waits in the
+     * book's stop index whatever its time in force.
+     *
+     * @return True for LIMIT orders and armed stop orders
+     */
+    public boolean rests() {
+        return timeInForce == TimeInForce.LIMIT || stopArmed;
+    }
+
+    /**
+     * Sets the time in force of an order that has not been submitted. A market order
+     * takes the limit price that crosses every resting order.
+     *
+     * @param timeInForce The time in force
+     */
+    void setTimeInForce(TimeInForce timeInForce) {
+        this.timeInForce = timeInForce;
+        if (timeInForce == TimeInForce.MARKET) {
+            this.price = type == Type.BUY ? MARKET_BUY_TICKS : MARKET_SELL_TICKS;
+        }
+    }
+
+    /**
+     * Turns an order that has not been submitted into an armed stop order.
+     *
+     * @param stopPriceTicks The stop price in ticks
+     */
+    void setStopPrice(long stopPriceTicks) {
+        this.stopPrice = stopPriceTicks;
+        this.stop = true;
+        this.stopArmed = true;
+    }
+
+    /**
+     * Marks a stop order as triggered, see {@link StopIndex}.
+     */
+    void disarmStop() {
+        stopArmed = false;
+    }
+
+    /**
+     * Turns an order that has not been submitted into an iceberg, moving everything
+     * beyond the display quantity into the hidden reserve.
+     *
+     * @param displayQuantity The most units shown at a time
+     */
+    void setDisplayQuantity(int displayQuantity) {
+        this.displayQuantity = displayQuantity;
+        int total = quantity + hiddenQuantity;
+        this.quantity = Math.min(displayQuantity, total);
+        this.hiddenQuantity = total - quantity;
+    }
+
+    /**
+     * Shows the next part of a filled iceberg. The caller moves the order to the back
+     * of its level, so the new part loses time priority.
+     *
+     * @return True if there was a hidden reserve to show
+     */
+    boolean refreshDisplay() {
+        int hidden = hiddenQuantity;
+        if (hidden == 0) {
+            return false;
+        }
+        int shown = Math.min(displayQuantity, hidden);
+        hiddenQuantity = hidden - shown;
+        quantity = shown;
+        return true;
+    }
+
+    /**
+     * Lowers the remaining quantity for an amend that keeps priority, taking it from
+     * the hidden reserve first.
+     *
+     * @param newQuantity The new remaining quantity, no more than the current one
+     * @return The amount the displayed quantity must drop by, for the caller to apply
+     *         through the order's level
+     */
+    int reduceRemainingTo(int newQuantity) {
+        int shown = quantity;
+        hiddenQuantity = Math.max(0, newQuantity - shown);
+        return Math.max(0, shown - newQuantity);
+    }
+
+    /**
+     * Checks whether a resting price is good enough for this order to trade at.
+     *
+     * @param priceTicks The price of a resting order on the other side, in ticks
+     * @return True if the order would trade at that price
+     */
+    boolean crosses(long priceTicks) {
+        return type == Type.BUY ? priceTicks <= price : priceTicks >= price;
+    }
+
+    /**
+     * Checks whether the order is linked into a price level. Read from a thread other
+     * than the book's, the answer may lag: an order seen resting may just have left.
+     *
+     * @return True if the order rests in a book
+     */
+    public boolean isResting() {
+        return level != null;
+    }
     
     /**
      * Reduces the quantity of this order by the specified amount.
+     * Callers must serialize changes to a resting order through whatever guards
+     * its level, as the books and matchers do.
      * 
      * @param amount The amount to reduce by
      * @return true if the reduction was successful, false otherwise
      */
     public boolean reduceQuantity(int amount) {
-        while (true) {
-            int currentQuantity = quantity.get();
-            if (amount > currentQuantity) {
-                throw new IllegalArgumentException("Cannot reduce by more than the current quantity");
-            }
-            
-            int newQuantity = currentQuantity - amount;
-            if (quantity.compareAndSet(currentQuantity, newQuantity)) {
-                return true;
-            }
-            // If we get here, someone else modified the quantity concurrently
-            // We'll retry with the new current value
+        int currentQuantity = quantity;
+        if (amount > currentQuantity) {
+            throw new IllegalArgumentException("Cannot reduce by more than the current quantity");
         }
+        quantity = currentQuantity - amount;
+        return true;
     }
     
+    /**
+     * Starts timing an order as it is submitted.
+     *
+     * @param tracker The tracker to record the order's latencies in
+     * @param nanos The submission time from System.nanoTime
+     */
+    void startLatency(LatencyTracker tracker, long nanos) {
+        this.latencyTracker = tracker;
+        this.submitNanos = nanos;
+    }
+
+    /**
+     * Records the submit-to-rest latency of an order the book has just accepted, if it
+     * is being timed. Called by whichever thread adds the order to its book.
+     */
+    void recordRest() {
+        if (latencyTracker != null) {
+            latencyTracker.record(symbolId, LatencyTracker.Stage.REST, System.nanoTime() - submitNanos);
+        }
+    }
+
+    /**
+     * Records the submit-to-first-trade latency of the order that crossed the book, if
+     * it is being timed. Of two timed orders the later submission is the aggressor; the
+     * resting order's wait says more about the market than about the engine, so only
+     * the aggressor is recorded. Matchers call this for every trade, before either
+     * order can go back to its pool.
+     *
+     * @param buyOrder The buy order of the trade
+     * @param sellOrder The sell order of the trade
+     */
+    static void recordFirstTrade(Order buyOrder, Order sellOrder) {
+        if (buyOrder.latencyTracker == null && sellOrder.latencyTracker == null) {
+            return;
+        }
+        Order aggressor = sellOrder.latencyTracker == null
+            || buyOrder.latencyTracker != null && buyOrder.submitNanos - sellOrder.submitNanos > 0
+            ? buyOrder : sellOrder;
+        if (!aggressor.traded) {
+            aggressor.latencyTracker.record(aggressor.symbolId, LatencyTracker.Stage.FIRST_TRADE,
+                System.nanoTime() - aggressor.submitNanos);
+        }
+        buyOrder.traded = true;
+        sellOrder.traded = true;
+    }
+
+    /**
+     * Checks that an amended quantity is usable.
+     *
+     * @param quantity The quantity
+     * @throws IllegalArgumentException If the quantity is not positive
+     */
+    static void checkQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+    }
+
+    /**
+     * Checks whether amending this order keeps its place in the queue.
+     * Only a quantity decrease at the same price does; a price change or a
+     * quantity increase sends the order to the back of its new level.
+     * An iceberg's quantity is its remaining quantity, hidden part included.
+     *
+     * @param newQuantity The amended quantity
+     * @param newPriceTicks The amended price in ticks
+     * @return True if the order keeps its priority
+     */
+    boolean keepsPriority(int newQuantity, long newPriceTicks) {
+        return newPriceTicks == price && newQuantity <= quantity + hiddenQuantity;
+    }
+
+    /**
+     * Replaces the price and quantity of an order that is not resting.
+     *
+     * @param newQuantity The new quantity
+     * @param newPriceTicks The new price in ticks
+     */
+    void replace(int newQuantity, long newPriceTicks) {
+        this.price = newPriceTicks;
+        this.quantity = newQuantity;
+        this.hiddenQuantity = 0;
+        if (displayQuantity > 0) {
+            setDisplayQuantity(displayQuantity);
+        }
+    }
+
     @Override
     public String toString() {
-        return String.format("Order[%d] %s %s %d@%.2f (time: %d)", 
-                id, type, symbol, quantity.get(), price, timestamp);
+        if (timeInForce == TimeInForce.MARKET) {
+            return String.format("Order[%d] %s %s %d@MARKET%s (time: %d)", id, type, symbol, quantity,
+                    stop ? " stop " + getStopPrice() : "", timestamp);
+        }
+        return String.format("Order[%d] %s %s %d@%.2f%s%s%s (time: %d)", 
+                id, type, symbol, quantity, getPrice(), timeInForce == TimeInForce.LIMIT ? "" : " " + timeInForce,
+                displayQuantity > 0 ? " +" + hiddenQuantity + " hidden" : "",
+                stop ? " stop " + getStopPrice() : "", timestamp);
     }
 } 
\ No newline at end of file
@@ -18,4 +18,56 @@ public interface OrderBook {
 	 * @return True if there are sell orders, false otherwise
 	 */
 	boolean hasSellOrders(String symbol);
+
+	/**
+	 * Looks up a resting order by id.
+	 *
+	 * @param orderId The order id
+	 * @return The order, or null if no order with that id is resting
+	 */
+	Order getOrder(long orderId);
+
+	/**
+	 * Removes a resting order from the book.
+	 *
+	 * @param orderId The order id
+	 * @return True if the order was resting and has been cancelled
+	 */
+	boolean cancelOrder(long orderId);
+
+	/**
+	 * Changes the quantity and price of a resting order.
+	 * A quantity decrease at the same price keeps the order's queue priority;
+	 * a price change or quantity increase moves it to the back of its new level.
+	 *
+	 * @param orderId The order id
+	 * @param newQuantity The new quantity, which must be positive
+	 * @param newPrice The new price per unit, rounded to the symbol's tick size
+	 * @return True if the order was resting and has been amended
+	 */
+	boolean amendOrder(long orderId, int newQuantity, double newPrice);
+
+	/**
+	 * Copies the aggregated price levels nearest the touch into a reusable buffer,
+	 * best price first on each side. Takes time proportional to the number of levels
+	 * copied and allocates nothing. Each side is read as it stands at the moment it is
+	 * copied, so under concurrent matching the two sides need not be from one instant.
+	 *
+	 * @param symbol The stock symbol
+	 * @param levels The most levels to copy per side, capped by the buffer's size
+	 * @param depth The buffer to overwrite
+	 * @return The buffer
+	 */
+	MarketDepth depth(String symbol, int levels, MarketDepth depth);
+
+	/**
+	 * Copies the best bid and ask levels into a reusable buffer, see {@link #depth}.
+	 *
+	 * @param symbol The stock symbol
+	 * @param depth The buffer to overwrite
+	 * @return The buffer, holding at most one level per side
+	 */
+	default MarketDepth topOfBook(String symbol, MarketDepth depth) {
+		return depth(symbol, 1, depth);
+	}
 }
@@ -0,0 +1,175 @@
+package com.stocktrading;
+
+import java.util.Collection;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stocktrading.ring.OrderEvent;
+import com.stocktrading.ring.OrderEventHandler;
+import com.stocktrading.ring.OrderRingBuffer;
+import com.stocktrading.ring.WaitStrategy;
+
+/**
+ * A group of symbol books owned by a single matching thread.
+ * Submitting threads only touch the inbox; everything else is confined to the owner.
+ * The inbox is a preallocated {@link OrderRingBuffer}, so handing over a command
+ * allocates nothing. It is bounded: a submitter waits while the inbox is full.
+ */
+public class OrderBookShard {
+    public static final int DEFAULT_INBOX_CAPACITY = 1 << 14;
+
+    private final int index;
+
+    // Symbol set fixed at construction, so lookups from any thread are safe
+    private final PriceLadderOrderBook book;
+
+    // Adds, cancels and amends handed over by submitting threads, drained by the owner in order
+    private final OrderRingBuffer inbox;
+    private volatile Thread owner;
+
+    /**
+     * Creates a new shard.
+     *
+     * @param index The shard index
+     * @param symbols The symbols owned by this shard
+     */
+    public OrderBookShard(int index, Collection<String> symbols) {
+        this(index, symbols, new OrderIndex());
+    }
+
+    /**
+     * Creates a new shard.
+     *
+     * @param index The shard index
+     * @param symbols The symbols owned by this shard
+     * @param orderIndex The order index shared by all shards
+     */
+    public OrderBookShard(int index, Collection<String> symbols, OrderIndex orderIndex) {
+        this(index, symbols, orderIndex, DEFAULT_INBOX_CAPACITY);
+    }
+
+    /**
+     * Creates a new shard.
+     *
+     * @param index The shard index
+     * @param symbols The symbols owned by this shard
+     * @param orderIndex The order index shared by all shards
+     * @param inboxCapacity The number of commands the inbox holds, a power of two
+     */
+    public OrderBookShard(int index, Collection<String> symbols, OrderIndex orderIndex, int inboxCapacity) {
+        this.index = index;
+        this.book = new PriceLadderOrderBook(symbols, PriceLadder.DEFAULT_SIZE, orderIndex);
+        this.inbox = new OrderRingBuffer(inboxCapacity, new OwnerWaitStrategy());
+    }
+
+    public int getIndex() { return index; }
+    public PriceLadderOrderBook getOrderBook() { return book; }
+
+    /**
+     * Gets the book for a symbol owned by this shard.
+     *
+     * @param symbol The stock symbol
+     * @return The symbol's book, or null if the shard does not own the symbol
+     */
+    public SymbolBook getBook(String symbol) {
+        return book.getBook(symbol);
+    }
+
+    /**
+     * Gets the book for a symbol owned by this shard.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The symbol's book, or null if the shard does not own the symbol
+     */
+    public SymbolBook getBook(int symbolId) {
+        return book.getBook(symbolId);
+    }
+
+    public Collection<SymbolBook> getBooks() {
+        return book.getBooks();
+    }
+
+    /**
+     * Hands an order to the owning thread and wakes it up. Safe from any thread.
+     *
+     * @param order The order to add
+     */
+    public void submit(Order order) {
+        inbox.publish(OrderEvent.Kind.ADD, order, 0, 0);
+    }
+
+    /**
+     * Asks the owning thread to cancel an order. Safe from any thread.
+     *
+     * @param order The order to cancel
+     */
+    public void submitCancel(Order order) {
+        inbox.publish(OrderEvent.Kind.CANCEL, order, 0, 0);
+    }
+
+    /**
+     * Asks the owning thread to amend an order. Safe from any thread.
+     *
+     * @param order The order to amend
+     * @param newQuantity The new quantity
+     * @param newPriceTicks The new price in ticks
+     */
+    public void submitAmend(Order order, int newQuantity, long newPriceTicks) {
+        inbox.publish(OrderEvent.Kind.AMEND, order, newQuantity, newPriceTicks);
+    }
+
+    /**
+     * Wakes the owning thread if it is parked waiting for orders.
+     */
+    public void wakeUp() {
+        Thread thread = owner;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Hands every command waiting in the inbox to the handler, in submission order.
+     * Owner thread only.
+     *
+     * @param handler The handler to apply each command
+     * @return The number of commands handled, zero if the inbox was empty
+     */
+    int drainInbox(OrderEventHandler handler) {
+        return inbox.drain(handler);
+    }
+
+    public int getInboxCapacity() {
+        return inbox.getCapacity();
+    }
+
+    /**
+     * Checks whether the shard's thread is running. A shard whose thread has ended
+     * stops matching its symbols, and orders handed to it wait in its inbox.
+     *
+     * @return True while an owner thread is draining the inbox
+     */
+    public boolean isAlive() {
+        return owner != null;
+    }
+
+    boolean isOwner(Thread thread) {
+        return owner == thread;
+    }
+
+    void setOwner(Thread thread) {
+        this.owner = thread;
+    }
+
+    // The owner parks itself when the inbox is empty; a publish unparks it
+    private final class OwnerWaitStrategy implements WaitStrategy {
+        @Override
+        public void idle() {
+            LockSupport.park(this);
+        }
+
+        @Override
+        public void signal() {
+            wakeUp();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.stocktrading;
+
+import com.stocktrading.util.LongHashMap;
+
+/**
+ * Thread-safe index from order id to the resting {@link Order}, whose intrusive links
+ * locate it in its price level. The ids are split over striped {@link LongHashMap}s,
+ * each guarded by its own monitor, so threads touching different orders rarely
+ * contend and lookups never box the id.
+ */
+public class OrderIndex {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final LongHashMap<Order>[] stripes;
+    private final int mask;
+
+    /**
+     * Creates an empty index.
+     */
+    public OrderIndex() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param stripes The number of independently locked stripes, a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OrderIndex(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a positive power of two");
+        }
+        this.stripes = (LongHashMap<Order>[]) new LongHashMap[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new LongHashMap<>();
+        }
+        this.mask = stripes - 1;
+    }
+
+    private LongHashMap<Order> stripe(long orderId) {
+        return stripes[(int) orderId & mask];
+    }
+
+    /**
+     * Indexes an order by its id.
+     *
+     * @param order The order to index
+     */
+    public void put(Order order) {
+        LongHashMap<Order> stripe = stripe(order.getId());
+        synchronized (stripe) {
+            stripe.put(order.getId(), order);
+        }
+    }
+
+    /**
+     * Looks up an order by id.
+     *
+     * @param orderId The order id
+     * @return The order, or null if it is not indexed
+     */
+    public Order get(long orderId) {
+        LongHashMap<Order> stripe = stripe(orderId);
+        synchronized (stripe) {
+            return stripe.get(orderId);
+        }
+    }
+
+    /**
+     * Removes an order from the index.
+     *
+     * @param orderId The order id
+     * @return The removed order, or null if it was not indexed
+     */
+    public Order remove(long orderId) {
+        LongHashMap<Order> stripe = stripe(orderId);
+        synchronized (stripe) {
+            return stripe.remove(orderId);
+        }
+    }
+
+    /**
+     * Counts the indexed orders. Not atomic across stripes.
+     *
+     * @return The number of indexed orders
+     */
+    public int size() {
+        int size = 0;
+        for (LongHashMap<Order> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+}
@@ -1,9 +1,63 @@
 package com.stocktrading;
 
-import java.util.Queue;
+import com.stocktrading.metrics.MatcherMetrics;
 
 public interface OrderMatcher extends Runnable {
 	void matchOrders(String symbol);
+
+	/**
+	 * Notifies the matcher that orders were added for a symbol, so that the symbol
+	 * is matched on the next pass instead of waiting for a sweep.
+	 *
+	 * @param symbol The stock symbol
+	 */
+	void signal(String symbol);
+
+	/**
+	 * Executes an order that does not rest, see {@link Order.TimeInForce}, against the
+	 * resting orders it crosses, best price first, without adding it to the book.
+	 * Trades print at the resting order's price. A FOK order only trades if the
+	 * crossing depth covers all of it, which is summed level by level before any fill.
+	 * Whatever is not filled is cancelled: the order is left holding its unfilled
+	 * quantity and never rests.
+	 *
+	 * @param order The incoming order
+	 * @return The quantity filled, or -1 if the order was handed to the thread that owns
+	 *         its book and is executed there
+	 */
+	int matchIncoming(Order order);
+
 	void stop();
-	Queue<Trade> getTrades();
+
+	/**
+	 * Gets the sink the matcher publishes its trades to.
+	 *
+	 * @return The trade sink
+	 */
+	TradeSink getTrades();
+
+	/**
+	 * Gets the listener the matcher reports trades and book changes to.
+	 *
+	 * @return The book listener, {@link BookListener#NONE} if there is none
+	 */
+	default BookListener getBookListener() {
+		return BookListener.NONE;
+	}
+
+	/**
+	 * Gets the clock the matcher stamps trades with.
+	 *
+	 * @return The time source, {@link TimeSource#SYSTEM} unless the matcher was given one
+	 */
+	default TimeSource getTimeSource() {
+		return TimeSource.SYSTEM;
+	}
+
+	/**
+	 * Gets the counters the matcher keeps about its matching passes.
+	 *
+	 * @return The matcher's metrics
+	 */
+	MatcherMetrics getMetrics();
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.stocktrading;
+
+/**
+ * A free list of recyclable orders owned by a single thread.
+ * Free orders are chained through their own intrusive link, so once the pool has
+ * grown to the working set, acquiring and releasing orders allocates nothing.
+ * The first thread to acquire an order becomes the owner; only it may acquire and
+ * release, which suits a single-writer book such as a shard's {@link PriceLadderOrderBook}.
+ */
+public class OrderPool {
+    private final TimeSource timeSource;
+
+    private Order free;
+    private int freeCount;
+    private long createdCount;
+    private Thread owner;
+
+    /**
+     * Creates an empty pool stamping orders with the system clock.
+     */
+    public OrderPool() {
+        this(0, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param preallocate The number of orders to create up front
+     * @param timeSource The source of order timestamps
+     */
+    public OrderPool(int preallocate, TimeSource timeSource) {
+        this.timeSource = timeSource;
+        for (int i = 0; i < preallocate; i++) {
+            push(create());
+        }
+    }
+
+    public int getFreeCount() { return freeCount; }
+    public long getCreatedCount() { return createdCount; }
+
+    /**
+     * Takes an order from the pool, or creates one if the pool is empty.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @return An order with a fresh id
+     */
+    public Order acquire(int symbolId, Order.Type type, long priceTicks, int quantity) {
+        checkOwner();
+        Order order = free;
+        if (order == null) {
+            order = create();
+        } else {
+            free = order.next;
+            order.next = null;
+            order.inPool = false;
+            freeCount--;
+        }
+        order.init(Order.nextId(), symbolId, type, priceTicks, quantity, timeSource.currentTimeMillis());
+        return order;
+    }
+
+    /**
+     * Returns an order to the pool. The order must not be resting in a book and must
+     * not be used again by the caller.
+     *
+     * @param order The order to release
+     */
+    public void release(Order order) {
+        checkOwner();
+        if (order.pool != this) {
+            throw new IllegalArgumentException("Order " + order.getId() + " does not belong to this pool");
+        }
+        if (order.level != null) {
+            throw new IllegalStateException("Order " + order.getId() + " is still resting");
+        }
+        if (order.inPool) {
+            throw new IllegalStateException("Order " + order.getId() + " was already released");
+        }
+        push(order);
+    }
+
+    /**
+     * Returns an order to the pool it came from, if any. Orders created with
+     * {@code new} are left alone.
+     *
+     * @param order The order that has left the book
+     */
+    static void recycle(Order order) {
+        if (order.pool != null) {
+            order.pool.release(order);
+        }
+    }
+
+    private Order create() {
+        Order order = new Order();
+        order.pool = this;
+        createdCount++;
+        return order;
+    }
+
+    private void push(Order order) {
+        order.inPool = true;
+        order.prev = null;
+        order.next = free;
+        free = order;
+        freeCount++;
+    }
+
+    private void checkOwner() {
+        Thread current = Thread.currentThread();
+        if (owner != current) {
+            if (owner != null) {
+                throw new IllegalStateException("Order pool used outside its owner thread");
+            }
+            owner = current;
+        }
+    }
+}
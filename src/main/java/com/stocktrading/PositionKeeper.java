@@ -0,0 +1,209 @@
+package com.stocktrading;
+
+import java.math.BigInteger;
+
+/**
+ * Net position, average cost and realized profit and loss for every account and
+ * symbol, kept up to date from the trade stream.
+ * <p>
+ * State lives in flat primitive arrays indexed by {@code accountId * symbolCount +
+ * symbolId}. Amounts are kept in ticks times units, so every update is exact integer
+ * arithmetic: cost basis is the signed value of the open position at its average
+ * cost, and closing part of a position realizes its price against the matching share
+ * of that basis. Closing all of it realizes exactly the basis, so rounding never
+ * accumulates. Each trade moves two positions, the buyer's and the seller's.
+ * <p>
+ * One thread applies trades, a batch at a time under the keeper's monitor, so a lock
+ * is taken per batch rather than per trade; {@link #snapshot} takes the same monitor
+ * and so always sees whole batches.
+ */
+public class PositionKeeper implements TradeListener {
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final int accountCount;
+    private final int symbolCount;
+
+    // By accountId * symbolCount + symbolId
+    private final long[] netPositions;
+    private final long[] costBasisTicks;
+    private final long[] realizedTicks;
+
+    private long tradeCount;
+    // Trades with an account or symbol id outside the keeper's range
+    private long ignoredCount;
+
+    // Reused by drain
+    private final Trade[] batch;
+
+    /**
+     * Creates a keeper with every position flat.
+     *
+     * @param accountCount The number of accounts; ids run from zero to one less
+     * @param symbolCount The number of symbol ids to keep positions for
+     */
+    public PositionKeeper(int accountCount, int symbolCount) {
+        this(accountCount, symbolCount, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a keeper with every position flat.
+     *
+     * @param accountCount The number of accounts; ids run from zero to one less
+     * @param symbolCount The number of symbol ids to keep positions for
+     * @param batchSize The most trades {@link #drain} takes from a sink at a time
+     */
+    public PositionKeeper(int accountCount, int symbolCount, int batchSize) {
+        this.accountCount = accountCount;
+        this.symbolCount = symbolCount;
+        int size = Math.multiplyExact(accountCount, symbolCount);
+        this.netPositions = new long[size];
+        this.costBasisTicks = new long[size];
+        this.realizedTicks = new long[size];
+        this.batch = new Trade[batchSize];
+    }
+
+    public int getAccountCount() { return accountCount; }
+    public int getSymbolCount() { return symbolCount; }
+
+    /**
+     * Drains a trade sink in batches until it is empty, applying every trade. The
+     * keeper must then be the sink's only consumer.
+     *
+     * @param trades The sink to drain
+     * @return The number of trades applied
+     */
+    public int drain(TradeSink trades) {
+        int total = 0;
+        int count;
+        while ((count = trades.drainTo(batch, batch.length)) > 0) {
+            onTrades(batch, count);
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Applies a batch of trades, for a consumer that drains the trade sink itself.
+     *
+     * @param trades The trades, oldest first
+     * @param count The number of trades to apply from index zero
+     */
+    public synchronized void onTrades(Trade[] trades, int count) {
+        for (int i = 0; i < count; i++) {
+            apply(trades[i]);
+        }
+    }
+
+    /**
+     * Applies one trade. Prefer {@link #onTrades} or {@link #drain}, which lock once
+     * per batch.
+     *
+     * @param trade The trade
+     */
+    @Override
+    public synchronized void onTrade(Trade trade) {
+        apply(trade);
+    }
+
+    private void apply(Trade trade) {
+        int symbolId = trade.getSymbolId();
+        int buyAccountId = trade.getBuyAccountId();
+        int sellAccountId = trade.getSellAccountId();
+        if (symbolId >= symbolCount || buyAccountId >= accountCount || sellAccountId >= accountCount) {
+            ignoredCount++;
+            return;
+        }
+        long quantity = trade.getQuantity();
+        long priceTicks = trade.getPriceTicks();
+        fill(buyAccountId * symbolCount + symbolId, quantity, priceTicks);
+        fill(sellAccountId * symbolCount + symbolId, -quantity, priceTicks);
+        tradeCount++;
+    }
+
+    // Moves one position by a signed quantity at a price
+    private void fill(int index, long quantity, long priceTicks) {
+        long position = netPositions[index];
+        if (position == 0 || (position > 0) == (quantity > 0)) {
+            // Opening or adding to the position
+            netPositions[index] = position + quantity;
+            costBasisTicks[index] += quantity * priceTicks;
+            return;
+        }
+
+        long size = Math.abs(position);
+        long closed = Math.min(Math.abs(quantity), size);
+        long basis = costBasisTicks[index];
+        // The closed share of the basis; all of it once the position is flat, so nothing is left over
+        long closedBasis = closed == size ? basis
+            : basis / size * closed + multiplyDivide(basis % size, closed, size);
+        long sign = position > 0 ? 1 : -1;
+        realizedTicks[index] += sign * closed * priceTicks - closedBasis;
+        basis -= closedBasis;
+        position += closed * -sign;
+
+        long opened = Math.abs(quantity) - closed;
+        if (opened > 0) {
+            // The trade flipped the position; the rest opens the other way at the trade price
+            position = -sign * opened;
+            basis = position * priceTicks;
+        }
+        netPositions[index] = position;
+        costBasisTicks[index] = basis;
+    }
+
+    // a * b / divisor, truncated toward zero as long division is, for a product that may not fit in a long
+    private static long multiplyDivide(long a, long b, long divisor) {
+        long product = a * b;
+        if (Math.multiplyHigh(a, b) == product >> 63) {
+            return product / divisor;
+        }
+        // Only huge positions get here, where a double would round the product
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(divisor)).longValue();
+    }
+
+    /**
+     * Copies every position into a reusable snapshot. Takes time proportional to the
+     * number of accounts times symbols and allocates nothing once the snapshot has
+     * been used with this keeper.
+     *
+     * @param snapshot The snapshot to overwrite, or null for a new one
+     * @return The snapshot, holding whole batches only
+     */
+    public synchronized PositionSnapshot snapshot(PositionSnapshot snapshot) {
+        PositionSnapshot result = snapshot != null && snapshot.fits(accountCount, symbolCount)
+            ? snapshot : new PositionSnapshot(accountCount, symbolCount);
+        result.copy(netPositions, costBasisTicks, realizedTicks, tradeCount, ignoredCount);
+        return result;
+    }
+
+    /**
+     * Gets one account's net position in a symbol.
+     *
+     * @param accountId The account id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return Units held, negative if short
+     */
+    public synchronized long getNetPosition(int accountId, int symbolId) {
+        return netPositions[accountId * symbolCount + symbolId];
+    }
+
+    /**
+     * Gets one account's realized profit and loss in a symbol.
+     *
+     * @param accountId The account id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The realized profit, negative for a loss
+     */
+    public synchronized double getRealizedPnl(int accountId, int symbolId) {
+        return TickSizes.toPrice(symbolId, realizedTicks[accountId * symbolCount + symbolId]);
+    }
+
+    /**
+     * Gets the number of trades applied.
+     *
+     * @return The trades applied, not counting ignored ones
+     */
+    public synchronized long getTradeCount() {
+        return tradeCount;
+    }
+}
@@ -0,0 +1,110 @@
+package com.stocktrading;
+
+/**
+ * A reusable copy of every position a {@link PositionKeeper} holds: net position, cost
+ * basis and realized profit and loss per account and symbol.
+ * Filled by {@link PositionKeeper#snapshot}, which overwrites whatever the snapshot
+ * held, so a caller can keep one snapshot and refresh it repeatedly without
+ * allocating. Not thread-safe: each reading thread needs its own snapshot.
+ */
+public class PositionSnapshot {
+    private final int accountCount;
+    private final int symbolCount;
+
+    // By accountId * symbolCount + symbolId, as in the keeper
+    private final long[] netPositions;
+    private final long[] costBasisTicks;
+    private final long[] realizedTicks;
+
+    private long tradeCount;
+    private long ignoredCount;
+
+    /**
+     * Creates an empty snapshot with every position flat.
+     *
+     * @param accountCount The number of accounts
+     * @param symbolCount The number of symbol ids
+     */
+    public PositionSnapshot(int accountCount, int symbolCount) {
+        this.accountCount = accountCount;
+        this.symbolCount = symbolCount;
+        int size = Math.multiplyExact(accountCount, symbolCount);
+        this.netPositions = new long[size];
+        this.costBasisTicks = new long[size];
+        this.realizedTicks = new long[size];
+    }
+
+    boolean fits(int accountCount, int symbolCount) {
+        return this.accountCount == accountCount && this.symbolCount == symbolCount;
+    }
+
+    void copy(long[] netPositions, long[] costBasisTicks, long[] realizedTicks, long tradeCount, long ignoredCount) {
+        System.arraycopy(netPositions, 0, this.netPositions, 0, netPositions.length);
+        System.arraycopy(costBasisTicks, 0, this.costBasisTicks, 0, costBasisTicks.length);
+        System.arraycopy(realizedTicks, 0, this.realizedTicks, 0, realizedTicks.length);
+        this.tradeCount = tradeCount;
+        this.ignoredCount = ignoredCount;
+    }
+
+    public int getAccountCount() { return accountCount; }
+    public int getSymbolCount() { return symbolCount; }
+    public long getTradeCount() { return tradeCount; }
+    public long getIgnoredCount() { return ignoredCount; }
+
+    public long getNetPosition(int accountId, int symbolId) {
+        return netPositions[accountId * symbolCount + symbolId];
+    }
+
+    /**
+     * Gets the signed value of an open position at its average cost.
+     *
+     * @param accountId The account id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return Ticks times units, negative for a short position and zero when flat
+     */
+    public long getCostBasisTicks(int accountId, int symbolId) {
+        return costBasisTicks[accountId * symbolCount + symbolId];
+    }
+
+    /**
+     * Gets the average price an open position was built at.
+     *
+     * @param accountId The account id
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The average cost per unit, or zero when flat
+     */
+    public double getAverageCost(int accountId, int symbolId) {
+        int index = accountId * symbolCount + symbolId;
+        long position = netPositions[index];
+        if (position == 0) {
+            return 0;
+        }
+        return TickSizes.toPrice(symbolId, costBasisTicks[index]) / position;
+    }
+
+    public long getRealizedTicks(int accountId, int symbolId) {
+        return realizedTicks[accountId * symbolCount + symbolId];
+    }
+
+    public double getRealizedPnl(int accountId, int symbolId) {
+        return TickSizes.toPrice(symbolId, realizedTicks[accountId * symbolCount + symbolId]);
+    }
+
+    /**
+     * Gets an account's realized profit and loss over every symbol.
+     *
+     * @param accountId The account id
+     * @return The realized profit, negative for a loss
+     */
+    public double getTotalRealizedPnl(int accountId) {
+        double total = 0;
+        int base = accountId * symbolCount;
+        for (int symbolId = 0; symbolId < symbolCount; symbolId++) {
+            long ticks = realizedTicks[base + symbolId];
+            if (ticks != 0) {
+                total += TickSizes.toPrice(symbolId, ticks);
+            }
+        }
+        return total;
+    }
+}
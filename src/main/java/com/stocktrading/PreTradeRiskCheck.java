@@ -0,0 +1,279 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-account limits every order must pass before it reaches the book: the largest
+ * order quantity, the largest notional value, the most open orders and how far a
+ * limit price may stray from the symbol's last trade. Orders with a limit or stop price
+ * that is not positive are rejected whatever the account's limits.
+ * <p>
+ * Account state lives in flat primitive arrays indexed by account id, so a check is a
+ * handful of array reads and compares with no allocation. Checks are serialized by the
+ * check's own monitor, which leaves the arrays a single writer at a time; submitting
+ * threads take it once per order, uncontended when one thread feeds the engine.
+ * <p>
+ * Open orders are counted without hearing about fills: each account keeps the ids of
+ * the orders it has open, and only once the count reaches the limit are the ones that
+ * have left the book dropped, so the cost is amortized over the orders that opened
+ * them. An order still on its way to the book through an ingress ring counts as open.
+ * <p>
+ * Last trade prices arrive as a {@link BookListener}: pass the check to the matcher as
+ * its listener, and it forwards every call to the listener it wraps.
+ */
+public class PreTradeRiskCheck implements BookListener {
+    /**
+     * The value of an order quantity, open-order or price band limit that never rejects.
+     */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * The value of a notional limit that never rejects.
+     */
+    public static final double NO_NOTIONAL_LIMIT = Double.POSITIVE_INFINITY;
+
+    /**
+     * The outcome of a check.
+     */
+    public enum Result {
+        ACCEPTED,
+        UNKNOWN_ACCOUNT,
+        INVALID_PRICE,
+        ORDER_SIZE,
+        NOTIONAL,
+        OPEN_ORDERS,
+        PRICE_BAND
+    }
+
+    private static final Result[] RESULTS = Result.values();
+
+    private final OrderBook orderBook;
+    private final BookListener next;
+
+    // Limits by account id
+    private final int[] maxOrderQuantity;
+    private final double[] maxNotional;
+    private final int[] maxOpenOrders;
+    private final int[] priceBandBasisPoints;
+
+    // Open orders by account id: the count, then the ids and orders it covers; the
+    // arrays are only allocated for accounts with an open-order limit
+    private final int[] openOrderCounts;
+    private final long[][] openOrderIds;
+    private final Order[][] openOrders;
+
+    // Last trade price in ticks by symbol id, zero until the symbol trades
+    private final AtomicLongArray lastTradeTicks;
+
+    // Rejected orders by result ordinal
+    private final long[] rejectCounts = new long[RESULTS.length];
+
+    /**
+     * Creates a check with no limits set for any account.
+     *
+     * @param orderBook The book orders go into, asked whether an order is still open
+     * @param accountCount The number of accounts; ids run from zero to one less
+     * @param symbolCount The number of symbol ids to track last trades for; symbols
+     *                    with larger ids are not price banded
+     */
+    public PreTradeRiskCheck(OrderBook orderBook, int accountCount, int symbolCount) {
+        this(orderBook, accountCount, symbolCount, BookListener.NONE);
+    }
+
+    /**
+     * Creates a check with no limits set for any account, which forwards book changes
+     * and trades to another listener, e.g. a market data publisher.
+     *
+     * @param orderBook The book orders go into, asked whether an order is still open
+     * @param accountCount The number of accounts; ids run from zero to one less
+     * @param symbolCount The number of symbol ids to track last trades for; symbols
+     *                    with larger ids are not price banded
+     * @param next The listener to forward to
+     */
+    public PreTradeRiskCheck(OrderBook orderBook, int accountCount, int symbolCount, BookListener next) {
+        this.orderBook = orderBook;
+        this.next = next;
+        this.maxOrderQuantity = new int[accountCount];
+        this.maxNotional = new double[accountCount];
+        this.maxOpenOrders = new int[accountCount];
+        this.priceBandBasisPoints = new int[accountCount];
+        this.openOrderCounts = new int[accountCount];
+        this.openOrderIds = new long[accountCount][];
+        this.openOrders = new Order[accountCount][];
+        this.lastTradeTicks = new AtomicLongArray(symbolCount);
+        Arrays.fill(maxOrderQuantity, NO_LIMIT);
+        Arrays.fill(maxNotional, NO_NOTIONAL_LIMIT);
+        Arrays.fill(maxOpenOrders, NO_LIMIT);
+        Arrays.fill(priceBandBasisPoints, NO_LIMIT);
+    }
+
+    /**
+     * Sets an account's limits; pass {@link #NO_LIMIT} or {@link #NO_NOTIONAL_LIMIT} for
+     * any the account does not have. Open orders are counted from the first time the
+     * account has an open-order limit.
+     *
+     * @param accountId The account id
+     * @param maxOrderQuantity The largest quantity of one order, an iceberg's hidden part included
+     * @param maxNotional The largest value of one order, quantity times limit price, or
+     *                    times the last trade price for a market order; a market order
+     *                    on a symbol that has not traded is rejected
+     * @param maxOpenOrders The most orders resting or waiting as armed stops at once
+     * @param priceBandBasisPoints How far a limit price may be from the last trade, in
+     *                             hundredths of a percent of the last trade price
+     */
+    public synchronized void setLimits(int accountId, int maxOrderQuantity, double maxNotional, int maxOpenOrders,
+                                       int priceBandBasisPoints) {
+        if (maxOrderQuantity <= 0 || maxNotional <= 0 || maxOpenOrders <= 0 || priceBandBasisPoints < 0) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.maxOrderQuantity[accountId] = maxOrderQuantity;
+        this.maxNotional[accountId] = maxNotional;
+        this.maxOpenOrders[accountId] = maxOpenOrders;
+        this.priceBandBasisPoints[accountId] = priceBandBasisPoints;
+        if (maxOpenOrders == NO_LIMIT) {
+            return;
+        }
+        long[] ids = openOrderIds[accountId];
+        if (ids == null) {
+            openOrderIds[accountId] = new long[maxOpenOrders];
+            openOrders[accountId] = new Order[maxOpenOrders];
+        } else if (ids.length < maxOpenOrders) {
+            openOrderIds[accountId] = Arrays.copyOf(ids, maxOpenOrders);
+            openOrders[accountId] = Arrays.copyOf(openOrders[accountId], maxOpenOrders);
+        }
+    }
+
+    /**
+     * Checks an order against its account's limits, counting it as open if it passes
+     * and will rest. Takes no locks besides the check's own and allocates nothing.
+     *
+     * @param order An order about to be submitted
+     * @return {@link Result#ACCEPTED}, or why the order is rejected
+     */
+    public synchronized Result check(Order order) {
+        Result result = evaluate(order);
+        if (result != Result.ACCEPTED) {
+            rejectCounts[result.ordinal()]++;
+        }
+        return result;
+    }
+
+    private Result evaluate(Order order) {
+        int accountId = order.getAccountId();
+        if (accountId >= maxOrderQuantity.length) {
+            return Result.UNKNOWN_ACCOUNT;
+        }
+        int quantity = order.getRemainingQuantity();
+        if (quantity > maxOrderQuantity[accountId]) {
+            return Result.ORDER_SIZE;
+        }
+
+        boolean market = order.getTimeInForce() == Order.TimeInForce.MARKET;
+        if ((!market && order.getPriceTicks() <= 0) || (order.isStop() && order.getStopPriceTicks() <= 0)) {
+            return Result.INVALID_PRICE;
+        }
+
+        int symbolId = order.getSymbolId();
+        long lastTicks = symbolId < lastTradeTicks.length() ? lastTradeTicks.get(symbolId) : 0;
+        // A market order is valued at the price that triggers it, or else at the last trade; one
+        // with neither cannot be shown to be under a notional limit
+        long valueTicks = !market ? order.getPriceTicks() : order.isStop() ? order.getStopPriceTicks() : lastTicks;
+        double limit = maxNotional[accountId];
+        if (limit != NO_NOTIONAL_LIMIT
+                && (valueTicks <= 0 || TickSizes.toPrice(symbolId, valueTicks) * quantity > limit)) {
+            return Result.NOTIONAL;
+        }
+
+        int band = priceBandBasisPoints[accountId];
+        if (!market && lastTicks > 0 && band != NO_LIMIT
+                && productExceeds(Math.abs(order.getPriceTicks() - lastTicks), 10_000, band, lastTicks)) {
+            return Result.PRICE_BAND;
+        }
+
+        int maxOpen = maxOpenOrders[accountId];
+        if (maxOpen != NO_LIMIT && order.rests()) {
+            if (openOrderCounts[accountId] >= maxOpen && prune(accountId) >= maxOpen) {
+                return Result.OPEN_ORDERS;
+            }
+            int index = openOrderCounts[accountId]++;
+            openOrderIds[accountId][index] = order.getId();
+            openOrders[accountId][index] = order;
+        }
+        return Result.ACCEPTED;
+    }
+
+    // Whether a * b > c * d for non-negative operands, compared on full 128-bit products so
+    // a huge limit price cannot wrap around and pass the band
+    private static boolean productExceeds(long a, long b, long c, long d) {
+        long high = Math.multiplyHigh(a, b);
+        long otherHigh = Math.multiplyHigh(c, d);
+        if (high != otherHigh) {
+            return high > otherHigh;
+        }
+        return Long.compareUnsigned(a * b, c * d) > 0;
+    }
+
+    // Drops the account's orders that have left the book, returning how many are left
+    private int prune(int accountId) {
+        long[] ids = openOrderIds[accountId];
+        Order[] orders = openOrders[accountId];
+        int count = openOrderCounts[accountId];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            Order order = orders[i];
+            // A recycled order has a new id, and an order not yet handed to the book is still open
+            if (order.getId() == ids[i] && (!order.booked || orderBook.getOrder(ids[i]) != null)) {
+                ids[kept] = ids[i];
+                orders[kept++] = order;
+            }
+        }
+        Arrays.fill(orders, kept, count, null);
+        openOrderCounts[accountId] = kept;
+        return kept;
+    }
+
+    /**
+     * Gets the number of orders an account has open, counting any that have left the
+     * book since its last check at the limit.
+     *
+     * @param accountId The account id
+     * @return The number of open orders counted, zero if the account has no open-order limit
+     */
+    public synchronized int getOpenOrderCount(int accountId) {
+        return openOrderCounts[accountId];
+    }
+
+    /**
+     * Gets the number of orders rejected for one reason.
+     *
+     * @param result The reason
+     * @return The number of rejected orders
+     */
+    public synchronized long getRejectCount(Result result) {
+        return rejectCounts[result.ordinal()];
+    }
+
+    /**
+     * Gets the last trade price of a symbol as the check sees it.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The price in ticks, or zero if the symbol has not traded or is not tracked
+     */
+    public long getLastTradeTicks(int symbolId) {
+        return symbolId < lastTradeTicks.length() ? lastTradeTicks.get(symbolId) : 0;
+    }
+
+    @Override
+    public void onBookChanged(int symbolId) {
+        next.onBookChanged(symbolId);
+    }
+
+    @Override
+    public void onTrade(int symbolId, long priceTicks, int quantity, long timestamp) {
+        if (symbolId < lastTradeTicks.length()) {
+            lastTradeTicks.lazySet(symbolId, priceTicks);
+        }
+        next.onTrade(symbolId, priceTicks, quantity, timestamp);
+    }
+}
@@ -0,0 +1,418 @@
+package com.stocktrading;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeMap;
+
+/**
+ * One side of a symbol's book stored as an array indexed by price tick.
+ * Slot {@code i} holds the {@link PriceLevel} at tick {@code baseTick + i}, a bitmap marks the
+ * non-empty slots and a cursor tracks the best one. Adding to a level and finding the
+ * best level are O(1); when the best level empties, the next one is found by scanning
+ * the bitmap 64 ticks at a time. A price outside the window recenters the window on
+ * the occupied range, growing the array if the range no longer fits.
+ * The window never grows past a maximum size: a price too far from the occupied range
+ * to fit rests in a sorted overflow map instead, so one outlying limit price cannot
+ * make the ladder allocate an array spanning the whole gap.
+ * Not thread-safe: a ladder must be owned by a single thread.
+ */
+public class PriceLadder {
+    public static final int DEFAULT_SIZE = 4096;
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    // Bids want the highest price first, asks the lowest
+    private final boolean highestFirst;
+
+    private final int maxSize;
+
+    private PriceLevel[] levels;
+    private long[] occupied;
+    private long baseTick;
+
+    // Non-empty levels outside the window by tick; empty unless prices have strayed too far
+    private final TreeMap<Long, PriceLevel> overflow = new TreeMap<>();
+
+    // Index of the best non-empty level in the window, -1 when the window is empty
+    private int bestIndex = -1;
+    // Non-empty levels in the window
+    private int levelCount;
+    private int orderCount;
+
+    /**
+     * Creates an empty ladder whose window can grow to the default maximum size.
+     *
+     * @param highestFirst True for the buy side, false for the sell side
+     * @param size The number of ticks in the initial window, a power of two of at least 64
+     */
+    public PriceLadder(boolean highestFirst, int size) {
+        this(highestFirst, size, Math.max(size, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Creates an empty ladder.
+     *
+     * @param highestFirst True for the buy side, false for the sell side
+     * @param size The number of ticks in the initial window, a power of two of at least 64
+     * @param maxSize The most ticks the window may grow to, a power of two of at least {@code size}
+     */
+    public PriceLadder(boolean highestFirst, int size, int maxSize) {
+        if (size < 64 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ladder size must be a power of two of at least 64");
+        }
+        if (maxSize < size || Integer.bitCount(maxSize) != 1) {
+            throw new IllegalArgumentException("Maximum ladder size must be a power of two of at least the size");
+        }
+        this.highestFirst = highestFirst;
+        this.maxSize = maxSize;
+        this.levels = new PriceLevel[size];
+        this.occupied = new long[size >> 6];
+    }
+
+    public boolean isEmpty() { return bestIndex < 0 && overflow.isEmpty(); }
+    public int getOrderCount() { return orderCount; }
+    public int getLevelCount() { return levelCount + overflow.size(); }
+    public int getSize() { return levels.length; }
+    public int getMaxSize() { return maxSize; }
+    public long getBaseTick() { return baseTick; }
+
+    /**
+     * Gets the number of levels resting outside the window.
+     *
+     * @return The overflow levels, zero while every price fits the window
+     */
+    public int getOverflowLevelCount() { return overflow.size(); }
+
+    /**
+     * Gets the best price on this side.
+     *
+     * @return The best price in ticks
+     * @throws IllegalStateException If the ladder is empty
+     */
+    public long getBestPriceTicks() {
+        PriceLevel best = getBestLevel();
+        if (best == null) {
+            throw new IllegalStateException("Ladder is empty");
+        }
+        return best.getPriceTicks();
+    }
+
+    /**
+     * Adds an order to the tail of its price level.
+     *
+     * @param order The order to add
+     */
+    public void add(Order order) {
+        long tick = order.getPriceTicks();
+        if (tick < baseTick || tick >= baseTick + levels.length) {
+            if (!recenter(tick)) {
+                addToOverflow(order);
+                return;
+            }
+        }
+
+        int index = (int) (tick - baseTick);
+        PriceLevel level = levels[index];
+        if (level == null) {
+            // Levels are kept once created, so a revisited tick allocates nothing
+            level = new PriceLevel(tick);
+            levels[index] = level;
+        }
+        if (level.isEmpty()) {
+            // The slot may have held another tick before the window moved
+            level.setPriceTicks(tick);
+            occupied[index >> 6] |= 1L << index;
+            levelCount++;
+            if (bestIndex < 0 || (highestFirst ? index > bestIndex : index < bestIndex)) {
+                bestIndex = index;
+            }
+        }
+        level.add(order);
+        orderCount++;
+    }
+
+    private void addToOverflow(Order order) {
+        long tick = order.getPriceTicks();
+        PriceLevel level = overflow.get(tick);
+        if (level == null) {
+            level = new PriceLevel(tick);
+            overflow.put(tick, level);
+        }
+        level.add(order);
+        orderCount++;
+    }
+
+    /**
+     * Gets the earliest order at the best price.
+     *
+     * @return The best order, or null if the ladder is empty
+     */
+    public Order peekBest() {
+        PriceLevel best = getBestLevel();
+        return best == null ? null : best.peek();
+    }
+
+    /**
+     * Gets the level at the best price.
+     *
+     * @return The best level, or null if the ladder is empty
+     */
+    public PriceLevel getBestLevel() {
+        PriceLevel best = bestIndex < 0 ? null : levels[bestIndex];
+        if (overflow.isEmpty()) {
+            return best;
+        }
+        PriceLevel outside = highestFirst ? overflow.lastEntry().getValue() : overflow.firstEntry().getValue();
+        if (best == null || isBetter(outside.getPriceTicks(), best.getPriceTicks())) {
+            return outside;
+        }
+        return best;
+    }
+
+    private boolean isBetter(long tick, long than) {
+        return highestFirst ? tick > than : tick < than;
+    }
+
+    // Overflow levels priced better than anything in the window, best first
+    private Collection<PriceLevel> overflowBetter() {
+        if (overflow.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return highestFirst ? overflow.tailMap(baseTick + levels.length, true).descendingMap().values()
+            : overflow.headMap(baseTick, false).values();
+    }
+
+    // Overflow levels priced worse than anything in the window, best first
+    private Collection<PriceLevel> overflowWorse() {
+        if (overflow.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return highestFirst ? overflow.headMap(baseTick, false).descendingMap().values()
+            : overflow.tailMap(baseTick + levels.length, true).values();
+    }
+
+    /**
+     * Copies the best levels into a depth buffer, see {@link OrderBook#depth}.
+     * Walks the bitmap from the cursor, so empty ticks between levels cost a bit each
+     * rather than a level visit.
+     *
+     * @param bid True to fill the buffer's bid side, false for its ask side
+     * @param maxLevels The most levels to copy
+     * @param depth The buffer to append to
+     */
+    public void copyDepth(boolean bid, int maxLevels, MarketDepth depth) {
+        int copied = 0;
+        for (PriceLevel level : overflowBetter()) {
+            if (copied == maxLevels) {
+                return;
+            }
+            depth.addLevel(bid, level);
+            copied++;
+        }
+        int index = bestIndex;
+        for (; index >= 0 && copied < maxLevels; copied++) {
+            depth.addLevel(bid, levels[index]);
+            index = nextBest(index);
+        }
+        for (PriceLevel level : overflowWorse()) {
+            if (copied == maxLevels) {
+                return;
+            }
+            depth.addLevel(bid, level);
+            copied++;
+        }
+    }
+
+    /**
+     * Sums the quantity resting at the prices an incoming order would trade at, see
+     * {@link BookSide#crossingQuantity}. Walks the bitmap like {@link #copyDepth}.
+     *
+     * @param incoming An order for the other side
+     * @param atLeast The amount that is enough
+     * @return The crossing quantity, or a value of at least {@code atLeast}
+     */
+    public long crossingQuantity(Order incoming, long atLeast) {
+        long quantity = 0;
+        for (PriceLevel level : overflowBetter()) {
+            if (quantity >= atLeast || !incoming.crosses(level.getPriceTicks())) {
+                return quantity;
+            }
+            quantity += level.getTotalQuantity();
+        }
+        int index = bestIndex;
+        while (index >= 0 && quantity < atLeast && incoming.crosses(levels[index].getPriceTicks())) {
+            quantity += levels[index].getTotalQuantity();
+            index = nextBest(index);
+        }
+        if (index >= 0) {
+            // Stopped inside the window, so worse levels cannot count
+            return quantity;
+        }
+        for (PriceLevel level : overflowWorse()) {
+            if (quantity >= atLeast || !incoming.crosses(level.getPriceTicks())) {
+                return quantity;
+            }
+            quantity += level.getTotalQuantity();
+        }
+        return quantity;
+    }
+
+    // The next non-empty window slot after one, in priority order, or -1
+    private int nextBest(int index) {
+        if (highestFirst) {
+            return index == 0 ? -1 : previousOccupied(index - 1);
+        }
+        return index == levels.length - 1 ? -1 : nextOccupied(index + 1);
+    }
+
+    /**
+     * Removes the order returned by {@link #peekBest()} and moves the cursor to the
+     * next non-empty level if its level empties.
+     */
+    public void removeBest() {
+        PriceLevel best = getBestLevel();
+        if (best == null) {
+            return;
+        }
+        best.poll();
+        orderCount--;
+        if (bestIndex >= 0 && best == levels[bestIndex]) {
+            levelEmptied(bestIndex);
+        } else if (best.isEmpty()) {
+            overflow.remove(best.getPriceTicks());
+        }
+    }
+
+    /**
+     * Unlinks a resting order from its level in O(1).
+     *
+     * @param order The order to remove
+     * @return True if the order was resting in this ladder
+     */
+    public boolean remove(Order order) {
+        PriceLevel level = order.level;
+        if (level == null) {
+            return false;
+        }
+        long index = level.getPriceTicks() - baseTick;
+        if (index < 0 || index >= levels.length || levels[(int) index] != level) {
+            if (overflow.get(level.getPriceTicks()) != level) {
+                return false;
+            }
+            level.remove(order);
+            orderCount--;
+            if (level.isEmpty()) {
+                overflow.remove(level.getPriceTicks());
+            }
+            return true;
+        }
+        level.remove(order);
+        orderCount--;
+        levelEmptied((int) index);
+        return true;
+    }
+
+    private void levelEmptied(int index) {
+        if (!levels[index].isEmpty()) {
+            return;
+        }
+        occupied[index >> 6] &= ~(1L << index);
+        levelCount--;
+        if (index == bestIndex) {
+            bestIndex = highestFirst ? previousOccupied(bestIndex) : nextOccupied(bestIndex);
+        }
+    }
+
+    private int nextOccupied(int from) {
+        int word = from >> 6;
+        long bits = occupied[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == occupied.length) {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+    }
+
+    private int previousOccupied(int from) {
+        int word = from >> 6;
+        long bits = occupied[word] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+    }
+
+    /**
+     * Moves the window so that it covers both the occupied levels and the new tick,
+     * with the occupied range in the middle. The window doubles until the range fits
+     * with at least as much headroom again, so drifting prices recenter rarely, but
+     * never past the maximum size. Overflow levels the new window covers move into it.
+     *
+     * @return False if the range cannot fit the maximum window, so the tick must overflow
+     */
+    private boolean recenter(long tick) {
+        int size = levels.length;
+        long newBaseTick;
+        if (levelCount == 0) {
+            // Nothing in the window to preserve, so center it on the new price
+            newBaseTick = tick - (size >> 1);
+        } else {
+            long low = Math.min(tick, baseTick + nextOccupied(0));
+            long high = Math.max(tick, baseTick + previousOccupied(levels.length - 1));
+            long span = high - low + 1;
+            if (span > maxSize) {
+                return false;
+            }
+            while (size < span * 2 && size < maxSize) {
+                size <<= 1;
+            }
+            newBaseTick = low + span / 2 - (size >> 1);
+        }
+        moveWindow(newBaseTick, size);
+        return true;
+    }
+
+    private void moveWindow(long newBaseTick, int size) {
+        PriceLevel[] newLevels = new PriceLevel[size];
+        long[] newOccupied = new long[size >> 6];
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] == null) {
+                continue;
+            }
+            long newIndex = baseTick + i - newBaseTick;
+            if (newIndex < 0 || newIndex >= size) {
+                // Only empty levels can fall outside the new window; drop them
+                continue;
+            }
+            int index = (int) newIndex;
+            newLevels[index] = levels[i];
+            if (!levels[i].isEmpty()) {
+                newOccupied[index >> 6] |= 1L << index;
+            }
+        }
+        levels = newLevels;
+        occupied = newOccupied;
+        baseTick = newBaseTick;
+
+        if (!overflow.isEmpty()) {
+            // Levels the window now covers leave the overflow, so each tick lives in one place
+            Collection<PriceLevel> covered = overflow.subMap(newBaseTick, true, newBaseTick + size, false).values();
+            for (PriceLevel level : covered) {
+                int index = (int) (level.getPriceTicks() - newBaseTick);
+                levels[index] = level;
+                occupied[index >> 6] |= 1L << index;
+                levelCount++;
+            }
+            covered.clear();
+        }
+        bestIndex = highestFirst ? previousOccupied(size - 1) : nextOccupied(0);
+    }
+}
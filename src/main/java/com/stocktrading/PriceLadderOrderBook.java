@@ -0,0 +1,154 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.stocktrading.util.IntHashMap;
+
+/**
+ * Order book whose price levels are array slots indexed by tick, see {@link PriceLadder}.
+ * Finding a level is an array index rather than a skip-list or heap search.
+ * The set of symbols is fixed at construction. Adding orders is not thread-safe:
+ * the book is meant to be owned by one thread, as each {@link OrderBookShard} owns its own.
+ * {@link #hasBuyOrders} and {@link #hasSellOrders} may be called from any thread.
+ */
+public class PriceLadderOrderBook implements OrderBook {
+    // Keyed by interned symbol id; never modified after construction
+    private final IntHashMap<SymbolBook> books;
+    private final List<SymbolBook> bookList;
+    private final OrderIndex orderIndex;
+
+    /**
+     * Creates a new price ladder order book.
+     *
+     * @param symbols The symbols that can be traded
+     */
+    public PriceLadderOrderBook(Collection<String> symbols) {
+        this(symbols, PriceLadder.DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a new price ladder order book.
+     *
+     * @param symbols The symbols that can be traded
+     * @param ladderSize The initial number of ticks covered by each side of each symbol
+     */
+    public PriceLadderOrderBook(Collection<String> symbols, int ladderSize) {
+        this(symbols, ladderSize, new OrderIndex());
+    }
+
+    /**
+     * Creates a new price ladder order book.
+     *
+     * @param symbols The symbols that can be traded
+     * @param ladderSize The initial number of ticks covered by each side of each symbol
+     * @param orderIndex The index to register resting orders in, which may be shared
+     */
+    public PriceLadderOrderBook(Collection<String> symbols, int ladderSize, OrderIndex orderIndex) {
+        IntHashMap<SymbolBook> books = new IntHashMap<>(symbols.size());
+        List<SymbolBook> bookList = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            SymbolBook book = new SymbolBook(symbol, ladderSize, orderIndex);
+            books.put(SymbolRegistry.intern(symbol), book);
+            bookList.add(book);
+        }
+        this.books = books;
+        this.bookList = Collections.unmodifiableList(bookList);
+        this.orderIndex = orderIndex;
+    }
+
+    /**
+     * Gets the book for a symbol.
+     *
+     * @param symbol The stock symbol
+     * @return The symbol's book, or null if the symbol is not traded
+     */
+    public SymbolBook getBook(String symbol) {
+        int symbolId = SymbolRegistry.idOf(symbol);
+        return symbolId < 0 ? null : books.get(symbolId);
+    }
+
+    /**
+     * Gets the book for a symbol.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The symbol's book, or null if the symbol is not traded
+     */
+    public SymbolBook getBook(int symbolId) {
+        return books.get(symbolId);
+    }
+
+    public Collection<SymbolBook> getBooks() {
+        return bookList;
+    }
+
+    /**
+     * Adds an order to its symbol's ladder. Owner thread only.
+     *
+     * @param order The order to add
+     * @throws IllegalArgumentException If the symbol is not traded by this book
+     */
+    @Override
+    public void addOrder(Order order) {
+        SymbolBook book = books.get(order.getSymbolId());
+        if (book == null) {
+            throw new IllegalArgumentException("Unknown symbol: " + order.getSymbol());
+        }
+        book.addOrder(order);
+    }
+
+    @Override
+    public boolean hasBuyOrders(String symbol) {
+        SymbolBook book = getBook(symbol);
+        return book != null && book.getBuyOrderCount() > 0;
+    }
+
+    @Override
+    public boolean hasSellOrders(String symbol) {
+        SymbolBook book = getBook(symbol);
+        return book != null && book.getSellOrderCount() > 0;
+    }
+
+    /**
+     * Copies the best levels of a symbol. Owner thread only.
+     */
+    @Override
+    public MarketDepth depth(String symbol, int levels, MarketDepth depth) {
+        SymbolBook book = getBook(symbol);
+        if (book == null) {
+            depth.reset(SymbolRegistry.intern(symbol));
+            return depth;
+        }
+        return book.depth(levels, depth);
+    }
+
+    @Override
+    public Order getOrder(long orderId) {
+        return orderIndex.get(orderId);
+    }
+
+    /**
+     * Cancels a resting order in O(1). Owner thread only.
+     */
+    @Override
+    public boolean cancelOrder(long orderId) {
+        Order order = orderIndex.get(orderId);
+        return order != null && books.get(order.getSymbolId()).removeOrder(order);
+    }
+
+    /**
+     * Amends a resting order. Owner thread only.
+     */
+    @Override
+    public boolean amendOrder(long orderId, int newQuantity, double newPrice) {
+        Order.checkQuantity(newQuantity);
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        return books.get(order.getSymbolId())
+            .amendOrder(order, newQuantity, TickSizes.toTicks(order.getSymbolId(), newPrice));
+    }
+}
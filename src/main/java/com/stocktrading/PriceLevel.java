@@ -0,0 +1,189 @@
+package com.stocktrading;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The orders resting at one price, in time priority.
+ * Orders are linked through their own prev/next fields, so appending, taking the
+ * head and unlinking an arbitrary order are all O(1) with no node allocation.
+ * The level also keeps the aggregate quantity of its orders, so depth can be read
+ * without walking the queue. Only displayed quantities count: an iceberg's hidden
+ * reserve is never part of the level's depth.
+ * Not thread-safe: callers guard the level with the same lock as the rest of the
+ * book, or confine it to a single thread.
+ */
+public class PriceLevel {
+    private long priceTicks;
+    private Order head;
+    private Order tail;
+    private int orderCount;
+    private long totalQuantity;
+
+    // Set once the level has been unlinked from a concurrent book, see LockFreeOrderBook
+    private boolean retired;
+
+    // Guards the level in a concurrent book; null when the level is confined to one thread
+    private final ReentrantLock lock;
+
+    /**
+     * Creates an empty price level.
+     *
+     * @param priceTicks The price of the level in ticks
+     */
+    public PriceLevel(long priceTicks) {
+        this(priceTicks, false);
+    }
+
+    /**
+     * Creates an empty price level.
+     *
+     * @param priceTicks The price of the level in ticks
+     * @param concurrent Whether the level is shared between threads and so needs {@link #lock}
+     */
+    PriceLevel(long priceTicks, boolean concurrent) {
+        this.priceTicks = priceTicks;
+        this.lock = concurrent ? new ReentrantLock() : null;
+    }
+
+    public long getPriceTicks() { return priceTicks; }
+    public int size() { return orderCount; }
+    public boolean isEmpty() { return head == null; }
+    public long getTotalQuantity() { return totalQuantity; }
+
+    /**
+     * Reuses an empty level for another price.
+     */
+    void setPriceTicks(long priceTicks) {
+        this.priceTicks = priceTicks;
+    }
+
+    /**
+     * Gets the earliest order at this price.
+     *
+     * @return The head order, or null if the level is empty
+     */
+    public Order peek() {
+        return head;
+    }
+
+    /**
+     * Appends an order at the back of the queue.
+     *
+     * @param order The order to add, which must not be resting in any level
+     */
+    public void add(Order order) {
+        if (order.level != null) {
+            throw new IllegalStateException("Order " + order.getId() + " is already resting");
+        }
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        orderCount++;
+        totalQuantity += order.getQuantity();
+    }
+
+    /**
+     * Removes and returns the earliest order at this price.
+     *
+     * @return The head order, or null if the level is empty
+     */
+    public Order poll() {
+        Order order = head;
+        if (order != null) {
+            unlink(order);
+        }
+        return order;
+    }
+
+    /**
+     * Unlinks an order from anywhere in the queue.
+     *
+     * @param order The order to remove
+     * @return True if the order was resting in this level
+     */
+    public boolean remove(Order order) {
+        if (order.level != this) {
+            return false;
+        }
+        unlink(order);
+        return true;
+    }
+
+    /**
+     * Visits the resting orders from earliest to latest. The level must not change
+     * during the visit.
+     *
+     * @param action Called for each order
+     */
+    public void forEach(Consumer<? super Order> action) {
+        for (Order order = head; order != null; order = order.next) {
+            action.accept(order);
+        }
+    }
+
+    /**
+     * Reduces a resting order's quantity, keeping the level total in step.
+     * The order keeps its place in the queue, unless it is an iceberg whose displayed
+     * quantity ran out: then its next part is shown and the order is relinked at the
+     * back, losing time priority without leaving the level.
+     *
+     * @param order The order to reduce, which must rest in this level
+     * @param amount The amount to reduce by
+     */
+    public void reduceQuantity(Order order, int amount) {
+        order.reduceQuantity(amount);
+        totalQuantity -= amount;
+        if (order.getQuantity() == 0 && order.getHiddenQuantity() > 0) {
+            unlink(order);
+            order.refreshDisplay();
+            add(order);
+        }
+    }
+
+    private void unlink(Order order) {
+        Order prev = order.prev;
+        Order next = order.next;
+        if (prev == null) {
+            head = next;
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            tail = prev;
+        } else {
+            next.prev = prev;
+        }
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        orderCount--;
+        totalQuantity -= order.getQuantity();
+    }
+
+    /**
+     * Takes the level's lock. Unlike a monitor it can be held across loop iterations,
+     * so a taker can lock any number of levels without recursing.
+     */
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    void retire() {
+        retired = true;
+    }
+}
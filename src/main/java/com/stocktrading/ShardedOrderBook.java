@@ -0,0 +1,193 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Order book that partitions symbols across a fixed number of shards.
+ * Each symbol hashes to one shard, and only that shard's thread ever touches the
+ * symbol's book, so adding an order is a hand-off rather than a shared-structure update
+ * and each shard can keep its symbols in a single-threaded {@link PriceLadderOrderBook}.
+ * Orders are therefore applied asynchronously: they rest once the owning shard has
+ * drained them from its inbox, a preallocated ring that a submitter waits on when full.
+ * Cancels and amends are routed through the same inbox, so they apply after the order's
+ * own add; a shared id index lets any thread find the shard of an order.
+ */
+public class ShardedOrderBook implements OrderBook {
+    private final OrderBookShard[] shards;
+
+    // Orders by id from submission until they leave the book
+    private final OrderIndex orderIndex;
+
+    /**
+     * Creates a new sharded order book.
+     *
+     * @param symbols The symbols that can be traded
+     * @param numShards The number of shards to spread the symbols over
+     */
+    public ShardedOrderBook(List<String> symbols, int numShards) {
+        this(symbols, numShards, OrderBookShard.DEFAULT_INBOX_CAPACITY);
+    }
+
+    /**
+     * Creates a new sharded order book.
+     *
+     * @param symbols The symbols that can be traded
+     * @param numShards The number of shards to spread the symbols over
+     * @param inboxCapacity The number of commands each shard's inbox holds, a power of two
+     */
+    public ShardedOrderBook(List<String> symbols, int numShards, int inboxCapacity) {
+        if (numShards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
+
+        List<List<String>> symbolsByShard = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            symbolsByShard.add(new ArrayList<>());
+        }
+        for (String symbol : symbols) {
+            symbolsByShard.get(shardIndex(SymbolRegistry.intern(symbol), numShards)).add(symbol);
+        }
+
+        this.orderIndex = new OrderIndex();
+        this.shards = new OrderBookShard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new OrderBookShard(i, symbolsByShard.get(i), orderIndex, inboxCapacity);
+        }
+    }
+
+    private static int shardIndex(int symbolId, int numShards) {
+        // Symbol ids are dense, so consecutive symbols land on consecutive shards
+        return symbolId % numShards;
+    }
+
+    /**
+     * Gets the shard that owns a symbol.
+     *
+     * @param symbol The stock symbol
+     * @return The owning shard
+     */
+    public OrderBookShard shardFor(String symbol) {
+        return shardFor(SymbolRegistry.intern(symbol));
+    }
+
+    /**
+     * Gets the shard that owns a symbol.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The owning shard
+     */
+    public OrderBookShard shardFor(int symbolId) {
+        return shards[shardIndex(symbolId, shards.length)];
+    }
+
+    public OrderBookShard[] getShards() {
+        return shards;
+    }
+
+    /**
+     * Gets the book for a symbol.
+     *
+     * @param symbol The stock symbol
+     * @return The symbol's book, or null if the symbol is not traded
+     */
+    public SymbolBook getBook(String symbol) {
+        return shardFor(symbol).getBook(symbol);
+    }
+
+    /**
+     * Hands the order to the shard that owns its symbol.
+     *
+     * @param order The order to add
+     * @throws IllegalArgumentException If the symbol is not traded by this book
+     */
+    @Override
+    public void addOrder(Order order) {
+        OrderBookShard shard = shardFor(order.getSymbolId());
+        if (shard.getBook(order.getSymbolId()) == null) {
+            throw new IllegalArgumentException("Unknown symbol: " + order.getSymbol());
+        }
+        // Index before the hand-off, so the order can be cancelled while still in the inbox
+        orderIndex.put(order);
+        shard.submit(order);
+    }
+
+    /**
+     * Looks up an order by id. The order may still be waiting in its shard's inbox.
+     *
+     * @param orderId The order id
+     * @return The order, or null if it is unknown or has left the book
+     */
+    @Override
+    public Order getOrder(long orderId) {
+        return orderIndex.get(orderId);
+    }
+
+    OrderIndex getOrderIndex() {
+        return orderIndex;
+    }
+
+    /**
+     * Hands a cancel to the shard that owns the order. The cancel applies asynchronously
+     * and is dropped if the order fills first.
+     *
+     * @param orderId The order id
+     * @return True if the order was known and the cancel has been handed over
+     */
+    @Override
+    public boolean cancelOrder(long orderId) {
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        shardFor(order.getSymbolId()).submitCancel(order);
+        return true;
+    }
+
+    /**
+     * Hands an amend to the shard that owns the order. The amend applies asynchronously
+     * and is dropped if the order fills first.
+     *
+     * @param orderId The order id
+     * @param newQuantity The new quantity, which must be positive
+     * @param newPrice The new price per unit, rounded to the symbol's tick size
+     * @return True if the order was known and the amend has been handed over
+     */
+    @Override
+    public boolean amendOrder(long orderId, int newQuantity, double newPrice) {
+        Order.checkQuantity(newQuantity);
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        shardFor(order.getSymbolId())
+            .submitAmend(order, newQuantity, TickSizes.toTicks(order.getSymbolId(), newPrice));
+        return true;
+    }
+
+    /**
+     * Copies the best levels of a symbol. The ladders belong to the shard threads, so this
+     * must run on the thread of the symbol's shard, e.g. from a trade listener.
+     *
+     * @param symbol The stock symbol
+     * @param levels The most levels to copy per side
+     * @param depth The buffer to overwrite
+     * @return The buffer
+     */
+    @Override
+    public MarketDepth depth(String symbol, int levels, MarketDepth depth) {
+        return shardFor(symbol).getOrderBook().depth(symbol, levels, depth);
+    }
+
+    @Override
+    public boolean hasBuyOrders(String symbol) {
+        SymbolBook book = getBook(symbol);
+        return book != null && book.getBuyOrderCount() > 0;
+    }
+
+    @Override
+    public boolean hasSellOrders(String symbol) {
+        SymbolBook book = getBook(symbol);
+        return book != null && book.getSellOrderCount() > 0;
+    }
+}
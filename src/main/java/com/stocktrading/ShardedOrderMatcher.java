@@ -0,0 +1,298 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stocktrading.log.EventLogger;
+import com.stocktrading.log.EventType;
+import com.stocktrading.metrics.Counter;
+import com.stocktrading.metrics.MatcherMetrics;
+import com.stocktrading.ring.OrderEvent;
+import com.stocktrading.ring.OrderEventHandler;
+
+/**
+ * Matches orders with one thread per shard of a {@link ShardedOrderBook}.
+ * Each shard thread drains its inbox, applies each add, cancel or amend and immediately
+ * matches the order's symbol, so a shard's books are only ever touched by its own thread.
+ * Symbols on different shards match in parallel without contending with each other.
+ * Each shard matches through its own {@link SymbolBookMatcher} and stamps trades from
+ * a clock it refreshes once per batch of commands rather than once per trade.
+ * Orders that do not rest travel through the same inbox and execute on arrival.
+ * A command that throws is logged as COMMAND_FAILED and dropped, and the shard goes on
+ * with the next one: an add that fails never rests, and a failed cancel or amend leaves
+ * the order as it was.
+ */
+public class ShardedOrderMatcher implements OrderMatcher, Runnable {
+    private final ShardedOrderBook orderBook;
+    private final TradeSink trades;
+
+    // Indexed by shard; each is only used by its shard's thread
+    private final SymbolBookMatcher[] shardMatchers;
+    private final CachedTimeSource[] shardClocks;
+    // Shared by the shard threads; its counters are striped, so they do not contend
+    private final MatcherMetrics metrics = new MatcherMetrics();
+    private final EventLogger eventLogger;
+    private final Counter failedCommands = new Counter();
+    private volatile boolean running = true;
+
+    // Commands a shard applies between clock refreshes while its inbox stays busy
+    private static final int CLOCK_REFRESH_INTERVAL = 64;
+
+    /**
+     * Creates a new sharded order matcher publishing to a trade ring of the default
+     * capacity, which drops and counts trades once it is full rather than stall the shards
+     * while nothing drains it.
+     *
+     * @param orderBook The sharded order book to match orders from
+     */
+    public ShardedOrderMatcher(ShardedOrderBook orderBook) {
+        this(orderBook, new TradeRingBuffer(TradeRingBuffer.DEFAULT_CAPACITY, BackpressurePolicy.DROP));
+    }
+
+    /**
+     * Creates a new sharded order matcher. Every shard thread publishes to the same sink.
+     *
+     * @param orderBook The sharded order book to match orders from
+     * @param trades The sink to publish trades to
+     */
+    public ShardedOrderMatcher(ShardedOrderBook orderBook, TradeSink trades) {
+        this(orderBook, trades, EventLogger.console());
+    }
+
+    /**
+     * Creates a new sharded order matcher that logs failed commands to its own logger.
+     *
+     * @param orderBook The sharded order book to match orders from
+     * @param trades The sink to publish trades to
+     * @param eventLogger The logger for commands a shard failed to apply
+     */
+    public ShardedOrderMatcher(ShardedOrderBook orderBook, TradeSink trades, EventLogger eventLogger) {
+        this.orderBook = orderBook;
+        this.trades = trades;
+        this.eventLogger = eventLogger;
+
+        int numShards = orderBook.getShards().length;
+        this.shardMatchers = new SymbolBookMatcher[numShards];
+        this.shardClocks = new CachedTimeSource[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shardClocks[i] = new CachedTimeSource();
+            // The sink copies each trade, so it goes straight back to the shard's pool
+            shardMatchers[i] = new SymbolBookMatcher(new TradePool(1, shardClocks[i]), trade -> {
+                trades.onTrade(trade);
+                trade.release();
+            });
+        }
+    }
+
+    @Override
+    public MatcherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of commands the shards failed to apply and dropped.
+     *
+     * @return The failed commands over all shards
+     */
+    public long getFailedCommandCount() {
+        return failedCommands.get();
+    }
+
+    /**
+     * Gets the number of shards whose thread is running.
+     *
+     * @return The live shards, equal to the shard count while the matcher is healthy
+     */
+    public int getLiveShardCount() {
+        int live = 0;
+        for (OrderBookShard shard : orderBook.getShards()) {
+            if (shard.isAlive()) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Stops the order matcher and all shard threads.
+     */
+    public void stop() {
+        running = false;
+        for (OrderBookShard shard : orderBook.getShards()) {
+            shard.wakeUp();
+        }
+    }
+
+    /**
+     * Gets the trades that have been executed.
+     *
+     * @return The trade sink
+     */
+    public TradeSink getTrades() {
+        return trades;
+    }
+
+    /**
+     * Starts one thread per shard and waits for them to finish.
+     */
+    @Override
+    public void run() {
+        List<Thread> shardThreads = new ArrayList<>();
+        for (OrderBookShard shard : orderBook.getShards()) {
+            Thread thread = new Thread(() -> runShard(shard), "order-shard-" + shard.getIndex());
+            thread.setDaemon(true);
+            shardThreads.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : shardThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            stop();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runShard(OrderBookShard shard) {
+        shard.setOwner(Thread.currentThread());
+        ShardHandler handler = new ShardHandler(shard);
+        try {
+            while (running) {
+                if (shard.drainInbox(handler) == 0) {
+                    // Submitters unpark us after handing over a command
+                    LockSupport.park(this);
+                    handler.clock.refresh();
+                    handler.sinceRefresh = 0;
+                }
+            }
+        } finally {
+            shard.setOwner(null);
+        }
+    }
+
+    // Applies the commands a shard drains from its inbox; one per shard, used only by its thread
+    private final class ShardHandler implements OrderEventHandler {
+        private final OrderBookShard shard;
+        private final SymbolBookMatcher matcher;
+        private final CachedTimeSource clock;
+        private int sinceRefresh;
+
+        ShardHandler(OrderBookShard shard) {
+            this.shard = shard;
+            this.matcher = shardMatchers[shard.getIndex()];
+            this.clock = shardClocks[shard.getIndex()];
+        }
+
+        @Override
+        public void onEvent(OrderEvent event, long sequence, boolean endOfBatch) {
+            if (++sinceRefresh == CLOCK_REFRESH_INTERVAL) {
+                clock.refresh();
+                sinceRefresh = 0;
+            }
+            try {
+                apply(event, shard.getBook(event.getOrder().getSymbolId()), matcher);
+            } catch (RuntimeException e) {
+                // One bad command must not take the shard's other symbols down with it
+                failed(event);
+            }
+        }
+    }
+
+    private void apply(OrderEvent command, SymbolBook book, SymbolBookMatcher matcher) {
+        int tradeCount = 0;
+        Order order = command.getOrder();
+        switch (command.getKind()) {
+            case ADD:
+                if (order.rests()) {
+                    book.addOrder(order);
+                    // Timed here rather than by the engine, whose addOrder only reaches the inbox
+                    order.recordRest();
+                } else {
+                    tradeCount = executeIncoming(matcher, book, order);
+                }
+                break;
+            case CANCEL:
+                book.removeOrder(order);
+                break;
+            case AMEND:
+                book.amendOrder(order, command.getQuantity(), command.getPriceTicks());
+                break;
+        }
+        // Also brings in any stops the command's trades triggered
+        metrics.recordPass(tradeCount + matcher.match(book));
+    }
+
+    private void failed(OrderEvent command) {
+        failedCommands.increment();
+        Order order = command.getOrder();
+        eventLogger.logOrder(EventType.COMMAND_FAILED, order);
+        if (command.getKind() == OrderEvent.Kind.ADD && !order.isResting() && !order.isStopArmed()) {
+            // Indexed on submission; an add that never rested must not stay cancellable
+            orderBook.getOrderIndex().remove(order.getId());
+        }
+    }
+
+    /**
+     * Matches orders for a specific symbol. Matching only happens on the shard
+     * thread that owns the symbol; called from any other thread this just wakes
+     * that shard, which matches every order as it rests.
+     *
+     * @param symbol The stock symbol
+     */
+    @Override
+    public void matchOrders(String symbol) {
+        OrderBookShard shard = orderBook.shardFor(symbol);
+        SymbolBook book = shard.getBook(symbol);
+        if (book == null) {
+            return;
+        }
+        if (shard.isOwner(Thread.currentThread())) {
+            metrics.recordPass(shardMatchers[shard.getIndex()].match(book));
+        } else {
+            shard.wakeUp();
+        }
+    }
+
+    /**
+     * Executes an order that does not rest. On the shard thread that owns its symbol
+     * the order executes at once and stays with the caller; from any other thread it is
+     * handed to that shard's inbox and executes there, in sequence with the adds before it.
+     *
+     * @param order The incoming order
+     * @return The quantity filled, or -1 if the order was handed to its shard
+     */
+    @Override
+    public int matchIncoming(Order order) {
+        OrderBookShard shard = orderBook.shardFor(order.getSymbolId());
+        SymbolBook book = shard.getBook(order.getSymbolId());
+        if (book == null) {
+            throw new IllegalArgumentException("Unknown symbol: " + order.getSymbol());
+        }
+        if (!shard.isOwner(Thread.currentThread())) {
+            // Not indexed: the order never rests, so there is nothing to cancel
+            shard.submit(order);
+            return -1;
+        }
+        int quantity = order.getQuantity();
+        SymbolBookMatcher matcher = shardMatchers[shard.getIndex()];
+        int tradeCount = matcher.matchIncoming(book, order);
+        int filled = quantity - order.getQuantity();
+        metrics.recordPass(tradeCount + matcher.match(book));
+        return filled;
+    }
+
+    // Executes an order that arrived through the inbox; the submitter has let go of it, so a pooled order goes back
+    private static int executeIncoming(SymbolBookMatcher matcher, SymbolBook book, Order order) {
+        int tradeCount = matcher.matchIncoming(book, order);
+        OrderPool.recycle(order);
+        return tradeCount;
+    }
+
+    @Override
+    public void signal(String symbol) {
+        orderBook.shardFor(symbol).wakeUp();
+    }
+}
@@ -0,0 +1,20 @@
+package com.stocktrading;
+
+import java.util.function.Consumer;
+
+/**
+ * An order book whose resting orders can be copied out one symbol at a time,
+ * e.g. to write a snapshot.
+ */
+public interface SnapshottableOrderBook extends OrderBook {
+	/**
+	 * Visits a symbol's resting orders, buys then sells, each side best price first and
+	 * in arrival order within a price. Each order is visited under whatever guards its
+	 * level, so its fields can be copied safely. The visit is a consistent picture of the
+	 * symbol as long as no order for it is added, cancelled, amended or matched meanwhile.
+	 *
+	 * @param symbol The stock symbol
+	 * @param action Called for each resting order
+	 */
+	void forEachOrder(String symbol, Consumer<? super Order> action);
+}
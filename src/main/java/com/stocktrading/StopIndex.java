@@ -0,0 +1,185 @@
+package com.stocktrading;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The armed stop orders of one symbol, sorted by stop price so that a trade finds the
+ * stops it reaches without looking at any other.
+ * Each side is a pair of parallel arrays, stop keys and orders, sorted with the next
+ * stop to trigger at the tail: a buy stop triggers once a trade prints at or above its
+ * stop price and is keyed by that price, a sell stop at or below and is keyed by its
+ * negation, so on both sides a trade triggers exactly the tail entries whose key is
+ * at most its own. Stops with the same price trigger in arrival order.
+ * <p>
+ * Adding or cancelling a stop is a binary search plus an array shift. A trade costs
+ * two volatile reads while it reaches no stop, and O(1) per stop it triggers
+ * otherwise; triggered stops are disarmed and queued for the matcher, which brings
+ * them into play once it no longer holds any level of the book.
+ * Thread-safe: changes are made under the index's own monitor, which is never held
+ * while taking another lock.
+ */
+public class StopIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Side buys = new Side();
+    private final Side sells = new Side();
+
+    // Triggered stops, in trigger order, waiting to be brought into play
+    private final ArrayDeque<Order> triggered = new ArrayDeque<>();
+
+    // The stop prices a trade has to reach to trigger anything, so a trade that reaches none takes no lock
+    private volatile long lowestBuyStop = Long.MAX_VALUE;
+    private volatile long highestSellStop = Long.MIN_VALUE;
+    private volatile boolean hasTriggered;
+
+    // One side's stops, keys descending so the next to trigger is at the tail
+    private static final class Side {
+        long[] keys = new long[INITIAL_CAPACITY];
+        Order[] orders = new Order[INITIAL_CAPACITY];
+        int size;
+
+        // The first index whose key is at most the given one, which is where a newer stop with that key goes
+        int search(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] > key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void insert(long key, Order order) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                orders = Arrays.copyOf(orders, size * 2);
+            }
+            int index = search(key);
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(orders, index, orders, index + 1, size - index);
+            keys[index] = key;
+            orders[index] = order;
+            size++;
+        }
+
+        boolean remove(long key, Order order) {
+            for (int index = search(key); index < size && keys[index] == key; index++) {
+                if (orders[index] == order) {
+                    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+                    System.arraycopy(orders, index + 1, orders, index, size - index - 1);
+                    orders[--size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Moves every stop whose key is at most the threshold to the triggered queue, tail first
+        void trigger(long threshold, ArrayDeque<Order> triggered) {
+            while (size > 0 && keys[size - 1] <= threshold) {
+                Order order = orders[--size];
+                orders[size] = null;
+                order.disarmStop();
+                triggered.add(order);
+            }
+        }
+    }
+
+    /**
+     * Arms a stop order.
+     *
+     * @param order A stop order that is not yet armed anywhere
+     */
+    public synchronized void add(Order order) {
+        if (order.getType() == Order.Type.BUY) {
+            buys.insert(order.getStopPriceTicks(), order);
+        } else {
+            sells.insert(-order.getStopPriceTicks(), order);
+        }
+        updateThresholds();
+    }
+
+    /**
+     * Cancels an armed stop order.
+     *
+     * @param order The order
+     * @return True if the order was armed here, false if it is unknown or has triggered
+     */
+    public synchronized boolean remove(Order order) {
+        boolean removed = order.getType() == Order.Type.BUY
+            ? buys.remove(order.getStopPriceTicks(), order)
+            : sells.remove(-order.getStopPriceTicks(), order);
+        if (removed) {
+            updateThresholds();
+        }
+        return removed;
+    }
+
+    /**
+     * Triggers the stops a trade price reaches: buy stops at or below it, then sell
+     * stops at or above it. Cheap enough to call for every trade, under any lock.
+     *
+     * @param priceTicks The trade price in ticks
+     */
+    public void onTrade(long priceTicks) {
+        if (priceTicks < lowestBuyStop && priceTicks > highestSellStop) {
+            return;
+        }
+        synchronized (this) {
+            buys.trigger(priceTicks, triggered);
+            sells.trigger(-priceTicks, triggered);
+            updateThresholds();
+            hasTriggered = !triggered.isEmpty();
+        }
+    }
+
+    /**
+     * Takes the next triggered stop, already disarmed, in trigger order.
+     *
+     * @return The order, or null if none is waiting
+     */
+    public Order pollTriggered() {
+        if (!hasTriggered) {
+            return null;
+        }
+        synchronized (this) {
+            Order order = triggered.poll();
+            hasTriggered = !triggered.isEmpty();
+            return order;
+        }
+    }
+
+    /**
+     * Gets the number of armed stops.
+     *
+     * @return The number of stops waiting for their price
+     */
+    public synchronized int size() {
+        return buys.size + sells.size;
+    }
+
+    /**
+     * Visits the armed stops, buys then sells, each in trigger order.
+     *
+     * @param action Called for each armed stop, under the index's monitor
+     */
+    public synchronized void forEach(Consumer<? super Order> action) {
+        for (int i = buys.size - 1; i >= 0; i--) {
+            action.accept(buys.orders[i]);
+        }
+        for (int i = sells.size - 1; i >= 0; i--) {
+            action.accept(sells.orders[i]);
+        }
+    }
+
+    private void updateThresholds() {
+        lowestBuyStop = buys.size == 0 ? Long.MAX_VALUE : buys.keys[buys.size - 1];
+        highestSellStop = sells.size == 0 ? Long.MIN_VALUE : -sells.keys[sells.size - 1];
+    }
+}
@@ -0,0 +1,239 @@
+package com.stocktrading;
+
+/**
+ * The buy and sell price levels of a single symbol, owned by exactly one thread.
+ * Only the owning shard thread may modify the book, so each side is a plain
+ * {@link PriceLadder} with no locks or CAS. The order counts are volatile so that
+ * other threads can observe whether the book has resting orders.
+ * An order drawn from an {@link OrderPool} goes back to it as soon as it leaves the book,
+ * so the pool must be owned by the same thread as the book.
+ * Armed stop orders wait in the book's {@link StopIndex} until a trade triggers them.
+ */
+public class SymbolBook {
+    private final String symbol;
+    private final int symbolId;
+
+    // Highest bid first
+    private final PriceLadder buyLevels;
+
+    // Lowest ask first
+    private final PriceLadder sellLevels;
+
+    // Written only by the owning thread, read by anyone
+    private volatile int buyOrderCount;
+    private volatile int sellOrderCount;
+
+    // Id index of resting orders, possibly shared with other books; null if not indexed
+    private final OrderIndex index;
+
+    private final StopIndex stops = new StopIndex();
+
+    /**
+     * Creates an empty book for a symbol.
+     *
+     * @param symbol The stock symbol
+     */
+    public SymbolBook(String symbol) {
+        this(symbol, PriceLadder.DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates an empty book for a symbol.
+     *
+     * @param symbol The stock symbol
+     * @param ladderSize The initial number of ticks covered by each side
+     */
+    public SymbolBook(String symbol, int ladderSize) {
+        this(symbol, ladderSize, null);
+    }
+
+    /**
+     * Creates an empty book for a symbol that registers its resting orders in an index.
+     *
+     * @param symbol The stock symbol
+     * @param ladderSize The initial number of ticks covered by each side
+     * @param index The order index, or null
+     */
+    public SymbolBook(String symbol, int ladderSize, OrderIndex index) {
+        this.symbol = symbol;
+        this.symbolId = SymbolRegistry.intern(symbol);
+        this.buyLevels = new PriceLadder(true, ladderSize);
+        this.sellLevels = new PriceLadder(false, ladderSize);
+        this.index = index;
+    }
+
+    public String getSymbol() { return symbol; }
+    public int getSymbolId() { return symbolId; }
+    public int getBuyOrderCount() { return buyOrderCount; }
+    public int getSellOrderCount() { return sellOrderCount; }
+    public PriceLadder getBuyLevels() { return buyLevels; }
+    public PriceLadder getSellLevels() { return sellLevels; }
+    public StopIndex getStops() { return stops; }
+
+    /**
+     * Adds an order to the tail of its price level, or an armed stop order to the stop
+     * index. Owner thread only.
+     *
+     * @param order The order to add
+     */
+    public void addOrder(Order order) {
+        if (order.isStopArmed()) {
+            stops.add(order);
+        } else if (order.getType() == Order.Type.BUY) {
+            buyLevels.add(order);
+            buyOrderCount = buyLevels.getOrderCount();
+        } else {
+            sellLevels.add(order);
+            sellOrderCount = sellLevels.getOrderCount();
+        }
+        if (index != null) {
+            index.put(order);
+        }
+    }
+
+    /**
+     * Unlinks a resting order in O(1), or disarms a stop. Owner thread only.
+     *
+     * @param order The order to remove
+     * @return True if the order was resting or armed in this book
+     */
+    public boolean removeOrder(Order order) {
+        if (order.isStopArmed()) {
+            if (!stops.remove(order)) {
+                return false;
+            }
+            releaseStop(order);
+            return true;
+        }
+        PriceLadder levels = order.getType() == Order.Type.BUY ? buyLevels : sellLevels;
+        if (!levels.remove(order)) {
+            return false;
+        }
+        // Unindex before publishing the counts, so a reader that sees the order gone cannot find it
+        unindex(order);
+        updateCounts();
+        OrderPool.recycle(order);
+        return true;
+    }
+
+    /**
+     * Changes a resting order's quantity and price, see {@link OrderBook#amendOrder}.
+     * Owner thread only.
+     *
+     * @param order The order to amend
+     * @param newQuantity The new quantity
+     * @param newPriceTicks The new price in ticks
+     * @return True if the order was resting in this book
+     */
+    public boolean amendOrder(Order order, int newQuantity, long newPriceTicks) {
+        if (order.level == null) {
+            return false;
+        }
+        if (order.keepsPriority(newQuantity, newPriceTicks)) {
+            reduceQuantity(order, order.reduceRemainingTo(newQuantity));
+            return true;
+        }
+        // Move the order within its side; it stays indexed throughout
+        PriceLadder levels = order.getType() == Order.Type.BUY ? buyLevels : sellLevels;
+        if (!levels.remove(order)) {
+            return false;
+        }
+        order.replace(newQuantity, newPriceTicks);
+        levels.add(order);
+        return true;
+    }
+
+    /**
+     * Gets the earliest order at the best bid. Owner thread only.
+     *
+     * @return The best buy order, or null if there are no buy orders
+     */
+    public Order peekBestBuy() {
+        return buyLevels.peekBest();
+    }
+
+    /**
+     * Gets the earliest order at the best ask. Owner thread only.
+     *
+     * @return The best sell order, or null if there are no sell orders
+     */
+    public Order peekBestSell() {
+        return sellLevels.peekBest();
+    }
+
+    /**
+     * Copies the best levels of both sides into a depth buffer, see {@link OrderBook#depth}.
+     * Owner thread only.
+     *
+     * @param levels The most levels to copy per side
+     * @param depth The buffer to overwrite
+     * @return The buffer
+     */
+    public MarketDepth depth(int levels, MarketDepth depth) {
+        int maxLevels = Math.min(levels, depth.getMaxLevels());
+        depth.reset(symbolId);
+        buyLevels.copyDepth(true, maxLevels, depth);
+        sellLevels.copyDepth(false, maxLevels, depth);
+        return depth;
+    }
+
+    /**
+     * Reduces a resting order's quantity without changing its priority. Owner thread only.
+     *
+     * @param order The order to reduce
+     * @param amount The amount to reduce by
+     */
+    public void reduceQuantity(Order order, int amount) {
+        order.level.reduceQuantity(order, amount);
+    }
+
+    /**
+     * Removes the order returned by {@link #peekBestBuy()}. Owner thread only.
+     */
+    public void removeBestBuy() {
+        Order order = buyLevels.peekBest();
+        unindex(order);
+        buyLevels.removeBest();
+        buyOrderCount = buyLevels.getOrderCount();
+        recycle(order);
+    }
+
+    /**
+     * Removes the order returned by {@link #peekBestSell()}. Owner thread only.
+     */
+    public void removeBestSell() {
+        Order order = sellLevels.peekBest();
+        unindex(order);
+        sellLevels.removeBest();
+        sellOrderCount = sellLevels.getOrderCount();
+        recycle(order);
+    }
+
+    /**
+     * Forgets a stop order that has left the stop index without resting, e.g. a stop
+     * that triggered and executed as a market order. Owner thread only.
+     *
+     * @param order The order
+     */
+    void releaseStop(Order order) {
+        unindex(order);
+        OrderPool.recycle(order);
+    }
+
+    private void updateCounts() {
+        buyOrderCount = buyLevels.getOrderCount();
+        sellOrderCount = sellLevels.getOrderCount();
+    }
+
+    private static void recycle(Order order) {
+        if (order != null) {
+            OrderPool.recycle(order);
+        }
+    }
+
+    private void unindex(Order order) {
+        if (order != null && index != null) {
+            index.remove(order.getId());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.stocktrading;
+
+/**
+ * Matches the orders of a {@link SymbolBook} on the thread that owns it.
+ * Trades come from a {@link TradePool} owned by the same thread and filled orders
+ * go back to their {@link OrderPool}, so with pooled orders a matching pass
+ * allocates nothing.
+ */
+public class SymbolBookMatcher {
+    private final TradePool tradePool;
+    private final TradeListener listener;
+
+    /**
+     * Creates a new symbol book matcher.
+     *
+     * @param tradePool The pool to draw trades from
+     * @param listener Receives every trade
+     */
+    public SymbolBookMatcher(TradePool tradePool, TradeListener listener) {
+        this.tradePool = tradePool;
+        this.listener = listener;
+    }
+
+    /**
+     * Matches a book until its best prices no longer cross. Each stop order the trades
+     * trigger then comes into play in turn, a stop-limit order joining the book and a
+     * stop order executing at once, and matching resumes until nothing crosses and
+     * no triggered stop is left.
+     *
+     * @param book The book to match
+     * @return The number of trades executed
+     */
+    public int match(SymbolBook book) {
+        int tradeCount = 0;
+        while (true) {
+            Order buyOrder = book.peekBestBuy();
+            Order sellOrder = book.peekBestSell();
+
+            // Once either side is empty or the best prices no longer cross, take the next triggered stop
+            if (buyOrder == null || sellOrder == null || buyOrder.getPriceTicks() < sellOrder.getPriceTicks()) {
+                Order triggered = book.getStops().pollTriggered();
+                if (triggered == null) {
+                    return tradeCount;
+                }
+                if (triggered.rests()) {
+                    book.addOrder(triggered);
+                } else {
+                    tradeCount += matchIncoming(book, triggered);
+                    book.releaseStop(triggered);
+                }
+                continue;
+            }
+
+            int matchedQuantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
+            Order.recordFirstTrade(buyOrder, sellOrder);
+            book.reduceQuantity(buyOrder, matchedQuantity);
+            book.reduceQuantity(sellOrder, matchedQuantity);
+            listener.onTrade(tradePool.acquire(book.getSymbolId(), sellOrder.getPriceTicks(), matchedQuantity,
+                buyOrder.getId(), sellOrder.getId(), buyOrder.getAccountId(), sellOrder.getAccountId()));
+            book.getStops().onTrade(sellOrder.getPriceTicks());
+            tradeCount++;
+
+            // Partially filled orders stay at the head of their level and keep their priority
+            if (buyOrder.getQuantity() == 0) {
+                book.removeBestBuy();
+            }
+            if (sellOrder.getQuantity() == 0) {
+                book.removeBestSell();
+            }
+        }
+    }
+
+    /**
+     * Executes an order that does not rest against the book, best price first, at the
+     * resting orders' prices. A fill-or-kill order trades only if the ladder's crossing
+     * depth covers it. The order itself is never added to the book. Stops its trades
+     * trigger are left for the next {@link #match} of the book.
+     *
+     * @param book The book to execute against
+     * @param order The incoming order
+     * @return The number of trades executed
+     */
+    public int matchIncoming(SymbolBook book, Order order) {
+        boolean buy = order.getType() == Order.Type.BUY;
+        PriceLadder opposite = buy ? book.getSellLevels() : book.getBuyLevels();
+        if (order.getTimeInForce() == Order.TimeInForce.FOK
+                && opposite.crossingQuantity(order, order.getQuantity()) < order.getQuantity()) {
+            return 0;
+        }
+        int tradeCount = 0;
+        while (order.getQuantity() > 0) {
+            Order resting = opposite.peekBest();
+            if (resting == null || !order.crosses(resting.getPriceTicks())) {
+                break;
+            }
+            Order buyOrder = buy ? order : resting;
+            Order sellOrder = buy ? resting : order;
+
+            int matchedQuantity = Math.min(order.getQuantity(), resting.getQuantity());
+            Order.recordFirstTrade(buyOrder, sellOrder);
+            book.reduceQuantity(resting, matchedQuantity);
+            order.reduceQuantity(matchedQuantity);
+            listener.onTrade(tradePool.acquire(book.getSymbolId(), resting.getPriceTicks(), matchedQuantity,
+                buyOrder.getId(), sellOrder.getId(), buyOrder.getAccountId(), sellOrder.getAccountId()));
+            book.getStops().onTrade(resting.getPriceTicks());
+            tradeCount++;
+
+            if (resting.getQuantity() == 0) {
+                if (buy) {
+                    book.removeBestSell();
+                } else {
+                    book.removeBestBuy();
+                }
+            }
+        }
+        return tradeCount;
+    }
+}
@@ -0,0 +1,84 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns ticker symbols as dense int ids, starting at 0.
+ * A symbol is hashed once when an order enters the system; from then on books,
+ * tick sizes and matchers key everything by the id, which indexes arrays and
+ * primitive maps directly. Ids are never reused or removed.
+ */
+public final class SymbolRegistry {
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    // Id to symbol; replaced when it grows, always written before the id is published in IDS
+    private static volatile String[] symbols = new String[64];
+    private static int count;
+
+    private SymbolRegistry() {
+    }
+
+    /**
+     * Gets the id of a symbol, assigning the next free id the first time the symbol is seen.
+     *
+     * @param symbol The stock symbol
+     * @return The symbol's id
+     */
+    public static int intern(String symbol) {
+        Integer id = IDS.get(symbol);
+        return id != null ? id : register(symbol);
+    }
+
+    private static synchronized int register(String symbol) {
+        Integer existing = IDS.get(symbol);
+        if (existing != null) {
+            return existing;
+        }
+        int id = count++;
+        String[] current = symbols;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length << 1);
+        }
+        current[id] = symbol;
+        symbols = current;
+        IDS.put(symbol, id);
+        return id;
+    }
+
+    /**
+     * Gets the id of a symbol without registering it.
+     *
+     * @param symbol The stock symbol
+     * @return The symbol's id, or -1 if the symbol has never been interned
+     */
+    public static int idOf(String symbol) {
+        Integer id = IDS.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Gets the symbol for an id.
+     *
+     * @param symbolId The symbol id
+     * @return The stock symbol
+     * @throws IllegalArgumentException If no symbol has that id
+     */
+    public static String getSymbol(int symbolId) {
+        String[] current = symbols;
+        String symbol = symbolId >= 0 && symbolId < current.length ? current[symbolId] : null;
+        if (symbol == null) {
+            throw new IllegalArgumentException("Unknown symbol id: " + symbolId);
+        }
+        return symbol;
+    }
+
+    /**
+     * Counts the interned symbols.
+     *
+     * @return The number of interned symbols, one more than the highest id
+     */
+    public static synchronized int size() {
+        return count;
+    }
+}
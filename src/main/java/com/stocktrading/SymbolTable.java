@@ -0,0 +1,64 @@
+package com.stocktrading;
+
+import java.util.function.IntFunction;
+
+import com.stocktrading.util.IntHashMap;
+
+/**
+ * Per-symbol values keyed by interned symbol id, see {@link SymbolRegistry}.
+ * Lookups read an {@link IntHashMap} that is never modified once published; adding a
+ * symbol copies the map under a lock and publishes the copy. Symbols are added rarely,
+ * so every per-order lookup is a lock-free probe on an int key.
+ *
+ * @param <V> The value type
+ */
+public class SymbolTable<V> {
+    private volatile IntHashMap<V> values = new IntHashMap<>();
+
+    /**
+     * Gets the value for a symbol.
+     *
+     * @param symbolId The symbol id
+     * @return The value, or null if none has been added
+     */
+    public V get(int symbolId) {
+        return values.get(symbolId);
+    }
+
+    /**
+     * Gets the value for a symbol, creating it the first time.
+     *
+     * @param symbolId The symbol id
+     * @param factory Creates the value from the symbol id
+     * @return The existing or newly created value
+     */
+    public V computeIfAbsent(int symbolId, IntFunction<? extends V> factory) {
+        V value = values.get(symbolId);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            IntHashMap<V> current = values;
+            value = current.get(symbolId);
+            if (value == null) {
+                IntHashMap<V> copy = new IntHashMap<>(current);
+                value = factory.apply(symbolId);
+                copy.put(symbolId, value);
+                values = copy;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Gets the value for a symbol by name. Interning the name costs a string hash,
+     * so this is meant for lookups off the per-order path.
+     *
+     * @param symbol The stock symbol
+     * @return The value, or null if none has been added
+     */
+    public V get(String symbol) {
+        int symbolId = SymbolRegistry.idOf(symbol);
+        return symbolId < 0 ? null : get(symbolId);
+    }
+}
@@ -0,0 +1,100 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+
+/**
+ * Per-symbol tick sizes used to hold prices as fixed-point longs.
+ * A price of {@code n} ticks is worth {@code n * tickSize}; books and matchers
+ * only ever compare tick counts, so equal prices are always the same level.
+ */
+public final class TickSizes {
+    public static final double DEFAULT_TICK_SIZE = 0.01;
+
+    private static final double DEFAULT_TICKS_PER_UNIT = 1.0 / DEFAULT_TICK_SIZE;
+
+    // Ticks per unit of price indexed by symbol id, 0 for symbols on the default tick size.
+    // Replaced, never modified, when a tick size is set.
+    private static volatile double[] ticksPerUnit = new double[0];
+
+    private TickSizes() {
+    }
+
+    /**
+     * Sets the tick size of a symbol. Should be configured before any order for the
+     * symbol is created, since existing tick counts are not rescaled.
+     *
+     * @param symbol The stock symbol
+     * @param tickSize The smallest price increment
+     */
+    public static synchronized void setTickSize(String symbol, double tickSize) {
+        if (!(tickSize > 0)) {
+            throw new IllegalArgumentException("Tick size must be positive");
+        }
+        int symbolId = SymbolRegistry.intern(symbol);
+        double[] updated = Arrays.copyOf(ticksPerUnit, Math.max(ticksPerUnit.length, symbolId + 1));
+        updated[symbolId] = 1.0 / tickSize;
+        ticksPerUnit = updated;
+    }
+
+    /**
+     * Gets the tick size of a symbol.
+     *
+     * @param symbol The stock symbol
+     * @return The smallest price increment
+     */
+    public static double getTickSize(String symbol) {
+        return 1.0 / ticksPerUnit(SymbolRegistry.intern(symbol));
+    }
+
+    /**
+     * Converts a price to a whole number of ticks, rounding to the nearest tick.
+     *
+     * @param symbol The stock symbol
+     * @param price The price per unit
+     * @return The price in ticks
+     */
+    public static long toTicks(String symbol, double price) {
+        return toTicks(SymbolRegistry.intern(symbol), price);
+    }
+
+    /**
+     * Converts a price to a whole number of ticks, rounding to the nearest tick.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param price The price per unit
+     * @return The price in ticks
+     */
+    public static long toTicks(int symbolId, double price) {
+        return Math.round(price * ticksPerUnit(symbolId));
+    }
+
+    /**
+     * Converts a number of ticks back to a price.
+     *
+     * @param symbol The stock symbol
+     * @param ticks The price in ticks
+     * @return The price per unit
+     */
+    public static double toPrice(String symbol, long ticks) {
+        return toPrice(SymbolRegistry.intern(symbol), ticks);
+    }
+
+    /**
+     * Converts a number of ticks back to a price.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param ticks The price in ticks
+     * @return The price per unit
+     */
+    public static double toPrice(int symbolId, long ticks) {
+        // Dividing by the ticks per unit gives the same double as the decimal literal,
+        // where multiplying by the tick size could be off by an ulp
+        return ticks / ticksPerUnit(symbolId);
+    }
+
+    private static double ticksPerUnit(int symbolId) {
+        double[] current = ticksPerUnit;
+        double value = symbolId < current.length ? current[symbolId] : 0;
+        return value != 0 ? value : DEFAULT_TICKS_PER_UNIT;
+    }
+}
@@ -0,0 +1,20 @@
+package com.stocktrading;
+
+/**
+ * Supplies wall-clock timestamps to the engine.
+ * Pools and matchers take a time source instead of calling the system clock
+ * directly, so the hot path can use a cached clock and tests can fix the time.
+ */
+public interface TimeSource {
+    /**
+     * The system clock.
+     */
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    /**
+     * Gets the current time.
+     *
+     * @return The current time in milliseconds since the epoch
+     */
+    long currentTimeMillis();
+}
@@ -2,43 +2,118 @@ package com.stocktrading;
 
 /**
  * Represents a completed trade between a buy and sell order.
+ * Trades are mutable so that they can be recycled through a {@link TradePool};
+ * a trade created with {@code new} is never recycled.
  */
 public class Trade {
-    private final String symbol;
-    private final double price;
-    private final int quantity;
-    private final long timestamp;
-    private final long buyOrderId;
-    private final long sellOrderId;
+    private String symbol;
+    // Interned id of the symbol, see SymbolRegistry
+    private int symbolId;
+    // Price in ticks of the symbol's tick size, see TickSizes
+    private long price;
+    private int quantity;
+    private long timestamp;
+    private long buyOrderId;
+    private long sellOrderId;
+    // Accounts of the two orders, see Order.getAccountId
+    private int buyAccountId;
+    private int sellAccountId;
+
+    // Pool the trade goes back to once released; null if created with new
+    TradePool pool;
+    boolean inPool;
     
     /**
      * Creates a new trade.
      * 
      * @param symbol The stock symbol
-     * @param price The price per unit
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     */
+    public Trade(String symbol, long priceTicks, int quantity, long buyOrderId, long sellOrderId) {
+        this(SymbolRegistry.intern(symbol), priceTicks, quantity, buyOrderId, sellOrderId,
+            System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a new trade.
+     * 
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @param timestamp The time of the trade in milliseconds
+     */
+    public Trade(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId, long timestamp) {
+        init(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, 0, 0, timestamp);
+    }
+
+    /**
+     * Creates a new trade between two accounts.
+     * 
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
      * @param quantity The quantity of units
      * @param buyOrderId The ID of the buy order
      * @param sellOrderId The ID of the sell order
+     * @param buyAccountId The account of the buy order
+     * @param sellAccountId The account of the sell order
+     * @param timestamp The time of the trade in milliseconds
+     */
+    public Trade(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                 int buyAccountId, int sellAccountId, long timestamp) {
+        init(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId, timestamp);
+    }
+
+    /**
+     * Creates a blank trade for a pool to fill in.
      */
-    public Trade(String symbol, double price, int quantity, long buyOrderId, long sellOrderId) {
-        this.symbol = symbol;
-        this.price = price;
+    Trade() {
+    }
+
+    /**
+     * Sets every field of a new or recycled trade.
+     */
+    void init(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+              int buyAccountId, int sellAccountId, long timestamp) {
+        this.symbol = SymbolRegistry.getSymbol(symbolId);
+        this.symbolId = symbolId;
+        this.price = priceTicks;
         this.quantity = quantity;
-        this.timestamp = System.currentTimeMillis();
         this.buyOrderId = buyOrderId;
         this.sellOrderId = sellOrderId;
+        this.buyAccountId = buyAccountId;
+        this.sellAccountId = sellAccountId;
+        this.timestamp = timestamp;
     }
     
     public String getSymbol() { return symbol; }
-    public double getPrice() { return price; }
+    public int getSymbolId() { return symbolId; }
+    public double getPrice() { return TickSizes.toPrice(symbolId, price); }
+    public long getPriceTicks() { return price; }
     public int getQuantity() { return quantity; }
     public long getTimestamp() { return timestamp; }
     public long getBuyOrderId() { return buyOrderId; }
     public long getSellOrderId() { return sellOrderId; }
+    public int getBuyAccountId() { return buyAccountId; }
+    public int getSellAccountId() { return sellAccountId; }
+
+    /**
+     * Returns this trade to the pool it came from. Only the pool's owner thread may
+     * release; trades created with {@code new} are left alone.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
     
     @Override
     public String toString() {
         return String.format("TRADE: %s %d@%.2f (Buy Order: %d, Sell Order: %d, time: %d)", 
-                symbol, quantity, price, buyOrderId, sellOrderId, timestamp);
+                symbol, quantity, getPrice(), buyOrderId, sellOrderId, timestamp);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.stocktrading;
+
+/**
+ * Receives trades as a matcher executes them, on the matching thread.
+ */
+@FunctionalInterface
+public interface TradeListener {
+    /**
+     * Called for every executed trade. A trade drawn from a {@link TradePool} belongs
+     * to the listener, which should release it once done or copy it before handing it
+     * to another thread.
+     *
+     * @param trade The executed trade
+     */
+    void onTrade(Trade trade);
+}
@@ -0,0 +1,120 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+
+/**
+ * A stack of recyclable trades owned by a single thread.
+ * Once the pool has grown to the number of trades in flight, acquiring and releasing
+ * trades allocates nothing. The first thread to acquire a trade becomes the owner;
+ * only it may acquire and release, so a trade handed to another thread must be
+ * copied rather than released there.
+ */
+public class TradePool {
+    private final TimeSource timeSource;
+
+    private Trade[] free;
+    private int freeCount;
+    private long createdCount;
+    private Thread owner;
+
+    /**
+     * Creates an empty pool stamping trades with the system clock.
+     */
+    public TradePool() {
+        this(0, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param preallocate The number of trades to create up front
+     * @param timeSource The source of trade timestamps
+     */
+    public TradePool(int preallocate, TimeSource timeSource) {
+        this.timeSource = timeSource;
+        this.free = new Trade[Math.max(16, preallocate)];
+        for (int i = 0; i < preallocate; i++) {
+            Trade trade = create();
+            trade.inPool = true;
+            free[freeCount++] = trade;
+        }
+    }
+
+    public int getFreeCount() { return freeCount; }
+    public long getCreatedCount() { return createdCount; }
+
+    /**
+     * Takes a trade from the pool, or creates one if the pool is empty.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @return A trade stamped with the pool's time source
+     */
+    public Trade acquire(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId) {
+        return acquire(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, 0, 0);
+    }
+
+    /**
+     * Takes a trade between two accounts from the pool, creating one if it is empty.
+     * Owner thread only.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @param buyAccountId The account of the buy order
+     * @param sellAccountId The account of the sell order
+     * @return A trade stamped with the pool's time source
+     */
+    public Trade acquire(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                         int buyAccountId, int sellAccountId) {
+        checkOwner();
+        Trade trade = freeCount == 0 ? create() : free[--freeCount];
+        free[freeCount] = null;
+        trade.inPool = false;
+        trade.init(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId,
+            timeSource.currentTimeMillis());
+        return trade;
+    }
+
+    /**
+     * Returns a trade to the pool. The caller must not use the trade afterwards.
+     *
+     * @param trade The trade to release
+     */
+    public void release(Trade trade) {
+        checkOwner();
+        if (trade.pool != this) {
+            throw new IllegalArgumentException("Trade does not belong to this pool");
+        }
+        if (trade.inPool) {
+            throw new IllegalStateException("Trade was already released");
+        }
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length << 1);
+        }
+        trade.inPool = true;
+        free[freeCount++] = trade;
+    }
+
+    private Trade create() {
+        Trade trade = new Trade();
+        trade.pool = this;
+        createdCount++;
+        return trade;
+    }
+
+    private void checkOwner() {
+        Thread current = Thread.currentThread();
+        if (owner != current) {
+            if (owner != null) {
+                throw new IllegalStateException("Trade pool used outside its owner thread");
+            }
+            owner = current;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.stocktrading;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded {@link TradeSink} backed by a preallocated ring of trade slots.
+ * A matcher copies each trade into the next slot, and any number of consumers claim
+ * contiguous batches of published slots with a single CAS and copy them out. Each slot
+ * carries a sequence number that tells producers when its consumer has finished
+ * copying, so a slot is never overwritten while it is being read.
+ * Publishing is usually done by one matcher thread, but producers also claim their slot
+ * with a CAS, so a sink may be shared by several matching threads.
+ * <p>
+ * With the SPILL policy a trade published to a full ring goes to the spill file, and so
+ * does every later trade until consumers have read the spilled ones back: once the ring
+ * is empty, draining reads the spill file, so consumers still see one publisher's trades
+ * in the order it published them.
+ */
+public class TradeRingBuffer implements TradeSink {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Trade[] slots;
+    private final int mask;
+    private final BackpressurePolicy policy;
+    private final TradeSpillFile spillFile;
+
+    // Sequence each slot is ready for: its position when free, position + 1 once published
+    private final AtomicLongArray slotSequences;
+
+    // Next sequence to publish at
+    private final AtomicLong producerSequence;
+
+    // Next sequence to drain from
+    private final AtomicLong consumerSequence;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    // Spilled trades not yet read back; publishers keep spilling while there are any
+    private final AtomicLong spillBacklog = new AtomicLong();
+    // Failed slot claims by publishers racing each other; striped, since it counts contention
+    private final LongAdder casRetries = new LongAdder();
+
+    /**
+     * Creates a ring that blocks or drops when full.
+     *
+     * @param capacity The number of slots, a power of two of at least 2
+     * @param policy What to do with a trade published while the ring is full
+     * @throws IllegalArgumentException If the policy is SPILL, which needs a spill file
+     */
+    public TradeRingBuffer(int capacity, BackpressurePolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * Creates a ring that spills to disk when full.
+     *
+     * @param capacity The number of slots, a power of two of at least 2
+     * @param spillFile The file to append overflowing trades to
+     */
+    public TradeRingBuffer(int capacity, TradeSpillFile spillFile) {
+        this(capacity, BackpressurePolicy.SPILL, spillFile);
+    }
+
+    private TradeRingBuffer(int capacity, BackpressurePolicy policy, TradeSpillFile spillFile) {
+        // With one slot a published sequence would look like a free slot on the next lap
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least 2");
+        }
+        if (policy == BackpressurePolicy.SPILL && spillFile == null) {
+            throw new IllegalArgumentException("Spilling needs a spill file");
+        }
+        this.slots = new Trade[capacity];
+        this.slotSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Trade();
+            slotSequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.policy = policy;
+        this.spillFile = spillFile;
+        this.producerSequence = new AtomicLong(0);
+        this.consumerSequence = new AtomicLong(0);
+    }
+
+    public int getCapacity() { return slots.length; }
+    public BackpressurePolicy getPolicy() { return policy; }
+
+    /**
+     * Gets the number of trades discarded because the ring was full, including trades
+     * given up on by a blocked publisher that was interrupted.
+     */
+    public long getDroppedCount() { return droppedCount.get(); }
+
+    /**
+     * Gets the number of trades written to the spill file, whether or not they have
+     * been drained since.
+     */
+    public long getSpilledCount() { return spilledCount.get(); }
+
+    /**
+     * Gets the number of times a publisher lost the race for a slot to another
+     * publisher and had to retry. Stays zero while only one matcher publishes.
+     */
+    public long getCasRetryCount() { return casRetries.sum(); }
+
+    /**
+     * Copies a trade into the next free slot. With the BLOCK policy a full ring makes
+     * the caller wait for a consumer; if the caller is interrupted while waiting the
+     * trade is counted as dropped and the interrupt status is kept, so a matcher can
+     * still be stopped while nobody is draining. With the SPILL policy the trade goes to
+     * the spill file while the ring is full or earlier spilled trades are still unread.
+     */
+    @Override
+    public boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId,
+                           long sellOrderId, long timestamp) {
+        return publish(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, 0, 0, timestamp);
+    }
+
+    @Override
+    public boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                           int buyAccountId, int sellAccountId, long timestamp) {
+        if (policy == BackpressurePolicy.SPILL && spillBacklog.get() > 0) {
+            // Queue behind the trades already spilled, so none overtakes them
+            return spill(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId,
+                timestamp);
+        }
+        while (true) {
+            long sequence = producerSequence.get();
+            int index = (int) (sequence & mask);
+            long slotSequence = slotSequences.get(index);
+
+            if (slotSequence == sequence) {
+                if (producerSequence.compareAndSet(sequence, sequence + 1)) {
+                    slots[index].init(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId,
+                        sellAccountId, timestamp);
+                    slotSequences.set(index, sequence + 1);
+                    return true;
+                }
+                casRetries.increment();
+            } else if (slotSequence < sequence) {
+                // The slot still holds the previous lap's trade, so the ring is full
+                switch (policy) {
+                    case DROP:
+                        droppedCount.incrementAndGet();
+                        return false;
+                    case SPILL:
+                        return spill(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId,
+                            sellAccountId, timestamp);
+                    case BLOCK:
+                        if (Thread.currentThread().isInterrupted()) {
+                            droppedCount.incrementAndGet();
+                            return false;
+                        }
+                        LockSupport.parkNanos(1);
+                        break;
+                }
+            }
+            // Otherwise another producer took the slot first; retry with the next one
+        }
+    }
+
+    private boolean spill(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                          int buyAccountId, int sellAccountId, long timestamp) {
+        spillFile.write(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId,
+            timestamp);
+        spilledCount.incrementAndGet();
+        spillBacklog.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes trades from the ring, or once it is empty from the spill file, see
+     * {@link TradeSink#drainTo}. Reading spilled trades back allocates and does I/O.
+     *
+     * @throws java.io.UncheckedIOException If spilled trades cannot be read back
+     */
+    @Override
+    public int drainTo(Trade[] buffer, int max) {
+        int count = drainRing(buffer, max);
+        if (count == 0 && policy == BackpressurePolicy.SPILL && spillBacklog.get() > 0) {
+            count = spillFile.read(buffer, max);
+            spillBacklog.addAndGet(-count);
+        }
+        return count;
+    }
+
+    private int drainRing(Trade[] buffer, int max) {
+        int limit = Math.min(max, buffer.length);
+        while (true) {
+            long first = consumerSequence.get();
+
+            // Find the contiguous run of published slots, up to the limit
+            int count = 0;
+            while (count < limit && slotSequences.get((int) ((first + count) & mask)) == first + count + 1) {
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (!consumerSequence.compareAndSet(first, first + count)) {
+                // Another consumer claimed some of these slots; look again
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                long sequence = first + i;
+                int index = (int) (sequence & mask);
+                Trade slot = slots[index];
+                Trade trade = buffer[i];
+                if (trade == null) {
+                    trade = new Trade();
+                    buffer[i] = trade;
+                }
+                trade.init(slot.getSymbolId(), slot.getPriceTicks(), slot.getQuantity(), slot.getBuyOrderId(),
+                    slot.getSellOrderId(), slot.getBuyAccountId(), slot.getSellAccountId(), slot.getTimestamp());
+                // Hand the slot back to producers for the next lap
+                slotSequences.set(index, sequence + slots.length);
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public Trade poll() {
+        Trade[] buffer = new Trade[1];
+        return drainTo(buffer, 1) == 0 ? null : buffer[0];
+    }
+
+    /**
+     * Gets the number of trades published or being published and not yet claimed by
+     * a consumer, spilled trades not yet read back included.
+     */
+    @Override
+    public int size() {
+        long consumed = consumerSequence.get();
+        long produced = producerSequence.get();
+        long waiting = Math.max(0, produced - consumed) + Math.max(0, spillBacklog.get());
+        return (int) Math.min(Integer.MAX_VALUE, waiting);
+    }
+}
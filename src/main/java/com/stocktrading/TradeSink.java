@@ -0,0 +1,84 @@
+package com.stocktrading;
+
+/**
+ * Where matchers publish executed trades and consumers collect them.
+ * Publishing copies the trade's fields, so a pooled trade can be released as soon
+ * as it has been published. Consumers take trades in batches with
+ * {@link #drainTo(Trade[], int)}, which reuses the trades already in their buffer.
+ */
+public interface TradeSink extends TradeListener {
+    /**
+     * Publishes a trade. What happens when the sink is full depends on its
+     * {@link BackpressurePolicy}.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @param timestamp The time of the trade in milliseconds
+     * @return True if the trade can be drained from the sink, false if it was dropped
+     */
+    boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId, long timestamp);
+
+    /**
+     * Publishes a trade along with the accounts of its two orders. Sinks that do not
+     * keep accounts can leave this to the default, which drops them.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @param buyAccountId The account of the buy order
+     * @param sellAccountId The account of the sell order
+     * @param timestamp The time of the trade in milliseconds
+     * @return True if the trade can be drained from the sink, false if it was dropped
+     */
+    default boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                            int buyAccountId, int sellAccountId, long timestamp) {
+        return publish(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, timestamp);
+    }
+
+    /**
+     * Publishes a copy of the trade; the caller keeps ownership of the trade itself.
+     *
+     * @param trade The executed trade
+     */
+    @Override
+    default void onTrade(Trade trade) {
+        publish(trade.getSymbolId(), trade.getPriceTicks(), trade.getQuantity(),
+            trade.getBuyOrderId(), trade.getSellOrderId(), trade.getBuyAccountId(), trade.getSellAccountId(),
+            trade.getTimestamp());
+    }
+
+    /**
+     * Moves up to {@code max} trades into the buffer, oldest first. Trades already in
+     * the buffer are overwritten in place and null entries are filled with new trades,
+     * so draining into the same buffer again allocates nothing.
+     *
+     * @param buffer The buffer to fill from index zero
+     * @param max The maximum number of trades to take
+     * @return The number of trades taken, zero if none were available
+     */
+    int drainTo(Trade[] buffer, int max);
+
+    /**
+     * Takes the oldest trade as a new object. Convenient for occasional readers;
+     * a busy consumer should use {@link #drainTo(Trade[], int)} instead.
+     *
+     * @return The oldest trade, or null if none are available
+     */
+    Trade poll();
+
+    /**
+     * Gets the number of trades waiting to be drained.
+     *
+     * @return The number of trades in the sink
+     */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
@@ -0,0 +1,206 @@
+package com.stocktrading;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of trades that overflowed a full {@link TradeSink}.
+ * The file starts with a magic number and format version. Each record holds the symbol
+ * name rather than its interned id, since ids are only stable within one process,
+ * followed by the price in ticks, quantity, order ids, account ids and timestamp.
+ * Records are handed to the operating system as they are written, so they survive the
+ * process but not necessarily a machine crash.
+ * <p>
+ * The trades written since the file was opened can be read back in order with
+ * {@link #read}, which is how a spilling {@link TradeRingBuffer} hands them to its
+ * consumers once they have caught up.
+ */
+public class TradeSpillFile implements Closeable {
+    static final int MAGIC = 0x54535046;
+    static final int VERSION = 2;
+
+    // Bytes in a record after the symbol
+    private static final int RECORD_BYTES = 8 + 4 + 8 + 8 + 4 + 4 + 8;
+
+    private final Path path;
+    private final DataOutputStream out;
+    private final FileChannel in;
+    private long recordCount;
+
+    // Where the next unread record starts, and how many written records have been read
+    private long readPosition;
+    private long readCount;
+
+    /**
+     * Opens a spill file, appending to it if it already exists. Trades already in the
+     * file are left to {@link #readAll}; {@link #read} only returns trades written
+     * after this.
+     *
+     * @param path The file to write
+     * @throws IOException If the file cannot be opened, or holds something other than
+     *                     spilled trades of this format
+     */
+    public TradeSpillFile(Path path) throws IOException {
+        this.path = path;
+        this.out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        this.in = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (in.size() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.flush();
+            } else {
+                checkHeader(new DataInputStream(Channels.newInputStream(in)), path);
+            }
+            this.readPosition = in.size();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static void checkHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a trade spill file: " + path);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trade spill file version " + version + ": " + path);
+        }
+    }
+
+    public Path getPath() { return path; }
+
+    public synchronized long getRecordCount() { return recordCount; }
+
+    /**
+     * Gets the number of trades written since the file was opened and not yet read back.
+     */
+    public synchronized long getUnreadCount() { return recordCount - readCount; }
+
+    /**
+     * Appends a trade. Safe to call from any number of threads.
+     *
+     * @throws UncheckedIOException If the record cannot be written
+     */
+    public synchronized void write(int symbolId, long priceTicks, int quantity, long buyOrderId,
+                                   long sellOrderId, int buyAccountId, int sellAccountId, long timestamp) {
+        try {
+            out.writeUTF(SymbolRegistry.getSymbol(symbolId));
+            out.writeLong(priceTicks);
+            out.writeInt(quantity);
+            out.writeLong(buyOrderId);
+            out.writeLong(sellOrderId);
+            out.writeInt(buyAccountId);
+            out.writeInt(sellAccountId);
+            out.writeLong(timestamp);
+            out.flush();
+            recordCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill trade to " + path, e);
+        }
+    }
+
+    /**
+     * Moves up to {@code max} unread trades into the buffer, oldest first, in the manner
+     * of {@link TradeSink#drainTo}. Safe to call from any number of threads.
+     *
+     * @param buffer The buffer to fill from index zero
+     * @param max The maximum number of trades to take
+     * @return The number of trades taken, zero if every written trade has been read
+     * @throws UncheckedIOException If the file cannot be read
+     */
+    public synchronized int read(Trade[] buffer, int max) {
+        int count = (int) Math.min(Math.min(max, buffer.length), recordCount - readCount);
+        if (count <= 0) {
+            return 0;
+        }
+        try {
+            in.position(readPosition);
+            DataInputStream records = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in)));
+            for (int i = 0; i < count; i++) {
+                Trade trade = buffer[i];
+                if (trade == null) {
+                    trade = new Trade();
+                    buffer[i] = trade;
+                }
+                String symbol = records.readUTF();
+                readRecord(records, SymbolRegistry.intern(symbol), trade);
+                readPosition += 2 + utfLength(symbol) + RECORD_BYTES;
+            }
+            readCount += count;
+            return count;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spilled trades from " + path, e);
+        }
+    }
+
+    // The length writeUTF gives a string, in modified UTF-8
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    private static void readRecord(DataInputStream in, int symbolId, Trade trade) throws IOException {
+        long priceTicks = in.readLong();
+        int quantity = in.readInt();
+        long buyOrderId = in.readLong();
+        long sellOrderId = in.readLong();
+        int buyAccountId = in.readInt();
+        int sellAccountId = in.readInt();
+        long timestamp = in.readLong();
+        trade.init(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId, timestamp);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads every trade in a spill file, in the order they were written.
+     *
+     * @param path The file to read
+     * @return The spilled trades
+     * @throws IOException If the file cannot be read, or is not a spill file of this format
+     */
+    public static List<Trade> readAll(Path path) throws IOException {
+        List<Trade> trades = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            checkHeader(in, path);
+            while (true) {
+                String symbol;
+                try {
+                    symbol = in.readUTF();
+                } catch (EOFException e) {
+                    return trades;
+                }
+                Trade trade = new Trade();
+                readRecord(in, SymbolRegistry.intern(symbol), trade);
+                trades.add(trade);
+            }
+        }
+    }
+}
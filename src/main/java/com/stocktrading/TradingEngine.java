@@ -1,10 +1,26 @@
 package com.stocktrading;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import com.stocktrading.journal.OrderJournal;
+import com.stocktrading.journal.ReplayTimeSource;
+import com.stocktrading.journal.SnapshotWriter;
+import com.stocktrading.log.EventLogger;
+import com.stocktrading.log.EventType;
+import com.stocktrading.metrics.Counter;
+import com.stocktrading.metrics.LatencyTracker;
+import com.stocktrading.metrics.MatcherMetrics;
+import com.stocktrading.metrics.MetricsRegistry;
+import com.stocktrading.ring.OrderEventProcessor;
+import com.stocktrading.ring.OrderRingBuffer;
+
 /**
  * Main trading engine that coordinates the order book and matcher.
  */
@@ -13,13 +29,137 @@ public class TradingEngine {
     private final OrderMatcher orderMatcher;
     private final ExecutorService executor;
 
+    // Optional ingress ring; null when orders go straight into the book
+    private final OrderRingBuffer ingress;
+    private final OrderEventProcessor ingressProcessor;
+
+    // Optional write-ahead journal; null when nothing is journaled
+    private final OrderJournal journal;
+    // The matcher's clock, set to each journaled record's time while it is applied; null if the matcher has none
+    private final ReplayTimeSource journalClock;
+
+    // Where lifecycle and order audit events go
+    private final EventLogger eventLogger;
+
+    // Optional pre-trade risk stage; null when orders go to the book unchecked
+    private final PreTradeRiskCheck riskCheck;
+
+    // Submit-to-rest and submit-to-first-trade latencies, labelled with the matcher type
+    private final LatencyTracker latencyTracker;
+
+    // Counters and gauges read by JMX and text exporters, see getMetrics
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Counter ordersAccepted;
+    private final Counter ordersRejected;
+    private final Counter ingressOrdersFailed;
+    // Whether depth gauges exist for each symbol id; null if the book cannot be read off its own threads
+    private volatile boolean[] depthGauges;
+
+    // Striped by symbol id; with a journal, held while a command is journaled and applied and
+    // while a snapshot copies the symbol, so a snapshot pauses only the symbol it is copying.
+    // Without a journal nothing needs the book and the journal to agree, so commands skip it
+    private final Object[] symbolLocks = new Object[SYMBOL_LOCK_STRIPES];
+
+    private static final int SYMBOL_LOCK_STRIPES = 64;
+    // Price levels per side counted by the depth gauges
+    private static final int DEPTH_GAUGE_LEVELS = 64;
+
     /**
      * Creates a new trading engine.
      */
     public TradingEngine(OrderBook orderBook, OrderMatcher orderMatcher) {
+        this(orderBook, orderMatcher, null);
+    }
+
+    /**
+     * Creates a new trading engine whose submitted orders pass through a ring buffer.
+     * Submitting threads only publish into the ring; a single consumer thread drains
+     * it in batches into the order book.
+     *
+     * @param orderBook The order book
+     * @param orderMatcher The order matcher
+     * @param ingress The ingress ring buffer, or null to add orders on the caller's thread
+     */
+    public TradingEngine(OrderBook orderBook, OrderMatcher orderMatcher, OrderRingBuffer ingress) {
+        this(orderBook, orderMatcher, ingress, null);
+    }
+
+    /**
+     * Creates a new trading engine that journals every accepted order, cancel and amend
+     * before acknowledging it. With an ingress ring an order is instead journaled as
+     * the consumer takes it off the ring, just before it reaches the book.
+     *
+     * @param orderBook The order book
+     * @param orderMatcher The order matcher
+     * @param ingress The ingress ring buffer, or null to add orders on the caller's thread
+     * @param journal The journal to append to, or null to journal nothing
+     */
+    public TradingEngine(OrderBook orderBook, OrderMatcher orderMatcher, OrderRingBuffer ingress,
+                         OrderJournal journal) {
+        this(orderBook, orderMatcher, ingress, journal, EventLogger.console());
+    }
+
+    /**
+     * Creates a new trading engine that logs lifecycle and order events to its own logger
+     * instead of the shared console logger. The engine does not close the logger.
+     *
+     * @param orderBook The order book
+     * @param orderMatcher The order matcher
+     * @param ingress The ingress ring buffer, or null to add orders on the caller's thread
+     * @param journal The journal to append to, or null to journal nothing
+     * @param eventLogger The logger for engine starts and stops and for submitted,
+     *                    cancelled and amended orders
+     */
+    public TradingEngine(OrderBook orderBook, OrderMatcher orderMatcher, OrderRingBuffer ingress,
+                         OrderJournal journal, EventLogger eventLogger) {
+        this(orderBook, orderMatcher, ingress, journal, eventLogger, null);
+    }
+
+    /**
+     * Creates a new trading engine that checks every submitted order against per-account
+     * risk limits before it is journaled or reaches the book. To price band orders the
+     * check must also be the matcher's book listener, see {@link PreTradeRiskCheck}.
+     *
+     * @param orderBook The order book
+     * @param orderMatcher The order matcher
+     * @param ingress The ingress ring buffer, or null to add orders on the caller's thread
+     * @param journal The journal to append to, or null to journal nothing
+     * @param eventLogger The logger for engine starts and stops and for submitted,
+     *                    rejected, cancelled and amended orders
+     * @param riskCheck The pre-trade risk check, or null to check nothing
+     */
+    public TradingEngine(OrderBook orderBook, OrderMatcher orderMatcher, OrderRingBuffer ingress,
+                         OrderJournal journal, EventLogger eventLogger, PreTradeRiskCheck riskCheck) {
         this.orderBook = orderBook;
         this.orderMatcher = orderMatcher;
         this.executor = Executors.newCachedThreadPool();
+        this.ingress = ingress;
+        this.journal = journal;
+        this.journalClock = journal != null && orderMatcher.getTimeSource() instanceof ReplayTimeSource
+            ? (ReplayTimeSource) orderMatcher.getTimeSource() : null;
+        this.eventLogger = eventLogger;
+        this.riskCheck = riskCheck;
+        this.latencyTracker = new LatencyTracker(orderMatcher.getClass().getSimpleName());
+        this.ordersAccepted = metrics.counter("orders_accepted_total");
+        this.ordersRejected = metrics.counter("orders_rejected_total");
+        this.ingressOrdersFailed = metrics.counter("ingress_orders_failed_total");
+        registerMatcherMetrics();
+        if (riskCheck != null) {
+            for (PreTradeRiskCheck.Result result : PreTradeRiskCheck.Result.values()) {
+                if (result != PreTradeRiskCheck.Result.ACCEPTED) {
+                    metrics.gauge("risk_rejects_total{reason=\"" + result.name().toLowerCase() + "\"}",
+                        () -> riskCheck.getRejectCount(result));
+                }
+            }
+        }
+        // Sharded and price-ladder books belong to their own threads
+        this.depthGauges = orderBook instanceof LockFreeOrderBook || orderBook instanceof LockedOrderBook
+            ? new boolean[16] : null;
+        this.ingressProcessor = ingress == null ? null
+            : new OrderEventProcessor(ingress, (event, sequence, endOfBatch) -> takeFromIngress(event.getOrder()));
+        for (int i = 0; i < symbolLocks.length; i++) {
+            symbolLocks[i] = new Object();
+        }
     }
     
     /**
@@ -27,13 +167,19 @@ public class TradingEngine {
      */
     public void start() {
         executor.submit(orderMatcher);
-        System.out.println("Trading engine started");
+        if (ingressProcessor != null) {
+            executor.submit(ingressProcessor);
+        }
+        eventLogger.logEngine(EventType.ENGINE_STARTED);
     }
     
     /**
      * Stops the trading engine.
      */
     public void stop() {
+        if (ingressProcessor != null) {
+            ingressProcessor.halt();
+        }
         orderMatcher.stop();
         executor.shutdown();
         try {
@@ -44,17 +190,296 @@ public class TradingEngine {
             executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
-        System.out.println("Trading engine stopped");
+        eventLogger.logEngine(EventType.ENGINE_STOPPED);
+        eventLogger.flush();
     }
     
     /**
-     * Submits an order to the trading engine.
+     * Submits an order to the trading engine. The matcher is signalled for the
+     * order's symbol, so a crossing order is matched as soon as it rests.
+     * An order that does not rest, see {@link Order.TimeInForce}, is executed against
+     * the book on arrival instead, and whatever it leaves unfilled is cancelled.
+     * With an ingress ring the order is published and rests asynchronously.
+     * With a journal the order is journaled before it reaches the book, under a
+     * lock on its symbol; without one the order goes to the book without locking.
+     * With both, the ingress consumer journals each order as it leaves the ring, so
+     * orders are journaled in the order they reach the book, whatever the number of
+     * submitting threads.
+     * A journaled order is also matched on the calling thread under that lock rather
+     * than by the matcher thread, so trades happen in journal order just as
+     * {@link com.stocktrading.journal.JournalReplayer} re-executes them. If the
+     * matcher stamps trades from a {@link ReplayTimeSource}, they carry the order's
+     * timestamp, as replayed trades do.
+     * With a risk check an order that breaks its account's limits is logged as
+     * rejected, rather than submitted, and goes no further. An order the ingress consumer fails to add is
+     * logged as COMMAND_FAILED, counted and dropped, and the consumer goes on with
+     * the next one.
+     * The time until the book accepts the order, and until it first trades, is
+     * recorded in the engine's {@link LatencyTracker}.
      * 
      * @param order The order to submit
+     * @return True if the order was accepted, false if the risk check rejected it
+     */
+    public boolean submitOrder(Order order) {
+        order.startLatency(latencyTracker, System.nanoTime());
+        if (riskCheck != null && riskCheck.check(order) != PreTradeRiskCheck.Result.ACCEPTED) {
+            eventLogger.logOrder(EventType.ORDER_REJECTED, order);
+            ordersRejected.increment();
+            return false;
+        }
+        // Logged before the book sees it, so the record holds the quantity submitted rather than what is left
+        // after matching
+        eventLogger.logOrder(EventType.ORDER_SUBMITTED, order);
+        if (ingress != null) {
+            ingress.publish(order);
+        } else if (journal != null) {
+            journalAndAddToBook(order);
+        } else {
+            addToBook(order, false);
+        }
+        ordersAccepted.increment();
+        return true;
+    }
+
+    /**
+     * Cancels a resting order. Cancels go straight to the book, so an order still
+     * waiting in the ingress ring is not yet known and cannot be cancelled.
+     * A successful cancel is journaled before this returns.
+     *
+     * @param orderId The id of the order to cancel
+     * @return True if the order has been cancelled
+     */
+    public boolean cancelOrder(long orderId) {
+        Order order = orderBook.getOrder(orderId);
+        if (order == null) {
+            return false;
+        }
+        if (journal == null) {
+            if (!orderBook.cancelOrder(orderId)) {
+                return false;
+            }
+        } else {
+            synchronized (lockFor(order.getSymbolId())) {
+                if (!orderBook.cancelOrder(orderId)) {
+                    return false;
+                }
+                journal.appendCancel(orderId, System.currentTimeMillis());
+            }
+        }
+        eventLogger.logOrder(EventType.ORDER_CANCELLED, order);
+        orderMatcher.getBookListener().onBookChanged(order.getSymbolId());
+        return true;
+    }
+
+    /**
+     * Amends a resting order's quantity and price. A quantity decrease at the same price
+     * keeps the order's queue priority; any other change sends it to the back of its new
+     * level. The matcher is signalled, since a new price may cross the book.
+     * A successful amend is journaled before this returns, and on a journaled engine
+     * matched on the calling thread, as for {@link #submitOrder}.
+     *
+     * @param orderId The id of the order to amend
+     * @param newQuantity The new quantity, which must be positive
+     * @param newPrice The new price per unit
+     * @return True if the order has been amended
      */
-    public void submitOrder(Order order) {
+    public boolean amendOrder(long orderId, int newQuantity, double newPrice) {
+        Order order = orderBook.getOrder(orderId);
+        if (order == null) {
+            return false;
+        }
+        if (journal == null) {
+            if (!orderBook.amendOrder(orderId, newQuantity, newPrice)) {
+                return false;
+            }
+        } else {
+            long timestamp = System.currentTimeMillis();
+            synchronized (lockFor(order.getSymbolId())) {
+                if (!orderBook.amendOrder(orderId, newQuantity, newPrice)) {
+                    return false;
+                }
+                journal.appendAmend(orderId, newQuantity, TickSizes.toTicks(order.getSymbolId(), newPrice),
+                    timestamp);
+                setJournalTime(timestamp);
+                try {
+                    orderMatcher.matchOrders(order.getSymbol());
+                } finally {
+                    clearJournalTime();
+                }
+            }
+        }
+        eventLogger.logOrder(EventType.ORDER_AMENDED, order);
+        orderMatcher.getBookListener().onBookChanged(order.getSymbolId());
+        if (journal == null) {
+            orderMatcher.signal(order.getSymbol());
+        }
+        return true;
+    }
+
+    // Runs on the ingress consumer thread, which must outlive any one order: once it dies the ring fills
+    // and every submitter blocks
+    private void takeFromIngress(Order order) {
+        try {
+            if (journal != null) {
+                journalAndAddToBook(order);
+            } else {
+                addToBook(order, false);
+            }
+        } catch (RuntimeException e) {
+            ingressOrdersFailed.increment();
+            eventLogger.logOrder(EventType.COMMAND_FAILED, order);
+        }
+    }
+
+    private void journalAndAddToBook(Order order) {
+        synchronized (lockFor(order.getSymbolId())) {
+            journal.appendAdd(order);
+            setJournalTime(order.getTimestamp());
+            try {
+                addToBook(order, true);
+            } finally {
+                clearJournalTime();
+            }
+        }
+    }
+
+    private void setJournalTime(long timestamp) {
+        if (journalClock != null) {
+            journalClock.set(timestamp);
+        }
+    }
+
+    private void clearJournalTime() {
+        if (journalClock != null) {
+            journalClock.clear();
+        }
+    }
+
+    // Matching inline keeps a journaled symbol's trades in journal order; otherwise the matcher thread is signalled
+    private void addToBook(Order order, boolean matchInline) {
+        // Read first, since a pooled order may trade and be recycled once it is in the book
+        int symbolId = order.getSymbolId();
+        long submitNanos = order.submitNanos;
+        order.booked = true;
+        if (!order.rests()) {
+            // Executed as it arrives; an order handed to a shard thread is no longer ours to read
+            int filled = orderMatcher.matchIncoming(order);
+            if (filled >= 0 && order.getQuantity() > 0) {
+                eventLogger.logOrder(EventType.ORDER_CANCELLED, order);
+            }
+            return;
+        }
         orderBook.addOrder(order);
-        System.out.println("Order submitted: " + order);
+        if (!(orderBook instanceof ShardedOrderBook)) {
+            // A shard thread records the order as it rests; here it has only reached the shard's inbox
+            latencyTracker.record(symbolId, LatencyTracker.Stage.REST, System.nanoTime() - submitNanos);
+        }
+        boolean[] gauges = depthGauges;
+        if (gauges != null && (symbolId >= gauges.length || !gauges[symbolId])) {
+            addDepthGauges(symbolId);
+        }
+        orderMatcher.getBookListener().onBookChanged(symbolId);
+        if (matchInline) {
+            orderMatcher.matchOrders(SymbolRegistry.getSymbol(symbolId));
+        } else {
+            orderMatcher.signal(SymbolRegistry.getSymbol(symbolId));
+        }
+    }
+
+    private void registerMatcherMetrics() {
+        MatcherMetrics matcherMetrics = orderMatcher.getMetrics();
+        metrics.gauge("trades_total", matcherMetrics.getTrades());
+        metrics.gauge("matcher_loop_iterations_total", matcherMetrics.getPasses());
+        metrics.gauge("matcher_empty_sweeps_total", matcherMetrics.getEmptySweeps());
+        TradeSink trades = orderMatcher.getTrades();
+        metrics.gauge("trade_queue_backlog", trades::size);
+        if (trades instanceof TradeRingBuffer) {
+            TradeRingBuffer ring = (TradeRingBuffer) trades;
+            metrics.gauge("trade_cas_retries_total", ring::getCasRetryCount);
+            metrics.gauge("trades_dropped_total", ring::getDroppedCount);
+            metrics.gauge("trades_spilled_total", ring::getSpilledCount);
+        }
+        if (orderMatcher instanceof ShardedOrderMatcher) {
+            ShardedOrderMatcher sharded = (ShardedOrderMatcher) orderMatcher;
+            metrics.gauge("shards_live", sharded::getLiveShardCount);
+            metrics.gauge("shard_commands_failed_total", sharded::getFailedCommandCount);
+            for (OrderBookShard shard : ((ShardedOrderBook) orderBook).getShards()) {
+                metrics.gauge("shard_alive{shard=\"" + shard.getIndex() + "\"}", () -> shard.isAlive() ? 1 : 0);
+            }
+        }
+    }
+
+    // Adds bid and ask level gauges the first time a symbol reaches the book
+    private synchronized void addDepthGauges(int symbolId) {
+        boolean[] gauges = depthGauges;
+        if (symbolId < gauges.length && gauges[symbolId]) {
+            return;
+        }
+        String symbol = SymbolRegistry.getSymbol(symbolId);
+        MarketDepth depth = new MarketDepth(DEPTH_GAUGE_LEVELS);
+        String labels = "{symbol=\"" + symbol + "\"}";
+        metrics.gauge("book_bid_levels" + labels, () -> {
+            synchronized (depth) {
+                return orderBook.depth(symbol, DEPTH_GAUGE_LEVELS, depth).getBidLevels();
+            }
+        });
+        metrics.gauge("book_ask_levels" + labels, () -> {
+            synchronized (depth) {
+                return orderBook.depth(symbol, DEPTH_GAUGE_LEVELS, depth).getAskLevels();
+            }
+        });
+        boolean[] grown = symbolId < gauges.length ? gauges.clone()
+            : Arrays.copyOf(gauges, Integer.highestOneBit(symbolId) * 2);
+        grown[symbolId] = true;
+        depthGauges = grown;
+    }
+
+    Object lockFor(int symbolId) {
+        return symbolLocks[symbolId & (SYMBOL_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Writes a snapshot of the resting orders of some symbols without stopping the engine.
+     * Each symbol in turn is briefly paused: commands for it wait while it is matched to
+     * a standstill and its orders are copied along with the current journal position.
+     * Other symbols keep trading meanwhile, and the copy is written out after the pause.
+     * Recovery loads the snapshot and replays each symbol's journal records after its
+     * position, see {@link com.stocktrading.journal.JournalReplayer}, so the engine must
+     * have a journal; it is also what makes commands take the symbol locks a snapshot
+     * pauses them with.
+     *
+     * @param path The snapshot file to create or replace
+     * @param symbols The symbols to include
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void writeSnapshot(Path path, Collection<String> symbols) throws IOException {
+        if (!(orderBook instanceof SnapshottableOrderBook)) {
+            throw new IllegalStateException("Order book does not support snapshots");
+        }
+        if (journal == null) {
+            throw new IllegalStateException("Snapshots need a journal to recover from");
+        }
+        SnapshottableOrderBook book = (SnapshottableOrderBook) orderBook;
+        try (SnapshotWriter writer = new SnapshotWriter(path, symbols.size())) {
+            for (String symbol : symbols) {
+                synchronized (lockFor(SymbolRegistry.intern(symbol))) {
+                    // Resting orders must be the ones replaying the journal would leave
+                    orderMatcher.matchOrders(symbol);
+                    writer.copySymbol(symbol, journal.getPosition(), book);
+                }
+                writer.writeCopied();
+            }
+            writer.commit();
+        }
+    }
+    
+    /**
+     * Gets the pre-trade risk check.
+     * 
+     * @return The risk check, or null if orders are not checked
+     */
+    public PreTradeRiskCheck getRiskCheck() {
+        return riskCheck;
     }
     
     /**
@@ -66,6 +491,50 @@ public class TradingEngine {
         return orderBook;
     }
     
+    /**
+     * Gets the journal.
+     * 
+     * @return The journal, or null if nothing is journaled
+     */
+    public OrderJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Gets the event logger.
+     * 
+     * @return The logger for lifecycle and order events
+     */
+    public EventLogger getEventLogger() {
+        return eventLogger;
+    }
+    
+    /**
+     * Gets the latency tracker.
+     * 
+     * @return The tracker holding this engine's submit-to-rest and submit-to-first-trade latencies
+     */
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+    
+    /**
+     * Gets the metrics registry: orders accepted and rejected, orders the ingress
+     * consumer failed to add, risk rejects by reason
+     * if orders are checked, trades, matcher passes and empty
+     * sweeps, the trade queue backlog, publisher CAS retries and trades dropped or
+     * spilled on a trade ring, shard
+     * liveness and failed shard commands for a sharded matcher and, for
+     * books that can be read from any thread, the price levels of each symbol that
+     * has reached the book. Export it with {@link MetricsRegistry#registerMBean} or
+     * {@link com.stocktrading.metrics.MetricsHttpServer}.
+     * 
+     * @return The engine's metrics
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+    
     /**
      * Gets the order matcher.
      * 
@@ -2,6 +2,9 @@ package com.stocktrading;
 
 import java.util.List;
 
+import com.stocktrading.ring.OrderRingBuffer;
+import com.stocktrading.ring.WaitStrategy;
+
 public class TradingEngineFactory {
 	public static TradingEngine createLockFreeTradingEngine(List<String> symbols) {
 		LockFreeOrderBook orderBook = new LockFreeOrderBook();
@@ -14,4 +17,38 @@ public class TradingEngineFactory {
 		OrderMatcher matcher = new LockedOrderMatcher(orderBook, symbols);
 		return new TradingEngine(orderBook, matcher);
 	}
-}
+
+	public static TradingEngine createShardedTradingEngine(List<String> symbols, int numShards) {
+		ShardedOrderBook orderBook = new ShardedOrderBook(symbols, numShards);
+		ShardedOrderMatcher matcher = new ShardedOrderMatcher(orderBook);
+		return new TradingEngine(orderBook, matcher);
+	}
+
+	/**
+	 * Creates a lock-free engine whose submitted orders are published into a ring
+	 * buffer and drained into the book by a single consumer thread.
+	 *
+	 * @param symbols The symbols to trade
+	 * @param ringSize The ring capacity, a power of two
+	 * @param waitStrategy How the ring consumer waits for orders
+	 */
+	public static TradingEngine createLockFreeTradingEngine(List<String> symbols, int ringSize, WaitStrategy waitStrategy) {
+		LockFreeOrderBook orderBook = new LockFreeOrderBook();
+		LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(orderBook, symbols);
+		return new TradingEngine(orderBook, matcher, new OrderRingBuffer(ringSize, waitStrategy));
+	}
+
+	/**
+	 * Creates a locked engine whose submitted orders are published into a ring
+	 * buffer and drained into the book by a single consumer thread.
+	 *
+	 * @param symbols The symbols to trade
+	 * @param ringSize The ring capacity, a power of two
+	 * @param waitStrategy How the ring consumer waits for orders
+	 */
+	public static TradingEngine createLockedTradingEngine(List<String> symbols, int ringSize, WaitStrategy waitStrategy) {
+		LockedOrderBook orderBook = new LockedOrderBook();
+		OrderMatcher matcher = new LockedOrderMatcher(orderBook, symbols);
+		return new TradingEngine(orderBook, matcher, new OrderRingBuffer(ringSize, waitStrategy));
+	}
+}
\ No newline at end of file
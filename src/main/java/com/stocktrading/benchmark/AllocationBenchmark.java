@@ -0,0 +1,119 @@
+package com.stocktrading.benchmark;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.stocktrading.CachedTimeSource;
+import com.stocktrading.Order;
+import com.stocktrading.OrderPool;
+import com.stocktrading.PriceLadderOrderBook;
+import com.stocktrading.SymbolBook;
+import com.stocktrading.SymbolBookMatcher;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.Trade;
+import com.stocktrading.TradePool;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the allocation-free single-writer hot path: pooled orders are
+ * added to a price ladder book and matched into pooled trades that are released
+ * straight away, as a shard thread does.
+ *
+ * Run with: java -cp target/benchmarks.jar com.stocktrading.benchmark.AllocationBenchmark
+ * which runs under the GC profiler and fails if any bytes are allocated per order
+ * in steady state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+
+	// Allowed bytes per operation; JMH reports a few hundredths of a byte of noise
+	private static final double MAX_BYTES_PER_OP = 1.0;
+
+	@Param({"AAPL"})
+	private String symbol;
+
+	// Resting bids below the traded price, so matching runs against a populated book
+	@Param({"1000"})
+	private int restingDepth;
+
+	private int symbolId;
+	private long basePriceTicks;
+	private PriceLadderOrderBook orderBook;
+	private SymbolBook symbolBook;
+	private OrderPool orderPool;
+	private SymbolBookMatcher matcher;
+	private long tradedQuantity;
+	private int sequence;
+
+	@Setup
+	public void setup() {
+		symbolId = SymbolRegistry.intern(symbol);
+		basePriceTicks = 10_000;
+
+		CachedTimeSource clock = new CachedTimeSource();
+		orderBook = new PriceLadderOrderBook(Collections.singletonList(symbol));
+		symbolBook = orderBook.getBook(symbolId);
+		orderPool = new OrderPool(restingDepth + 64, clock);
+		TradePool tradePool = new TradePool(64, clock);
+		matcher = new SymbolBookMatcher(tradePool, this::onTrade);
+
+		for (int i = 0; i < restingDepth; i++) {
+			orderBook.addOrder(orderPool.acquire(symbolId, Order.Type.BUY, basePriceTicks - 1 - (i % 100), 10));
+		}
+	}
+
+	private void onTrade(Trade trade) {
+		tradedQuantity += trade.getQuantity();
+		trade.release();
+	}
+
+	/**
+	 * Rests a sell, then crosses it with a buy at one of eight price levels
+	 * above the resting bids. Both orders fill and go back to the pool.
+	 */
+	@Benchmark
+	public long addAndMatch() {
+		long priceTicks = basePriceTicks + (sequence++ & 7);
+		orderBook.addOrder(orderPool.acquire(symbolId, Order.Type.SELL, priceTicks, 10));
+		orderBook.addOrder(orderPool.acquire(symbolId, Order.Type.BUY, priceTicks, 10));
+		matcher.match(symbolBook);
+		return tradedQuantity;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+			.include(AllocationBenchmark.class.getSimpleName())
+			.addProfiler(GCProfiler.class)
+			.build();
+		Collection<RunResult> results = new Runner(opt).run();
+
+		for (RunResult result : results) {
+			for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+				// Labelled "gc.alloc.rate.norm", with a leading dot in older JMH versions
+				if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+					double bytesPerOp = entry.getValue().getScore();
+					System.out.printf("Allocated %.3f bytes per operation%n", bytesPerOp);
+					if (bytesPerOp > MAX_BYTES_PER_OP) {
+						throw new IllegalStateException(
+							"Hot path allocates " + bytesPerOp + " bytes per operation");
+					}
+				}
+			}
+		}
+	}
+}
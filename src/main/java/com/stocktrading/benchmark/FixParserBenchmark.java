@@ -0,0 +1,118 @@
+package com.stocktrading.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.stocktrading.fix.FixEncoder;
+import com.stocktrading.fix.FixParser;
+import com.stocktrading.fix.FixTags;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the FIX order entry path: parsing a NewOrderSingle out of a direct
+ * buffer and decoding the fields the acceptor reads, then encoding an ExecutionReport.
+ * Both should stay well below the cost of matching the order.
+ *
+ * Run with: java -cp target/benchmarks.jar com.stocktrading.benchmark.FixParserBenchmark
+ * which runs under the GC profiler and fails if any bytes are allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FixParserBenchmark {
+
+	// Allowed bytes per operation; JMH reports a few hundredths of a byte of noise
+	private static final double MAX_BYTES_PER_OP = 1.0;
+
+	private final FixParser parser = new FixParser();
+	private final FixEncoder encoder = new FixEncoder();
+	private final ByteBuffer in = ByteBuffer.allocateDirect(1024);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(1024);
+	private final byte[] symbol = "AAPL".getBytes(StandardCharsets.US_ASCII);
+	private int length;
+
+	@Setup
+	public void setup() {
+		encoder.begin(FixTags.NEW_ORDER_SINGLE)
+			.addBytes(FixTags.SENDER_COMP_ID, "CLIENT".getBytes(StandardCharsets.US_ASCII))
+			.addBytes(FixTags.TARGET_COMP_ID, "EXCH".getBytes(StandardCharsets.US_ASCII))
+			.addLong(FixTags.MSG_SEQ_NUM, 1234567)
+			.addTimestamp(FixTags.SENDING_TIME, 1_700_000_000_000L)
+			.addBytes(FixTags.CL_ORD_ID, "ord-000123456".getBytes(StandardCharsets.US_ASCII))
+			.addBytes(FixTags.SYMBOL, symbol)
+			.addChar(FixTags.SIDE, (byte) '1')
+			.addLong(FixTags.ORDER_QTY, 500)
+			.addChar(FixTags.ORD_TYPE, (byte) '2')
+			.addPrice(FixTags.PRICE, 150.25);
+		length = encoder.writeTo(in);
+	}
+
+	/**
+	 * Frames and checksums a NewOrderSingle and decodes its order fields.
+	 */
+	@Benchmark
+	public long parseNewOrderSingle() {
+		parser.parse(in, 0, length);
+		long result = parser.getLong(FixTags.MSG_SEQ_NUM) + parser.getLong(FixTags.ORDER_QTY)
+			+ parser.hashValue(FixTags.CL_ORD_ID) + parser.getByte(FixTags.SIDE);
+		if (parser.valueEquals(FixTags.SYMBOL, symbol)) {
+			result += (long) parser.getDouble(FixTags.PRICE);
+		}
+		return result;
+	}
+
+	/**
+	 * Builds and frames an ExecutionReport for a fill.
+	 */
+	@Benchmark
+	public int encodeExecutionReport() {
+		out.clear();
+		encoder.begin(FixTags.EXECUTION_REPORT)
+			.addBytes(FixTags.SENDER_COMP_ID, symbol)
+			.addBytes(FixTags.TARGET_COMP_ID, symbol)
+			.addLong(FixTags.MSG_SEQ_NUM, 1234567)
+			.addTimestamp(FixTags.SENDING_TIME, 1_700_000_000_000L)
+			.addLong(FixTags.ORDER_ID, 987654321)
+			.addChar(FixTags.EXEC_TYPE, (byte) 'F')
+			.addLong(FixTags.LAST_QTY, 100)
+			.addPrice(FixTags.LAST_PX, 150.25)
+			.addLong(FixTags.LEAVES_QTY, 400);
+		return encoder.writeTo(out);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+			.include(FixParserBenchmark.class.getSimpleName())
+			.addProfiler(GCProfiler.class)
+			.build();
+		Collection<RunResult> results = new Runner(opt).run();
+
+		for (RunResult result : results) {
+			for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+				// Labelled "gc.alloc.rate.norm", with a leading dot in older JMH versions
+				if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+					double bytesPerOp = entry.getValue().getScore();
+					System.out.printf("Allocated %.3f bytes per operation%n", bytesPerOp);
+					if (bytesPerOp > MAX_BYTES_PER_OP) {
+						throw new IllegalStateException(
+							"FIX path allocates " + bytesPerOp + " bytes per operation");
+					}
+				}
+			}
+		}
+	}
+}
@@ -3,9 +3,11 @@ package com.stocktrading.benchmark;
 import com.stocktrading.Order;
 import com.stocktrading.LockedOrderBook;
 import com.stocktrading.LockedOrderMatcher;
-import com.stocktrading.Trade;
+import com.stocktrading.TradeSink;
 import com.stocktrading.LockFreeOrderBook;
 import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.PriceLadderOrderBook;
+import com.stocktrading.PriceLevel;
 
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
@@ -18,13 +20,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * JMH Benchmark for comparing different OrderBook implementations.
@@ -56,7 +56,8 @@ public class OrderBookBenchmark {
 	private List<Order> sellOrders;
 	private Random random;
 
-	@Setup
+	// Orders are mutable and can rest in only one book, so every invocation gets fresh ones
+	@Setup(Level.Invocation)
 	public void setup() {
 		lockedOrderBook = new LockedOrderBook();
 		lockFreeOrderBook = new LockFreeOrderBook();
@@ -173,7 +174,7 @@ public class OrderBookBenchmark {
 		latch.await();
 		executor.shutdown();
 
-		BlockingQueue<Trade> trades = matcher.getTrades();
+		TradeSink trades = matcher.getTrades();
 		blackhole.consume(trades.size());
 	}
 
@@ -216,6 +217,19 @@ public class OrderBookBenchmark {
 		blackhole.consume(orderBook);
 	}
 
+	@Benchmark
+	public void priceLadderOrderBookAddOnly(Blackhole blackhole) {
+		// Single-writer book, so all orders are added from the benchmark thread
+		PriceLadderOrderBook orderBook = new PriceLadderOrderBook(Collections.singletonList(symbol));
+
+		for (int i = 0; i < numOrders; i++) {
+			orderBook.addOrder(buyOrders.get(i));
+			orderBook.addOrder(sellOrders.get(i));
+		}
+
+		blackhole.consume(orderBook);
+	}
+
 	@Benchmark
 	public void lockFreeOrderBookMatchingWorkload(Blackhole blackhole) throws InterruptedException {
 		LockFreeOrderBook orderBook = new LockFreeOrderBook();
@@ -314,16 +328,16 @@ public class OrderBookBenchmark {
 		int totalBuyOrders = 0;
 		int totalSellOrders = 0;
 		
-		ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap(symbol);
+		ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap(symbol);
 		if (buyOrders != null) {
-			for (ConcurrentLinkedQueue<Order> queue : buyOrders.values()) {
+			for (PriceLevel queue : buyOrders.values()) {
 				totalBuyOrders += queue.size();
 			}
 		}
 		
-		ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = orderBook.getSellOrdersMap(symbol);
+		ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap(symbol);
 		if (sellOrders != null) {
-			for (ConcurrentLinkedQueue<Order> queue : sellOrders.values()) {
+			for (PriceLevel queue : sellOrders.values()) {
 				totalSellOrders += queue.size();
 			}
 		}
@@ -366,6 +380,8 @@ public class OrderBookBenchmark {
 						// Add to both order books
 						lockedOrderBook.addOrder(lockedOrder);
 						lockFreeOrderBook.addOrder(lockFreeOrder);
+						lockedMatcher.signal(symbol);
+						lockFreeMatcher.signal(symbol);
 						
 						// Small delay to allow matching to occur
 						if (i % 10 == 0) {
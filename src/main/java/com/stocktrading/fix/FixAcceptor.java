@@ -0,0 +1,616 @@
+package com.stocktrading.fix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.OrderPool;
+import com.stocktrading.PriceLadderOrderBook;
+import com.stocktrading.ShardedOrderBook;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TickSizes;
+import com.stocktrading.TimeSource;
+import com.stocktrading.Trade;
+import com.stocktrading.TradeSink;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.util.LongHashMap;
+
+/**
+ * FIX 4.4 order entry for a {@link TradingEngine}.
+ * <p>
+ * One selector thread accepts connections, frames and parses inbound messages with a
+ * {@link FixParser} straight from each connection's buffer, and runs each counterparty's
+ * {@link FixSession}. NewOrderSingle limit orders become orders from the acceptor's own
+ * {@link OrderPool}, OrderCancelRequests cancel them, and every state change goes back
+ * to the counterparty as an ExecutionReport. Symbols and client order ids are matched
+ * by hashing their bytes in place, so the order path creates no Strings.
+ * <p>
+ * Like the binary gateway, the acceptor drains the engine's trade sink to report fills,
+ * and cannot front a {@link ShardedOrderBook} or a {@link PriceLadderOrderBook}, which
+ * recycle pooled orders themselves. Executions for a counterparty that is logged out
+ * are stored in its session and recovered by a resend request when it logs on again.
+ */
+public class FixAcceptor implements Runnable, Closeable {
+    public static final int BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_CL_ORD_ID_LENGTH = 32;
+
+    private static final int TRADE_BATCH = 256;
+    private static final long SELECT_TIMEOUT_MILLIS = 1;
+
+    private static final byte SIDE_BUY = '1';
+    private static final byte SIDE_SELL = '2';
+    private static final byte ORD_TYPE_LIMIT = '2';
+    private static final byte EXEC_NEW = '0';
+    private static final byte EXEC_CANCELED = '4';
+    private static final byte EXEC_REJECTED = '8';
+    private static final byte EXEC_TRADE = 'F';
+    private static final byte STATUS_PARTIALLY_FILLED = '1';
+    private static final byte STATUS_FILLED = '2';
+    private static final int ORD_REJ_UNKNOWN_SYMBOL = 1;
+    private static final int ORD_REJ_EXCEEDS_LIMIT = 3;
+    private static final int ORD_REJ_DUPLICATE_ORDER = 6;
+    private static final int ORD_REJ_OTHER = 99;
+    private static final int CXL_REJ_UNKNOWN_ORDER = 1;
+    private static final byte CXL_REJ_RESPONSE_TO_CANCEL = '1';
+    private static final byte[] NONE = "NONE".getBytes(StandardCharsets.US_ASCII);
+
+    private final TradingEngine engine;
+    private final OrderBook orderBook;
+    private final TradeSink trades;
+    private final TimeSource timeSource;
+    private final byte[] senderCompId;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    // Keyed by the hash of the symbol bytes; never modified after construction
+    private final LongHashMap<SymbolEntry> symbols;
+
+    // Everything below is confined to the acceptor thread
+    private final LongHashMap<FixSession> sessions = new LongHashMap<>();
+    private final OrderPool orderPool;
+    private final LongHashMap<OpenOrder> openOrders = new LongHashMap<>();
+    private OpenOrder freeOpenOrders;
+    // Done orders waiting to leave the book before they go back to the pool
+    private OpenOrder retiring;
+    private final Trade[] tradeBatch = new Trade[TRADE_BATCH];
+    private final List<Connection> connections = new ArrayList<>();
+    private long nextExecId;
+
+    private volatile boolean running = true;
+
+    /**
+     * Opens an acceptor on the system clock.
+     *
+     * @param engine The engine to submit orders to
+     * @param symbols The symbols that can be traded
+     * @param senderCompId The acceptor's own CompID
+     * @param address The address to listen on, port 0 for any free port
+     * @throws IOException If the address cannot be bound
+     */
+    public FixAcceptor(TradingEngine engine, List<String> symbols, String senderCompId, InetSocketAddress address)
+            throws IOException {
+        this(engine, symbols, senderCompId, address, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Opens an acceptor.
+     *
+     * @param engine The engine to submit orders to
+     * @param symbols The symbols that can be traded
+     * @param senderCompId The acceptor's own CompID
+     * @param address The address to listen on, port 0 for any free port
+     * @param timeSource The clock for sending times and heartbeats
+     * @throws IOException If the address cannot be bound
+     */
+    public FixAcceptor(TradingEngine engine, List<String> symbols, String senderCompId, InetSocketAddress address,
+                       TimeSource timeSource) throws IOException {
+        if (engine.getOrderBook() instanceof ShardedOrderBook || engine.getOrderBook() instanceof PriceLadderOrderBook) {
+            throw new IllegalArgumentException("Price ladder books recycle pooled orders themselves");
+        }
+        this.engine = engine;
+        this.orderBook = engine.getOrderBook();
+        this.trades = engine.getOrderMatcher().getTrades();
+        this.timeSource = timeSource;
+        this.orderPool = new OrderPool(0, timeSource);
+        this.senderCompId = senderCompId.getBytes(StandardCharsets.US_ASCII);
+        this.symbols = new LongHashMap<>(symbols.size());
+        for (String symbol : symbols) {
+            SymbolEntry entry = new SymbolEntry(symbol);
+            if (this.symbols.put(FixParser.hash(entry.bytes), entry) != null) {
+                throw new IllegalArgumentException("Symbol hash collision: " + symbol);
+            }
+        }
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Gets the address the acceptor listens on.
+     *
+     * @return The bound address
+     * @throws IOException If the address cannot be read
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Gets the session of a counterparty that has logged on at least once. Read it
+     * once the acceptor has stopped.
+     *
+     * @param targetCompId The counterparty's CompID
+     * @return The session, or null if it never logged on
+     */
+    public FixSession getSession(String targetCompId) {
+        return sessions.get(FixParser.hash(targetCompId.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Gets the number of orders the acceptor's pool has created. Read it once the
+     * acceptor has stopped.
+     *
+     * @return The number of orders created
+     */
+    public long getCreatedOrderCount() {
+        return orderPool.getCreatedCount();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                long now = timeSource.currentTimeMillis();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection, now);
+                    }
+                    if (!connection.closed && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+                forwardTrades(now);
+                releaseRetired();
+                for (Connection connection : connections) {
+                    if (!connection.closed && connection.session != null && !connection.session.onTimer(now)) {
+                        close(connection);
+                    }
+                    if (!connection.closed && connection.out.position() > 0) {
+                        flush(connection);
+                    }
+                }
+                connections.removeIf(connection -> connection.closed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Connection connection : connections) {
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Stops the acceptor thread. Connections are closed as it exits.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the acceptor and releases its listening socket. Call once the acceptor
+     * thread has exited, or if it was never started.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        server.close();
+        selector.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    private void read(Connection connection, long now) {
+        ByteBuffer in = connection.in;
+        try {
+            if (connection.channel.read(in) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        in.flip();
+        FixParser parser = connection.parser;
+        while (!connection.closed) {
+            int length = parser.parse(in, in.position(), in.limit());
+            if (length == FixParser.INCOMPLETE) {
+                if (in.limit() == in.capacity()) {
+                    // A message that cannot fit the buffer can never be read
+                    close(connection);
+                    return;
+                }
+                break;
+            }
+            if (length == FixParser.MALFORMED) {
+                close(connection);
+                return;
+            }
+            // A garbled message is skipped without consuming a sequence number
+            if (parser.isChecksumValid() && !dispatch(connection, parser, now)) {
+                flush(connection);
+                close(connection);
+                return;
+            }
+            in.position(in.position() + length);
+        }
+        in.compact();
+    }
+
+    private boolean dispatch(Connection connection, FixParser message, long now) {
+        if (connection.session != null) {
+            return connection.session.onMessage(message, now);
+        }
+        if (message.getMsgType() != FixTags.LOGON) {
+            return false;
+        }
+        long key = message.hashValue(FixTags.SENDER_COMP_ID);
+        FixSession session = sessions.get(key);
+        if (session == null) {
+            byte[] targetCompId = new byte[Math.max(message.getValueLength(FixTags.SENDER_COMP_ID), 0)];
+            if (targetCompId.length == 0) {
+                return false;
+            }
+            message.copyValue(FixTags.SENDER_COMP_ID, targetCompId);
+            session = new FixSession(senderCompId, targetCompId, this::onApplicationMessage);
+            session.attach(new LongHashMap<OpenOrder>());
+            sessions.put(key, session);
+        } else if (session.isLoggedOn() || !message.valueEquals(FixTags.SENDER_COMP_ID, session.targetCompIdBytes())) {
+            return false;
+        }
+        connection.session = session;
+        return session.logon(message, connection, now);
+    }
+
+    private void onApplicationMessage(FixSession session, FixParser message, long now) {
+        switch (message.getMsgType()) {
+            case FixTags.NEW_ORDER_SINGLE:
+                onNewOrderSingle(session, message, now);
+                break;
+            case FixTags.ORDER_CANCEL_REQUEST:
+                onOrderCancelRequest(session, message, now);
+                break;
+            default:
+                session.rejectMsgType(message, now);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LongHashMap<OpenOrder> ordersByClOrdId(FixSession session) {
+        return (LongHashMap<OpenOrder>) session.attachment();
+    }
+
+    private void onNewOrderSingle(FixSession session, FixParser message, long now) {
+        int clOrdIdLength = message.getValueLength(FixTags.CL_ORD_ID);
+        SymbolEntry symbol = symbols.get(message.hashValue(FixTags.SYMBOL));
+        if (symbol == null || !message.valueEquals(FixTags.SYMBOL, symbol.bytes)) {
+            rejectOrder(session, message, ORD_REJ_UNKNOWN_SYMBOL, now);
+            return;
+        }
+        byte side = message.getByte(FixTags.SIDE);
+        long quantity = message.getLong(FixTags.ORDER_QTY);
+        double price = message.getDouble(FixTags.PRICE);
+        long priceTicks = price > 0 ? TickSizes.toTicks(symbol.id, price) : 0;
+        // Accounts are numbered; an order without one belongs to account 0
+        long account = message.getValueLength(FixTags.ACCOUNT) < 0 ? 0 : message.getLong(FixTags.ACCOUNT);
+        if (clOrdIdLength <= 0 || clOrdIdLength > MAX_CL_ORD_ID_LENGTH
+                || account < 0 || account > Integer.MAX_VALUE
+                || (side != SIDE_BUY && side != SIDE_SELL)
+                || message.getByte(FixTags.ORD_TYPE) != ORD_TYPE_LIMIT
+                || quantity <= 0 || quantity > Integer.MAX_VALUE || priceTicks <= 0) {
+            rejectOrder(session, message, ORD_REJ_OTHER, now);
+            return;
+        }
+        LongHashMap<OpenOrder> byClOrdId = ordersByClOrdId(session);
+        long clOrdIdHash = message.hashValue(FixTags.CL_ORD_ID);
+        if (byClOrdId.containsKey(clOrdIdHash)) {
+            rejectOrder(session, message, ORD_REJ_DUPLICATE_ORDER, now);
+            return;
+        }
+
+        Order order = orderPool.acquire(symbol.id, side == SIDE_BUY ? Order.Type.BUY : Order.Type.SELL, priceTicks,
+            (int) quantity);
+        order.setAccountId((int) account);
+        OpenOrder open = takeOpenOrder();
+        open.order = order;
+        open.session = session;
+        open.symbol = symbol;
+        open.side = side;
+        open.clOrdIdLength = message.copyValue(FixTags.CL_ORD_ID, open.clOrdId);
+        open.clOrdIdHash = clOrdIdHash;
+        open.orderQuantity = (int) quantity;
+        open.leavesQuantity = (int) quantity;
+        open.cumQuantity = 0;
+        open.notionalTicks = 0;
+        // Registered before submitting, so fills can never arrive for an unknown order
+        openOrders.put(order.getId(), open);
+        byClOrdId.put(clOrdIdHash, open);
+        if (!engine.submitOrder(order)) {
+            retire(open);
+            rejectOrder(session, message, ORD_REJ_EXCEEDS_LIMIT, now);
+            return;
+        }
+
+        executionReport(open, EXEC_NEW, EXEC_NEW, now);
+        session.send(now);
+    }
+
+    private void onOrderCancelRequest(FixSession session, FixParser message, long now) {
+        OpenOrder open = ordersByClOrdId(session).get(message.hashValue(FixTags.ORIG_CL_ORD_ID));
+        if (open == null || !message.valueEquals(FixTags.ORIG_CL_ORD_ID, open.clOrdId, open.clOrdIdLength)
+                || !engine.cancelOrder(open.order.getId())) {
+            session.begin(FixTags.ORDER_CANCEL_REJECT, now)
+                .addBytes(FixTags.ORDER_ID, NONE)
+                .addValue(FixTags.CL_ORD_ID, message, FixTags.CL_ORD_ID)
+                .addValue(FixTags.ORIG_CL_ORD_ID, message, FixTags.ORIG_CL_ORD_ID)
+                .addChar(FixTags.ORD_STATUS, EXEC_REJECTED)
+                .addChar(FixTags.CXL_REJ_RESPONSE_TO, CXL_REJ_RESPONSE_TO_CANCEL)
+                .addLong(FixTags.CXL_REJ_REASON, CXL_REJ_UNKNOWN_ORDER);
+            session.send(now);
+            return;
+        }
+        // Fills that happened before the cancel took effect are already in the sink; report them first
+        forwardTrades(now);
+        open.leavesQuantity = 0;
+        FixEncoder encoder = session.begin(FixTags.EXECUTION_REPORT, now)
+            .addLong(FixTags.ORDER_ID, open.order.getId())
+            .addLong(FixTags.EXEC_ID, ++nextExecId)
+            .addValue(FixTags.CL_ORD_ID, message, FixTags.CL_ORD_ID)
+            .addBytes(FixTags.ORIG_CL_ORD_ID, open.clOrdId, 0, open.clOrdIdLength)
+            .addChar(FixTags.EXEC_TYPE, EXEC_CANCELED)
+            .addChar(FixTags.ORD_STATUS, EXEC_CANCELED);
+        orderFields(encoder, open);
+        session.send(now);
+        if (openOrders.get(open.order.getId()) == open) {
+            retire(open);
+        }
+    }
+
+    private void rejectOrder(FixSession session, FixParser message, int reason, long now) {
+        session.begin(FixTags.EXECUTION_REPORT, now)
+            .addBytes(FixTags.ORDER_ID, NONE)
+            .addLong(FixTags.EXEC_ID, ++nextExecId)
+            .addValue(FixTags.CL_ORD_ID, message, FixTags.CL_ORD_ID)
+            .addChar(FixTags.EXEC_TYPE, EXEC_REJECTED)
+            .addChar(FixTags.ORD_STATUS, EXEC_REJECTED)
+            .addValue(FixTags.SYMBOL, message, FixTags.SYMBOL)
+            .addValue(FixTags.SIDE, message, FixTags.SIDE)
+            .addLong(FixTags.LEAVES_QTY, 0)
+            .addLong(FixTags.CUM_QTY, 0)
+            .addLong(FixTags.AVG_PX, 0)
+            .addLong(FixTags.ORD_REJ_REASON, reason);
+        session.send(now);
+    }
+
+    private FixEncoder executionReport(OpenOrder open, byte execType, byte ordStatus, long now) {
+        FixEncoder encoder = open.session.begin(FixTags.EXECUTION_REPORT, now)
+            .addLong(FixTags.ORDER_ID, open.order.getId())
+            .addLong(FixTags.EXEC_ID, ++nextExecId)
+            .addBytes(FixTags.CL_ORD_ID, open.clOrdId, 0, open.clOrdIdLength)
+            .addChar(FixTags.EXEC_TYPE, execType)
+            .addChar(FixTags.ORD_STATUS, ordStatus);
+        return orderFields(encoder, open);
+    }
+
+    private static FixEncoder orderFields(FixEncoder encoder, OpenOrder open) {
+        int symbolId = open.symbol.id;
+        double averagePrice = open.cumQuantity == 0 ? 0 : TickSizes.toPrice(symbolId, open.notionalTicks) / open.cumQuantity;
+        return encoder.addBytes(FixTags.SYMBOL, open.symbol.bytes)
+            .addChar(FixTags.SIDE, open.side)
+            .addLong(FixTags.ORDER_QTY, open.orderQuantity)
+            .addPrice(FixTags.PRICE, TickSizes.toPrice(symbolId, open.order.getPriceTicks()))
+            .addLong(FixTags.LEAVES_QTY, open.leavesQuantity)
+            .addLong(FixTags.CUM_QTY, open.cumQuantity)
+            .addPrice(FixTags.AVG_PX, averagePrice);
+    }
+
+    private void forwardTrades(long now) {
+        int count;
+        do {
+            count = trades.drainTo(tradeBatch, tradeBatch.length);
+            for (int i = 0; i < count; i++) {
+                Trade trade = tradeBatch[i];
+                fill(trade.getBuyOrderId(), trade, now);
+                fill(trade.getSellOrderId(), trade, now);
+            }
+        } while (count == tradeBatch.length);
+    }
+
+    private void fill(long orderId, Trade trade, long now) {
+        OpenOrder open = openOrders.get(orderId);
+        if (open == null) {
+            return;
+        }
+        open.leavesQuantity -= trade.getQuantity();
+        open.cumQuantity += trade.getQuantity();
+        open.notionalTicks += trade.getPriceTicks() * trade.getQuantity();
+        executionReport(open, EXEC_TRADE, open.leavesQuantity == 0 ? STATUS_FILLED : STATUS_PARTIALLY_FILLED, now)
+            .addLong(FixTags.LAST_QTY, trade.getQuantity())
+            .addPrice(FixTags.LAST_PX, TickSizes.toPrice(open.symbol.id, trade.getPriceTicks()));
+        open.session.send(now);
+        if (open.leavesQuantity == 0) {
+            retire(open);
+        }
+    }
+
+    private void retire(OpenOrder open) {
+        openOrders.remove(open.order.getId());
+        ordersByClOrdId(open.session).remove(open.clOrdIdHash);
+        open.session = null;
+        open.next = retiring;
+        retiring = open;
+    }
+
+    // Returns done orders to the pool once the book has let go of them
+    private void releaseRetired() {
+        OpenOrder previous = null;
+        OpenOrder open = retiring;
+        while (open != null) {
+            OpenOrder next = open.next;
+            Order order = open.order;
+            if (!order.isResting() && orderBook.getOrder(order.getId()) == null) {
+                if (previous == null) {
+                    retiring = next;
+                } else {
+                    previous.next = next;
+                }
+                orderPool.release(order);
+                open.order = null;
+                open.next = freeOpenOrders;
+                freeOpenOrders = open;
+            } else {
+                previous = open;
+            }
+            open = next;
+        }
+    }
+
+    private OpenOrder takeOpenOrder() {
+        OpenOrder open = freeOpenOrders;
+        if (open == null) {
+            return new OpenOrder();
+        }
+        freeOpenOrders = open.next;
+        open.next = null;
+        return open;
+    }
+
+    private void flush(Connection connection) {
+        ByteBuffer out = connection.out;
+        out.flip();
+        try {
+            connection.channel.write(out);
+        } catch (IOException e) {
+            out.clear();
+            close(connection);
+            return;
+        }
+        out.compact();
+        int interest = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (connection.key.isValid() && connection.key.interestOps() != interest) {
+            connection.key.interestOps(interest);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        if (connection.session != null) {
+            connection.session.disconnected();
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Nothing more to do for a connection that is going away
+        }
+    }
+
+    private final class Connection implements FixTransport {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final FixParser parser = new FixParser();
+        SelectionKey key;
+        FixSession session;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Makes room for a message, flushing first if needed; a connection that still has no room is dropped
+        @Override
+        public ByteBuffer reserve(int length) {
+            if (closed) {
+                return null;
+            }
+            if (out.remaining() < length) {
+                flush(this);
+                if (out.remaining() < length) {
+                    close(this);
+                    return null;
+                }
+            }
+            return out;
+        }
+    }
+
+    private static final class SymbolEntry {
+        final int id;
+        final byte[] bytes;
+
+        SymbolEntry(String symbol) {
+            this.id = SymbolRegistry.intern(symbol);
+            this.bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // An order entered over FIX, from acknowledgement until it is back in the pool
+    private static final class OpenOrder {
+        Order order;
+        FixSession session;
+        SymbolEntry symbol;
+        byte side;
+        final byte[] clOrdId = new byte[MAX_CL_ORD_ID_LENGTH];
+        int clOrdIdLength;
+        long clOrdIdHash;
+        int orderQuantity;
+        int leavesQuantity;
+        int cumQuantity;
+        long notionalTicks;
+        OpenOrder next;
+    }
+}
@@ -0,0 +1,15 @@
+package com.stocktrading.fix;
+
+/**
+ * Receives the application messages of a {@link FixSession}, in sequence.
+ */
+interface FixApplication {
+    /**
+     * Handles an application message. The message is only valid during the call.
+     *
+     * @param session The session the message arrived on
+     * @param message The parsed message
+     * @param now The current time
+     */
+    void onMessage(FixSession session, FixParser message, long now);
+}
@@ -0,0 +1,278 @@
+package com.stocktrading.fix;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds FIX 4.4 messages without creating objects.
+ * Fields are appended to a reusable body array after the MsgType; {@link #writeTo}
+ * then frames the body with BeginString, BodyLength and CheckSum. Numbers, prices and
+ * timestamps are formatted straight into the array.
+ */
+public final class FixEncoder {
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    // Prices are written with up to this many decimal places
+    private static final int PRICE_DECIMALS = 6;
+    private static final long PRICE_SCALE = 1_000_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final byte[] BEGIN_STRING = {'8', '=', 'F', 'I', 'X', '.', '4', '.', '4', FixParser.SOH, '9', '='};
+
+    private final byte[] body;
+    private int length;
+
+    public FixEncoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an encoder.
+     *
+     * @param capacity The longest body it can build
+     */
+    public FixEncoder(int capacity) {
+        this.body = new byte[capacity];
+    }
+
+    /**
+     * Starts a new message, discarding the one being built.
+     *
+     * @param msgType The MsgType character
+     * @return This encoder
+     */
+    public FixEncoder begin(byte msgType) {
+        length = 0;
+        return addChar(FixTags.MSG_TYPE, msgType);
+    }
+
+    /**
+     * Gets the body built so far, from the MsgType field on.
+     *
+     * @return The backing array; only the first {@link #length} bytes are the body
+     */
+    public byte[] array() {
+        return body;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gets the length of the framed message {@link #writeTo} will write.
+     *
+     * @return The encoded length
+     */
+    public int encodedLength() {
+        return BEGIN_STRING.length + digitCount(length) + 1 + length + 7;
+    }
+
+    public FixEncoder addLong(int tag, long value) {
+        putTag(tag);
+        putLong(value);
+        return putSoh();
+    }
+
+    public FixEncoder addChar(int tag, byte value) {
+        putTag(tag);
+        ensure(1);
+        body[length++] = value;
+        return putSoh();
+    }
+
+    public FixEncoder addBytes(int tag, byte[] value) {
+        return addBytes(tag, value, 0, value.length);
+    }
+
+    public FixEncoder addBytes(int tag, byte[] value, int offset, int count) {
+        putTag(tag);
+        ensure(count);
+        System.arraycopy(value, offset, body, length, count);
+        length += count;
+        return putSoh();
+    }
+
+    /**
+     * Copies a field's value from a parsed message, to echo it back. Does nothing if the
+     * message has no such field.
+     *
+     * @param tag The tag to write
+     * @param message The parsed message
+     * @param sourceTag The tag to copy the value of
+     * @return This encoder
+     */
+    public FixEncoder addValue(int tag, FixParser message, int sourceTag) {
+        int offset = message.getValueOffset(sourceTag);
+        if (offset < 0) {
+            return this;
+        }
+        int count = message.getValueLength(sourceTag);
+        putTag(tag);
+        ensure(count);
+        ByteBuffer buffer = message.getBuffer();
+        for (int i = 0; i < count; i++) {
+            body[length++] = buffer.get(offset + i);
+        }
+        return putSoh();
+    }
+
+    /**
+     * Appends a price with up to six decimal places, trailing zeros trimmed.
+     *
+     * @param tag The tag
+     * @param price The price
+     * @return This encoder
+     */
+    public FixEncoder addPrice(int tag, double price) {
+        putTag(tag);
+        long scaled = Math.round(Math.abs(price) * PRICE_SCALE);
+        if (price < 0 && scaled != 0) {
+            ensure(1);
+            body[length++] = '-';
+        }
+        putLong(scaled / PRICE_SCALE);
+        long fraction = scaled % PRICE_SCALE;
+        if (fraction != 0) {
+            int decimals = PRICE_DECIMALS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                decimals--;
+            }
+            ensure(1 + decimals);
+            body[length++] = '.';
+            putDigits(fraction, decimals);
+        }
+        return putSoh();
+    }
+
+    /**
+     * Appends a UTCTimestamp in the yyyyMMdd-HH:mm:ss.SSS format.
+     *
+     * @param tag The tag
+     * @param epochMillis The time in milliseconds since the epoch
+     * @return This encoder
+     */
+    public FixEncoder addTimestamp(int tag, long epochMillis) {
+        putTag(tag);
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+        // Civil date from days since the epoch, in 400-year eras of the proleptic Gregorian calendar
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensure(21);
+        putDigits(year, 4);
+        putDigits(month, 2);
+        putDigits(day, 2);
+        body[length++] = '-';
+        putDigits(millisOfDay / 3_600_000, 2);
+        body[length++] = ':';
+        putDigits(millisOfDay / 60_000 % 60, 2);
+        body[length++] = ':';
+        putDigits(millisOfDay / 1000 % 60, 2);
+        body[length++] = '.';
+        putDigits(millisOfDay % 1000, 3);
+        return putSoh();
+    }
+
+    /**
+     * Appends fields that are already encoded, such as a stored message's body.
+     *
+     * @param fields The encoded fields, each ending in SOH
+     * @param offset The offset of the first field
+     * @param count The number of bytes
+     * @return This encoder
+     */
+    public FixEncoder addEncoded(byte[] fields, int offset, int count) {
+        ensure(count);
+        System.arraycopy(fields, offset, body, length, count);
+        length += count;
+        return this;
+    }
+
+    /**
+     * Frames the message and writes it at a buffer's position.
+     *
+     * @param buffer The buffer to write to
+     * @return The number of bytes written, or 0 if the buffer has no room for the message
+     */
+    public int writeTo(ByteBuffer buffer) {
+        int encodedLength = encodedLength();
+        if (buffer.remaining() < encodedLength) {
+            return 0;
+        }
+        int start = buffer.position();
+        buffer.put(BEGIN_STRING);
+        int digits = digitCount(length);
+        for (int i = digits - 1, value = length; i >= 0; i--, value /= 10) {
+            buffer.put(buffer.position() + i, (byte) ('0' + value % 10));
+        }
+        buffer.position(buffer.position() + digits);
+        buffer.put(FixParser.SOH);
+        buffer.put(body, 0, length);
+
+        int sum = 0;
+        for (int i = start, end = buffer.position(); i < end; i++) {
+            sum += buffer.get(i) & 0xFF;
+        }
+        sum &= 0xFF;
+        buffer.put((byte) '1').put((byte) '0').put((byte) '=');
+        buffer.put((byte) ('0' + sum / 100)).put((byte) ('0' + sum / 10 % 10)).put((byte) ('0' + sum % 10));
+        buffer.put(FixParser.SOH);
+        return encodedLength;
+    }
+
+    private void putTag(int tag) {
+        putLong(tag);
+        ensure(1);
+        body[length++] = '=';
+    }
+
+    private FixEncoder putSoh() {
+        ensure(1);
+        body[length++] = FixParser.SOH;
+        return this;
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            ensure(1);
+            body[length++] = '-';
+            value = -value;
+        }
+        int digits = digitCount(value);
+        ensure(digits);
+        putDigits(value, digits);
+    }
+
+    // Writes exactly the given number of digits, zero padded; the caller has ensured the room
+    private void putDigits(long value, int digits) {
+        for (int i = length + digits - 1; i >= length; i--) {
+            body[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void ensure(int count) {
+        if (length + count > body.length) {
+            throw new IllegalStateException("FIX message body longer than " + body.length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.stocktrading.fix;
+
+import java.util.Arrays;
+
+/**
+ * The application messages a session has sent, kept for resend requests.
+ * Message bodies are copied into one byte ring, and each message's slot is found from
+ * its sequence number, so storing and looking up a message allocates nothing. Old
+ * messages are overwritten as the ring wraps; a resend gap-fills anything no longer held.
+ */
+final class FixMessageStore {
+    private final int mask;
+    private final int[] seqNums;
+    private final long[] starts;
+    private final int[] lengths;
+    private final long[] sendingTimes;
+    private final byte[] msgTypes;
+
+    private final byte[] bytes;
+    // Total bytes ever stored, so a message is still held if it started within the last ring's worth
+    private long writePosition;
+
+    /**
+     * Creates a store.
+     *
+     * @param maxMessages The most messages held, a power of two
+     * @param capacityBytes The most body bytes held
+     */
+    FixMessageStore(int maxMessages, int capacityBytes) {
+        if (Integer.bitCount(maxMessages) != 1) {
+            throw new IllegalArgumentException("Message count must be a power of two: " + maxMessages);
+        }
+        this.mask = maxMessages - 1;
+        this.seqNums = new int[maxMessages];
+        this.starts = new long[maxMessages];
+        this.lengths = new int[maxMessages];
+        this.sendingTimes = new long[maxMessages];
+        this.msgTypes = new byte[maxMessages];
+        this.bytes = new byte[capacityBytes];
+    }
+
+    void add(int seqNum, byte msgType, long sendingTime, byte[] source, int offset, int length) {
+        int slot = seqNum & mask;
+        if (length > bytes.length) {
+            seqNums[slot] = 0;
+            return;
+        }
+        int position = (int) (writePosition % bytes.length);
+        if (position + length > bytes.length) {
+            // Messages never wrap, so a stored body is always one contiguous range
+            writePosition += bytes.length - position;
+            position = 0;
+        }
+        System.arraycopy(source, offset, bytes, position, length);
+        seqNums[slot] = seqNum;
+        starts[slot] = writePosition;
+        lengths[slot] = length;
+        sendingTimes[slot] = sendingTime;
+        msgTypes[slot] = msgType;
+        writePosition += length;
+    }
+
+    boolean contains(int seqNum) {
+        int slot = seqNum & mask;
+        return seqNums[slot] == seqNum && seqNum != 0 && starts[slot] >= writePosition - bytes.length;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int offset(int seqNum) {
+        return (int) (starts[seqNum & mask] % bytes.length);
+    }
+
+    int length(int seqNum) {
+        return lengths[seqNum & mask];
+    }
+
+    long sendingTime(int seqNum) {
+        return sendingTimes[seqNum & mask];
+    }
+
+    byte msgType(int seqNum) {
+        return msgTypes[seqNum & mask];
+    }
+
+    void clear() {
+        Arrays.fill(seqNums, 0);
+        writePosition = 0;
+    }
+}
@@ -0,0 +1,430 @@
+package com.stocktrading.fix;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zero-copy parser of FIX 4.4 tag=value messages.
+ * <p>
+ * Parsing frames one message in a buffer, verifies its checksum and records the tag,
+ * offset and length of every field in primitive arrays. Values stay in the buffer and
+ * are decoded only when asked for, straight from its bytes, so a parser is reused for
+ * every message and parsing creates no objects, Strings included. Callers compare
+ * text values with {@link #valueEquals} or {@link #hashValue} instead of decoding them.
+ * <p>
+ * The recorded fields point into the buffer, so they are only valid until the buffer
+ * is compacted or the next message is parsed.
+ */
+public final class FixParser {
+    public static final byte SOH = 1;
+    public static final int DEFAULT_MAX_FIELDS = 128;
+
+    /** Returned by {@link #parse} when the buffer does not yet hold a whole message. */
+    public static final int INCOMPLETE = 0;
+    /** Returned by {@link #parse} when the buffer does not start with a well-framed message. */
+    public static final int MALFORMED = -1;
+    /** Returned by the integer getters for a missing or non-numeric value. */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final byte[] PREFIX = "8=FIX.4.4\u00019=".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_BODY_LENGTH_DIGITS = 6;
+    private static final int MAX_DECIMAL_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] tags;
+    private final int[] offsets;
+    private final int[] lengths;
+    private int fieldCount;
+
+    private ByteBuffer buffer;
+    private int messageOffset;
+    private int messageLength;
+    private byte msgType;
+    private boolean checksumValid;
+
+    public FixParser() {
+        this(DEFAULT_MAX_FIELDS);
+    }
+
+    /**
+     * Creates a parser.
+     *
+     * @param maxFields The most fields a message may have
+     */
+    public FixParser(int maxFields) {
+        this.tags = new int[maxFields];
+        this.offsets = new int[maxFields];
+        this.lengths = new int[maxFields];
+    }
+
+    /**
+     * Parses the message starting at an offset. A message whose checksum does not match
+     * is still framed, so the caller can skip it, but {@link #isChecksumValid} is false.
+     *
+     * @param buffer The buffer holding the message
+     * @param offset The offset the message starts at
+     * @param limit The end of the readable bytes
+     * @return The length of the message, {@link #INCOMPLETE} or {@link #MALFORMED}
+     */
+    public int parse(ByteBuffer buffer, int offset, int limit) {
+        this.buffer = buffer;
+        fieldCount = 0;
+        msgType = 0;
+        checksumValid = false;
+
+        int available = limit - offset;
+        for (int i = 0; i < PREFIX.length && i < available; i++) {
+            if (buffer.get(offset + i) != PREFIX[i]) {
+                return MALFORMED;
+            }
+        }
+        if (available < PREFIX.length) {
+            return INCOMPLETE;
+        }
+
+        int position = offset + PREFIX.length;
+        int bodyLength = 0;
+        int digits = 0;
+        while (true) {
+            if (position >= limit) {
+                return INCOMPLETE;
+            }
+            byte b = buffer.get(position++);
+            if (b == SOH) {
+                break;
+            }
+            if (b < '0' || b > '9' || ++digits > MAX_BODY_LENGTH_DIGITS) {
+                return MALFORMED;
+            }
+            bodyLength = bodyLength * 10 + (b - '0');
+        }
+        if (digits == 0) {
+            return MALFORMED;
+        }
+
+        // The body runs from MsgType up to the trailing "10=nnn<SOH>"
+        int bodyStart = position;
+        int trailerStart = bodyStart + bodyLength;
+        int end = trailerStart + 7;
+        if (end > limit) {
+            return INCOMPLETE;
+        }
+        if (buffer.get(trailerStart) != '1' || buffer.get(trailerStart + 1) != '0'
+                || buffer.get(trailerStart + 2) != '=' || buffer.get(end - 1) != SOH) {
+            return MALFORMED;
+        }
+        int checksum = 0;
+        for (int i = trailerStart + 3; i < end - 1; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return MALFORMED;
+            }
+            checksum = checksum * 10 + (b - '0');
+        }
+
+        int sum = 0;
+        for (int i = offset; i < trailerStart; i++) {
+            sum += buffer.get(i) & 0xFF;
+        }
+        checksumValid = (sum & 0xFF) == checksum;
+
+        addField(FixTags.BEGIN_STRING, offset + 2, PREFIX.length - 5);
+        addField(FixTags.BODY_LENGTH, offset + PREFIX.length, digits);
+        position = bodyStart;
+        while (position < trailerStart) {
+            int tag = 0;
+            int tagDigits = 0;
+            byte b;
+            while ((b = buffer.get(position++)) != '=') {
+                if (b < '0' || b > '9' || position >= trailerStart) {
+                    return MALFORMED;
+                }
+                tag = tag * 10 + (b - '0');
+                tagDigits++;
+            }
+            int valueStart = position;
+            while (position < trailerStart && buffer.get(position) != SOH) {
+                position++;
+            }
+            if (tagDigits == 0 || position == trailerStart || !addField(tag, valueStart, position - valueStart)) {
+                return MALFORMED;
+            }
+            position++;
+        }
+        if (!addField(FixTags.CHECKSUM, trailerStart + 3, 3)) {
+            return MALFORMED;
+        }
+        // MsgType must be the first field of the body
+        if (fieldCount < 4 || tags[2] != FixTags.MSG_TYPE || lengths[2] == 0) {
+            return MALFORMED;
+        }
+        msgType = lengths[2] == 1 ? buffer.get(offsets[2]) : 0;
+
+        messageOffset = offset;
+        messageLength = end - offset;
+        return messageLength;
+    }
+
+    private boolean addField(int tag, int offset, int length) {
+        if (fieldCount == tags.length) {
+            return false;
+        }
+        tags[fieldCount] = tag;
+        offsets[fieldCount] = offset;
+        lengths[fieldCount] = length;
+        fieldCount++;
+        return true;
+    }
+
+    public boolean isChecksumValid() { return checksumValid; }
+    public int getMessageOffset() { return messageOffset; }
+    public int getMessageLength() { return messageLength; }
+    public int getFieldCount() { return fieldCount; }
+    public ByteBuffer getBuffer() { return buffer; }
+
+    /**
+     * Gets the message type, which is a single character for every message the
+     * acceptor handles.
+     *
+     * @return The MsgType character, or 0 for a longer message type
+     */
+    public byte getMsgType() {
+        return msgType;
+    }
+
+    /**
+     * Gets the tag of a field.
+     *
+     * @param index The field's position in the message
+     * @return The tag
+     */
+    public int getTag(int index) {
+        return tags[index];
+    }
+
+    /**
+     * Finds the first field with a tag.
+     *
+     * @param tag The tag
+     * @return The field's position in the message, or -1 if absent
+     */
+    public int indexOf(int tag) {
+        for (int i = 0; i < fieldCount; i++) {
+            if (tags[i] == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean has(int tag) {
+        return indexOf(tag) >= 0;
+    }
+
+    /**
+     * Gets where a field's value starts in the buffer.
+     *
+     * @param tag The tag
+     * @return The offset, or -1 if absent
+     */
+    public int getValueOffset(int tag) {
+        int index = indexOf(tag);
+        return index < 0 ? -1 : offsets[index];
+    }
+
+    /**
+     * Gets the length of a field's value.
+     *
+     * @param tag The tag
+     * @return The length, or -1 if absent
+     */
+    public int getValueLength(int tag) {
+        int index = indexOf(tag);
+        return index < 0 ? -1 : lengths[index];
+    }
+
+    /**
+     * Gets the first character of a char or boolean field.
+     *
+     * @param tag The tag
+     * @return The character, or 0 if absent or empty
+     */
+    public byte getByte(int tag) {
+        int index = indexOf(tag);
+        return index < 0 || lengths[index] == 0 ? 0 : buffer.get(offsets[index]);
+    }
+
+    /**
+     * Decodes an integer field.
+     *
+     * @param tag The tag
+     * @return The value, or {@link #NO_VALUE} if absent or not an integer
+     */
+    public long getLong(int tag) {
+        int index = indexOf(tag);
+        if (index < 0) {
+            return NO_VALUE;
+        }
+        int position = offsets[index];
+        int end = position + lengths[index];
+        boolean negative = position < end && buffer.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        if (position == end || end - position > MAX_DECIMAL_DIGITS) {
+            return NO_VALUE;
+        }
+        long value = 0;
+        for (; position < end; position++) {
+            byte b = buffer.get(position);
+            if (b < '0' || b > '9') {
+                return NO_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a decimal field such as a price. Up to eighteen significant digits decode
+     * to the double nearest the decimal value, as {@link Double#parseDouble} would.
+     *
+     * @param tag The tag
+     * @return The value, or NaN if absent or not a decimal
+     */
+    public double getDouble(int tag) {
+        int index = indexOf(tag);
+        if (index < 0) {
+            return Double.NaN;
+        }
+        int position = offsets[index];
+        int end = position + lengths[index];
+        boolean negative = position < end && buffer.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; position < end; position++) {
+            byte b = buffer.get(position);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digits < MAX_DECIMAL_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        // Both operands are exact, so the division rounds once, to the nearest double
+        double value = mantissa / POWERS_OF_TEN[Math.max(scale, 0)];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Compares a field's value with ASCII bytes.
+     *
+     * @param tag The tag
+     * @param expected The expected value
+     * @return True if the field is present and equal
+     */
+    public boolean valueEquals(int tag, byte[] expected) {
+        return valueEquals(tag, expected, expected.length);
+    }
+
+    /**
+     * Compares a field's value with the first bytes of an array.
+     *
+     * @param tag The tag
+     * @param expected The array holding the expected value
+     * @param length The length of the expected value
+     * @return True if the field is present and equal
+     */
+    public boolean valueEquals(int tag, byte[] expected, int length) {
+        int index = indexOf(tag);
+        if (index < 0 || lengths[index] != length) {
+            return false;
+        }
+        int offset = offsets[index];
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a field's value, for keying tables by text values without decoding them.
+     * Equal to {@link #hash(byte[])} of the same bytes.
+     *
+     * @param tag The tag
+     * @return The hash, or 0 if absent
+     */
+    public long hashValue(int tag) {
+        int index = indexOf(tag);
+        if (index < 0) {
+            return 0;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offsets[index], end = i + lengths[index]; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Copies a field's value out of the buffer.
+     *
+     * @param tag The tag
+     * @param destination The array to copy into
+     * @return The value's length, or -1 if absent or longer than the array
+     */
+    public int copyValue(int tag, byte[] destination) {
+        int index = indexOf(tag);
+        if (index < 0 || lengths[index] > destination.length) {
+            return -1;
+        }
+        int offset = offsets[index];
+        for (int i = 0; i < lengths[index]; i++) {
+            destination[i] = buffer.get(offset + i);
+        }
+        return lengths[index];
+    }
+
+    /**
+     * Hashes ASCII bytes the way {@link #hashValue} hashes a field.
+     *
+     * @param value The bytes
+     * @return The hash
+     */
+    public static long hash(byte[] value) {
+        return hash(value, value.length);
+    }
+
+    /**
+     * Hashes the first bytes of an array the way {@link #hashValue} hashes a field.
+     *
+     * @param value The bytes
+     * @param length The number of bytes to hash
+     * @return The hash
+     */
+    public static long hash(byte[] value, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (value[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,370 @@
+package com.stocktrading.fix;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The FIX 4.4 session layer for one counterparty: logon, sequence numbers, heartbeats,
+ * test requests, resend requests and logout. Application messages in sequence are
+ * handed to a {@link FixApplication}.
+ * <p>
+ * A session outlives its connections. Sequence numbers carry over when the
+ * counterparty logs on again, unless it asks for a reset, and application messages
+ * sent while it is disconnected are stored, so it can recover them with a resend
+ * request. Sent application messages are kept in a bounded {@link FixMessageStore};
+ * admin messages, and anything the store no longer holds, are gap-filled on resend.
+ * Messages that arrive ahead of a sequence gap are dropped rather than queued: the
+ * resend request brings them back in order.
+ * <p>
+ * A session is confined to the acceptor thread.
+ */
+public class FixSession {
+    public static final int DEFAULT_STORE_MESSAGES = 1 << 14;
+    public static final int DEFAULT_STORE_BYTES = 1 << 22;
+
+    private static final byte YES = 'Y';
+    private static final int REJECT_INVALID_MSG_TYPE = 11;
+    private static final byte[] SEQ_NUM_TOO_LOW = "MsgSeqNum too low".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMP_ID_PROBLEM = "CompID problem".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] senderCompId;
+    private final byte[] targetCompId;
+    private final FixApplication application;
+    private final FixMessageStore store;
+    private final FixEncoder encoder = new FixEncoder();
+
+    private FixTransport transport;
+    private boolean loggedOn;
+    private boolean logoutSent;
+    private int nextSenderSeqNum = 1;
+    private int nextTargetSeqNum = 1;
+    // Highest sequence number seen beyond a gap, while a resend request is outstanding
+    private int resendThrough;
+
+    private long heartbeatMillis;
+    private long lastSentTime;
+    private long lastReceivedTime;
+    private long testRequestTime;
+    private boolean testRequestSent;
+    private long testRequestId;
+
+    // Where the application fields of the message being built start, or -1 for an admin message
+    private int applicationStart = -1;
+    private byte buildingType;
+    private Object attachment;
+
+    FixSession(byte[] senderCompId, byte[] targetCompId, FixApplication application) {
+        this(senderCompId, targetCompId, application, DEFAULT_STORE_MESSAGES, DEFAULT_STORE_BYTES);
+    }
+
+    FixSession(byte[] senderCompId, byte[] targetCompId, FixApplication application, int storeMessages,
+               int storeBytes) {
+        this.senderCompId = senderCompId;
+        this.targetCompId = targetCompId;
+        this.application = application;
+        this.store = new FixMessageStore(storeMessages, storeBytes);
+    }
+
+    public String getSenderCompId() { return new String(senderCompId, StandardCharsets.US_ASCII); }
+    public String getTargetCompId() { return new String(targetCompId, StandardCharsets.US_ASCII); }
+    public boolean isLoggedOn() { return loggedOn; }
+    public int getNextSenderSeqNum() { return nextSenderSeqNum; }
+    public int getNextTargetSeqNum() { return nextTargetSeqNum; }
+
+    byte[] targetCompIdBytes() {
+        return targetCompId;
+    }
+
+    /**
+     * Attaches application state, as a selection key does.
+     */
+    void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    Object attachment() {
+        return attachment;
+    }
+
+    /**
+     * Handles a Logon on a new connection.
+     *
+     * @return False if the connection should be dropped
+     */
+    boolean logon(FixParser message, FixTransport transport, long now) {
+        long heartBtInt = message.getLong(FixTags.HEART_BT_INT);
+        if (heartBtInt <= 0 || !message.valueEquals(FixTags.TARGET_COMP_ID, senderCompId)) {
+            return false;
+        }
+        this.transport = transport;
+        loggedOn = true;
+        logoutSent = false;
+        heartbeatMillis = heartBtInt * 1000;
+        lastReceivedTime = now;
+        testRequestSent = false;
+
+        boolean reset = message.getByte(FixTags.RESET_SEQ_NUM_FLAG) == YES;
+        if (reset) {
+            nextSenderSeqNum = 1;
+            nextTargetSeqNum = 1;
+            store.clear();
+        }
+        long seqNum = message.getLong(FixTags.MSG_SEQ_NUM);
+        if (seqNum < nextTargetSeqNum) {
+            logout(SEQ_NUM_TOO_LOW, now);
+            return false;
+        }
+
+        FixEncoder logon = beginAdmin(FixTags.LOGON, now)
+            .addLong(FixTags.ENCRYPT_METHOD, 0)
+            .addLong(FixTags.HEART_BT_INT, heartBtInt);
+        if (reset) {
+            logon.addChar(FixTags.RESET_SEQ_NUM_FLAG, YES);
+        }
+        send(now);
+
+        if (seqNum > nextTargetSeqNum) {
+            requestResend(seqNum, now);
+        } else {
+            nextTargetSeqNum++;
+        }
+        return true;
+    }
+
+    /**
+     * Handles a message on a logged-on connection.
+     *
+     * @return False if the connection should be dropped
+     */
+    boolean onMessage(FixParser message, long now) {
+        lastReceivedTime = now;
+        testRequestSent = false;
+        if (!message.valueEquals(FixTags.SENDER_COMP_ID, targetCompId)
+                || !message.valueEquals(FixTags.TARGET_COMP_ID, senderCompId)) {
+            logout(COMP_ID_PROBLEM, now);
+            return false;
+        }
+
+        byte msgType = message.getMsgType();
+        if (msgType == FixTags.SEQUENCE_RESET && message.getByte(FixTags.GAP_FILL_FLAG) != YES) {
+            // Reset mode moves the expected sequence number whatever this message's own number is
+            advanceTargetSeqNum(message.getLong(FixTags.NEW_SEQ_NO));
+            return true;
+        }
+
+        long seqNum = message.getLong(FixTags.MSG_SEQ_NUM);
+        if (seqNum == FixParser.NO_VALUE || seqNum < nextTargetSeqNum) {
+            if (seqNum != FixParser.NO_VALUE && message.getByte(FixTags.POSS_DUP_FLAG) == YES) {
+                return true;
+            }
+            logout(SEQ_NUM_TOO_LOW, now);
+            return false;
+        }
+        if (seqNum > nextTargetSeqNum) {
+            // A counterparty that has seen a gap of its own must still get its resend, or
+            // two sides that both see gaps would wait on each other forever
+            if (msgType == FixTags.RESEND_REQUEST) {
+                resend(message.getLong(FixTags.BEGIN_SEQ_NO), message.getLong(FixTags.END_SEQ_NO), now);
+            }
+            requestResend(seqNum, now);
+            if (msgType == FixTags.LOGOUT) {
+                return onLogout(now);
+            }
+            return true;
+        }
+        nextTargetSeqNum++;
+        if (resendThrough != 0 && nextTargetSeqNum > resendThrough) {
+            resendThrough = 0;
+        }
+
+        switch (msgType) {
+            case FixTags.HEARTBEAT:
+            case FixTags.REJECT:
+            case FixTags.LOGON:
+                return true;
+            case FixTags.TEST_REQUEST:
+                beginAdmin(FixTags.HEARTBEAT, now).addValue(FixTags.TEST_REQ_ID, message, FixTags.TEST_REQ_ID);
+                send(now);
+                return true;
+            case FixTags.RESEND_REQUEST:
+                resend(message.getLong(FixTags.BEGIN_SEQ_NO), message.getLong(FixTags.END_SEQ_NO), now);
+                return true;
+            case FixTags.SEQUENCE_RESET:
+                advanceTargetSeqNum(message.getLong(FixTags.NEW_SEQ_NO));
+                return true;
+            case FixTags.LOGOUT:
+                return onLogout(now);
+            default:
+                application.onMessage(this, message, now);
+                return true;
+        }
+    }
+
+    // Confirms a logout the counterparty started
+    private boolean onLogout(long now) {
+        if (!logoutSent) {
+            beginAdmin(FixTags.LOGOUT, now);
+            send(now);
+        }
+        return false;
+    }
+
+    /**
+     * Sends heartbeats and test requests as the heartbeat interval passes.
+     *
+     * @return False if the counterparty has gone silent and the connection should be dropped
+     */
+    boolean onTimer(long now) {
+        if (!loggedOn) {
+            return true;
+        }
+        // Allow a fifth of the interval for transmission before suspecting the counterparty
+        long timeout = heartbeatMillis + heartbeatMillis / 5;
+        if (testRequestSent) {
+            if (now - testRequestTime >= timeout) {
+                return false;
+            }
+        } else if (now - lastReceivedTime >= timeout) {
+            beginAdmin(FixTags.TEST_REQUEST, now).addLong(FixTags.TEST_REQ_ID, ++testRequestId);
+            send(now);
+            testRequestSent = true;
+            testRequestTime = now;
+        }
+        if (now - lastSentTime >= heartbeatMillis) {
+            beginAdmin(FixTags.HEARTBEAT, now);
+            send(now);
+        }
+        return true;
+    }
+
+    /**
+     * Detaches the session from its connection, which has closed.
+     */
+    void disconnected() {
+        transport = null;
+        loggedOn = false;
+    }
+
+    /**
+     * Starts an application message with the standard header filled in. Add the body
+     * fields to the returned encoder, then {@link #send} it.
+     *
+     * @param msgType The MsgType character
+     * @param now The sending time
+     * @return The encoder to add fields to
+     */
+    FixEncoder begin(byte msgType, long now) {
+        beginHeader(msgType, nextSenderSeqNum, now);
+        applicationStart = encoder.length();
+        buildingType = msgType;
+        return encoder;
+    }
+
+    /**
+     * Sends the message started with {@link #begin}, storing application messages for
+     * resend. A message sent while disconnected is only stored.
+     */
+    void send(long now) {
+        int seqNum = nextSenderSeqNum++;
+        if (applicationStart >= 0) {
+            store.add(seqNum, buildingType, now, encoder.array(), applicationStart, encoder.length() - applicationStart);
+        }
+        write();
+        lastSentTime = now;
+    }
+
+    /**
+     * Rejects a message the application does not handle.
+     */
+    void rejectMsgType(FixParser message, long now) {
+        beginAdmin(FixTags.REJECT, now)
+            .addLong(FixTags.REF_SEQ_NUM, message.getLong(FixTags.MSG_SEQ_NUM))
+            .addValue(FixTags.REF_MSG_TYPE, message, FixTags.MSG_TYPE)
+            .addLong(FixTags.SESSION_REJECT_REASON, REJECT_INVALID_MSG_TYPE);
+        send(now);
+    }
+
+    private FixEncoder beginAdmin(byte msgType, long now) {
+        beginHeader(msgType, nextSenderSeqNum, now);
+        applicationStart = -1;
+        return encoder;
+    }
+
+    private void beginHeader(byte msgType, int seqNum, long now) {
+        encoder.begin(msgType)
+            .addBytes(FixTags.SENDER_COMP_ID, senderCompId)
+            .addBytes(FixTags.TARGET_COMP_ID, targetCompId)
+            .addLong(FixTags.MSG_SEQ_NUM, seqNum)
+            .addTimestamp(FixTags.SENDING_TIME, now);
+    }
+
+    private void write() {
+        if (transport == null) {
+            return;
+        }
+        ByteBuffer out = transport.reserve(encoder.encodedLength());
+        if (out != null) {
+            encoder.writeTo(out);
+        }
+    }
+
+    private void logout(byte[] text, long now) {
+        beginAdmin(FixTags.LOGOUT, now).addBytes(FixTags.TEXT, text);
+        send(now);
+        logoutSent = true;
+    }
+
+    private void requestResend(long seqNum, long now) {
+        if (resendThrough == 0) {
+            beginAdmin(FixTags.RESEND_REQUEST, now)
+                .addLong(FixTags.BEGIN_SEQ_NO, nextTargetSeqNum)
+                .addLong(FixTags.END_SEQ_NO, 0);
+            send(now);
+        }
+        resendThrough = (int) Math.max(resendThrough, seqNum);
+    }
+
+    private void advanceTargetSeqNum(long newSeqNo) {
+        if (newSeqNo > nextTargetSeqNum) {
+            nextTargetSeqNum = (int) newSeqNo;
+        }
+        if (resendThrough != 0 && nextTargetSeqNum > resendThrough) {
+            resendThrough = 0;
+        }
+    }
+
+    // Retransmits stored application messages and gap-fills everything else in the range
+    private void resend(long begin, long end, long now) {
+        int last = nextSenderSeqNum - 1;
+        int through = end <= 0 || end > last ? last : (int) end;
+        int gapStart = 0;
+        for (int seqNum = (int) Math.max(begin, 1); seqNum <= through && transport != null; seqNum++) {
+            if (store.contains(seqNum)) {
+                if (gapStart != 0) {
+                    gapFill(gapStart, seqNum, now);
+                    gapStart = 0;
+                }
+                beginHeader(store.msgType(seqNum), seqNum, now);
+                encoder.addChar(FixTags.POSS_DUP_FLAG, YES)
+                    .addTimestamp(FixTags.ORIG_SENDING_TIME, store.sendingTime(seqNum))
+                    .addEncoded(store.bytes(), store.offset(seqNum), store.length(seqNum));
+                write();
+            } else if (gapStart == 0) {
+                gapStart = seqNum;
+            }
+        }
+        if (gapStart != 0) {
+            gapFill(gapStart, through + 1, now);
+        }
+        lastSentTime = now;
+    }
+
+    private void gapFill(int seqNum, int newSeqNo, long now) {
+        beginHeader(FixTags.SEQUENCE_RESET, seqNum, now);
+        encoder.addChar(FixTags.POSS_DUP_FLAG, YES)
+            .addTimestamp(FixTags.ORIG_SENDING_TIME, now)
+            .addChar(FixTags.GAP_FILL_FLAG, YES)
+            .addLong(FixTags.NEW_SEQ_NO, newSeqNo);
+        write();
+    }
+}
@@ -0,0 +1,64 @@
+package com.stocktrading.fix;
+
+/**
+ * The FIX 4.4 tag numbers and message types used by the acceptor.
+ */
+public final class FixTags {
+    public static final int ACCOUNT = 1;
+    public static final int AVG_PX = 6;
+    public static final int BEGIN_SEQ_NO = 7;
+    public static final int BEGIN_STRING = 8;
+    public static final int BODY_LENGTH = 9;
+    public static final int CHECKSUM = 10;
+    public static final int CL_ORD_ID = 11;
+    public static final int CUM_QTY = 14;
+    public static final int END_SEQ_NO = 16;
+    public static final int EXEC_ID = 17;
+    public static final int LAST_PX = 31;
+    public static final int LAST_QTY = 32;
+    public static final int MSG_SEQ_NUM = 34;
+    public static final int MSG_TYPE = 35;
+    public static final int NEW_SEQ_NO = 36;
+    public static final int ORDER_ID = 37;
+    public static final int ORDER_QTY = 38;
+    public static final int ORD_STATUS = 39;
+    public static final int ORD_TYPE = 40;
+    public static final int ORIG_CL_ORD_ID = 41;
+    public static final int POSS_DUP_FLAG = 43;
+    public static final int PRICE = 44;
+    public static final int REF_SEQ_NUM = 45;
+    public static final int SENDER_COMP_ID = 49;
+    public static final int SENDING_TIME = 52;
+    public static final int SIDE = 54;
+    public static final int SYMBOL = 55;
+    public static final int TARGET_COMP_ID = 56;
+    public static final int TEXT = 58;
+    public static final int ENCRYPT_METHOD = 98;
+    public static final int CXL_REJ_REASON = 102;
+    public static final int ORD_REJ_REASON = 103;
+    public static final int HEART_BT_INT = 108;
+    public static final int TEST_REQ_ID = 112;
+    public static final int ORIG_SENDING_TIME = 122;
+    public static final int GAP_FILL_FLAG = 123;
+    public static final int RESET_SEQ_NUM_FLAG = 141;
+    public static final int EXEC_TYPE = 150;
+    public static final int LEAVES_QTY = 151;
+    public static final int REF_MSG_TYPE = 372;
+    public static final int SESSION_REJECT_REASON = 373;
+    public static final int CXL_REJ_RESPONSE_TO = 434;
+
+    public static final byte HEARTBEAT = '0';
+    public static final byte TEST_REQUEST = '1';
+    public static final byte RESEND_REQUEST = '2';
+    public static final byte REJECT = '3';
+    public static final byte SEQUENCE_RESET = '4';
+    public static final byte LOGOUT = '5';
+    public static final byte EXECUTION_REPORT = '8';
+    public static final byte ORDER_CANCEL_REJECT = '9';
+    public static final byte LOGON = 'A';
+    public static final byte NEW_ORDER_SINGLE = 'D';
+    public static final byte ORDER_CANCEL_REQUEST = 'F';
+
+    private FixTags() {
+    }
+}
@@ -0,0 +1,16 @@
+package com.stocktrading.fix;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The connection a {@link FixSession} is logged on over.
+ */
+interface FixTransport {
+    /**
+     * Makes room for an outgoing message.
+     *
+     * @param length The message length
+     * @return The buffer to write the message to, or null if the connection has been dropped
+     */
+    ByteBuffer reserve(int length);
+}
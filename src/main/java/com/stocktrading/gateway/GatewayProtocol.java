@@ -0,0 +1,103 @@
+package com.stocktrading.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The fixed-layout binary order-entry protocol spoken by {@link OrderGateway}.
+ * Every message is big-endian and starts with a 2-byte length covering the whole
+ * message and a 1-byte type; every field sits at a fixed offset after that.
+ * <pre>
+ * client to gateway
+ *   NEW_ORDER  long client order id, 8-byte ASCII symbol (zero padded), byte side (0 buy, 1 sell),
+ *              long price ticks, int quantity
+ *   CANCEL     long client order id, long order id
+ * gateway to client
+ *   ACK        long client order id, long order id
+ *   REJECT     long client order id, byte reason
+ *   FILL       long client order id, long order id, long price ticks, int quantity,
+ *              int leaves quantity, long timestamp
+ *   CANCELLED  long client order id, long order id
+ * </pre>
+ */
+public final class GatewayProtocol {
+    public static final byte NEW_ORDER = 1;
+    public static final byte CANCEL = 2;
+    public static final byte ACK = 3;
+    public static final byte REJECT = 4;
+    public static final byte FILL = 5;
+    public static final byte CANCELLED = 6;
+
+    public static final int HEADER_LENGTH = 3;
+    public static final int NEW_ORDER_LENGTH = HEADER_LENGTH + 8 + 8 + 1 + 8 + 4;
+    public static final int CANCEL_LENGTH = HEADER_LENGTH + 8 + 8;
+    public static final int ACK_LENGTH = HEADER_LENGTH + 8 + 8;
+    public static final int REJECT_LENGTH = HEADER_LENGTH + 8 + 1;
+    public static final int FILL_LENGTH = HEADER_LENGTH + 8 + 8 + 8 + 4 + 4 + 8;
+    public static final int CANCELLED_LENGTH = HEADER_LENGTH + 8 + 8;
+    public static final int MAX_MESSAGE_LENGTH = FILL_LENGTH;
+
+    public static final byte REJECT_UNKNOWN_SYMBOL = 1;
+    public static final byte REJECT_INVALID_ORDER = 2;
+    public static final byte REJECT_UNKNOWN_ORDER = 3;
+    public static final byte REJECT_RISK_LIMIT = 4;
+
+    private GatewayProtocol() {
+    }
+
+    /**
+     * Packs a symbol of up to eight ASCII characters into a long, as it travels on the wire.
+     *
+     * @param symbol The stock symbol
+     * @return The packed symbol
+     */
+    public static long packSymbol(String symbol) {
+        byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > 8) {
+            throw new IllegalArgumentException("Symbol longer than 8 characters: " + symbol);
+        }
+        long packed = 0;
+        for (int i = 0; i < 8; i++) {
+            packed = (packed << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+        return packed;
+    }
+
+    /**
+     * Writes a NEW_ORDER message.
+     *
+     * @param buffer The buffer to write at its position
+     * @param clientOrderId The client's id for the order
+     * @param packedSymbol The symbol, see {@link #packSymbol}
+     * @param buy True for a buy order, false for a sell order
+     * @param priceTicks The limit price in ticks
+     * @param quantity The quantity
+     */
+    public static void putNewOrder(ByteBuffer buffer, long clientOrderId, long packedSymbol, boolean buy,
+                                   long priceTicks, int quantity) {
+        putHeader(buffer, NEW_ORDER_LENGTH, NEW_ORDER);
+        buffer.putLong(clientOrderId);
+        buffer.putLong(packedSymbol);
+        buffer.put(buy ? (byte) 0 : (byte) 1);
+        buffer.putLong(priceTicks);
+        buffer.putInt(quantity);
+    }
+
+    /**
+     * Writes a CANCEL message.
+     *
+     * @param buffer The buffer to write at its position
+     * @param clientOrderId The client's id for the order
+     * @param orderId The order id from the order's ACK
+     */
+    public static void putCancel(ByteBuffer buffer, long clientOrderId, long orderId) {
+        putHeader(buffer, CANCEL_LENGTH, CANCEL);
+        buffer.putLong(clientOrderId);
+        buffer.putLong(orderId);
+    }
+
+    static void putHeader(ByteBuffer buffer, int length, byte type) {
+        buffer.putShort((short) length);
+        buffer.put(type);
+    }
+}
@@ -0,0 +1,436 @@
+package com.stocktrading.gateway;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.OrderPool;
+import com.stocktrading.PriceLadderOrderBook;
+import com.stocktrading.ShardedOrderBook;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.Trade;
+import com.stocktrading.TradeSink;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.util.LongHashMap;
+
+/**
+ * Non-blocking TCP order entry for a {@link TradingEngine}, speaking {@link GatewayProtocol}.
+ * <p>
+ * One selector thread does everything: it accepts connections, decodes orders straight
+ * out of each connection's buffer into orders from its own {@link OrderPool}, submits
+ * them and acknowledges them, and drains the engine's trade sink to send fills back to
+ * the connection that entered each order. Once an order has filled or been cancelled
+ * and has left the book, the thread returns it to the pool, so steady order flow
+ * allocates no orders.
+ * <p>
+ * The gateway is the consumer of the engine's trades: trades of orders entered in-process
+ * are drained and dropped. It cannot front a {@link ShardedOrderBook} or a
+ * {@link PriceLadderOrderBook}, which recycle pooled orders themselves. A connection that stops reading until its output
+ * buffer fills is disconnected; its resting orders stay in the book.
+ */
+public class OrderGateway implements Runnable, Closeable {
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int TRADE_BATCH = 256;
+    private static final long SELECT_TIMEOUT_MILLIS = 1;
+
+    private final TradingEngine engine;
+    private final OrderBook orderBook;
+    private final TradeSink trades;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    // Packed wire symbol to symbol id; never modified after construction
+    private final LongHashMap<Integer> symbolIds;
+
+    // Everything below is confined to the gateway thread
+    private final OrderPool orderPool = new OrderPool();
+    private final LongHashMap<OpenOrder> openOrders = new LongHashMap<>();
+    private OpenOrder freeOpenOrders;
+    // Done orders waiting to leave the book before they go back to the pool
+    private OpenOrder retiring;
+    private final Trade[] tradeBatch = new Trade[TRADE_BATCH];
+    private final List<Connection> connections = new ArrayList<>();
+
+    private volatile boolean running = true;
+    private volatile Thread gatewayThread;
+
+    /**
+     * Opens a gateway listening on an address.
+     *
+     * @param engine The engine to submit orders to
+     * @param symbols The symbols that can be traded, at most eight ASCII characters each
+     * @param address The address to listen on, port 0 for any free port
+     * @throws IOException If the address cannot be bound
+     */
+    public OrderGateway(TradingEngine engine, List<String> symbols, InetSocketAddress address) throws IOException {
+        if (engine.getOrderBook() instanceof ShardedOrderBook || engine.getOrderBook() instanceof PriceLadderOrderBook) {
+            throw new IllegalArgumentException("Price ladder books recycle pooled orders themselves");
+        }
+        this.engine = engine;
+        this.orderBook = engine.getOrderBook();
+        this.trades = engine.getOrderMatcher().getTrades();
+        this.symbolIds = new LongHashMap<>(symbols.size());
+        for (String symbol : symbols) {
+            symbolIds.put(GatewayProtocol.packSymbol(symbol), SymbolRegistry.intern(symbol));
+        }
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Gets the address the gateway listens on.
+     *
+     * @return The bound address
+     * @throws IOException If the address cannot be read
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Gets the number of orders the gateway's pool has created, which stops growing once
+     * the pool covers the orders open at any one time. Read it once the gateway has stopped.
+     *
+     * @return The number of orders created
+     */
+    public long getCreatedOrderCount() {
+        return orderPool.getCreatedCount();
+    }
+
+    @Override
+    public void run() {
+        gatewayThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (!connection.closed && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+                forwardTrades();
+                releaseRetired();
+                for (Connection connection : connections) {
+                    if (!connection.closed && connection.out.position() > 0) {
+                        flush(connection);
+                    }
+                }
+                connections.removeIf(connection -> connection.closed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Connection connection : connections) {
+                close(connection);
+            }
+            gatewayThread = null;
+        }
+    }
+
+    /**
+     * Stops the gateway thread. Connections are closed as it exits.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the gateway and releases its listening socket. Call once the gateway thread
+     * has exited, or if it was never started.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        server.close();
+        selector.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    private void read(Connection connection) {
+        ByteBuffer in = connection.in;
+        try {
+            if (connection.channel.read(in) < 0) {
+                close(connection);
+                return;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+
+        in.flip();
+        while (!connection.closed && in.remaining() >= GatewayProtocol.HEADER_LENGTH) {
+            int position = in.position();
+            int length = in.getShort(position) & 0xFFFF;
+            byte type = in.get(position + 2);
+            int expected = type == GatewayProtocol.NEW_ORDER ? GatewayProtocol.NEW_ORDER_LENGTH
+                : type == GatewayProtocol.CANCEL ? GatewayProtocol.CANCEL_LENGTH : -1;
+            if (length != expected) {
+                // The stream cannot be resynchronised after a bad frame
+                close(connection);
+                return;
+            }
+            if (in.remaining() < length) {
+                break;
+            }
+            if (type == GatewayProtocol.NEW_ORDER) {
+                onNewOrder(connection, in, position);
+            } else {
+                onCancel(connection, in, position);
+            }
+            in.position(position + length);
+        }
+        in.compact();
+    }
+
+    private void onNewOrder(Connection connection, ByteBuffer in, int position) {
+        long clientOrderId = in.getLong(position + 3);
+        Integer symbolId = symbolIds.get(in.getLong(position + 11));
+        byte side = in.get(position + 19);
+        long priceTicks = in.getLong(position + 20);
+        int quantity = in.getInt(position + 28);
+        if (symbolId == null) {
+            reject(connection, clientOrderId, GatewayProtocol.REJECT_UNKNOWN_SYMBOL);
+            return;
+        }
+        if ((side != 0 && side != 1) || priceTicks <= 0 || quantity <= 0) {
+            reject(connection, clientOrderId, GatewayProtocol.REJECT_INVALID_ORDER);
+            return;
+        }
+
+        Order order = orderPool.acquire(symbolId, side == 0 ? Order.Type.BUY : Order.Type.SELL, priceTicks,
+            quantity);
+        OpenOrder open = takeOpenOrder();
+        open.order = order;
+        open.connection = connection;
+        open.clientOrderId = clientOrderId;
+        open.leavesQuantity = quantity;
+        // Registered before submitting, so fills can never arrive for an unknown order
+        openOrders.put(order.getId(), open);
+        if (!engine.submitOrder(order)) {
+            retire(open);
+            reject(connection, clientOrderId, GatewayProtocol.REJECT_RISK_LIMIT);
+            return;
+        }
+
+        if (reserve(connection, GatewayProtocol.ACK_LENGTH)) {
+            ByteBuffer out = connection.out;
+            GatewayProtocol.putHeader(out, GatewayProtocol.ACK_LENGTH, GatewayProtocol.ACK);
+            out.putLong(clientOrderId);
+            out.putLong(order.getId());
+        }
+    }
+
+    private void onCancel(Connection connection, ByteBuffer in, int position) {
+        long clientOrderId = in.getLong(position + 3);
+        long orderId = in.getLong(position + 11);
+        OpenOrder open = openOrders.get(orderId);
+        if (open == null || open.connection != connection || !engine.cancelOrder(orderId)) {
+            reject(connection, clientOrderId, GatewayProtocol.REJECT_UNKNOWN_ORDER);
+            return;
+        }
+        // Fills that happened before the cancel took effect are already in the sink; send them first
+        forwardTrades();
+        if (reserve(connection, GatewayProtocol.CANCELLED_LENGTH)) {
+            ByteBuffer out = connection.out;
+            GatewayProtocol.putHeader(out, GatewayProtocol.CANCELLED_LENGTH, GatewayProtocol.CANCELLED);
+            out.putLong(clientOrderId);
+            out.putLong(orderId);
+        }
+        if (openOrders.get(orderId) == open) {
+            retire(open);
+        }
+    }
+
+    private void reject(Connection connection, long clientOrderId, byte reason) {
+        if (reserve(connection, GatewayProtocol.REJECT_LENGTH)) {
+            ByteBuffer out = connection.out;
+            GatewayProtocol.putHeader(out, GatewayProtocol.REJECT_LENGTH, GatewayProtocol.REJECT);
+            out.putLong(clientOrderId);
+            out.put(reason);
+        }
+    }
+
+    private void forwardTrades() {
+        int count;
+        do {
+            count = trades.drainTo(tradeBatch, tradeBatch.length);
+            for (int i = 0; i < count; i++) {
+                Trade trade = tradeBatch[i];
+                fill(trade.getBuyOrderId(), trade);
+                fill(trade.getSellOrderId(), trade);
+            }
+        } while (count == tradeBatch.length);
+    }
+
+    private void fill(long orderId, Trade trade) {
+        OpenOrder open = openOrders.get(orderId);
+        if (open == null) {
+            return;
+        }
+        open.leavesQuantity -= trade.getQuantity();
+        Connection connection = open.connection;
+        if (!connection.closed && reserve(connection, GatewayProtocol.FILL_LENGTH)) {
+            ByteBuffer out = connection.out;
+            GatewayProtocol.putHeader(out, GatewayProtocol.FILL_LENGTH, GatewayProtocol.FILL);
+            out.putLong(open.clientOrderId);
+            out.putLong(orderId);
+            out.putLong(trade.getPriceTicks());
+            out.putInt(trade.getQuantity());
+            out.putInt(open.leavesQuantity);
+            out.putLong(trade.getTimestamp());
+        }
+        if (open.leavesQuantity == 0) {
+            retire(open);
+        }
+    }
+
+    private void retire(OpenOrder open) {
+        openOrders.remove(open.order.getId());
+        open.connection = null;
+        open.next = retiring;
+        retiring = open;
+    }
+
+    // Returns done orders to the pool once the book has let go of them
+    private void releaseRetired() {
+        OpenOrder previous = null;
+        OpenOrder open = retiring;
+        while (open != null) {
+            OpenOrder next = open.next;
+            Order order = open.order;
+            if (!order.isResting() && orderBook.getOrder(order.getId()) == null) {
+                if (previous == null) {
+                    retiring = next;
+                } else {
+                    previous.next = next;
+                }
+                orderPool.release(order);
+                open.order = null;
+                open.next = freeOpenOrders;
+                freeOpenOrders = open;
+            } else {
+                previous = open;
+            }
+            open = next;
+        }
+    }
+
+    private OpenOrder takeOpenOrder() {
+        OpenOrder open = freeOpenOrders;
+        if (open == null) {
+            return new OpenOrder();
+        }
+        freeOpenOrders = open.next;
+        open.next = null;
+        return open;
+    }
+
+    // Makes room for a message, flushing first if needed; a connection that still has no room is dropped
+    private boolean reserve(Connection connection, int length) {
+        if (connection.closed) {
+            return false;
+        }
+        if (connection.out.remaining() < length) {
+            flush(connection);
+            if (connection.out.remaining() < length) {
+                close(connection);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flush(Connection connection) {
+        ByteBuffer out = connection.out;
+        out.flip();
+        try {
+            connection.channel.write(out);
+        } catch (IOException e) {
+            out.clear();
+            close(connection);
+            return;
+        }
+        out.compact();
+        int interest = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (connection.key.isValid() && connection.key.interestOps() != interest) {
+            connection.key.interestOps(interest);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Nothing more to do for a connection that is going away
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        SelectionKey key;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    // An order entered through the gateway, from acknowledgement until it is back in the pool
+    private static final class OpenOrder {
+        Order order;
+        Connection connection;
+        long clientOrderId;
+        int leavesQuantity;
+        OpenOrder next;
+    }
+}
@@ -0,0 +1,110 @@
+package com.stocktrading.journal;
+
+import com.stocktrading.Order;
+
+/**
+ * Receives the records of an {@link OrderJournal} as a {@link JournalReader} walks it.
+ * Each callback gets the journal position just past its record, which is where reading
+ * would resume to skip everything up to and including it.
+ */
+public interface JournalHandler {
+    /**
+     * Called for an accepted order.
+     *
+     * @param position The journal position after this record
+     * @param orderId The order id
+     * @param symbolId The symbol id in this process, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param timestamp The order time in milliseconds
+     */
+    void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+               int quantity, long timestamp);
+
+    /**
+     * Called for an accepted order with its time in force and, for an iceberg, its
+     * display quantity. Handlers that only rest plain orders can ignore both; by default
+     * this calls the overload without them.
+     *
+     * @param position The journal position after this record
+     * @param orderId The order id
+     * @param symbolId The symbol id in this process, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units, an iceberg's hidden reserve included
+     * @param timeInForce The order's time in force
+     * @param displayQuantity The most units an iceberg shows at a time, or zero
+     * @param timestamp The order time in milliseconds
+     */
+    default void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                       int quantity, Order.TimeInForce timeInForce, int displayQuantity, long timestamp) {
+        onAdd(position, orderId, symbolId, type, priceTicks, quantity, timestamp);
+    }
+
+    /**
+     * Called for an accepted order with its time in force, display quantity and, for a
+     * stop order, its stop price. By default this calls the overload without the stop
+     * price.
+     *
+     * @param position The journal position after this record
+     * @param orderId The order id
+     * @param symbolId The symbol id in this process, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units, an iceberg's hidden reserve included
+     * @param timeInForce The order's time in force, which a stop order takes on when it triggers
+     * @param displayQuantity The most units an iceberg shows at a time, or zero
+     * @param stopPriceTicks The stop price in ticks, or zero if the order is not a stop order
+     * @param timestamp The order time in milliseconds
+     */
+    default void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                       int quantity, Order.TimeInForce timeInForce, int displayQuantity, long stopPriceTicks,
+                       long timestamp) {
+        onAdd(position, orderId, symbolId, type, priceTicks, quantity, timeInForce, displayQuantity, timestamp);
+    }
+
+    /**
+     * Called for an accepted order with every field the journal holds, including the
+     * account it was submitted for. By default this calls the overload without the
+     * account id.
+     *
+     * @param position The journal position after this record
+     * @param orderId The order id
+     * @param symbolId The symbol id in this process, see SymbolRegistry
+     * @param type The order type (BUY or SELL)
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units, an iceberg's hidden reserve included
+     * @param timeInForce The order's time in force, which a stop order takes on when it triggers
+     * @param displayQuantity The most units an iceberg shows at a time, or zero
+     * @param stopPriceTicks The stop price in ticks, or zero if the order is not a stop order
+     * @param accountId The account id, zero in journals written before account ids
+     * @param timestamp The order time in milliseconds
+     */
+    default void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                       int quantity, Order.TimeInForce timeInForce, int displayQuantity, long stopPriceTicks,
+                       int accountId, long timestamp) {
+        onAdd(position, orderId, symbolId, type, priceTicks, quantity, timeInForce, displayQuantity, stopPriceTicks,
+            timestamp);
+    }
+
+    /**
+     * Called for an accepted cancel.
+     *
+     * @param position The journal position after this record
+     * @param orderId The id of the cancelled order
+     * @param timestamp The time of the cancel in milliseconds
+     */
+    void onCancel(long position, long orderId, long timestamp);
+
+    /**
+     * Called for an accepted amend.
+     *
+     * @param position The journal position after this record
+     * @param orderId The id of the amended order
+     * @param quantity The new quantity
+     * @param priceTicks The new price per unit in ticks
+     * @param timestamp The time of the amend in milliseconds
+     */
+    void onAmend(long position, long orderId, int quantity, long priceTicks, long timestamp);
+}
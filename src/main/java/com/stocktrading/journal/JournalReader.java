@@ -0,0 +1,188 @@
+package com.stocktrading.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+
+/**
+ * Walks the records of an {@link OrderJournal} file in the order they were appended.
+ * Symbols are stored under journal-local ids, so the reader re-interns each symbol
+ * name and hands this process's symbol ids to the handler. Reading stops at the first
+ * record whose header has not been written, which is where an interrupted append or
+ * the unused tail of the file begins.
+ */
+public class JournalReader {
+    private final Path path;
+
+    // Symbol ids in this process, indexed by journal symbol id
+    private final List<String> symbols = new ArrayList<>();
+    private int[] symbolIds = new int[16];
+
+    /**
+     * Creates a reader for a journal file.
+     *
+     * @param path The journal file
+     */
+    public JournalReader(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Gets the symbols defined by the journal so far, indexed by journal symbol id.
+     *
+     * @return The symbol names seen by the last read
+     */
+    public List<String> getSymbols() {
+        return Collections.unmodifiableList(symbols);
+    }
+
+    /**
+     * Reads the whole journal.
+     *
+     * @param handler Receives every record
+     * @return The position after the last complete record
+     * @throws IOException If the file cannot be read or is not a journal
+     */
+    public long read(JournalHandler handler) throws IOException {
+        return read(0, handler);
+    }
+
+    /**
+     * Reads the journal, handing the handler only the records that end after a position.
+     * Earlier records are still scanned for symbol definitions.
+     *
+     * @param fromPosition The position to resume after, e.g. one recorded by a snapshot
+     * @param handler Receives every record past the position
+     * @return The position after the last complete record
+     * @throws IOException If the file cannot be read or is not a journal
+     */
+    public long read(long fromPosition, JournalHandler handler) throws IOException {
+        symbols.clear();
+        if (!Files.exists(path)) {
+            return OrderJournal.FILE_HEADER_LENGTH;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < OrderJournal.FILE_HEADER_LENGTH) {
+                return OrderJournal.FILE_HEADER_LENGTH;
+            }
+            MappedByteBuffer chunk = map(channel, 0, Math.min(size, OrderJournal.FILE_HEADER_LENGTH));
+            if (chunk.getInt(0) == 0) {
+                return OrderJournal.FILE_HEADER_LENGTH;
+            }
+            if (chunk.getInt(0) != OrderJournal.MAGIC) {
+                throw new IOException("Not an order journal: " + path);
+            }
+            int chunkSize = chunk.getInt(4);
+
+            long chunkStart = -1;
+            long position = OrderJournal.FILE_HEADER_LENGTH;
+            while (true) {
+                long start = position / chunkSize * chunkSize;
+                if (start >= size) {
+                    return position;
+                }
+                if (start != chunkStart) {
+                    chunk = map(channel, start, Math.min(chunkSize, size - start));
+                    chunkStart = start;
+                }
+                int offset = (int) (position - chunkStart);
+                if (offset + 4 > chunk.limit()) {
+                    return position;
+                }
+                int header = chunk.getInt(offset);
+                if (header == 0) {
+                    return position;
+                }
+                int type = header >>> 24;
+                int length = header & OrderJournal.LENGTH_MASK;
+                if (length < 8 || offset + length > chunk.limit()) {
+                    throw new IOException("Corrupt journal record at " + position + " in " + path);
+                }
+                long end = position + length;
+                dispatch(chunk, offset, type, end, end > fromPosition ? handler : null);
+                position = end;
+            }
+        }
+    }
+
+    private void dispatch(MappedByteBuffer chunk, int offset, int type, long end, JournalHandler handler)
+            throws IOException {
+        switch (type) {
+            case OrderJournal.SYMBOL: {
+                int journalSymbolId = chunk.getInt(offset + 4);
+                byte[] name = new byte[chunk.getShort(offset + 8)];
+                for (int i = 0; i < name.length; i++) {
+                    name[i] = chunk.get(offset + 10 + i);
+                }
+                defineSymbol(journalSymbolId, new String(name, StandardCharsets.UTF_8));
+                break;
+            }
+            case OrderJournal.ADD:
+                if (handler != null) {
+                    // Journals written before time in force have a zero pad byte there, which reads as LIMIT
+                    int length = chunk.getInt(offset) & OrderJournal.LENGTH_MASK;
+                    handler.onAdd(end, chunk.getLong(offset + 8), symbolId(chunk.getInt(offset + 4)),
+                        chunk.get(offset + 28) == 0 ? Order.Type.BUY : Order.Type.SELL,
+                        chunk.getLong(offset + 16), chunk.getInt(offset + 24),
+                        Order.TimeInForce.fromOrdinal(chunk.get(offset + 29)),
+                        length >= OrderJournal.ICEBERG_ADD_LENGTH ? chunk.getInt(offset + 40) : 0,
+                        length >= OrderJournal.STOP_ADD_LENGTH ? chunk.getLong(offset + 48) : 0,
+                        length >= OrderJournal.ICEBERG_ADD_LENGTH ? chunk.getInt(offset + 44) : 0,
+                        chunk.getLong(offset + 32));
+                }
+                break;
+            case OrderJournal.CANCEL:
+                if (handler != null) {
+                    handler.onCancel(end, chunk.getLong(offset + 8), chunk.getLong(offset + 16));
+                }
+                break;
+            case OrderJournal.AMEND:
+                if (handler != null) {
+                    handler.onAmend(end, chunk.getLong(offset + 8), chunk.getInt(offset + 4),
+                        chunk.getLong(offset + 16), chunk.getLong(offset + 24));
+                }
+                break;
+            case OrderJournal.PADDING:
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type + " in " + path);
+        }
+    }
+
+    private void defineSymbol(int journalSymbolId, String symbol) throws IOException {
+        if (journalSymbolId != symbols.size()) {
+            throw new IOException("Journal symbol " + journalSymbolId + " defined out of order in " + path);
+        }
+        if (journalSymbolId == symbolIds.length) {
+            symbolIds = Arrays.copyOf(symbolIds, symbolIds.length * 2);
+        }
+        symbolIds[journalSymbolId] = SymbolRegistry.intern(symbol);
+        symbols.add(symbol);
+    }
+
+    private int symbolId(int journalSymbolId) throws IOException {
+        if (journalSymbolId < 0 || journalSymbolId >= symbols.size()) {
+            throw new IOException("Journal symbol " + journalSymbolId + " used before it was defined in " + path);
+        }
+        return symbolIds[journalSymbolId];
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+}
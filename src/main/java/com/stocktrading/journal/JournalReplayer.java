@@ -0,0 +1,259 @@
+package com.stocktrading.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntToLongFunction;
+
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.OrderMatcher;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TickSizes;
+
+/**
+ * Rebuilds order books from an {@link OrderJournal} by feeding its records back
+ * through {@link OrderBook} and {@link OrderMatcher#matchOrders(String)}.
+ * <p>
+ * Every record is applied and then matched before the next one for the same symbol,
+ * orders keep their journaled ids and timestamps, and trades are stamped with the time
+ * of the record that caused them through a {@link ReplayTimeSource}. So every replay of
+ * a journal produces the same books and, per symbol, the same trades. A journaled
+ * {@link com.stocktrading.TradingEngine} matches each record the same way as it applies
+ * it, so the replay also reproduces the live run's trades, and their timestamps when
+ * its matcher stamps them from a {@code ReplayTimeSource}.
+ * <p>
+ * Symbols are spread over a number of threads. Each thread walks the whole journal,
+ * which is cheap as it is memory-mapped, and applies only the records of the symbols it
+ * owns; a cancel or amend belongs to whichever thread owns the symbol of the resting
+ * order. Trades of different symbols therefore interleave in the matcher's sink in no
+ * fixed order.
+ * <p>
+ * The matcher must match on the calling thread, as the locked and lock-free matchers do,
+ * and must not be running on its own thread during the replay. Its trade sink must be
+ * drained or must not block, since a day's replay can re-execute many trades.
+ * <p>
+ * Recovery starts from the latest {@link OrderBookSnapshot} when there is one and
+ * replays only the records each symbol has not yet seen.
+ */
+public class JournalReplayer {
+    private final Path path;
+    private final int numThreads;
+
+    /**
+     * Creates a replayer.
+     *
+     * @param path The journal file
+     * @param numThreads The number of threads to spread symbols over
+     */
+    public JournalReplayer(Path path, int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.path = path;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Replays the whole journal.
+     *
+     * @param orderBook The book to rebuild, normally empty
+     * @param orderMatcher The matcher to re-execute trades with
+     * @param clock The time source the matcher stamps trades with
+     * @return The journal position after the last replayed record
+     * @throws IOException If the journal cannot be read
+     */
+    public long replay(OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock) throws IOException {
+        return replay(orderBook, orderMatcher, clock, 0);
+    }
+
+    /**
+     * Replays the records that end after a position, e.g. the tail after a snapshot.
+     *
+     * @param orderBook The book to apply the records to
+     * @param orderMatcher The matcher to re-execute trades with
+     * @param clock The time source the matcher stamps trades with
+     * @param fromPosition The journal position to resume after
+     * @return The journal position after the last replayed record
+     * @throws IOException If the journal cannot be read
+     */
+    public long replay(OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock, long fromPosition)
+            throws IOException {
+        return replay(orderBook, orderMatcher, clock, fromPosition, symbolId -> fromPosition);
+    }
+
+    /**
+     * Replays the records each symbol of a loaded snapshot has not seen yet, and every
+     * record of symbols the snapshot does not hold.
+     *
+     * @param orderBook The book the snapshot was loaded into
+     * @param orderMatcher The matcher to re-execute trades with
+     * @param clock The time source the matcher stamps trades with
+     * @param snapshot The snapshot loaded into the book
+     * @return The journal position after the last replayed record
+     * @throws IOException If the journal cannot be read
+     */
+    public long replay(OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock,
+                       OrderBookSnapshot snapshot) throws IOException {
+        // Symbols missing from the snapshot replay from the start, so reading does too
+        return replay(orderBook, orderMatcher, clock, 0, snapshot::getJournalPosition);
+    }
+
+    /**
+     * Rebuilds a book from a snapshot, if the file exists, and the journal after it.
+     *
+     * @param snapshotPath The latest snapshot file, which may not exist
+     * @param orderBook The book to rebuild, which must be empty
+     * @param orderMatcher The matcher to re-execute trades with
+     * @param clock The time source the matcher stamps trades with
+     * @return The journal position after the last replayed record
+     * @throws IOException If the snapshot or journal cannot be read
+     */
+    public long recover(Path snapshotPath, OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock)
+            throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return replay(orderBook, orderMatcher, clock);
+        }
+        return replay(orderBook, orderMatcher, clock, OrderBookSnapshot.load(snapshotPath, orderBook));
+    }
+
+    private long replay(OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock, long readFrom,
+                        IntToLongFunction appliedThrough) throws IOException {
+        long[] ends = new long[numThreads];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int thread = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    ends[thread] = new JournalReader(path).read(readFrom,
+                        new Applier(thread, orderBook, orderMatcher, clock, appliedThrough));
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    clock.clear();
+                }
+            }, "journal-replay-" + i);
+            threads[i].start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying " + path, e);
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t != null) {
+            throw new IllegalStateException("Replay of " + path + " failed", t);
+        }
+        // Every thread read the same journal, so they agree on where it ends
+        return ends[0];
+    }
+
+    // Applies the records of the symbols one replay thread owns
+    private class Applier implements JournalHandler {
+        private final int thread;
+        private final OrderBook orderBook;
+        private final OrderMatcher orderMatcher;
+        private final ReplayTimeSource clock;
+        // Position up to which each symbol's records are already in the book
+        private final IntToLongFunction appliedThrough;
+
+        Applier(int thread, OrderBook orderBook, OrderMatcher orderMatcher, ReplayTimeSource clock,
+                IntToLongFunction appliedThrough) {
+            this.thread = thread;
+            this.orderBook = orderBook;
+            this.orderMatcher = orderMatcher;
+            this.clock = clock;
+            this.appliedThrough = appliedThrough;
+        }
+
+        // True if this thread owns the symbol and the record is not yet in the book
+        private boolean applies(int symbolId, long position) {
+            return symbolId % numThreads == thread && position > appliedThrough.applyAsLong(symbolId);
+        }
+
+        @Override
+        public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                          int quantity, long timestamp) {
+            onAdd(position, orderId, symbolId, type, priceTicks, quantity, Order.TimeInForce.LIMIT, 0, 0, timestamp);
+        }
+
+        @Override
+        public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                          int quantity, Order.TimeInForce timeInForce, int displayQuantity, long timestamp) {
+            onAdd(position, orderId, symbolId, type, priceTicks, quantity, timeInForce, displayQuantity, 0, timestamp);
+        }
+
+        @Override
+        public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                          int quantity, Order.TimeInForce timeInForce, int displayQuantity, long stopPriceTicks,
+                          long timestamp) {
+            onAdd(position, orderId, symbolId, type, priceTicks, quantity, timeInForce, displayQuantity,
+                stopPriceTicks, 0, timestamp);
+        }
+
+        @Override
+        public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                          int quantity, Order.TimeInForce timeInForce, int displayQuantity, long stopPriceTicks,
+                          int accountId, long timestamp) {
+            if (!applies(symbolId, position)) {
+                return;
+            }
+            clock.set(timestamp);
+            Order order;
+            if (stopPriceTicks != 0) {
+                // Armed again, and triggered by the replayed trades just as it was live
+                order = Order.restoreStop(orderId, symbolId, type, priceTicks, quantity, timeInForce, stopPriceTicks,
+                    timestamp);
+            } else if (displayQuantity > 0) {
+                // Split the way the iceberg was when it was submitted
+                int shown = Math.min(displayQuantity, quantity);
+                order = Order.restoreIceberg(orderId, symbolId, type, priceTicks, shown, quantity - shown,
+                    displayQuantity, timestamp);
+            } else {
+                order = Order.restore(orderId, symbolId, type, priceTicks, quantity, timeInForce, timestamp);
+            }
+            // Trades carry the account ids, so positions rebuilt from them match the live ones
+            order.setAccountId(accountId);
+            if (!order.rests()) {
+                // Executes against the book as replayed so far, exactly as it did on arrival
+                orderMatcher.matchIncoming(order);
+                return;
+            }
+            orderBook.addOrder(order);
+            orderMatcher.matchOrders(SymbolRegistry.getSymbol(symbolId));
+        }
+
+        @Override
+        public void onCancel(long position, long orderId, long timestamp) {
+            // Only the owning thread can have added the order, so others find nothing or a foreign symbol
+            Order order = orderBook.getOrder(orderId);
+            if (order == null || !applies(order.getSymbolId(), position)) {
+                return;
+            }
+            clock.set(timestamp);
+            orderBook.cancelOrder(orderId);
+        }
+
+        @Override
+        public void onAmend(long position, long orderId, int quantity, long priceTicks, long timestamp) {
+            Order order = orderBook.getOrder(orderId);
+            if (order == null || !applies(order.getSymbolId(), position)) {
+                return;
+            }
+            clock.set(timestamp);
+            orderBook.amendOrder(orderId, quantity, TickSizes.toPrice(order.getSymbolId(), priceTicks));
+            orderMatcher.matchOrders(order.getSymbol());
+        }
+    }
+}
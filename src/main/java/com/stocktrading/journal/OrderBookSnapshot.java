@@ -0,0 +1,126 @@
+package com.stocktrading.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.util.IntHashMap;
+
+/**
+ * A point-in-time copy of the resting orders of a set of symbols, written by a
+ * {@link SnapshotWriter}. Each symbol records the journal position its orders reflect:
+ * every journaled command for the symbol up to that position is in the snapshot and
+ * none after it. Symbols are copied one after another, so their positions differ,
+ * and recovery replays each symbol's journal records from its own position.
+ */
+public class OrderBookSnapshot {
+    private final List<String> symbols;
+    // Journal position by symbol id
+    private final IntHashMap<Long> journalPositions;
+    private final long minJournalPosition;
+    private final int orderCount;
+
+    private OrderBookSnapshot(List<String> symbols, IntHashMap<Long> journalPositions,
+                              long minJournalPosition, int orderCount) {
+        this.symbols = symbols;
+        this.journalPositions = journalPositions;
+        this.minJournalPosition = minJournalPosition;
+        this.orderCount = orderCount;
+    }
+
+    /**
+     * Restores a snapshot's orders into a book, keeping their ids, timestamps, accounts
+     * and priority within each price.
+     *
+     * @param path The snapshot file
+     * @param orderBook The book to restore into, normally empty
+     * @return The loaded snapshot, for replaying the journal after it
+     * @throws IOException If the file cannot be read or is not a snapshot
+     */
+    public static OrderBookSnapshot load(Path path, OrderBook orderBook) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SnapshotWriter.MAGIC) {
+                throw new IOException("Not an order book snapshot: " + path);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > SnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+
+            int symbolCount = in.readInt();
+            List<String> symbols = new ArrayList<>(symbolCount);
+            IntHashMap<Long> journalPositions = new IntHashMap<>();
+            long minJournalPosition = Long.MAX_VALUE;
+            int orderCount = 0;
+            for (int i = 0; i < symbolCount; i++) {
+                String symbol = in.readUTF();
+                int symbolId = SymbolRegistry.intern(symbol);
+                long journalPosition = in.readLong();
+                symbols.add(symbol);
+                journalPositions.put(symbolId, journalPosition);
+                minJournalPosition = Math.min(minJournalPosition, journalPosition);
+
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    long orderId = in.readLong();
+                    Order.Type type = in.readByte() == 0 ? Order.Type.BUY : Order.Type.SELL;
+                    long priceTicks = in.readLong();
+                    int quantity = in.readInt();
+                    long timestamp = in.readLong();
+                    int hiddenQuantity = version == 1 ? 0 : in.readInt();
+                    int displayQuantity = version == 1 ? 0 : in.readInt();
+                    Order.TimeInForce timeInForce = version < 3
+                        ? Order.TimeInForce.LIMIT : Order.TimeInForce.fromOrdinal(in.readByte());
+                    long stopPriceTicks = version < 3 ? 0 : in.readLong();
+                    int accountId = version < 4 ? 0 : in.readInt();
+                    Order order;
+                    if (stopPriceTicks != 0) {
+                        order = Order.restoreStop(orderId, symbolId, type, priceTicks, quantity, timeInForce,
+                            stopPriceTicks, timestamp);
+                    } else if (displayQuantity > 0) {
+                        order = Order.restoreIceberg(orderId, symbolId, type, priceTicks, quantity, hiddenQuantity,
+                            displayQuantity, timestamp);
+                    } else {
+                        order = Order.restore(orderId, symbolId, type, priceTicks, quantity, timestamp);
+                    }
+                    order.setAccountId(accountId);
+                    orderBook.addOrder(order);
+                }
+                orderCount += count;
+            }
+            return new OrderBookSnapshot(Collections.unmodifiableList(symbols), journalPositions,
+                symbolCount == 0 ? 0 : minJournalPosition, orderCount);
+        }
+    }
+
+    public List<String> getSymbols() { return symbols; }
+    public int getOrderCount() { return orderCount; }
+
+    /**
+     * Gets the earliest journal position of any symbol, where a tail replay starts reading.
+     *
+     * @return The smallest symbol journal position
+     */
+    public long getMinJournalPosition() {
+        return minJournalPosition;
+    }
+
+    /**
+     * Gets the journal position a symbol's orders reflect.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @return The position, or zero if the symbol is not in the snapshot
+     */
+    public long getJournalPosition(int symbolId) {
+        Long position = journalPositions.get(symbolId);
+        return position == null ? 0 : position;
+    }
+}
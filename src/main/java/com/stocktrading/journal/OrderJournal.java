@@ -0,0 +1,366 @@
+package com.stocktrading.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+
+/**
+ * Append-only, memory-mapped write-ahead log of accepted orders, cancels and amends.
+ * An append copies a fixed-layout binary record into the mapped file, which puts it in
+ * the page cache: it survives the process dying as soon as the append returns. Getting
+ * it onto the disk is left to a background thread that forces the mapping once per
+ * sync interval, so one fsync covers every record appended during that interval.
+ * <p>
+ * The file starts with an 8-byte header, the magic number and chunk size, and is mapped
+ * one chunk at a time. Records are little-endian, 8-byte aligned and never span chunks;
+ * each starts with an int holding the record type in its top byte and its length in the
+ * rest, written after the body so a torn append reads as the end of the log:
+ * <pre>
+ * ADD     40 bytes  header, symbol, order id, price ticks, quantity, side, time in force, pad, timestamp
+ *         48 bytes  the same for an iceberg or a non-zero account, with an iceberg's total
+ *                   quantity, then display quantity or zero, account id
+ *         56 bytes  the same for a stop order, then stop price ticks
+ * CANCEL  24 bytes  header, pad, order id, timestamp
+ * AMEND   32 bytes  header, quantity, order id, price ticks, timestamp
+ * SYMBOL  10 + name header, journal symbol id, name length, UTF-8 name, padded to 8
+ * PADDING rest of a chunk that the next record does not fit in
+ * </pre>
+ * Symbols are numbered in order of first use, since SymbolRegistry ids only hold within
+ * one process. Journals written before account ids have zero in the account id's place,
+ * which reads as account 0. Every command carries its time, so a replay can stamp the trades it
+ * re-executes without reading the clock.
+ */
+public class OrderJournal implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+    public static final long DEFAULT_SYNC_INTERVAL_MICROS = 1000;
+
+    static final int MAGIC = 0x4E524A4F;
+    static final int FILE_HEADER_LENGTH = 8;
+    static final int LENGTH_MASK = 0xFFFFFF;
+
+    static final int ADD = 1;
+    static final int CANCEL = 2;
+    static final int AMEND = 3;
+    static final int SYMBOL = 4;
+    static final int PADDING = 5;
+
+    static final int ADD_LENGTH = 40;
+    static final int ICEBERG_ADD_LENGTH = 48;
+    static final int STOP_ADD_LENGTH = 56;
+    static final int CANCEL_LENGTH = 24;
+    static final int AMEND_LENGTH = 32;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final long syncIntervalNanos;
+
+    // Append state, guarded by this
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long position;
+    // Journal symbol id + 1 by SymbolRegistry id; zero until the symbol is written
+    private int[] journalSymbolIds = new int[16];
+    private int symbolCount;
+    // Filled chunks not yet forced to disk
+    private final List<MappedByteBuffer> unsyncedChunks = new ArrayList<>();
+
+    private final Object syncLock = new Object();
+    private volatile long syncedPosition;
+    private volatile boolean open = true;
+    private final Thread syncThread;
+
+    /**
+     * Opens a journal with the default chunk size and sync interval.
+     *
+     * @param path The journal file, created if it does not exist
+     * @throws IOException If the file cannot be opened or is not a journal
+     */
+    public OrderJournal(Path path) throws IOException {
+        this(path, DEFAULT_CHUNK_SIZE, DEFAULT_SYNC_INTERVAL_MICROS);
+    }
+
+    /**
+     * Opens a journal, appending after its last complete record if it already exists.
+     *
+     * @param path The journal file, created if it does not exist
+     * @param chunkSize The bytes mapped at a time, a multiple of 8 of at least 1 KiB;
+     *                  an existing journal keeps the chunk size it was created with
+     * @param syncIntervalMicros How often appended records are forced to disk: zero forces
+     *                           on every append, a negative value only on sync and close
+     * @throws IOException If the file cannot be opened or is not a journal
+     */
+    public OrderJournal(Path path, int chunkSize, long syncIntervalMicros) throws IOException {
+        if (chunkSize < 1024 || chunkSize % 8 != 0) {
+            throw new IllegalArgumentException("Chunk size must be a multiple of 8 of at least 1024");
+        }
+        this.path = path;
+
+        // Recover the end of the log and the symbols it already defines
+        JournalReader reader = new JournalReader(path);
+        long end = reader.read(Long.MAX_VALUE, null);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedByteBuffer header = map(0, FILE_HEADER_LENGTH);
+        if (header.getInt(0) == MAGIC) {
+            chunkSize = header.getInt(4);
+        } else {
+            header.putInt(4, chunkSize);
+            header.putInt(0, MAGIC);
+        }
+        this.chunkSize = chunkSize;
+        for (String symbol : reader.getSymbols()) {
+            journalSymbolIds = ensureCapacity(journalSymbolIds, SymbolRegistry.intern(symbol));
+            journalSymbolIds[SymbolRegistry.intern(symbol)] = ++symbolCount;
+        }
+        this.position = end;
+        this.syncedPosition = end;
+        this.chunkStart = end / chunkSize * chunkSize;
+        this.chunk = map(chunkStart, chunkSize);
+
+        this.syncIntervalNanos = syncIntervalMicros * 1000;
+        if (syncIntervalMicros > 0) {
+            syncThread = new Thread(this::runSync, "order-journal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    public Path getPath() { return path; }
+    public int getChunkSize() { return chunkSize; }
+
+    /**
+     * Gets the position after the last appended record.
+     *
+     * @return The append position
+     */
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the position up to which records are known to be on disk.
+     *
+     * @return The synced position
+     */
+    public long getSyncedPosition() {
+        return syncedPosition;
+    }
+
+    /**
+     * Records an accepted order.
+     *
+     * @param order The order
+     * @return The journal position after the record
+     */
+    public long appendAdd(Order order) {
+        long end;
+        synchronized (this) {
+            int journalSymbolId = journalSymbolId(order.getSymbolId());
+            int length = order.isStop() ? STOP_ADD_LENGTH
+                : order.isIceberg() || order.getAccountId() != 0 ? ICEBERG_ADD_LENGTH : ADD_LENGTH;
+            int offset = reserve(length);
+            chunk.putInt(offset + 4, journalSymbolId);
+            chunk.putLong(offset + 8, order.getId());
+            chunk.putLong(offset + 16, order.getPriceTicks());
+            chunk.putInt(offset + 24, order.getRemainingQuantity());
+            chunk.put(offset + 28, (byte) (order.getType() == Order.Type.BUY ? 0 : 1));
+            chunk.put(offset + 29, (byte) order.getTimeInForce().ordinal());
+            chunk.putLong(offset + 32, order.getTimestamp());
+            if (length > ADD_LENGTH) {
+                chunk.putInt(offset + 40, order.getDisplayQuantity());
+                chunk.putInt(offset + 44, order.getAccountId());
+            }
+            if (order.isStop()) {
+                chunk.putLong(offset + 48, order.getStopPriceTicks());
+            }
+            end = commit(offset, ADD, length);
+        }
+        syncIfEveryAppend();
+        return end;
+    }
+
+    /**
+     * Records an accepted cancel.
+     *
+     * @param orderId The id of the cancelled order
+     * @param timestamp The time of the cancel in milliseconds
+     * @return The journal position after the record
+     */
+    public long appendCancel(long orderId, long timestamp) {
+        long end;
+        synchronized (this) {
+            int offset = reserve(CANCEL_LENGTH);
+            chunk.putLong(offset + 8, orderId);
+            chunk.putLong(offset + 16, timestamp);
+            end = commit(offset, CANCEL, CANCEL_LENGTH);
+        }
+        syncIfEveryAppend();
+        return end;
+    }
+
+    /**
+     * Records an accepted amend.
+     *
+     * @param orderId The id of the amended order
+     * @param quantity The new quantity
+     * @param priceTicks The new price per unit in ticks
+     * @param timestamp The time of the amend in milliseconds
+     * @return The journal position after the record
+     */
+    public long appendAmend(long orderId, int quantity, long priceTicks, long timestamp) {
+        long end;
+        synchronized (this) {
+            int offset = reserve(AMEND_LENGTH);
+            chunk.putInt(offset + 4, quantity);
+            chunk.putLong(offset + 8, orderId);
+            chunk.putLong(offset + 16, priceTicks);
+            chunk.putLong(offset + 24, timestamp);
+            end = commit(offset, AMEND, AMEND_LENGTH);
+        }
+        syncIfEveryAppend();
+        return end;
+    }
+
+    // Writes the symbol's definition the first time it is journaled
+    private int journalSymbolId(int symbolId) {
+        if (symbolId < journalSymbolIds.length && journalSymbolIds[symbolId] != 0) {
+            return journalSymbolIds[symbolId] - 1;
+        }
+        int journalSymbolId = symbolCount;
+        byte[] name = SymbolRegistry.getSymbol(symbolId).getBytes(StandardCharsets.UTF_8);
+        int length = (10 + name.length + 7) & ~7;
+        int offset = reserve(length);
+        chunk.putInt(offset + 4, journalSymbolId);
+        chunk.putShort(offset + 8, (short) name.length);
+        for (int i = 0; i < name.length; i++) {
+            chunk.put(offset + 10 + i, name[i]);
+        }
+        commit(offset, SYMBOL, length);
+
+        journalSymbolIds = ensureCapacity(journalSymbolIds, symbolId);
+        journalSymbolIds[symbolId] = ++symbolCount;
+        return journalSymbolId;
+    }
+
+    // Returns the chunk offset to write a record of the given length at, moving to the next chunk if needed
+    private int reserve(int length) {
+        if (!open) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int offset = (int) (position - chunkStart);
+        if (offset + length > chunkSize) {
+            if (offset < chunkSize) {
+                chunk.putInt(offset, PADDING << 24 | (chunkSize - offset));
+            }
+            unsyncedChunks.add(chunk);
+            chunkStart += chunkSize;
+            position = chunkStart;
+            try {
+                chunk = map(chunkStart, chunkSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to extend journal " + path, e);
+            }
+            offset = 0;
+        }
+        return offset;
+    }
+
+    private long commit(int offset, int type, int length) {
+        // The header goes last, so readers never see a record whose body is incomplete
+        chunk.putInt(offset, type << 24 | length);
+        position = chunkStart + offset + length;
+        return position;
+    }
+
+    private void syncIfEveryAppend() {
+        if (syncIntervalNanos == 0) {
+            sync();
+        }
+    }
+
+    private void runSync() {
+        while (open) {
+            LockSupport.parkNanos(syncIntervalNanos);
+            sync();
+        }
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     */
+    public void sync() {
+        synchronized (syncLock) {
+            long target;
+            MappedByteBuffer current;
+            MappedByteBuffer[] filled = null;
+            synchronized (this) {
+                target = position;
+                current = chunk;
+                if (!unsyncedChunks.isEmpty()) {
+                    filled = unsyncedChunks.toArray(new MappedByteBuffer[0]);
+                    unsyncedChunks.clear();
+                }
+            }
+            if (target == syncedPosition) {
+                return;
+            }
+            if (filled != null) {
+                for (MappedByteBuffer buffer : filled) {
+                    buffer.force();
+                }
+            }
+            current.force();
+            syncedPosition = target;
+        }
+    }
+
+    /**
+     * Forces outstanding records to disk and closes the file. Appending afterwards throws.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        if (syncThread != null) {
+            LockSupport.unpark(syncThread);
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+        channel.close();
+    }
+
+    private MappedByteBuffer map(long start, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int[] ensureCapacity(int[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+    }
+}
@@ -0,0 +1,59 @@
+package com.stocktrading.journal;
+
+import com.stocktrading.TimeSource;
+
+/**
+ * Time source for matchers that a {@link JournalReplayer} drives.
+ * On a replay thread it returns the journaled time of the record being applied, so
+ * re-executed trades get the same timestamps on every replay. Each replay thread has
+ * its own time, since several of them share one matcher. On any other thread it reads
+ * the fallback clock, so the same matcher keeps working once live trading resumes.
+ * A journaled {@link com.stocktrading.TradingEngine} whose matcher uses one sets it to
+ * each record's time too, so live trades carry the timestamps a replay gives them.
+ */
+public class ReplayTimeSource implements TimeSource {
+    private final TimeSource fallback;
+
+    // Time of the record being applied; NOT_REPLAYING off replay threads
+    private final ThreadLocal<long[]> replayTime = ThreadLocal.withInitial(() -> new long[] { NOT_REPLAYING });
+
+    private static final long NOT_REPLAYING = Long.MIN_VALUE;
+
+    /**
+     * Creates a replay time source falling back to the system clock.
+     */
+    public ReplayTimeSource() {
+        this(TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a replay time source.
+     *
+     * @param fallback The clock to read outside replay threads
+     */
+    public ReplayTimeSource(TimeSource fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Makes the calling thread read a journaled time until {@link #clear()}.
+     *
+     * @param timestamp The time of the record being applied
+     */
+    public void set(long timestamp) {
+        replayTime.get()[0] = timestamp;
+    }
+
+    /**
+     * Returns the calling thread to the fallback clock.
+     */
+    public void clear() {
+        replayTime.get()[0] = NOT_REPLAYING;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        long time = replayTime.get()[0];
+        return time == NOT_REPLAYING ? fallback.currentTimeMillis() : time;
+    }
+}
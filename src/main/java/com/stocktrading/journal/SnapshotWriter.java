@@ -0,0 +1,143 @@
+package com.stocktrading.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.stocktrading.Order;
+import com.stocktrading.SnapshottableOrderBook;
+
+/**
+ * Writes an {@link OrderBookSnapshot} file one symbol at a time.
+ * Copying a symbol's orders only touches memory, so the caller can do it inside a
+ * brief per-symbol pause and write the copy out once the symbol is running again.
+ * The file is written under a temporary name and moved into place on commit, so the
+ * snapshot at the final path is always complete.
+ * <pre>
+ * header  int magic, int version, int symbol count
+ * symbol  UTF name, long journal position, int order count, then per order:
+ *         long id, byte side, long price ticks, int quantity, long timestamp,
+ *         int hidden quantity, int display quantity, byte time in force, long stop price ticks,
+ *         int account id
+ * </pre>
+ * An order's stop price is zero unless it is a stop order still waiting to trigger.
+ * Version 1 files lack the last five fields and hold no icebergs; version 2 files lack
+ * the last three and hold no stop orders; version 3 files lack the account id, and
+ * their orders load as account 0.
+ */
+public class SnapshotWriter implements Closeable {
+    static final int MAGIC = 0x4F42534E;
+    static final int VERSION = 4;
+
+    private final Path path;
+    private final Path tempPath;
+    private final DataOutputStream out;
+
+    // The copied symbol, waiting to be written out
+    private final ByteArrayOutputStream copyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream copy = new DataOutputStream(copyBytes);
+    private String copiedSymbol;
+    private long copiedPosition;
+    private int copiedCount;
+
+    private boolean committed;
+
+    /**
+     * Starts a snapshot.
+     *
+     * @param path The snapshot file to create or replace on commit
+     * @param symbolCount The number of symbols that will be written
+     * @throws IOException If the temporary file cannot be created
+     */
+    public SnapshotWriter(Path path, int symbolCount) throws IOException {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(symbolCount);
+    }
+
+    /**
+     * Copies a symbol's resting orders into memory. The caller makes the copy consistent
+     * by keeping the symbol's orders unchanged meanwhile.
+     *
+     * @param symbol The stock symbol
+     * @param journalPosition The journal position the symbol's orders reflect
+     * @param orderBook The book to copy from
+     */
+    public void copySymbol(String symbol, long journalPosition, SnapshottableOrderBook orderBook) {
+        copyBytes.reset();
+        copiedSymbol = symbol;
+        copiedPosition = journalPosition;
+        copiedCount = 0;
+        orderBook.forEachOrder(symbol, order -> {
+            try {
+                copy.writeLong(order.getId());
+                copy.writeByte(order.getType() == Order.Type.BUY ? 0 : 1);
+                copy.writeLong(order.getPriceTicks());
+                copy.writeInt(order.getQuantity());
+                copy.writeLong(order.getTimestamp());
+                copy.writeInt(order.getHiddenQuantity());
+                copy.writeInt(order.getDisplayQuantity());
+                copy.writeByte(order.getTimeInForce().ordinal());
+                copy.writeLong(order.isStopArmed() ? order.getStopPriceTicks() : 0);
+                copy.writeInt(order.getAccountId());
+                copiedCount++;
+            } catch (IOException e) {
+                // Writes to a byte array never fail
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Writes out the symbol copied last.
+     *
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void writeCopied() throws IOException {
+        if (copiedSymbol == null) {
+            throw new IllegalStateException("No symbol has been copied");
+        }
+        out.writeUTF(copiedSymbol);
+        out.writeLong(copiedPosition);
+        out.writeInt(copiedCount);
+        copyBytes.writeTo(out);
+        copiedSymbol = null;
+    }
+
+    /**
+     * Finishes the snapshot, syncs it and moves it into place.
+     *
+     * @throws IOException If the snapshot cannot be written or moved
+     */
+    public void commit() throws IOException {
+        out.flush();
+        out.close();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    /**
+     * Abandons the snapshot unless it has been committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            out.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.stocktrading.log;
+
+import com.stocktrading.Trade;
+import com.stocktrading.TradeSink;
+
+/**
+ * A {@link TradeSink} that logs every trade published to it as an audit record before
+ * passing it on to another sink. Give it to a matcher in place of the sink it wraps.
+ */
+public class AuditTradeSink implements TradeSink {
+    private final TradeSink delegate;
+    private final EventLogger logger;
+
+    /**
+     * Creates an auditing sink.
+     *
+     * @param delegate The sink trades are passed on to and drained from
+     * @param logger The logger that records each trade
+     */
+    public AuditTradeSink(TradeSink delegate, EventLogger logger) {
+        this.delegate = delegate;
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                           long timestamp) {
+        logger.logTrade(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, timestamp);
+        return delegate.publish(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, timestamp);
+    }
+
+    @Override
+    public boolean publish(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                           int buyAccountId, int sellAccountId, long timestamp) {
+        logger.logTrade(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, timestamp);
+        return delegate.publish(symbolId, priceTicks, quantity, buyOrderId, sellOrderId, buyAccountId, sellAccountId,
+            timestamp);
+    }
+
+    @Override
+    public int drainTo(Trade[] buffer, int max) {
+        return delegate.drainTo(buffer, max);
+    }
+
+    @Override
+    public Trade poll() {
+        return delegate.poll();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+}
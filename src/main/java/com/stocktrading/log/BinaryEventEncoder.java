@@ -0,0 +1,125 @@
+package com.stocktrading.log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+
+/**
+ * Encodes events as compact fixed-layout records, for audit logs that are read by
+ * tools rather than people. Every record starts with a short holding its length and
+ * a byte holding its kind:
+ * <pre>
+ * EVENT   53 bytes  header, type, side, symbol, timestamp, order id, price ticks,
+ *                   quantity, buy order id, sell order id
+ * SYMBOL  7 + name  header, symbol id, ASCII name
+ * </pre>
+ * Side is 0 when there is none, 1 for buy and 2 for sell. A symbol record precedes
+ * the first event for each symbol, since SymbolRegistry ids only hold within one
+ * process. Records use the buffer's byte order; the {@link EventLogger} writes
+ * little-endian.
+ */
+public class BinaryEventEncoder implements EventEncoder {
+    static final byte EVENT = 1;
+    static final byte SYMBOL = 2;
+
+    static final int EVENT_LENGTH = 53;
+    static final int SYMBOL_HEADER_LENGTH = 7;
+
+    private static final Order.Type[] SIDES = Order.Type.values();
+
+    // Symbols already defined in this encoder's output, by SymbolRegistry id
+    private boolean[] definedSymbols = new boolean[64];
+
+    @Override
+    public int maxEncodedLength() {
+        return SYMBOL_HEADER_LENGTH + TextEventEncoder.MAX_SYMBOL_LENGTH + EVENT_LENGTH;
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBuffer buffer) {
+        int symbolId = event.getSymbolId();
+        if (event.getType() == EventType.TRADE || event.getSide() != null) {
+            defineSymbol(buffer, symbolId);
+        }
+        Order.Type side = event.getSide();
+        buffer.putShort((short) EVENT_LENGTH)
+            .put(EVENT)
+            .put((byte) event.getType().ordinal())
+            .put((byte) (side == null ? 0 : side.ordinal() + 1))
+            .putInt(symbolId)
+            .putLong(event.getTimestamp())
+            .putLong(event.getOrderId())
+            .putLong(event.getPriceTicks())
+            .putInt(event.getQuantity())
+            .putLong(event.getBuyOrderId())
+            .putLong(event.getSellOrderId());
+    }
+
+    private void defineSymbol(ByteBuffer buffer, int symbolId) {
+        if (symbolId >= definedSymbols.length) {
+            definedSymbols = Arrays.copyOf(definedSymbols, Math.max(symbolId + 1, definedSymbols.length * 2));
+        }
+        if (definedSymbols[symbolId]) {
+            return;
+        }
+        definedSymbols[symbolId] = true;
+        String name = SymbolRegistry.getSymbol(symbolId);
+        int length = Math.min(name.length(), TextEventEncoder.MAX_SYMBOL_LENGTH);
+        buffer.putShort((short) (SYMBOL_HEADER_LENGTH + length))
+            .put(SYMBOL)
+            .putInt(symbolId);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) name.charAt(i));
+        }
+    }
+
+    /**
+     * Reads the next event from a binary log, collecting the symbol records before it.
+     * Symbol ids in the decoded event are those of the process that wrote the log;
+     * look them up in the symbol map rather than in this process's SymbolRegistry.
+     *
+     * @param buffer The log contents, positioned at a record
+     * @param event The event to fill in
+     * @param symbols Symbol names by the writer's symbol id, added to as symbols are defined
+     * @return True if an event was read, false at the end of the buffer or a partial record
+     */
+    public static boolean decode(ByteBuffer buffer, LogEvent event, Map<Integer, String> symbols) {
+        while (buffer.remaining() >= 3) {
+            int start = buffer.position();
+            int length = buffer.getShort(start) & 0xFFFF;
+            if (length < 3 || buffer.remaining() < length) {
+                return false;
+            }
+            byte kind = buffer.get(start + 2);
+            if (kind == SYMBOL) {
+                byte[] name = new byte[length - SYMBOL_HEADER_LENGTH];
+                buffer.position(start + SYMBOL_HEADER_LENGTH);
+                buffer.get(name);
+                symbols.put(buffer.getInt(start + 3), new String(name, StandardCharsets.US_ASCII));
+            } else if (kind == EVENT) {
+                buffer.position(start + 3);
+                EventType type = EventType.fromOrdinal(buffer.get());
+                int side = buffer.get();
+                int symbolId = buffer.getInt();
+                long timestamp = buffer.getLong();
+                long orderId = buffer.getLong();
+                long priceTicks = buffer.getLong();
+                int quantity = buffer.getInt();
+                long buyOrderId = buffer.getLong();
+                long sellOrderId = buffer.getLong();
+                event.set(type, timestamp, symbolId, orderId, side == 0 ? null : SIDES[side - 1], priceTicks,
+                    quantity, buyOrderId, sellOrderId);
+                buffer.position(start + length);
+                return true;
+            } else {
+                // Unknown kinds are skipped, so older readers can still read newer logs
+                buffer.position(start + length);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,25 @@
+package com.stocktrading.log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns log events into bytes for the {@link EventLogger}'s writer thread.
+ * An encoder is only used by that one thread, so it may keep state between events.
+ */
+public interface EventEncoder {
+    /**
+     * Gets the most bytes one call to {@link #encode} can write. The writer flushes its
+     * buffer before encoding whenever less than this is left.
+     *
+     * @return The maximum encoded length in bytes
+     */
+    int maxEncodedLength();
+
+    /**
+     * Writes an event at the buffer's position and advances it.
+     *
+     * @param event The event to encode
+     * @param buffer The buffer to write to, with at least {@link #maxEncodedLength()} bytes remaining
+     */
+    void encode(LogEvent event, ByteBuffer buffer);
+}
@@ -0,0 +1,289 @@
+package com.stocktrading.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stocktrading.Order;
+import com.stocktrading.TimeSource;
+
+/**
+ * Asynchronous event log for engine lifecycle, order and trade audit records.
+ * Logging copies the event's primitive fields into a preallocated ring slot, claimed
+ * with a CAS as in {@link com.stocktrading.TradeRingBuffer}, and returns: no string
+ * is built and no lock is taken on the caller's thread. A background writer thread
+ * drains the ring in batches, encodes the events into a direct buffer with an
+ * {@link EventEncoder} and writes the buffer out with one call per batch.
+ * <p>
+ * Logging never blocks. An event logged while the ring is full, or after the logger
+ * is closed, is dropped and counted, since a slow disk must not stall matching.
+ */
+public class EventLogger implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+    public static final long DEFAULT_IDLE_PARK_NANOS = 100_000;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final LogEvent[] slots;
+    private final int mask;
+    private final WritableByteChannel channel;
+    private final EventEncoder encoder;
+    private final TimeSource timeSource;
+    private final long idleParkNanos;
+    // The shared console logger flushes on close but keeps running for other engines
+    private final boolean shared;
+
+    // Sequence each slot is ready for: its position when free, position + 1 once logged
+    private final AtomicLongArray slotSequences;
+    // Next sequence to log at
+    private final AtomicLong producerSequence = new AtomicLong();
+    // Every event before this sequence has been written or dropped by the writer
+    private volatile long writtenSequence;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long writtenCount;
+    private volatile long writeErrorCount;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    // Events encoded into the buffer but not yet written
+    private int bufferedEvents;
+
+    private final Object closeLock = new Object();
+    private volatile boolean open = true;
+    private final Thread writerThread;
+
+    /**
+     * Creates a logger with the default capacity on the system clock.
+     *
+     * @param channel Where encoded events are written; closed when the logger is closed
+     * @param encoder How events are encoded
+     */
+    public EventLogger(WritableByteChannel channel, EventEncoder encoder) {
+        this(channel, encoder, DEFAULT_CAPACITY, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a logger.
+     *
+     * @param channel Where encoded events are written; closed when the logger is closed
+     * @param encoder How events are encoded
+     * @param capacity The number of events that can wait for the writer, a power of two of at least 2
+     * @param timeSource The clock that stamps engine and order events
+     */
+    public EventLogger(WritableByteChannel channel, EventEncoder encoder, int capacity, TimeSource timeSource) {
+        this(channel, encoder, capacity, timeSource, DEFAULT_IDLE_PARK_NANOS, false);
+    }
+
+    private EventLogger(WritableByteChannel channel, EventEncoder encoder, int capacity, TimeSource timeSource,
+                        long idleParkNanos, boolean shared) {
+        // With one slot a logged sequence would look like a free slot on the next lap
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least 2");
+        }
+        if (encoder.maxEncodedLength() > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Encoded events must fit in " + BUFFER_SIZE + " bytes");
+        }
+        this.slots = new LogEvent[capacity];
+        this.slotSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new LogEvent();
+            slotSequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.channel = channel;
+        this.encoder = encoder;
+        this.timeSource = timeSource;
+        this.idleParkNanos = idleParkNanos;
+        this.shared = shared;
+        this.writerThread = new Thread(this::runWriter, "event-logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Gets the logger that writes text lines to standard output, shared by every engine
+     * that is not given a logger of its own. It is started on first use.
+     *
+     * @return The console logger
+     */
+    public static EventLogger console() {
+        return Console.LOGGER;
+    }
+
+    private static final class Console {
+        static final EventLogger LOGGER = new EventLogger(Channels.newChannel(System.out), new TextEventEncoder(),
+            DEFAULT_CAPACITY, TimeSource.SYSTEM, DEFAULT_IDLE_PARK_NANOS, true);
+    }
+
+    public int getCapacity() { return slots.length; }
+
+    /**
+     * Gets the number of events discarded because the ring was full, the logger was
+     * closed, or the channel failed to write them.
+     */
+    public long getDroppedCount() { return droppedCount.get(); }
+
+    public long getWrittenCount() { return writtenCount; }
+    public long getWriteErrorCount() { return writeErrorCount; }
+
+    /**
+     * Logs an engine lifecycle event.
+     *
+     * @param type ENGINE_STARTED or ENGINE_STOPPED
+     */
+    public void logEngine(EventType type) {
+        log(type, timeSource.currentTimeMillis(), 0, 0, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Logs an order event with the order's current quantity and price.
+     *
+     * @param type ORDER_SUBMITTED, ORDER_CANCELLED, ORDER_AMENDED, ORDER_REJECTED or
+     *             COMMAND_FAILED
+     * @param order The order
+     */
+    public void logOrder(EventType type, Order order) {
+        log(type, timeSource.currentTimeMillis(), order.getSymbolId(), order.getId(), order.getType(),
+            order.getPriceTicks(), order.getQuantity(), 0, 0);
+    }
+
+    /**
+     * Logs a trade.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param priceTicks The price per unit in ticks
+     * @param quantity The quantity of units
+     * @param buyOrderId The ID of the buy order
+     * @param sellOrderId The ID of the sell order
+     * @param timestamp The time of the trade in milliseconds
+     */
+    public void logTrade(int symbolId, long priceTicks, int quantity, long buyOrderId, long sellOrderId,
+                         long timestamp) {
+        log(EventType.TRADE, timestamp, symbolId, 0, null, priceTicks, quantity, buyOrderId, sellOrderId);
+    }
+
+    private void log(EventType type, long timestamp, int symbolId, long orderId, Order.Type side, long priceTicks,
+                     int quantity, long buyOrderId, long sellOrderId) {
+        if (!open) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        while (true) {
+            long sequence = producerSequence.get();
+            int index = (int) (sequence & mask);
+            long slotSequence = slotSequences.get(index);
+
+            if (slotSequence == sequence) {
+                if (producerSequence.compareAndSet(sequence, sequence + 1)) {
+                    slots[index].set(type, timestamp, symbolId, orderId, side, priceTicks, quantity, buyOrderId,
+                        sellOrderId);
+                    slotSequences.set(index, sequence + 1);
+                    return;
+                }
+            } else if (slotSequence < sequence) {
+                // The slot still holds the previous lap's event, so the ring is full
+                droppedCount.incrementAndGet();
+                return;
+            }
+            // Otherwise another producer took the slot first; retry with the next one
+        }
+    }
+
+    /**
+     * Waits until every event logged before this call has been written, or dropped
+     * because the channel failed.
+     */
+    public void flush() {
+        long target = producerSequence.get();
+        while (writtenSequence < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(idleParkNanos);
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            // Read before draining, so the drain after close sees every event logged before it
+            boolean running = open;
+            if (drain() == 0) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(idleParkNanos);
+            }
+        }
+    }
+
+    // Writes out every event logged so far and returns how many there were
+    private int drain() {
+        long sequence = writtenSequence;
+        int count = 0;
+        while (true) {
+            int index = (int) (sequence & mask);
+            if (slotSequences.get(index) != sequence + 1) {
+                break;
+            }
+            if (buffer.remaining() < encoder.maxEncodedLength()) {
+                writeBuffer();
+            }
+            encoder.encode(slots[index], buffer);
+            bufferedEvents++;
+            // Free the slot for the next lap
+            slotSequences.set(index, sequence + slots.length);
+            sequence++;
+            count++;
+        }
+        if (count > 0) {
+            writeBuffer();
+            writtenSequence = sequence;
+        }
+        return count;
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writtenCount += bufferedEvents;
+        } catch (IOException e) {
+            writeErrorCount++;
+            droppedCount.addAndGet(bufferedEvents);
+        }
+        buffer.clear();
+        bufferedEvents = 0;
+    }
+
+    /**
+     * Writes out every event logged so far, stops the writer thread and closes the
+     * channel. Events logged afterwards are dropped. Closing the console logger only
+     * flushes it, since other engines may still be logging to it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (shared) {
+            flush();
+            return;
+        }
+        synchronized (closeLock) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
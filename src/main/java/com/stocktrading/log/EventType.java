@@ -0,0 +1,28 @@
+package com.stocktrading.log;
+
+/**
+ * The kinds of event the {@link EventLogger} records.
+ * The ordinal is written to binary logs, so new types go at the end.
+ */
+public enum EventType {
+    ENGINE_STARTED,
+    ENGINE_STOPPED,
+    ORDER_SUBMITTED,
+    ORDER_CANCELLED,
+    ORDER_AMENDED,
+    TRADE,
+    ORDER_REJECTED,
+    COMMAND_FAILED;
+
+    private static final EventType[] VALUES = values();
+
+    /**
+     * Gets the type with an ordinal, without copying the values array.
+     *
+     * @param ordinal The ordinal
+     * @return The type, or null if no type has that ordinal
+     */
+    public static EventType fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
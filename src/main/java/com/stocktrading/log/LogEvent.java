@@ -0,0 +1,49 @@
+package com.stocktrading.log;
+
+import com.stocktrading.Order;
+
+/**
+ * One slot of the {@link EventLogger}'s ring. Producers copy an event's fields into a
+ * preallocated slot, so logging allocates nothing, and encoders read them back on the
+ * writer thread. Fields that do not apply to an event's type are zero or null.
+ */
+public class LogEvent {
+    private EventType type;
+    private long timestamp;
+    private int symbolId;
+    private long orderId;
+    private Order.Type side;
+    private long priceTicks;
+    private int quantity;
+    private long buyOrderId;
+    private long sellOrderId;
+
+    /**
+     * Creates a blank event for a ring or a reader to fill in.
+     */
+    public LogEvent() {
+    }
+
+    void set(EventType type, long timestamp, int symbolId, long orderId, Order.Type side, long priceTicks,
+             int quantity, long buyOrderId, long sellOrderId) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.symbolId = symbolId;
+        this.orderId = orderId;
+        this.side = side;
+        this.priceTicks = priceTicks;
+        this.quantity = quantity;
+        this.buyOrderId = buyOrderId;
+        this.sellOrderId = sellOrderId;
+    }
+
+    public EventType getType() { return type; }
+    public long getTimestamp() { return timestamp; }
+    public int getSymbolId() { return symbolId; }
+    public long getOrderId() { return orderId; }
+    public Order.Type getSide() { return side; }
+    public long getPriceTicks() { return priceTicks; }
+    public int getQuantity() { return quantity; }
+    public long getBuyOrderId() { return buyOrderId; }
+    public long getSellOrderId() { return sellOrderId; }
+}
@@ -0,0 +1,124 @@
+package com.stocktrading.log;
+
+import java.nio.ByteBuffer;
+
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TickSizes;
+
+/**
+ * Encodes events as readable ASCII lines, one per event:
+ * <pre>
+ * 1700000000000 ENGINE_STARTED
+ * 1700000000000 ORDER_SUBMITTED AAPL id=7 BUY 100@150.25
+ * 1700000000000 TRADE AAPL 40@150.25 buy=7 sell=9
+ * </pre>
+ * The time is in milliseconds since the epoch and prices are in currency units,
+ * without trailing zeros, or MKT for a market order. Digits are written straight into the buffer instead of
+ * going through String.format, so encoding allocates nothing.
+ */
+public class TextEventEncoder implements EventEncoder {
+    // Longer symbols are cut short, so a line always fits in the maximum length
+    static final int MAX_SYMBOL_LENGTH = 32;
+
+    private static final int MAX_LINE_LENGTH = 256;
+    private static final long PRICE_SCALE = 1_000_000;
+    private static final int PRICE_DECIMALS = 6;
+
+    private final byte[] digits = new byte[20];
+
+    @Override
+    public int maxEncodedLength() {
+        return MAX_LINE_LENGTH;
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBuffer buffer) {
+        putLong(buffer, event.getTimestamp());
+        buffer.put((byte) ' ');
+        putAscii(buffer, event.getType().name(), Integer.MAX_VALUE);
+        switch (event.getType()) {
+            case ORDER_SUBMITTED:
+            case ORDER_CANCELLED:
+            case ORDER_AMENDED:
+            case ORDER_REJECTED:
+            case COMMAND_FAILED:
+                putSymbol(buffer, event.getSymbolId());
+                putAscii(buffer, " id=", Integer.MAX_VALUE);
+                putLong(buffer, event.getOrderId());
+                buffer.put((byte) ' ');
+                putAscii(buffer, event.getSide().name(), Integer.MAX_VALUE);
+                buffer.put((byte) ' ');
+                putQuantityAndPrice(buffer, event);
+                break;
+            case TRADE:
+                putSymbol(buffer, event.getSymbolId());
+                buffer.put((byte) ' ');
+                putQuantityAndPrice(buffer, event);
+                putAscii(buffer, " buy=", Integer.MAX_VALUE);
+                putLong(buffer, event.getBuyOrderId());
+                putAscii(buffer, " sell=", Integer.MAX_VALUE);
+                putLong(buffer, event.getSellOrderId());
+                break;
+            default:
+                break;
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private void putSymbol(ByteBuffer buffer, int symbolId) {
+        buffer.put((byte) ' ');
+        putAscii(buffer, SymbolRegistry.getSymbol(symbolId), MAX_SYMBOL_LENGTH);
+    }
+
+    private void putQuantityAndPrice(ByteBuffer buffer, LogEvent event) {
+        putLong(buffer, event.getQuantity());
+        buffer.put((byte) '@');
+        long priceTicks = event.getPriceTicks();
+        if (priceTicks == Order.MARKET_BUY_TICKS || priceTicks == Order.MARKET_SELL_TICKS) {
+            putAscii(buffer, "MKT", Integer.MAX_VALUE);
+            return;
+        }
+        double price = TickSizes.toPrice(event.getSymbolId(), priceTicks);
+        long scaled = Math.round(Math.abs(price) * PRICE_SCALE);
+        if (price < 0 && scaled != 0) {
+            buffer.put((byte) '-');
+        }
+        putLong(buffer, scaled / PRICE_SCALE);
+        long fraction = scaled % PRICE_SCALE;
+        if (fraction != 0) {
+            int decimals = PRICE_DECIMALS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                decimals--;
+            }
+            buffer.put((byte) '.');
+            for (int i = decimals - 1; i >= 0; i--) {
+                digits[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer.put(digits, 0, decimals);
+        }
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value, int maxLength) {
+        int length = Math.min(value.length(), maxLength);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void putLong(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        // Work with the negative value, which also covers Long.MIN_VALUE
+        long remaining = value < 0 ? value : -value;
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        buffer.put(digits, start, digits.length - start);
+    }
+}
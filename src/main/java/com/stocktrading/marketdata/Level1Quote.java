@@ -0,0 +1,70 @@
+package com.stocktrading.marketdata;
+
+import com.stocktrading.TickSizes;
+
+/**
+ * The best bid and ask of a symbol along with its last trade and traded volume.
+ * Instances are reused: a quote handed to a {@link MarketDataListener} is only valid
+ * during the callback.
+ */
+public class Level1Quote {
+    private int symbolId = -1;
+    private long bidPriceTicks;
+    private long bidQuantity;
+    private long askPriceTicks;
+    private long askQuantity;
+    private long lastPriceTicks;
+    private int lastQuantity;
+    private long volume;
+
+    public int getSymbolId() { return symbolId; }
+    public long getBidPriceTicks() { return bidPriceTicks; }
+    public long getBidQuantity() { return bidQuantity; }
+    public long getAskPriceTicks() { return askPriceTicks; }
+    public long getAskQuantity() { return askQuantity; }
+    public long getLastPriceTicks() { return lastPriceTicks; }
+    public int getLastQuantity() { return lastQuantity; }
+    public long getVolume() { return volume; }
+
+    public boolean hasBid() { return bidQuantity > 0; }
+    public boolean hasAsk() { return askQuantity > 0; }
+
+    public double getBidPrice() { return TickSizes.toPrice(symbolId, bidPriceTicks); }
+    public double getAskPrice() { return TickSizes.toPrice(symbolId, askPriceTicks); }
+    public double getLastPrice() { return TickSizes.toPrice(symbolId, lastPriceTicks); }
+
+    void setSymbolId(int symbolId) {
+        this.symbolId = symbolId;
+    }
+
+    void setBid(long priceTicks, long quantity) {
+        this.bidPriceTicks = priceTicks;
+        this.bidQuantity = quantity;
+    }
+
+    void setAsk(long priceTicks, long quantity) {
+        this.askPriceTicks = priceTicks;
+        this.askQuantity = quantity;
+    }
+
+    void setLastTrade(long priceTicks, int quantity, long volume) {
+        this.lastPriceTicks = priceTicks;
+        this.lastQuantity = quantity;
+        this.volume = volume;
+    }
+
+    void copyFrom(Level1Quote other) {
+        symbolId = other.symbolId;
+        setBid(other.bidPriceTicks, other.bidQuantity);
+        setAsk(other.askPriceTicks, other.askQuantity);
+        setLastTrade(other.lastPriceTicks, other.lastQuantity, other.volume);
+    }
+
+    boolean sameAs(Level1Quote other) {
+        return symbolId == other.symbolId
+            && bidPriceTicks == other.bidPriceTicks && bidQuantity == other.bidQuantity
+            && askPriceTicks == other.askPriceTicks && askQuantity == other.askQuantity
+            && lastPriceTicks == other.lastPriceTicks && lastQuantity == other.lastQuantity
+            && volume == other.volume;
+    }
+}
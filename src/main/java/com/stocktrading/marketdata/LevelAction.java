@@ -0,0 +1,13 @@
+package com.stocktrading.marketdata;
+
+/**
+ * What happened to a price level between two published views of a book.
+ */
+public enum LevelAction {
+    /** A price came into view: a new level, or one that moved up within the published depth. */
+    ADDED,
+    /** The quantity or order count at a price changed. */
+    CHANGED,
+    /** A price left view: its level emptied, or it was pushed below the published depth. */
+    REMOVED
+}
@@ -0,0 +1,81 @@
+package com.stocktrading.marketdata;
+
+/**
+ * A bounded list of level deltas held in parallel primitive arrays, so collecting and
+ * handing over deltas allocates nothing.
+ */
+final class LevelDeltas {
+    private static final LevelAction[] ACTIONS = LevelAction.values();
+
+    private final int[] symbolIds;
+    private final long[] sequences;
+    private final byte[] actions;
+    private final boolean[] bids;
+    private final long[] priceTicks;
+    private final long[] quantities;
+    private final int[] orderCounts;
+    private int size;
+
+    LevelDeltas(int capacity) {
+        symbolIds = new int[capacity];
+        sequences = new long[capacity];
+        actions = new byte[capacity];
+        bids = new boolean[capacity];
+        priceTicks = new long[capacity];
+        quantities = new long[capacity];
+        orderCounts = new int[capacity];
+    }
+
+    int size() { return size; }
+    int capacity() { return symbolIds.length; }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends a delta.
+     *
+     * @return False if the list is full
+     */
+    boolean add(int symbolId, long sequence, LevelAction action, boolean bid, long price, long quantity,
+                int orderCount) {
+        if (size == symbolIds.length) {
+            return false;
+        }
+        symbolIds[size] = symbolId;
+        sequences[size] = sequence;
+        actions[size] = (byte) action.ordinal();
+        bids[size] = bid;
+        priceTicks[size] = price;
+        quantities[size] = quantity;
+        orderCounts[size] = orderCount;
+        size++;
+        return true;
+    }
+
+    /**
+     * Appends every delta of another list, or none of them if they do not all fit.
+     *
+     * @return False if the deltas did not fit
+     */
+    boolean addAll(LevelDeltas other) {
+        if (size + other.size > symbolIds.length) {
+            return false;
+        }
+        System.arraycopy(other.symbolIds, 0, symbolIds, size, other.size);
+        System.arraycopy(other.sequences, 0, sequences, size, other.size);
+        System.arraycopy(other.actions, 0, actions, size, other.size);
+        System.arraycopy(other.bids, 0, bids, size, other.size);
+        System.arraycopy(other.priceTicks, 0, priceTicks, size, other.size);
+        System.arraycopy(other.quantities, 0, quantities, size, other.size);
+        System.arraycopy(other.orderCounts, 0, orderCounts, size, other.size);
+        size += other.size;
+        return true;
+    }
+
+    void deliver(int index, MarketDataListener listener) {
+        listener.onLevel(symbolIds[index], sequences[index], ACTIONS[actions[index]], bids[index],
+            priceTicks[index], quantities[index], orderCounts[index]);
+    }
+}
@@ -0,0 +1,44 @@
+package com.stocktrading.marketdata;
+
+import com.stocktrading.MarketDepth;
+
+/**
+ * Receives market data from a {@link MarketDataSubscription}, on the thread that polls it.
+ * <p>
+ * Each symbol's level deltas carry consecutive sequence numbers. A refresh carries the
+ * sequence number of the last delta it includes, so a consumer rebuilds a symbol's book
+ * from its latest refresh and applies the deltas after it; a gap in the numbers can
+ * only follow a refresh.
+ */
+public interface MarketDataListener {
+    /**
+     * Called when a symbol's best bid, best ask or last trade changed since the last
+     * quote delivered. Intermediate quotes are conflated away.
+     *
+     * @param quote The latest quote, valid during the call only
+     */
+    void onQuote(Level1Quote quote);
+
+    /**
+     * Called for each change to a level within the published depth.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param sequence The symbol's sequence number of this delta
+     * @param action What happened to the level
+     * @param bid True for a bid level, false for an ask level
+     * @param priceTicks The price of the level in ticks
+     * @param quantity The total quantity now at the level, 0 if removed
+     * @param orderCount The number of orders now at the level, 0 if removed
+     */
+    void onLevel(int symbolId, long sequence, LevelAction action, boolean bid, long priceTicks, long quantity,
+                 int orderCount);
+
+    /**
+     * Called with the full published depth of a symbol: on the first poll, periodically,
+     * and in place of the deltas a lagging subscriber missed.
+     *
+     * @param sequence The sequence number of the last delta the depth includes
+     * @param depth The symbol's levels, valid during the call only
+     */
+    void onRefresh(long sequence, MarketDepth depth);
+}
@@ -0,0 +1,316 @@
+package com.stocktrading.marketdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.stocktrading.BookListener;
+import com.stocktrading.DirtySymbolQueue;
+import com.stocktrading.MarketDepth;
+import com.stocktrading.OrderBook;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TimeSource;
+import com.stocktrading.util.IntHashMap;
+
+/**
+ * Publishes level 1 quotes and sequence-numbered level 2 deltas from an order book.
+ * <p>
+ * Attached to a matcher and engine as their {@link BookListener}, it learns which symbols
+ * changed and the trades that printed, and does nothing more on their threads than
+ * record the trade and mark the symbol dirty. The publisher thread then reads each dirty
+ * symbol's {@link OrderBook#depth} and diffs it against what it published last, so any
+ * number of book changes between two publishes conflate into one set of level deltas.
+ * Subscribers get periodic full refreshes too, and each one has its own bounded
+ * {@link MarketDataSubscription}, so a lagging subscriber costs only itself.
+ * <p>
+ * The book must allow depth reads from the publisher thread, as the locked and
+ * lock-free books do.
+ */
+public class MarketDataPublisher implements BookListener, Runnable {
+    public static final int DEFAULT_LEVELS = 10;
+
+    private final OrderBook orderBook;
+    private final int levels;
+    private final long refreshIntervalMillis;
+    private final TimeSource timeSource;
+
+    private final SymbolState[] states;
+    // Keyed by symbol id; never modified after construction
+    private final IntHashMap<SymbolState> statesById;
+    private final DirtySymbolQueue dirtySymbols;
+
+    // Deltas of the symbol being published; at most every level leaves and another enters
+    private final LevelDeltas deltas;
+
+    // Subscriptions waiting to be seeded, and the live ones owned by the publisher thread
+    private final Queue<MarketDataSubscription> joining = new ConcurrentLinkedQueue<>();
+    private final List<MarketDataSubscription> subscriptions = new ArrayList<>();
+
+    private long nextRefreshTime;
+    private volatile boolean running = true;
+    private volatile Thread publisherThread;
+
+    /**
+     * Creates a publisher on the system clock.
+     *
+     * @param orderBook The book to publish
+     * @param symbols The symbols to publish
+     * @param levels The number of levels per side to publish
+     * @param refreshIntervalMillis How often subscribers get a full refresh, 0 for never
+     */
+    public MarketDataPublisher(OrderBook orderBook, List<String> symbols, int levels, long refreshIntervalMillis) {
+        this(orderBook, symbols, levels, refreshIntervalMillis, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param orderBook The book to publish
+     * @param symbols The symbols to publish
+     * @param levels The number of levels per side to publish
+     * @param refreshIntervalMillis How often subscribers get a full refresh, 0 for never
+     * @param timeSource The clock that times refreshes
+     */
+    public MarketDataPublisher(OrderBook orderBook, List<String> symbols, int levels, long refreshIntervalMillis,
+                               TimeSource timeSource) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Number of levels must be positive");
+        }
+        this.orderBook = orderBook;
+        this.levels = levels;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.timeSource = timeSource;
+        this.states = new SymbolState[symbols.size()];
+        this.statesById = new IntHashMap<>(symbols.size());
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new SymbolState(i, symbols.get(i), levels);
+            statesById.put(states[i].symbolId, states[i]);
+        }
+        this.dirtySymbols = new DirtySymbolQueue(symbols);
+        this.deltas = new LevelDeltas(4 * levels);
+        this.nextRefreshTime = timeSource.currentTimeMillis() + refreshIntervalMillis;
+    }
+
+    /**
+     * Subscribes a new consumer. It starts with a refresh of every symbol once the
+     * publisher next runs.
+     *
+     * @param capacity The most level deltas the subscription queues before it falls back to a refresh
+     * @return The subscription to poll
+     */
+    public MarketDataSubscription subscribe(int capacity) {
+        if (capacity < deltas.capacity()) {
+            throw new IllegalArgumentException("Capacity must hold at least one symbol's deltas: " + deltas.capacity());
+        }
+        MarketDataSubscription subscription = new MarketDataSubscription(states.length, levels, capacity);
+        joining.add(subscription);
+        return subscription;
+    }
+
+    @Override
+    public void onBookChanged(int symbolId) {
+        SymbolState state = statesById.get(symbolId);
+        if (state != null) {
+            dirtySymbols.markDirty(state.symbol);
+        }
+    }
+
+    @Override
+    public void onTrade(int symbolId, long priceTicks, int quantity, long timestamp) {
+        SymbolState state = statesById.get(symbolId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.lastPriceTicks = priceTicks;
+            state.lastQuantity = quantity;
+            state.volume += quantity;
+        }
+        dirtySymbols.markDirty(state.symbol);
+    }
+
+    @Override
+    public void run() {
+        publisherThread = Thread.currentThread();
+        try {
+            while (running) {
+                admitSubscriptions();
+                long wait = refreshIntervalMillis > 0
+                    ? Math.max(0, nextRefreshTime - timeSource.currentTimeMillis()) : Long.MAX_VALUE;
+                String symbol = dirtySymbols.poll(wait, TimeUnit.MILLISECONDS);
+                if (symbol != null) {
+                    publish(statesById.get(SymbolRegistry.intern(symbol)));
+                }
+                refreshIfDue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            publisherThread = null;
+        }
+    }
+
+    /**
+     * Publishes every symbol that changed and any refresh that is due, without waiting.
+     * For driving the publisher from an existing thread instead of running it on its own;
+     * it must not be called while {@link #run} is active.
+     *
+     * @return The number of symbols published
+     */
+    public int publishPending() {
+        admitSubscriptions();
+        int published = 0;
+        try {
+            String symbol;
+            while ((symbol = dirtySymbols.poll(0, TimeUnit.MILLISECONDS)) != null) {
+                publish(statesById.get(SymbolRegistry.intern(symbol)));
+                published++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        refreshIfDue();
+        return published;
+    }
+
+    /**
+     * Stops the publisher thread.
+     */
+    public void stop() {
+        running = false;
+        Thread thread = publisherThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void admitSubscriptions() {
+        subscriptions.removeIf(MarketDataSubscription::isClosed);
+        MarketDataSubscription subscription;
+        while ((subscription = joining.poll()) != null) {
+            for (SymbolState state : states) {
+                subscription.seed(state.slot, state.published, state.sequence, state.quote);
+            }
+            subscription.markSeeded();
+            subscriptions.add(subscription);
+        }
+    }
+
+    private void refreshIfDue() {
+        if (refreshIntervalMillis <= 0 || timeSource.currentTimeMillis() < nextRefreshTime) {
+            return;
+        }
+        for (MarketDataSubscription subscription : subscriptions) {
+            for (SymbolState state : states) {
+                subscription.refresh(state.slot);
+            }
+        }
+        nextRefreshTime = timeSource.currentTimeMillis() + refreshIntervalMillis;
+    }
+
+    private void publish(SymbolState state) {
+        orderBook.depth(state.symbol, levels, state.next);
+        deltas.clear();
+        diff(state, true);
+        diff(state, false);
+
+        Level1Quote next = state.nextQuote;
+        next.setSymbolId(state.symbolId);
+        MarketDepth depth = state.next;
+        next.setBid(depth.getBidLevels() > 0 ? depth.getBidPriceTicks(0) : 0,
+            depth.getBidLevels() > 0 ? depth.getBidQuantity(0) : 0);
+        next.setAsk(depth.getAskLevels() > 0 ? depth.getAskPriceTicks(0) : 0,
+            depth.getAskLevels() > 0 ? depth.getAskQuantity(0) : 0);
+        synchronized (state) {
+            next.setLastTrade(state.lastPriceTicks, state.lastQuantity, state.volume);
+        }
+        boolean quoteChanged = !next.sameAs(state.quote);
+        if (quoteChanged) {
+            state.quote.copyFrom(next);
+        }
+
+        if (deltas.size() > 0 || quoteChanged) {
+            for (MarketDataSubscription subscription : subscriptions) {
+                subscription.publish(state.slot, deltas, depth, state.sequence, state.quote, quoteChanged);
+            }
+        }
+        state.next = state.published;
+        state.published = depth;
+    }
+
+    // Merges the published and next levels of one side, both best first, into deltas
+    private void diff(SymbolState state, boolean bid) {
+        MarketDepth before = state.published;
+        MarketDepth after = state.next;
+        int beforeCount = bid ? before.getBidLevels() : before.getAskLevels();
+        int afterCount = bid ? after.getBidLevels() : after.getAskLevels();
+        int i = 0;
+        int j = 0;
+        while (i < beforeCount || j < afterCount) {
+            long beforePrice = i < beforeCount ? priceTicks(before, bid, i) : 0;
+            long afterPrice = j < afterCount ? priceTicks(after, bid, j) : 0;
+            if (i < beforeCount && j < afterCount && beforePrice == afterPrice) {
+                long quantity = quantity(after, bid, j);
+                int orderCount = orderCount(after, bid, j);
+                if (quantity != quantity(before, bid, i) || orderCount != orderCount(before, bid, i)) {
+                    addDelta(state, LevelAction.CHANGED, bid, afterPrice, quantity, orderCount);
+                }
+                i++;
+                j++;
+            } else if (j == afterCount || (i < beforeCount && (bid ? beforePrice > afterPrice : beforePrice < afterPrice))) {
+                // The published level is better than anything left at its price, so it went away
+                addDelta(state, LevelAction.REMOVED, bid, beforePrice, 0, 0);
+                i++;
+            } else {
+                addDelta(state, LevelAction.ADDED, bid, afterPrice, quantity(after, bid, j), orderCount(after, bid, j));
+                j++;
+            }
+        }
+    }
+
+    private void addDelta(SymbolState state, LevelAction action, boolean bid, long priceTicks, long quantity,
+                          int orderCount) {
+        deltas.add(state.symbolId, ++state.sequence, action, bid, priceTicks, quantity, orderCount);
+    }
+
+    private static long priceTicks(MarketDepth depth, boolean bid, int level) {
+        return bid ? depth.getBidPriceTicks(level) : depth.getAskPriceTicks(level);
+    }
+
+    private static long quantity(MarketDepth depth, boolean bid, int level) {
+        return bid ? depth.getBidQuantity(level) : depth.getAskQuantity(level);
+    }
+
+    private static int orderCount(MarketDepth depth, boolean bid, int level) {
+        return bid ? depth.getBidOrderCount(level) : depth.getAskOrderCount(level);
+    }
+
+    // Published state of one symbol, owned by the publisher thread except for the last trade
+    private static final class SymbolState {
+        final int slot;
+        final String symbol;
+        final int symbolId;
+        MarketDepth published;
+        MarketDepth next;
+        long sequence;
+        final Level1Quote quote = new Level1Quote();
+        final Level1Quote nextQuote = new Level1Quote();
+
+        // Written by matching threads under this state's monitor
+        long lastPriceTicks;
+        int lastQuantity;
+        long volume;
+
+        SymbolState(int slot, String symbol, int levels) {
+            this.slot = slot;
+            this.symbol = symbol;
+            this.symbolId = SymbolRegistry.intern(symbol);
+            this.published = new MarketDepth(levels);
+            this.next = new MarketDepth(levels);
+            published.reset(symbolId);
+            quote.setSymbolId(symbolId);
+        }
+    }
+}
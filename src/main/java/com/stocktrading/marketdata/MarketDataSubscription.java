@@ -0,0 +1,180 @@
+package com.stocktrading.marketdata;
+
+import com.stocktrading.MarketDepth;
+
+/**
+ * One consumer's view of a {@link MarketDataPublisher}.
+ * The publisher hands each update over under this subscription's monitor and moves on,
+ * and the consumer collects updates with {@link #poll} at its own pace, so a slow
+ * consumer never holds up the publisher, let alone the matchers.
+ * <p>
+ * Quotes are conflated: a consumer sees only the latest quote of each symbol. Level
+ * deltas queue up to a fixed capacity; a consumer that falls further behind loses its
+ * queued deltas and instead gets a refresh of every symbol on its next poll, so its
+ * memory stays bounded however far it lags.
+ */
+public class MarketDataSubscription implements AutoCloseable {
+    private final int symbolCount;
+
+    // Handed over by the publisher thread under this monitor
+    private LevelDeltas pending;
+    private final MarketDepth[] images;
+    private final long[] imageSequences;
+    private final Level1Quote[] quotes;
+    private final boolean[] quoteChanged;
+    private final boolean[] refreshDue;
+    private boolean seeded;
+    private boolean resync = true;
+    private long overflowCount;
+
+    // Owned by the polling thread
+    private LevelDeltas delivering;
+    private final MarketDepth[] deliveryImages;
+    private final long[] deliverySequences;
+    private final Level1Quote[] deliveryQuotes;
+    private final boolean[] deliverQuote;
+    private final boolean[] deliverRefresh;
+
+    private volatile boolean closed;
+
+    MarketDataSubscription(int symbolCount, int levels, int capacity) {
+        this.symbolCount = symbolCount;
+        this.pending = new LevelDeltas(capacity);
+        this.delivering = new LevelDeltas(capacity);
+        this.images = new MarketDepth[symbolCount];
+        this.deliveryImages = new MarketDepth[symbolCount];
+        this.quotes = new Level1Quote[symbolCount];
+        this.deliveryQuotes = new Level1Quote[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            images[i] = new MarketDepth(levels);
+            deliveryImages[i] = new MarketDepth(levels);
+            quotes[i] = new Level1Quote();
+            deliveryQuotes[i] = new Level1Quote();
+        }
+        this.imageSequences = new long[symbolCount];
+        this.deliverySequences = new long[symbolCount];
+        this.quoteChanged = new boolean[symbolCount];
+        this.refreshDue = new boolean[symbolCount];
+        this.deliverQuote = new boolean[symbolCount];
+        this.deliverRefresh = new boolean[symbolCount];
+    }
+
+    /**
+     * Gets the number of times this subscription lagged so far that it dropped its
+     * queued deltas for a refresh.
+     *
+     * @return The overflow count
+     */
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the publisher from updating this subscription.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Sets a symbol's starting state when the publisher admits the subscription.
+     */
+    synchronized void seed(int slot, MarketDepth image, long sequence, Level1Quote quote) {
+        images[slot].copyFrom(image);
+        imageSequences[slot] = sequence;
+        quotes[slot].copyFrom(quote);
+        quoteChanged[slot] = true;
+    }
+
+    synchronized void markSeeded() {
+        seeded = true;
+    }
+
+    /**
+     * Takes a symbol's update from the publisher.
+     */
+    synchronized void publish(int slot, LevelDeltas deltas, MarketDepth image, long sequence, Level1Quote quote,
+                              boolean quoteUpdated) {
+        images[slot].copyFrom(image);
+        imageSequences[slot] = sequence;
+        if (quoteUpdated) {
+            quotes[slot].copyFrom(quote);
+            quoteChanged[slot] = true;
+        }
+        // While a resync is due the images already hold everything the deltas would
+        if (!resync && !pending.addAll(deltas)) {
+            pending.clear();
+            resync = true;
+            overflowCount++;
+        }
+    }
+
+    /**
+     * Schedules a refresh of a symbol from its latest image.
+     */
+    synchronized void refresh(int slot) {
+        refreshDue[slot] = true;
+    }
+
+    /**
+     * Delivers the updates published since the last poll: queued level deltas in order,
+     * then any refreshes, then the latest quote of each symbol whose quote changed.
+     * Only one thread may poll a subscription.
+     *
+     * @param listener The listener to deliver to
+     * @return The number of callbacks made
+     */
+    public int poll(MarketDataListener listener) {
+        synchronized (this) {
+            if (!seeded) {
+                return 0;
+            }
+            LevelDeltas taken = pending;
+            pending = delivering;
+            delivering = taken;
+            pending.clear();
+
+            for (int slot = 0; slot < symbolCount; slot++) {
+                if (resync || refreshDue[slot]) {
+                    deliveryImages[slot].copyFrom(images[slot]);
+                    deliverySequences[slot] = imageSequences[slot];
+                    deliverRefresh[slot] = true;
+                    refreshDue[slot] = false;
+                }
+                if (quoteChanged[slot]) {
+                    deliveryQuotes[slot].copyFrom(quotes[slot]);
+                    deliverQuote[slot] = true;
+                    quoteChanged[slot] = false;
+                }
+            }
+            resync = false;
+        }
+
+        // Delivered outside the monitor, so a slow listener never holds up the publisher
+        int callbacks = delivering.size();
+        for (int i = 0; i < delivering.size(); i++) {
+            delivering.deliver(i, listener);
+        }
+        delivering.clear();
+        for (int slot = 0; slot < symbolCount; slot++) {
+            if (deliverRefresh[slot]) {
+                deliverRefresh[slot] = false;
+                listener.onRefresh(deliverySequences[slot], deliveryImages[slot]);
+                callbacks++;
+            }
+        }
+        for (int slot = 0; slot < symbolCount; slot++) {
+            if (deliverQuote[slot]) {
+                deliverQuote[slot] = false;
+                listener.onQuote(deliveryQuotes[slot]);
+                callbacks++;
+            }
+        }
+        return callbacks;
+    }
+}
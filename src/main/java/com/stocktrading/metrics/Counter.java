@@ -0,0 +1,30 @@
+package com.stocktrading.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A monotonically increasing count. Increments go to per-thread-striped cells of a
+ * {@link LongAdder}, so threads counting at once do not contend on one cache line;
+ * reading sums the cells.
+ */
+public final class Counter implements LongSupplier {
+    private final LongAdder adder = new LongAdder();
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long amount) {
+        adder.add(amount);
+    }
+
+    public long get() {
+        return adder.sum();
+    }
+
+    @Override
+    public long getAsLong() {
+        return adder.sum();
+    }
+}
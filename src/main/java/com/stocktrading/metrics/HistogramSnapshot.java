@@ -0,0 +1,101 @@
+package com.stocktrading.metrics;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram}'s counts. Percentiles are reported
+ * as the highest value that shares the bucket, as HdrHistogram does, so they are never
+ * understated.
+ */
+public class HistogramSnapshot {
+    private final long[] counts;
+    private final long totalCount;
+
+    HistogramSnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     */
+    public long getCount() { return totalCount; }
+
+    public long getP50() { return getValueAtPercentile(50); }
+    public long getP99() { return getValueAtPercentile(99); }
+    public long getP999() { return getValueAtPercentile(99.9); }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return The value in nanoseconds, zero if nothing was recorded
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return LatencyHistogram.highestEquivalentValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the mean of the values recorded, taking each at the middle of its bucket.
+     *
+     * @return The mean in nanoseconds, zero if nothing was recorded
+     */
+    public double getMean() {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                long low = LatencyHistogram.lowestEquivalentValue(i);
+                sum += counts[i] * (low + (LatencyHistogram.highestEquivalentValue(i) - low) / 2.0);
+            }
+        }
+        return sum / totalCount;
+    }
+
+    /**
+     * Gets the value at or below which a percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The value in nanoseconds, zero if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0), 100);
+        long target = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return LatencyHistogram.highestEquivalentValue(i);
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Gets what was recorded between an earlier snapshot of the same histogram and this one.
+     *
+     * @param earlier The earlier snapshot, or null for everything recorded so far
+     * @return The snapshot of the interval
+     */
+    public HistogramSnapshot since(HistogramSnapshot earlier) {
+        if (earlier == null) {
+            return this;
+        }
+        long[] interval = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            interval[i] = counts[i] - earlier.counts[i];
+        }
+        return new HistogramSnapshot(interval);
+    }
+}
@@ -0,0 +1,105 @@
+package com.stocktrading.metrics;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.stocktrading.TimeSource;
+
+/**
+ * Writes interval latency percentiles as CSV, one row per engine, symbol and stage
+ * that recorded anything since the previous report:
+ * <pre>
+ * time,engine,symbol,stage,count,p50_ns,p99_ns,p999_ns,max_ns
+ * 1700000000000,LockFreeOrderMatcher,AAPL,REST,1200,850,4100,9800,15000
+ * </pre>
+ * Schedule it with a {@link java.util.concurrent.ScheduledExecutorService}, or call
+ * {@link #report()} from a thread of your own. Reports must not overlap.
+ */
+public class LatencyCsvReporter implements Runnable {
+    static final String HEADER = "time,engine,symbol,stage,count,p50_ns,p99_ns,p999_ns,max_ns";
+
+    private final Appendable out;
+    private final TimeSource timeSource;
+    private final List<LatencyTracker> trackers = new CopyOnWriteArrayList<>();
+    // The previous report's snapshots, by tracker, symbol and stage
+    private final Map<LatencyTracker, Map<String, HistogramSnapshot[]>> previous = new HashMap<>();
+    private boolean headerWritten;
+
+    /**
+     * Creates a reporter. If the output is {@link Flushable} it is flushed after each report.
+     *
+     * @param out Where the CSV is written
+     * @param timeSource The clock for the time column
+     */
+    public LatencyCsvReporter(Appendable out, TimeSource timeSource) {
+        this.out = out;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Adds an engine's latencies to the report.
+     *
+     * @param tracker The engine's tracker, see TradingEngine.getLatencyTracker
+     */
+    public void add(LatencyTracker tracker) {
+        trackers.add(tracker);
+    }
+
+    @Override
+    public void run() {
+        report();
+    }
+
+    /**
+     * Writes a row for every histogram that recorded anything since the previous report.
+     *
+     * @throws UncheckedIOException If the output cannot be written
+     */
+    public void report() {
+        long time = timeSource.currentTimeMillis();
+        try {
+            if (!headerWritten) {
+                out.append(HEADER).append('\n');
+                headerWritten = true;
+            }
+            for (LatencyTracker tracker : trackers) {
+                Map<String, HistogramSnapshot[]> trackerPrevious = previous.computeIfAbsent(tracker, t -> new HashMap<>());
+                for (String symbol : tracker.getSymbols()) {
+                    HistogramSnapshot[] symbolPrevious = trackerPrevious.computeIfAbsent(symbol,
+                        s -> new HistogramSnapshot[LatencyTracker.Stage.values().length]);
+                    for (LatencyTracker.Stage stage : LatencyTracker.Stage.values()) {
+                        HistogramSnapshot snapshot = tracker.snapshot(symbol, stage);
+                        HistogramSnapshot interval = snapshot.since(symbolPrevious[stage.ordinal()]);
+                        symbolPrevious[stage.ordinal()] = snapshot;
+                        if (interval.getCount() > 0) {
+                            writeRow(time, tracker.getEngineType(), symbol, stage, interval);
+                        }
+                    }
+                }
+            }
+            if (out instanceof Flushable) {
+                ((Flushable) out).flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRow(long time, String engineType, String symbol, LatencyTracker.Stage stage,
+                          HistogramSnapshot interval) throws IOException {
+        out.append(Long.toString(time)).append(',')
+            .append(engineType).append(',')
+            .append(symbol).append(',')
+            .append(stage.name()).append(',')
+            .append(Long.toString(interval.getCount())).append(',')
+            .append(Long.toString(interval.getP50())).append(',')
+            .append(Long.toString(interval.getP99())).append(',')
+            .append(Long.toString(interval.getP999())).append(',')
+            .append(Long.toString(interval.getMax())).append('\n');
+    }
+}
@@ -0,0 +1,78 @@
+package com.stocktrading.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, log-linear histogram of latencies in nanoseconds, laid out like an
+ * HdrHistogram with two significant digits. Values below 256 get a bucket each; above
+ * that, every power of two is split into 128 equal buckets, so a recorded value is
+ * off by less than 1% however large it is. Values up to about 68 seconds are tracked
+ * and larger ones count as the largest.
+ * <p>
+ * Recording is one atomic increment of a preallocated counter, so it allocates nothing
+ * and any number of threads may record at once. Readers take a {@link HistogramSnapshot}.
+ */
+public class LatencyHistogram {
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << 36) - 1;
+
+    static final int SUB_BUCKET_BITS = 8;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    static final int BUCKET_COUNT = indexOf(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values count as zero
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : Math.min(nanos, HIGHEST_TRACKABLE_VALUE);
+        counts.getAndIncrement(indexOf(value));
+    }
+
+    /**
+     * Copies the counts recorded so far. Values recorded while the copy is taken may or
+     * may not be included.
+     *
+     * @return The snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        addTo(copy);
+        return new HistogramSnapshot(copy);
+    }
+
+    // Adds the counts into an array of BUCKET_COUNT totals
+    void addTo(long[] totals) {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] += counts.get(i);
+        }
+    }
+
+    // Values below SUB_BUCKET_COUNT index themselves; above, the top SUB_BUCKET_BITS bits do
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return (long) (index - shift * SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return lowestEquivalentValue(index) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package com.stocktrading.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.stocktrading.SymbolRegistry;
+
+/**
+ * Latency histograms for one engine, kept per symbol and per {@link Stage}.
+ * The engine type, usually its matcher's class name, labels the histograms, so engines
+ * of different types running side by side can be compared on the same traffic.
+ * <p>
+ * A symbol's histograms are created the first time a latency is recorded for it;
+ * after that recording allocates nothing.
+ */
+public class LatencyTracker {
+    /**
+     * The point an order has reached, measured from when it was submitted.
+     */
+    public enum Stage {
+        /** The book has accepted the order; for a sharded book, its shard thread has added it. */
+        REST,
+        /** The order has traded for the first time, as the aggressor. */
+        FIRST_TRADE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final String engineType;
+    // Histograms by symbol id and then stage; grown under this, read without locking
+    private volatile LatencyHistogram[][] histograms = new LatencyHistogram[16][];
+
+    /**
+     * Creates a tracker.
+     *
+     * @param engineType The label for the engine's histograms
+     */
+    public LatencyTracker(String engineType) {
+        this.engineType = engineType;
+    }
+
+    public String getEngineType() { return engineType; }
+
+    /**
+     * Records a latency.
+     *
+     * @param symbolId The symbol id, see SymbolRegistry
+     * @param stage The stage the order has reached
+     * @param nanos The time since the order was submitted, in nanoseconds
+     */
+    public void record(int symbolId, Stage stage, long nanos) {
+        LatencyHistogram[][] current = histograms;
+        LatencyHistogram[] symbolHistograms = symbolId < current.length ? current[symbolId] : null;
+        if (symbolHistograms == null) {
+            symbolHistograms = addSymbol(symbolId);
+        }
+        symbolHistograms[stage.ordinal()].record(nanos);
+    }
+
+    private synchronized LatencyHistogram[] addSymbol(int symbolId) {
+        LatencyHistogram[][] current = histograms;
+        if (symbolId < current.length && current[symbolId] != null) {
+            return current[symbolId];
+        }
+        LatencyHistogram[][] grown = Arrays.copyOf(current, Math.max(current.length, Integer.highestOneBit(symbolId) * 2));
+        LatencyHistogram[] symbolHistograms = new LatencyHistogram[STAGES.length];
+        for (int i = 0; i < symbolHistograms.length; i++) {
+            symbolHistograms[i] = new LatencyHistogram();
+        }
+        grown[symbolId] = symbolHistograms;
+        histograms = grown;
+        return symbolHistograms;
+    }
+
+    /**
+     * Gets the symbols that latencies have been recorded for.
+     *
+     * @return The symbols, in order of symbol id
+     */
+    public List<String> getSymbols() {
+        LatencyHistogram[][] current = histograms;
+        List<String> symbols = new ArrayList<>();
+        for (int symbolId = 0; symbolId < current.length; symbolId++) {
+            if (current[symbolId] != null) {
+                symbols.add(SymbolRegistry.getSymbol(symbolId));
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Takes a snapshot of one symbol's latencies for a stage.
+     *
+     * @param symbol The stock symbol
+     * @param stage The stage
+     * @return Everything recorded so far, empty if nothing has been recorded for the symbol
+     */
+    public HistogramSnapshot snapshot(String symbol, Stage stage) {
+        int symbolId = SymbolRegistry.idOf(symbol);
+        LatencyHistogram[][] current = histograms;
+        if (symbolId < 0 || symbolId >= current.length || current[symbolId] == null) {
+            return new HistogramSnapshot(new long[LatencyHistogram.BUCKET_COUNT]);
+        }
+        return current[symbolId][stage.ordinal()].snapshot();
+    }
+
+    /**
+     * Takes a snapshot of a stage's latencies across every symbol.
+     *
+     * @param stage The stage
+     * @return Everything recorded so far
+     */
+    public HistogramSnapshot snapshot(Stage stage) {
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (LatencyHistogram[] symbolHistograms : histograms) {
+            if (symbolHistograms != null) {
+                symbolHistograms[stage.ordinal()].addTo(counts);
+            }
+        }
+        return new HistogramSnapshot(counts);
+    }
+}
@@ -0,0 +1,30 @@
+package com.stocktrading.metrics;
+
+/**
+ * Counters a matcher keeps about its matching passes. A pass is one attempt to match
+ * a symbol, such as one call to matchOrders; a pass that finds nothing to trade is
+ * an empty sweep.
+ */
+public class MatcherMetrics {
+    private final Counter passes = new Counter();
+    private final Counter emptySweeps = new Counter();
+    private final Counter trades = new Counter();
+
+    /**
+     * Records a finished matching pass.
+     *
+     * @param tradeCount The number of trades the pass produced
+     */
+    public void recordPass(int tradeCount) {
+        passes.increment();
+        if (tradeCount == 0) {
+            emptySweeps.increment();
+        } else {
+            trades.add(tradeCount);
+        }
+    }
+
+    public Counter getPasses() { return passes; }
+    public Counter getEmptySweeps() { return emptySweeps; }
+    public Counter getTrades() { return trades; }
+}
@@ -0,0 +1,68 @@
+package com.stocktrading.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a {@link MetricsRegistry} as plain text on {@code GET /metrics}, for scrapers
+ * that pull. Requests are handled one at a time on the server's own thread, away from
+ * the engine's threads.
+ */
+public class MetricsHttpServer implements Closeable {
+    public static final String PATH = "/metrics";
+
+    private final HttpServer server;
+
+    /**
+     * Starts serving.
+     *
+     * @param registry The metrics to serve
+     * @param address The address to listen on; port zero picks a free port
+     * @throws IOException If the address cannot be bound
+     */
+    public MetricsHttpServer(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        server.createContext(PATH, exchange -> handle(registry, exchange));
+        server.start();
+    }
+
+    private static void handle(MetricsRegistry registry, HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            registry.writeText(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Gets the address the server listens on.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops serving.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.stocktrading.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes a {@link MetricsRegistry} over JMX, one read-only long attribute per metric.
+ * The attributes are listed afresh each time, so metrics added later show up.
+ */
+class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (!registry.contains(attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return registry.get(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (registry.contains(attribute)) {
+                list.add(new Attribute(attribute, registry.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        String[] names = registry.getNames().toArray(new String[0]);
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.length];
+        for (int i = 0; i < names.length; i++) {
+            attributes[i] = new MBeanAttributeInfo(names[i], "long", names[i], true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "Trading engine metrics", attributes, null,
+            new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,118 @@
+package com.stocktrading.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Named counters and gauges, read on demand. Counters are {@link Counter}s that the
+ * instrumented code increments; gauges are computed from their supplier each time
+ * they are read, so an unread gauge costs nothing.
+ * <p>
+ * Names follow the Prometheus conventions, with labels in braces, e.g.
+ * {@code book_bid_levels{symbol="AAPL"}}. The registry is exported by pulling: as
+ * text with {@link #writeText(Appendable)}, over HTTP with a {@link MetricsHttpServer},
+ * or as the attributes of a JMX MBean with {@link #registerMBean(String)}.
+ */
+public class MetricsRegistry {
+    private final Map<String, LongSupplier> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Gets a counter, creating it the first time it is asked for.
+     *
+     * @param name The counter's name
+     * @return The counter
+     * @throws IllegalArgumentException If the name belongs to a gauge
+     */
+    public Counter counter(String name) {
+        LongSupplier metric = metrics.computeIfAbsent(name, n -> new Counter());
+        if (!(metric instanceof Counter)) {
+            throw new IllegalArgumentException("Not a counter: " + name);
+        }
+        return (Counter) metric;
+    }
+
+    /**
+     * Adds a gauge, replacing any gauge of the same name. The supplier is called on
+     * the reading thread, so it must be safe to call from any thread.
+     *
+     * @param name The gauge's name
+     * @param supplier Computes the gauge's value
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        metrics.put(name, supplier);
+    }
+
+    /**
+     * Reads a metric.
+     *
+     * @param name The metric's name
+     * @return The counter's count or the gauge's current value
+     * @throws IllegalArgumentException If there is no such metric
+     */
+    public long get(String name) {
+        LongSupplier metric = metrics.get(name);
+        if (metric == null) {
+            throw new IllegalArgumentException("No such metric: " + name);
+        }
+        return metric.getAsLong();
+    }
+
+    public boolean contains(String name) {
+        return metrics.containsKey(name);
+    }
+
+    /**
+     * Gets the metric names, in order.
+     *
+     * @return A live view of the names
+     */
+    public Set<String> getNames() {
+        return metrics.keySet();
+    }
+
+    /**
+     * Writes every metric as a {@code name value} line, in name order.
+     *
+     * @param out Where to write
+     * @throws IOException If the output cannot be written
+     */
+    public void writeText(Appendable out) throws IOException {
+        for (Map.Entry<String, LongSupplier> metric : metrics.entrySet()) {
+            out.append(metric.getKey()).append(' ')
+                .append(Long.toString(metric.getValue().getAsLong())).append('\n');
+        }
+    }
+
+    /**
+     * Registers the metrics as the attributes of an MBean on the platform MBean server.
+     * Metrics added afterwards appear as attributes too.
+     *
+     * @param objectName The MBean's name, e.g. {@code com.stocktrading:type=TradingEngine,name=main}
+     * @return The registered name
+     * @throws JMException If the name is malformed or already registered
+     */
+    public ObjectName registerMBean(String objectName) throws JMException {
+        ObjectName name = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), name);
+        return name;
+    }
+
+    /**
+     * Removes an MBean registered with {@link #registerMBean(String)}.
+     *
+     * @param name The registered name
+     * @throws JMException If nothing is registered under the name
+     */
+    public static void unregisterMBean(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(name);
+    }
+}
@@ -0,0 +1,16 @@
+package com.stocktrading.ring;
+
+/**
+ * Spins on the CPU while waiting. Lowest latency; dedicates a core to the consumer.
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+	@Override
+	public void idle() {
+		Thread.onSpinWait();
+	}
+
+	@Override
+	public void signal() {
+		// The consumer never blocks, so there is nothing to wake
+	}
+}
@@ -0,0 +1,48 @@
+package com.stocktrading.ring;
+
+import com.stocktrading.Order;
+
+/**
+ * A reusable ring buffer slot carrying one submitted order from a producer to the consumer,
+ * together with what the consumer should do with it.
+ */
+public class OrderEvent {
+	/**
+	 * What the consumer should do with the event's order.
+	 */
+	public enum Kind { ADD, CANCEL, AMEND }
+
+	private Kind kind = Kind.ADD;
+	private Order order;
+
+	// Only used by AMEND
+	private int quantity;
+	private long priceTicks;
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public long getPriceTicks() {
+		return priceTicks;
+	}
+
+	void set(Kind kind, Order order, int quantity, long priceTicks) {
+		this.kind = kind;
+		this.order = order;
+		this.quantity = quantity;
+		this.priceTicks = priceTicks;
+	}
+
+	void clear() {
+		this.order = null;
+	}
+}
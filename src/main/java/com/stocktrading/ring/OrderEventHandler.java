@@ -0,0 +1,15 @@
+package com.stocktrading.ring;
+
+/**
+ * Callback invoked by the consumer for each event drained from an {@link OrderRingBuffer}.
+ */
+public interface OrderEventHandler {
+	/**
+	 * Handles one event. The event slot is reused once the handler returns.
+	 *
+	 * @param event The event
+	 * @param sequence The event's sequence number
+	 * @param endOfBatch True if this is the last event available in the current batch
+	 */
+	void onEvent(OrderEvent event, long sequence, boolean endOfBatch);
+}
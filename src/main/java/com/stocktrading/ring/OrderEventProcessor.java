@@ -0,0 +1,47 @@
+package com.stocktrading.ring;
+
+/**
+ * Consumer loop for an {@link OrderRingBuffer}: drains events in batches and
+ * waits with the ring's {@link WaitStrategy} whenever it runs dry.
+ * An exception thrown by the handler ends the loop, and publishers block once the
+ * ring fills, so a handler that must keep the ring moving catches its own.
+ */
+public class OrderEventProcessor implements Runnable {
+	private final OrderRingBuffer ringBuffer;
+	private final OrderEventHandler handler;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a new event processor.
+	 *
+	 * @param ringBuffer The ring buffer to consume from
+	 * @param handler The handler to invoke for each event
+	 */
+	public OrderEventProcessor(OrderRingBuffer ringBuffer, OrderEventHandler handler) {
+		this.ringBuffer = ringBuffer;
+		this.handler = handler;
+	}
+
+	/**
+	 * Stops the processor once it has drained the events already published.
+	 */
+	public void halt() {
+		running = false;
+		ringBuffer.getWaitStrategy().signal();
+	}
+
+	@Override
+	public void run() {
+		WaitStrategy waitStrategy = ringBuffer.getWaitStrategy();
+		while (running) {
+			if (ringBuffer.drain(handler) == 0) {
+				waitStrategy.idle();
+			}
+		}
+
+		// Hand over anything published before the halt
+		while (ringBuffer.drain(handler) > 0) {
+			// keep draining
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.stocktrading.ring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stocktrading.Order;
+
+/**
+ * Preallocated multi-producer, single-consumer ring of {@link OrderEvent} slots.
+ * Producers claim a sequence number, fill the slot it maps to and mark it published;
+ * the consumer drains every contiguous published slot in one batch. Memory is
+ * bounded by the capacity: producers wait for the consumer when the ring is full.
+ */
+public class OrderRingBuffer {
+	private final OrderEvent[] slots;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+
+	// Next sequence to hand out to a producer
+	private final AtomicLong claimSequence;
+
+	// Sequence published into each slot; lets the consumer detect gaps left by slower producers
+	private final AtomicLongArray publishedSequences;
+
+	// Last sequence the consumer has finished with
+	private final AtomicLong consumerSequence;
+
+	/**
+	 * Creates a new ring buffer.
+	 *
+	 * @param capacity The number of slots, which must be a power of two
+	 * @param waitStrategy How the consumer waits for events
+	 */
+	public OrderRingBuffer(int capacity, WaitStrategy waitStrategy) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a positive power of two");
+		}
+		this.slots = new OrderEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new OrderEvent();
+		}
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+		this.claimSequence = new AtomicLong(0);
+		this.publishedSequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			publishedSequences.set(i, -1);
+		}
+		this.consumerSequence = new AtomicLong(-1);
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * Publishes an order into the next free slot. Safe to call from any number of threads.
+	 * If the ring is full, waits until the consumer frees a slot.
+	 *
+	 * @param order The order to publish
+	 * @return The sequence number the order was published at
+	 */
+	public long publish(Order order) {
+		return publish(OrderEvent.Kind.ADD, order, 0, 0);
+	}
+
+	/**
+	 * Publishes a command on an order into the next free slot. Safe to call from any
+	 * number of threads. If the ring is full, waits until the consumer frees a slot.
+	 *
+	 * @param kind What the consumer should do with the order
+	 * @param order The order
+	 * @param quantity The new quantity of an AMEND, otherwise ignored
+	 * @param priceTicks The new price in ticks of an AMEND, otherwise ignored
+	 * @return The sequence number the command was published at
+	 */
+	public long publish(OrderEvent.Kind kind, Order order, int quantity, long priceTicks) {
+		long sequence = claimSequence.getAndIncrement();
+
+		// Wait for the consumer to release the slot from the previous lap
+		long wrapPoint = sequence - slots.length;
+		while (wrapPoint > consumerSequence.get()) {
+			LockSupport.parkNanos(1);
+		}
+
+		int index = (int) (sequence & mask);
+		slots[index].set(kind, order, quantity, priceTicks);
+		publishedSequences.set(index, sequence);
+		waitStrategy.signal();
+		return sequence;
+	}
+
+	/**
+	 * Hands every available event to the handler in sequence order and then releases
+	 * their slots. Must only be called by the single consumer thread.
+	 *
+	 * @param handler The handler to invoke for each event
+	 * @return The number of events handled, zero if none were available
+	 */
+	public int drain(OrderEventHandler handler) {
+		long next = consumerSequence.get() + 1;
+
+		// Find the end of the contiguous run of published slots
+		long available = next - 1;
+		while (available - next + 1 < slots.length
+				&& publishedSequences.get((int) ((available + 1) & mask)) == available + 1) {
+			available++;
+		}
+		if (available < next) {
+			return 0;
+		}
+
+		for (long sequence = next; sequence <= available; sequence++) {
+			OrderEvent event = slots[(int) (sequence & mask)];
+			handler.onEvent(event, sequence, sequence == available);
+			event.clear();
+		}
+		consumerSequence.lazySet(available);
+		return (int) (available - next + 1);
+	}
+
+	/**
+	 * Checks whether every published event has been drained.
+	 *
+	 * @return True if the consumer has caught up with all claimed sequences
+	 */
+	public boolean isEmpty() {
+		return consumerSequence.get() + 1 >= claimSequence.get();
+	}
+}
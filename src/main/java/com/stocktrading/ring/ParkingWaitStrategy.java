@@ -0,0 +1,43 @@
+package com.stocktrading.ring;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parks the consumer thread while waiting and unparks it when an event is published.
+ * Costs nothing while idle. The park is timed, so a wake-up that races with the
+ * consumer going to sleep delays it by at most {@code maxParkNanos}.
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+	private static final long DEFAULT_MAX_PARK_NANOS = 100_000L;
+
+	private final long maxParkNanos;
+	private volatile Thread waiter;
+
+	public ParkingWaitStrategy() {
+		this(DEFAULT_MAX_PARK_NANOS);
+	}
+
+	/**
+	 * Creates a parking wait strategy.
+	 *
+	 * @param maxParkNanos The longest the consumer sleeps before checking again
+	 */
+	public ParkingWaitStrategy(long maxParkNanos) {
+		this.maxParkNanos = maxParkNanos;
+	}
+
+	@Override
+	public void idle() {
+		waiter = Thread.currentThread();
+		LockSupport.parkNanos(this, maxParkNanos);
+		waiter = null;
+	}
+
+	@Override
+	public void signal() {
+		Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.stocktrading.ring;
+
+/**
+ * Decides what a ring buffer consumer does while no events are available.
+ * Trades latency against CPU: spinning reacts fastest and burns a core,
+ * parking is cheapest when idle but pays a wake-up on the next event.
+ */
+public interface WaitStrategy {
+	/**
+	 * Called repeatedly by the consumer while it waits for the next event.
+	 */
+	void idle();
+
+	/**
+	 * Called by producers after publishing, so that a consumer blocked in
+	 * {@link #idle()} can resume.
+	 */
+	void signal();
+}
@@ -0,0 +1,17 @@
+package com.stocktrading.ring;
+
+/**
+ * Yields the CPU to other runnable threads while waiting. Low latency while
+ * still letting producers run when cores are oversubscribed.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+	@Override
+	public void idle() {
+		Thread.yield();
+	}
+
+	@Override
+	public void signal() {
+		// The consumer never blocks, so there is nothing to wake
+	}
+}
@@ -0,0 +1,77 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the DirtySymbolQueue class.
+ */
+public class DirtySymbolQueueTest {
+
+    @Test
+    public void testSymbolQueuedOnce() throws InterruptedException {
+        DirtySymbolQueue queue = new DirtySymbolQueue(Arrays.asList("AAPL", "MSFT"));
+
+        // Repeated signals for the same symbol collapse into a single pass
+        queue.markDirty("AAPL");
+        queue.markDirty("AAPL");
+        queue.markDirty("MSFT");
+        queue.markDirty("AAPL");
+
+        assertEquals("AAPL", queue.take());
+        assertEquals("MSFT", queue.take());
+
+        // Once taken, the symbol can be queued again
+        queue.markDirty("AAPL");
+        assertEquals("AAPL", queue.take());
+    }
+
+    @Test
+    public void testUnknownSymbolIgnored() throws InterruptedException {
+        DirtySymbolQueue queue = new DirtySymbolQueue(Arrays.asList("AAPL"));
+
+        queue.markDirty("GOOGL");
+        queue.markDirty("AAPL");
+
+        assertEquals("AAPL", queue.take());
+    }
+
+    @Test
+    public void testTakeWaitsForSignal() throws InterruptedException {
+        DirtySymbolQueue queue = new DirtySymbolQueue(Arrays.asList("AAPL"));
+
+        Thread signaller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.markDirty("AAPL");
+        });
+
+        long start = System.nanoTime();
+        signaller.start();
+        assertEquals("AAPL", queue.take());
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+        signaller.join();
+    }
+
+    @Test
+    public void testPollTimesOut() throws InterruptedException {
+        DirtySymbolQueue queue = new DirtySymbolQueue(Arrays.asList("AAPL"));
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+
+        queue.markDirty("AAPL");
+        assertEquals("AAPL", queue.poll(10, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        // Polling clears the flag, so the symbol can be queued again
+        queue.markDirty("AAPL");
+        assertEquals("AAPL", queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+}
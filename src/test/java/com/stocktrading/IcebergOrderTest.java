@@ -0,0 +1,176 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for iceberg orders in every book.
+ */
+public class IcebergOrderTest {
+
+    // A book and the matcher that matches it
+    private interface Venue {
+        void rest(Order order);
+        void match();
+        void amend(Order order, int newQuantity, double newPrice);
+        MarketDepth depth();
+        List<String> trades();
+    }
+
+    private static String describe(Trade trade) {
+        return trade.getQuantity() + " from " + trade.getSellOrderId();
+    }
+
+    private static List<String> drain(TradeSink trades) {
+        List<String> result = new ArrayList<>();
+        Trade trade;
+        while ((trade = trades.poll()) != null) {
+            result.add(describe(trade));
+        }
+        return result;
+    }
+
+    private static Venue locked() {
+        LockedOrderBook book = new LockedOrderBook();
+        LockedOrderMatcher matcher = new LockedOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.matchOrders("AAPL"); }
+            public void amend(Order order, int newQuantity, double newPrice) {
+                assertTrue(book.amendOrder(order.getId(), newQuantity, newPrice));
+            }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    private static Venue lockFree() {
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.matchOrders("AAPL"); }
+            public void amend(Order order, int newQuantity, double newPrice) {
+                assertTrue(book.amendOrder(order.getId(), newQuantity, newPrice));
+            }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    // A shard's book and matcher, driven as the shard thread drives them
+    private static Venue ladder() {
+        SymbolBook book = new SymbolBook("AAPL");
+        List<String> trades = new ArrayList<>();
+        SymbolBookMatcher matcher = new SymbolBookMatcher(new TradePool(1, TimeSource.SYSTEM), trade -> {
+            trades.add(describe(trade));
+            trade.release();
+        });
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.match(book); }
+            public void amend(Order order, int newQuantity, double newPrice) {
+                assertTrue(book.amendOrder(order, newQuantity, TickSizes.toTicks(order.getSymbolId(), newPrice)));
+            }
+            public MarketDepth depth() { return book.depth(10, new MarketDepth(10)); }
+            public List<String> trades() {
+                List<String> result = new ArrayList<>(trades);
+                trades.clear();
+                return result;
+            }
+        };
+    }
+
+    private static List<Venue> venues() {
+        return Arrays.asList(locked(), lockFree(), ladder());
+    }
+
+    @Test
+    public void testCreatesDisplayedPeakAndHiddenReserve() {
+        Order order = Order.iceberg("AAPL", Order.Type.SELL, 100.0, 25, 10);
+        assertTrue(order.isIceberg());
+        assertEquals(10, order.getQuantity());
+        assertEquals(15, order.getHiddenQuantity());
+        assertEquals(25, order.getRemainingQuantity());
+        assertEquals(10, order.getDisplayQuantity());
+
+        Order small = Order.iceberg("AAPL", Order.Type.SELL, 100.0, 4, 10);
+        assertEquals(4, small.getQuantity());
+        assertEquals(0, small.getHiddenQuantity());
+        assertFalse(new Order("AAPL", Order.Type.SELL, 100.0, 4).isIceberg());
+        assertThrows(IllegalArgumentException.class, () -> Order.iceberg("AAPL", Order.Type.SELL, 100.0, 4, 0));
+    }
+
+    @Test
+    public void testRefreshGoesToTheBackOfTheLevel() {
+        for (Venue venue : venues()) {
+            Order iceberg = Order.iceberg("AAPL", Order.Type.SELL, 100.0, 25, 10);
+            Order plain = new Order("AAPL", Order.Type.SELL, 100.0, 5);
+            venue.rest(iceberg);
+            venue.rest(plain);
+
+            // Depth shows the displayed peak only
+            MarketDepth depth = venue.depth();
+            assertEquals(15, depth.getAskQuantity(0));
+            assertEquals(2, depth.getAskOrderCount(0));
+
+            venue.rest(new Order("AAPL", Order.Type.BUY, 100.0, 12));
+            venue.match();
+            // The refreshed peak queues behind the order that arrived after the iceberg
+            assertEquals(Arrays.asList("10 from " + iceberg.getId(), "2 from " + plain.getId()), venue.trades());
+            assertEquals(10, iceberg.getQuantity());
+            assertEquals(5, iceberg.getHiddenQuantity());
+            assertEquals(13, venue.depth().getAskQuantity(0));
+
+            venue.rest(new Order("AAPL", Order.Type.BUY, 100.0, 20));
+            venue.match();
+            assertEquals(Arrays.asList("3 from " + plain.getId(), "10 from " + iceberg.getId(),
+                "5 from " + iceberg.getId()), venue.trades());
+            depth = venue.depth();
+            assertEquals(0, depth.getAskLevels());
+            assertEquals(2, depth.getBidQuantity(0));
+            assertFalse(iceberg.isResting());
+        }
+    }
+
+    @Test
+    public void testAmendTakesFromTheHiddenReserveFirst() {
+        for (Venue venue : venues()) {
+            Order iceberg = Order.iceberg("AAPL", Order.Type.BUY, 100.0, 30, 10);
+            Order plain = new Order("AAPL", Order.Type.BUY, 100.0, 5);
+            venue.rest(iceberg);
+            venue.rest(plain);
+
+            venue.amend(iceberg, 15, 100.0);
+            assertEquals(10, iceberg.getQuantity());
+            assertEquals(5, iceberg.getHiddenQuantity());
+            venue.amend(iceberg, 8, 100.0);
+            assertEquals(8, iceberg.getQuantity());
+            assertEquals(0, iceberg.getHiddenQuantity());
+            assertEquals(13, venue.depth().getBidQuantity(0));
+
+            // Both decreases kept priority
+            venue.rest(new Order("AAPL", Order.Type.SELL, 100.0, 1));
+            venue.match();
+            assertEquals(1, venue.trades().size());
+            assertEquals(7, iceberg.getQuantity());
+
+            // An increase loses priority and is split afresh
+            venue.amend(iceberg, 40, 100.0);
+            assertEquals(10, iceberg.getQuantity());
+            assertEquals(30, iceberg.getHiddenQuantity());
+            assertEquals(15, venue.depth().getBidQuantity(0));
+            venue.rest(new Order("AAPL", Order.Type.SELL, 100.0, 6));
+            venue.match();
+            assertEquals(0, plain.getQuantity());
+            assertEquals(9, iceberg.getQuantity());
+        }
+    }
+}
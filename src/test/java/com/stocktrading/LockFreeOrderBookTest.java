@@ -1,7 +1,6 @@
 package com.stocktrading;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -29,11 +28,11 @@ public class LockFreeOrderBookTest {
         assertTrue(orderBook.hasBuyOrders("AAPL"));
         assertFalse(orderBook.hasSellOrders("AAPL"));
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap("AAPL");
         assertEquals(1, buyOrders.size());
-        assertTrue(buyOrders.containsKey(150.0));
-        assertEquals(1, buyOrders.get(150.0).size());
-        assertEquals(order.getId(), buyOrders.get(150.0).peek().getId());
+        assertTrue(buyOrders.containsKey(15000L));
+        assertEquals(1, buyOrders.get(15000L).size());
+        assertEquals(order.getId(), buyOrders.get(15000L).peek().getId());
     }
     
     @Test
@@ -46,11 +45,11 @@ public class LockFreeOrderBookTest {
         assertFalse(orderBook.hasBuyOrders("AAPL"));
         assertTrue(orderBook.hasSellOrders("AAPL"));
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = orderBook.getSellOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap("AAPL");
         assertEquals(1, sellOrders.size());
-        assertTrue(sellOrders.containsKey(150.0));
-        assertEquals(1, sellOrders.get(150.0).size());
-        assertEquals(order.getId(), sellOrders.get(150.0).peek().getId());
+        assertTrue(sellOrders.containsKey(15000L));
+        assertEquals(1, sellOrders.get(15000L).size());
+        assertEquals(order.getId(), sellOrders.get(15000L).peek().getId());
     }
     
     @Test
@@ -66,11 +65,11 @@ public class LockFreeOrderBookTest {
         assertTrue(orderBook.hasBuyOrders("AAPL"));
         assertTrue(orderBook.hasBuyOrders("MSFT"));
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> aaplBuyOrders = orderBook.getBuyOrdersMap("AAPL");
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> msftBuyOrders = orderBook.getBuyOrdersMap("MSFT");
+        ConcurrentSkipListMap<Long, PriceLevel> aaplBuyOrders = orderBook.getBuyOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> msftBuyOrders = orderBook.getBuyOrdersMap("MSFT");
         
-        assertEquals(aaplBuy.getId(), aaplBuyOrders.get(150.0).peek().getId());
-        assertEquals(msftBuy.getId(), msftBuyOrders.get(250.0).peek().getId());
+        assertEquals(aaplBuy.getId(), aaplBuyOrders.get(15000L).peek().getId());
+        assertEquals(msftBuy.getId(), msftBuyOrders.get(25000L).peek().getId());
     }
     
     @Test
@@ -84,12 +83,12 @@ public class LockFreeOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap("AAPL");
         assertEquals(2, buyOrders.size());
         
         // First entry should be the highest price (155.0)
-        Map.Entry<Double, ConcurrentLinkedQueue<Order>> firstEntry = buyOrders.firstEntry();
-        assertEquals(155.0, firstEntry.getKey());
+        Map.Entry<Long, PriceLevel> firstEntry = buyOrders.firstEntry();
+        assertEquals(15500L, firstEntry.getKey());
         assertEquals(order2.getId(), firstEntry.getValue().peek().getId());
     }
     
@@ -104,12 +103,12 @@ public class LockFreeOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = orderBook.getSellOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap("AAPL");
         assertEquals(2, sellOrders.size());
         
         // First entry should be the lowest price (145.0)
-        Map.Entry<Double, ConcurrentLinkedQueue<Order>> firstEntry = sellOrders.firstEntry();
-        assertEquals(145.0, firstEntry.getKey());
+        Map.Entry<Long, PriceLevel> firstEntry = sellOrders.firstEntry();
+        assertEquals(14500L, firstEntry.getKey());
         assertEquals(order2.getId(), firstEntry.getValue().peek().getId());
     }
     
@@ -125,8 +124,8 @@ public class LockFreeOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap("AAPL");
-        ConcurrentLinkedQueue<Order> ordersAtPrice = buyOrders.get(150.0);
+        ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap("AAPL");
+        PriceLevel ordersAtPrice = buyOrders.get(15000L);
         
         assertEquals(2, ordersAtPrice.size());
         assertEquals(order1.getId(), ordersAtPrice.poll().getId()); // Earlier timestamp first
@@ -178,16 +177,16 @@ public class LockFreeOrderBookTest {
         int totalBuyOrders = 0;
         int totalSellOrders = 0;
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> buyOrders = orderBook.getBuyOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> buyOrders = orderBook.getBuyOrdersMap("AAPL");
         if (buyOrders != null) {
-            for (ConcurrentLinkedQueue<Order> queue : buyOrders.values()) {
+            for (PriceLevel queue : buyOrders.values()) {
                 totalBuyOrders += queue.size();
             }
         }
         
-        ConcurrentSkipListMap<Double, ConcurrentLinkedQueue<Order>> sellOrders = orderBook.getSellOrdersMap("AAPL");
+        ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap("AAPL");
         if (sellOrders != null) {
-            for (ConcurrentLinkedQueue<Order> queue : sellOrders.values()) {
+            for (PriceLevel queue : sellOrders.values()) {
                 totalSellOrders += queue.size();
             }
         }
@@ -196,4 +195,96 @@ public class LockFreeOrderBookTest {
         assertEquals(numThreads * ordersPerThread / 2, totalBuyOrders);
         assertEquals(numThreads * ordersPerThread / 2, totalSellOrders);
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testCancelOrder() {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        Order order1 = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.SELL, 151.0, 10);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+
+        assertTrue(orderBook.cancelOrder(order1.getId()));
+        assertFalse(orderBook.cancelOrder(order1.getId()));
+
+        // The emptied level is unlinked
+        ConcurrentSkipListMap<Long, PriceLevel> sellOrders = orderBook.getSellOrdersMap("AAPL");
+        assertNull(sellOrders.get(15000L));
+        assertEquals(15100L, sellOrders.firstKey());
+        assertEquals(order2, orderBook.getOrder(order2.getId()));
+    }
+
+    @Test
+    public void testAmendOrder() {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        Order order1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+
+        // A quantity decrease keeps the order at the head
+        assertTrue(orderBook.amendOrder(order1.getId(), 5, 150.0));
+        PriceLevel level = orderBook.getBuyOrdersMap("AAPL").get(15000L);
+        assertEquals(order1, level.peek());
+        assertEquals(15, level.getTotalQuantity());
+
+        // A price change moves it to the back of the new level
+        assertTrue(orderBook.amendOrder(order2.getId(), 10, 149.0));
+        assertEquals(1, level.size());
+        assertEquals(order2, orderBook.getBuyOrdersMap("AAPL").get(14900L).peek());
+    }
+
+    @Test
+    public void testConcurrentCancels() throws InterruptedException {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        int numOrders = 2000;
+        Order[] orders = new Order[numOrders];
+        for (int i = 0; i < numOrders; i++) {
+            orders[i] = new Order("AAPL", Order.Type.BUY, 150.0 + (i % 5), 1);
+            orderBook.addOrder(orders[i]);
+        }
+
+        int numThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch latch = new CountDownLatch(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final int threadId = t;
+            executor.submit(() -> {
+                try {
+                    for (int i = threadId; i < numOrders; i += numThreads) {
+                        orderBook.cancelOrder(orders[i].getId());
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertFalse(orderBook.hasBuyOrders("AAPL"));
+    }
+
+    @Test
+    public void testDepthSkipsCancelledLevels() {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        Order best = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+        orderBook.addOrder(best);
+        orderBook.addOrder(new Order("AAPL", Order.Type.SELL, 150.5, 4));
+        orderBook.addOrder(new Order("AAPL", Order.Type.SELL, 150.5, 6));
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 149.0, 2));
+
+        MarketDepth depth = orderBook.topOfBook("AAPL", new MarketDepth(4));
+        assertEquals(15000, depth.getAskPriceTicks(0));
+        assertEquals(14900, depth.getBidPriceTicks(0));
+
+        orderBook.cancelOrder(best.getId());
+        orderBook.depth("AAPL", 4, depth);
+        assertEquals(1, depth.getAskLevels());
+        assertEquals(15050, depth.getAskPriceTicks(0));
+        assertEquals(10, depth.getAskQuantity(0));
+        assertEquals(2, depth.getAskOrderCount(0));
+        assertEquals(1, depth.getBidLevels());
+    }
+}
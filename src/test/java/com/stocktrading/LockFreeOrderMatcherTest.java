@@ -30,6 +30,7 @@ public class LockFreeOrderMatcherTest {
         
         orderBook.addOrder(buyOrder);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -68,6 +69,7 @@ public class LockFreeOrderMatcherTest {
         
         orderBook.addOrder(buyOrder);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -77,8 +79,8 @@ public class LockFreeOrderMatcherTest {
         assertFalse(orderBook.hasSellOrders("AAPL"));
         
         // Check the remaining buy order
-        assertEquals(1, orderBook.getBuyOrdersMap("AAPL").get(150.0).size());
-        Order remainingBuyOrder = orderBook.getBuyOrdersMap("AAPL").get(150.0).peek();
+        assertEquals(1, orderBook.getBuyOrdersMap("AAPL").get(15000L).size());
+        Order remainingBuyOrder = orderBook.getBuyOrdersMap("AAPL").get(15000L).peek();
         assertEquals(5, remainingBuyOrder.getQuantity());
         assertEquals(buyOrder.getId(), remainingBuyOrder.getId());
         
@@ -116,6 +118,7 @@ public class LockFreeOrderMatcherTest {
         orderBook.addOrder(sellOrder1);
         orderBook.addOrder(buyOrder2);
         orderBook.addOrder(sellOrder2);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(500);
@@ -152,6 +155,7 @@ public class LockFreeOrderMatcherTest {
         orderBook.addOrder(buyOrder1);
         orderBook.addOrder(buyOrder2);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -162,8 +166,8 @@ public class LockFreeOrderMatcherTest {
         
         // Check the remaining buy order (should be the lower priced one)
         assertEquals(1, orderBook.getBuyOrdersMap("AAPL").size());
-        assertTrue(orderBook.getBuyOrdersMap("AAPL").containsKey(150.0));
-        Order remainingBuyOrder = orderBook.getBuyOrdersMap("AAPL").get(150.0).peek();
+        assertTrue(orderBook.getBuyOrdersMap("AAPL").containsKey(15000L));
+        Order remainingBuyOrder = orderBook.getBuyOrdersMap("AAPL").get(15000L).peek();
         assertEquals(5, remainingBuyOrder.getQuantity());
         assertEquals(buyOrder1.getId(), remainingBuyOrder.getId());
         
@@ -206,6 +210,7 @@ public class LockFreeOrderMatcherTest {
                         
                         Order order = new Order("AAPL", type, price, 1);
                         orderBook.addOrder(order);
+                        matcher.signal("AAPL");
                         
                         // Small delay to allow matching to occur
                         Thread.sleep(1);
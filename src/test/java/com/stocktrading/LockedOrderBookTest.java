@@ -1,9 +1,10 @@
 package com.stocktrading;
 
-import java.util.concurrent.PriorityBlockingQueue;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -22,7 +23,7 @@ public class LockedOrderBookTest {
         assertTrue(orderBook.hasBuyOrders("AAPL"));
         assertFalse(orderBook.hasSellOrders("AAPL"));
         
-        PriorityBlockingQueue<Order> buyOrders = orderBook.getBuyOrders("AAPL");
+        BookSide buyOrders = orderBook.getBuyOrders("AAPL");
         assertEquals(1, buyOrders.size());
         assertEquals(order, buyOrders.peek());
     }
@@ -37,7 +38,7 @@ public class LockedOrderBookTest {
         assertTrue(orderBook.hasSellOrders("AAPL"));
         assertFalse(orderBook.hasBuyOrders("AAPL"));
         
-        PriorityBlockingQueue<Order> sellOrders = orderBook.getSellOrders("AAPL");
+        BookSide sellOrders = orderBook.getSellOrders("AAPL");
         assertEquals(1, sellOrders.size());
         assertEquals(order, sellOrders.peek());
     }
@@ -53,7 +54,7 @@ public class LockedOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        PriorityBlockingQueue<Order> buyOrders = orderBook.getBuyOrders("AAPL");
+        BookSide buyOrders = orderBook.getBuyOrders("AAPL");
         assertEquals(order2, buyOrders.poll()); // Higher price first
         assertEquals(order1, buyOrders.poll()); // Lower price second
     }
@@ -69,7 +70,7 @@ public class LockedOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        PriorityBlockingQueue<Order> sellOrders = orderBook.getSellOrders("AAPL");
+        BookSide sellOrders = orderBook.getSellOrders("AAPL");
         assertEquals(order2, sellOrders.poll()); // Lower price first
         assertEquals(order1, sellOrders.poll()); // Higher price second
     }
@@ -86,8 +87,94 @@ public class LockedOrderBookTest {
         orderBook.addOrder(order1);
         orderBook.addOrder(order2);
         
-        PriorityBlockingQueue<Order> buyOrders = orderBook.getBuyOrders("AAPL");
+        BookSide buyOrders = orderBook.getBuyOrders("AAPL");
         assertEquals(order1, buyOrders.poll()); // Earlier timestamp first
         assertEquals(order2, buyOrders.poll()); // Later timestamp second
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testCancelOrder() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        Order order1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.BUY, 150.0, 20);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+
+        assertTrue(orderBook.cancelOrder(order1.getId()));
+        assertFalse(orderBook.cancelOrder(order1.getId()));
+        assertNull(orderBook.getOrder(order1.getId()));
+
+        BookSide buyOrders = orderBook.getBuyOrders("AAPL");
+        assertEquals(1, buyOrders.size());
+        assertEquals(order2, buyOrders.peek());
+
+        assertTrue(orderBook.cancelOrder(order2.getId()));
+        assertFalse(orderBook.hasBuyOrders("AAPL"));
+    }
+
+    @Test
+    public void testAmendQuantityDecreaseKeepsPriority() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        Order order1 = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+
+        assertTrue(orderBook.amendOrder(order1.getId(), 4, 150.0));
+
+        BookSide sellOrders = orderBook.getSellOrders("AAPL");
+        assertEquals(4, order1.getQuantity());
+        assertEquals(14, sellOrders.getLevel(15000).getTotalQuantity());
+        assertEquals(order1, sellOrders.poll());
+    }
+
+    @Test
+    public void testAmendLosesPriority() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        Order order1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+
+        // A quantity increase goes to the back of the level
+        assertTrue(orderBook.amendOrder(order1.getId(), 15, 150.0));
+        BookSide buyOrders = orderBook.getBuyOrders("AAPL");
+        assertEquals(order2, buyOrders.peek());
+
+        // A price change moves the order to its new level
+        assertTrue(orderBook.amendOrder(order1.getId(), 15, 151.0));
+        assertEquals(order1, buyOrders.peek());
+        assertEquals(15100, order1.getPriceTicks());
+        assertEquals(2, buyOrders.getLevelCount());
+
+        assertFalse(orderBook.amendOrder(-1, 10, 150.0));
+        assertThrows(IllegalArgumentException.class, () -> orderBook.amendOrder(order1.getId(), 0, 150.0));
+    }
+
+    @Test
+    public void testDepthAggregatesLevels() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 150.0, 10));
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 150.0, 5));
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 149.5, 7));
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 149.0, 1));
+        orderBook.addOrder(new Order("AAPL", Order.Type.SELL, 151.0, 3));
+
+        MarketDepth depth = orderBook.depth("AAPL", 2, new MarketDepth(5));
+        assertEquals(2, depth.getBidLevels());
+        assertEquals(15000, depth.getBidPriceTicks(0));
+        assertEquals(15, depth.getBidQuantity(0));
+        assertEquals(2, depth.getBidOrderCount(0));
+        assertEquals(149.5, depth.getBidPrice(1), 1e-9);
+        assertEquals(1, depth.getAskLevels());
+        assertEquals(3, depth.getAskQuantity(0));
+
+        // The buffer is overwritten, and capped by its own size
+        orderBook.topOfBook("AAPL", depth);
+        assertEquals(1, depth.getBidLevels());
+        new LockedOrderBook().depth("MSFT", 3, depth);
+        assertEquals(0, depth.getBidLevels() + depth.getAskLevels());
+        assertEquals(1, orderBook.depth("AAPL", 10, new MarketDepth(1)).getBidLevels());
+        assertThrows(IndexOutOfBoundsException.class, () -> depth.getAskQuantity(0));
+    }
+}
@@ -27,6 +27,7 @@ public class LockedOrderMatcherTest {
         
         orderBook.addOrder(buyOrder);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -63,6 +64,7 @@ public class LockedOrderMatcherTest {
         
         orderBook.addOrder(buyOrder);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -107,6 +109,7 @@ public class LockedOrderMatcherTest {
         orderBook.addOrder(sellOrder1);
         orderBook.addOrder(buyOrder2);
         orderBook.addOrder(sellOrder2);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(500);
@@ -143,6 +146,7 @@ public class LockedOrderMatcherTest {
         orderBook.addOrder(buyOrder1);
         orderBook.addOrder(buyOrder2);
         orderBook.addOrder(sellOrder);
+        matcher.signal("AAPL");
         
         // Wait for the matcher to process the orders
         Thread.sleep(100);
@@ -0,0 +1,161 @@
+package com.stocktrading;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the OrderPool, TradePool and SymbolBookMatcher classes.
+ */
+public class OrderPoolTest {
+
+    private static final TimeSource FIXED_TIME = () -> 1234L;
+
+    @Test
+    public void testOrderRecycled() {
+        OrderPool pool = new OrderPool(0, FIXED_TIME);
+        int symbolId = SymbolRegistry.intern("AAPL");
+
+        Order order = pool.acquire(symbolId, Order.Type.BUY, 15000, 10);
+        long firstId = order.getId();
+        assertEquals("AAPL", order.getSymbol());
+        assertEquals(1234L, order.getTimestamp());
+        assertEquals(1, pool.getCreatedCount());
+
+        pool.release(order);
+        assertEquals(1, pool.getFreeCount());
+        assertThrows(IllegalStateException.class, () -> pool.release(order));
+
+        Order reused = pool.acquire(symbolId, Order.Type.SELL, 15100, 5);
+        assertSame(order, reused);
+        assertNotEquals(firstId, reused.getId());
+        assertEquals(Order.Type.SELL, reused.getType());
+        assertEquals(15100, reused.getPriceTicks());
+        assertEquals(5, reused.getQuantity());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testRestingOrderCannotBeReleased() {
+        OrderPool pool = new OrderPool();
+        SymbolBook book = new SymbolBook("AAPL");
+        Order order = pool.acquire(book.getSymbolId(), Order.Type.BUY, 15000, 10);
+        book.addOrder(order);
+
+        assertThrows(IllegalStateException.class, () -> pool.release(order));
+        assertThrows(IllegalArgumentException.class, () -> new OrderPool().release(order));
+
+        // Leaving the book hands the order back to its pool
+        assertTrue(book.removeOrder(order));
+        assertEquals(1, pool.getFreeCount());
+    }
+
+    @Test
+    public void testPoolOwnedByOneThread() throws InterruptedException {
+        OrderPool pool = new OrderPool();
+        pool.acquire(SymbolRegistry.intern("AAPL"), Order.Type.BUY, 15000, 10);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                pool.acquire(SymbolRegistry.intern("AAPL"), Order.Type.BUY, 15000, 10);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        other.start();
+        other.join();
+
+        assertTrue(failure.get() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testTradeRecycled() {
+        TradePool pool = new TradePool(1, FIXED_TIME);
+        int symbolId = SymbolRegistry.intern("AAPL");
+
+        Trade trade = pool.acquire(symbolId, 15000, 10, 1, 2);
+        assertEquals(0, pool.getFreeCount());
+        assertEquals(150.0, trade.getPrice());
+        assertEquals(1234L, trade.getTimestamp());
+
+        trade.release();
+        assertThrows(IllegalStateException.class, trade::release);
+        assertSame(trade, pool.acquire(symbolId, 15100, 3, 4, 5));
+        assertEquals(3, trade.getQuantity());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testMatcherRecyclesFilledOrders() {
+        OrderPool orderPool = new OrderPool();
+        TradePool tradePool = new TradePool();
+        List<Long> fills = new ArrayList<>();
+        SymbolBookMatcher matcher = new SymbolBookMatcher(tradePool, trade -> {
+            fills.add((long) trade.getQuantity());
+            trade.release();
+        });
+        SymbolBook book = new SymbolBook("AAPL");
+        int symbolId = book.getSymbolId();
+
+        book.addOrder(orderPool.acquire(symbolId, Order.Type.SELL, 15000, 10));
+        Order buyOrder = orderPool.acquire(symbolId, Order.Type.BUY, 15000, 4);
+        book.addOrder(buyOrder);
+
+        assertEquals(1, matcher.match(book));
+        assertEquals(Collections.singletonList(4L), fills);
+        // The buy filled and went back to the pool; the partially filled sell still rests
+        assertEquals(1, orderPool.getFreeCount());
+        assertEquals(6, book.peekBestSell().getQuantity());
+        assertEquals(1, tradePool.getFreeCount());
+    }
+
+    @Test
+    public void testSteadyStateAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PriceLadderOrderBook orderBook = new PriceLadderOrderBook(Collections.singletonList("AAPL"));
+        SymbolBook book = orderBook.getBook("AAPL");
+        int symbolId = book.getSymbolId();
+        OrderPool orderPool = new OrderPool(64, FIXED_TIME);
+        long[] traded = new long[1];
+        SymbolBookMatcher matcher = new SymbolBookMatcher(new TradePool(64, FIXED_TIME), trade -> {
+            traded[0] += trade.getQuantity();
+            trade.release();
+        });
+
+        Runnable round = () -> {
+            for (int i = 0; i < 10_000; i++) {
+                long priceTicks = 15000 + (i & 7);
+                orderBook.addOrder(orderPool.acquire(symbolId, Order.Type.SELL, priceTicks, 10));
+                orderBook.addOrder(orderPool.acquire(symbolId, Order.Type.BUY, priceTicks, 10));
+                matcher.match(book);
+            }
+        };
+
+        // Warm up so that pools, index stripes and ladder levels reach their working size
+        round.run();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        round.run();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(200_000, traded[0]);
+        // Allow for the measurement itself, not for anything per order
+        assertTrue(allocated < 1024, "Allocated " + allocated + " bytes over 10000 rounds");
+    }
+}
@@ -15,6 +15,7 @@ public class OrderTest {
         assertEquals("AAPL", order.getSymbol());
         assertEquals(Order.Type.BUY, order.getType());
         assertEquals(150.0, order.getPrice());
+        assertEquals(15000L, order.getPriceTicks());
         assertEquals(10, order.getQuantity());
         assertTrue(order.getTimestamp() > 0);
     }
@@ -38,4 +39,24 @@ public class OrderTest {
             order.reduceQuantity(11);
         });
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testPriceRoundedToTick() {
+        Order order = new Order("AAPL", Order.Type.SELL, 100.07, 10);
+        
+        // Prices that differ only by floating-point error land on the same tick
+        Order sameLevel = new Order("AAPL", Order.Type.SELL, 100.0 + 0.07, 10);
+        
+        assertEquals(10007L, order.getPriceTicks());
+        assertEquals(order.getPriceTicks(), sameLevel.getPriceTicks());
+        assertEquals(100.07, order.getPrice());
+    }
+    
+    @Test
+    public void testOrderWithPriceTicks() {
+        Order order = Order.withPriceTicks("AAPL", Order.Type.BUY, 15025L, 10);
+        
+        assertEquals(15025L, order.getPriceTicks());
+        assertEquals(150.25, order.getPrice());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+package com.stocktrading;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the PositionKeeper and PositionSnapshot classes.
+ */
+public class PositionKeeperTest {
+
+    private static Trade trade(int symbolId, double price, int quantity, int buyAccountId, int sellAccountId) {
+        return new Trade(symbolId, TickSizes.toTicks(symbolId, price), quantity, 1, 2, buyAccountId, sellAccountId,
+            System.currentTimeMillis());
+    }
+
+    private static Order order(int accountId, Order.Type type, double price, int quantity) {
+        Order order = new Order("AAPL", type, price, quantity);
+        order.setAccountId(accountId);
+        return order;
+    }
+
+    @Test
+    public void testAverageCostAndRealizedPnlThroughAFlip() {
+        int symbolId = SymbolRegistry.intern("AAPL");
+        PositionKeeper keeper = new PositionKeeper(3, symbolId + 1);
+        Trade[] trades = {
+            trade(symbolId, 10.0, 100, 1, 2),
+            trade(symbolId, 11.0, 100, 1, 2),
+            trade(symbolId, 12.0, 50, 2, 1),
+        };
+        keeper.onTrades(trades, trades.length);
+
+        PositionSnapshot snapshot = keeper.snapshot(null);
+        assertEquals(150, snapshot.getNetPosition(1, symbolId));
+        assertEquals(10.5, snapshot.getAverageCost(1, symbolId), 1e-9);
+        assertEquals(75.0, snapshot.getRealizedPnl(1, symbolId), 1e-9);
+        assertEquals(-150, snapshot.getNetPosition(2, symbolId));
+        assertEquals(10.5, snapshot.getAverageCost(2, symbolId), 1e-9);
+        assertEquals(-75.0, snapshot.getRealizedPnl(2, symbolId), 1e-9);
+
+        // Selling 200 closes the 150 at a loss and opens a short of 50 at the trade price
+        keeper.onTrade(trade(symbolId, 9.0, 200, 2, 1));
+        assertEquals(-50, keeper.getNetPosition(1, symbolId));
+        assertEquals(-150.0, keeper.getRealizedPnl(1, symbolId), 1e-9);
+        assertSame(snapshot, keeper.snapshot(snapshot));
+        assertEquals(9.0, snapshot.getAverageCost(1, symbolId), 1e-9);
+
+        keeper.onTrade(trade(symbolId, 8.0, 50, 1, 2));
+        keeper.snapshot(snapshot);
+        assertEquals(0, snapshot.getNetPosition(1, symbolId));
+        assertEquals(0, snapshot.getCostBasisTicks(1, symbolId));
+        assertEquals(0.0, snapshot.getAverageCost(1, symbolId));
+        assertEquals(-100.0, snapshot.getTotalRealizedPnl(1), 1e-9);
+        assertEquals(100.0, snapshot.getTotalRealizedPnl(2), 1e-9);
+        assertEquals(5, snapshot.getTradeCount());
+
+        // Accounts past the keeper's range are counted and otherwise ignored
+        keeper.onTrade(trade(symbolId, 8.0, 50, 1, 3));
+        keeper.snapshot(snapshot);
+        assertEquals(5, snapshot.getTradeCount());
+        assertEquals(1, snapshot.getIgnoredCount());
+        assertEquals(0, snapshot.getNetPosition(1, symbolId));
+
+        // A snapshot sized for another keeper is replaced
+        PositionSnapshot small = new PositionSnapshot(1, 1);
+        assertNotSame(small, keeper.snapshot(small));
+    }
+
+    @Test
+    public void testDrainsMatcherTradesInBatches() {
+        int symbolId = SymbolRegistry.intern("AAPL");
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        TradeRingBuffer trades = new TradeRingBuffer(1024, BackpressurePolicy.DROP);
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"), trades,
+            TimeSource.SYSTEM, BookListener.NONE);
+        PositionKeeper keeper = new PositionKeeper(4, symbolId + 1, 2);
+
+        for (int i = 0; i < 5; i++) {
+            book.addOrder(order(1, Order.Type.SELL, 100.0 + i, 10));
+        }
+        book.addOrder(order(2, Order.Type.BUY, 104.0, 30));
+        book.addOrder(order(3, Order.Type.BUY, 104.0, 20));
+        matcher.matchOrders("AAPL");
+
+        assertEquals(5, keeper.drain(trades));
+        assertEquals(0, keeper.drain(trades));
+        assertEquals(5, keeper.getTradeCount());
+        PositionSnapshot snapshot = keeper.snapshot(null);
+        assertEquals(-50, snapshot.getNetPosition(1, symbolId));
+        assertEquals(102.0, snapshot.getAverageCost(1, symbolId), 1e-9);
+        assertEquals(30, snapshot.getNetPosition(2, symbolId));
+        assertEquals(101.0, snapshot.getAverageCost(2, symbolId), 1e-9);
+        assertEquals(20, snapshot.getNetPosition(3, symbolId));
+        assertEquals(103.5, snapshot.getAverageCost(3, symbolId), 1e-9);
+    }
+
+    @Test
+    public void testPartialClosesOfHugePositionsAreExact() {
+        int symbolId = SymbolRegistry.intern("AAPL");
+        PositionKeeper keeper = new PositionKeeper(2, symbolId + 1);
+        for (int i = 0; i < 3; i++) {
+            keeper.onTrade(new Trade(symbolId, 2197, 2147482750, 1, 2, 1, 0, 0));
+        }
+        keeper.onTrade(new Trade(symbolId, 3931, 1659970615, 1, 2, 1, 0, 0));
+        long size = 3L * 2147482750 + 1659970615;
+        long basis = 3L * 2147482750 * 2197 + 1659970615L * 3931;
+        assertEquals(basis, keeper.snapshot(null).getCostBasisTicks(1, symbolId));
+
+        // The closed share of the basis takes a product past 2^53, which a double would round down
+        int closed = 1620483773;
+        keeper.onTrade(new Trade(symbolId, 3000, closed, 3, 4, 0, 1, 0));
+        long closedBasis = BigInteger.valueOf(basis).multiply(BigInteger.valueOf(closed))
+            .divide(BigInteger.valueOf(size)).longValueExact();
+        PositionSnapshot snapshot = keeper.snapshot(null);
+        assertEquals(size - closed, snapshot.getNetPosition(1, symbolId));
+        assertEquals(basis - closedBasis, snapshot.getCostBasisTicks(1, symbolId));
+        assertEquals(3000L * closed - closedBasis, snapshot.getRealizedTicks(1, symbolId));
+    }
+
+    @Test
+    public void testRandomTradesKeepTheBooksBalanced() {
+        int[] symbolIds = {SymbolRegistry.intern("AAPL"), SymbolRegistry.intern("MSFT"), SymbolRegistry.intern("GOOG")};
+        int accountCount = 5;
+        int symbolCount = Math.max(symbolIds[0], Math.max(symbolIds[1], symbolIds[2])) + 1;
+        PositionKeeper keeper = new PositionKeeper(accountCount, symbolCount);
+        Random random = new Random(42);
+        Trade[] batch = new Trade[64];
+        for (int round = 0; round < 500; round++) {
+            for (int i = 0; i < batch.length; i++) {
+                int buyer = random.nextInt(accountCount);
+                int seller = random.nextInt(accountCount);
+                batch[i] = new Trade(symbolIds[random.nextInt(symbolIds.length)], 9_000 + random.nextInt(2_000),
+                    1 + random.nextInt(500), i, i, buyer, seller, round);
+            }
+            keeper.onTrades(batch, batch.length);
+        }
+
+        // Every unit bought was sold, and every tick one account gained another paid
+        PositionSnapshot snapshot = keeper.snapshot(null);
+        assertEquals(500 * batch.length, snapshot.getTradeCount());
+        for (int symbolId : symbolIds) {
+            long position = 0;
+            long value = 0;
+            for (int accountId = 0; accountId < accountCount; accountId++) {
+                position += snapshot.getNetPosition(accountId, symbolId);
+                value += snapshot.getRealizedTicks(accountId, symbolId) - snapshot.getCostBasisTicks(accountId, symbolId);
+            }
+            assertEquals(0, position);
+            assertEquals(0, value);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+
+import com.stocktrading.log.EventLogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the PreTradeRiskCheck class.
+ */
+public class PreTradeRiskCheckTest {
+
+    private static Order order(int accountId, Order.Type type, double price, int quantity) {
+        Order order = new Order("AAPL", type, price, quantity);
+        order.setAccountId(accountId);
+        return order;
+    }
+
+    @Test
+    public void testRejectsOrdersOverTheirAccountLimits() {
+        PreTradeRiskCheck check = new PreTradeRiskCheck(new LockFreeOrderBook(), 4, 0);
+        check.setLimits(1, 100, 5_000.0, PreTradeRiskCheck.NO_LIMIT, PreTradeRiskCheck.NO_LIMIT);
+
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(order(1, Order.Type.BUY, 50.0, 100)));
+        assertEquals(PreTradeRiskCheck.Result.ORDER_SIZE, check.check(order(1, Order.Type.BUY, 10.0, 101)));
+        assertEquals(PreTradeRiskCheck.Result.NOTIONAL, check.check(order(1, Order.Type.SELL, 50.01, 100)));
+        // An iceberg counts its hidden reserve too
+        Order iceberg = Order.iceberg("AAPL", Order.Type.BUY, 1.0, 150, 10);
+        iceberg.setAccountId(1);
+        assertEquals(PreTradeRiskCheck.Result.ORDER_SIZE, check.check(iceberg));
+        // A stop order is valued at its stop price
+        Order stop = Order.stop("AAPL", Order.Type.BUY, 60.0, 90);
+        stop.setAccountId(1);
+        assertEquals(PreTradeRiskCheck.Result.NOTIONAL, check.check(stop));
+        // With no last trade a market order has no price to value it at, so it cannot pass a notional limit
+        Order market = Order.market("AAPL", Order.Type.BUY, 90);
+        market.setAccountId(1);
+        assertEquals(PreTradeRiskCheck.Result.NOTIONAL, check.check(market));
+        Order unlimited = Order.market("AAPL", Order.Type.BUY, 90);
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(unlimited));
+        // Limit and stop prices must be positive for every account
+        assertEquals(PreTradeRiskCheck.Result.INVALID_PRICE, check.check(order(1, Order.Type.SELL, 0.0, 10)));
+        assertEquals(PreTradeRiskCheck.Result.INVALID_PRICE,
+            check.check(Order.withPriceTicks("AAPL", Order.Type.BUY, -100, 10)));
+        assertEquals(PreTradeRiskCheck.Result.INVALID_PRICE, check.check(Order.stop("AAPL", Order.Type.SELL, 0.0, 10)));
+
+        // Accounts without limits take anything, and ids past the configured ones are unknown
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(order(0, Order.Type.BUY, 1000.0, 1_000_000)));
+        assertEquals(PreTradeRiskCheck.Result.UNKNOWN_ACCOUNT, check.check(order(4, Order.Type.BUY, 1.0, 1)));
+        assertEquals(2, check.getRejectCount(PreTradeRiskCheck.Result.ORDER_SIZE));
+        assertEquals(3, check.getRejectCount(PreTradeRiskCheck.Result.NOTIONAL));
+        assertEquals(3, check.getRejectCount(PreTradeRiskCheck.Result.INVALID_PRICE));
+        assertEquals(1, check.getRejectCount(PreTradeRiskCheck.Result.UNKNOWN_ACCOUNT));
+
+        assertThrows(IllegalArgumentException.class, () -> check.setLimits(1, 0, 1.0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Order("AAPL", Order.Type.BUY, 1.0, 1).setAccountId(-1));
+    }
+
+    @Test
+    public void testPriceBandFollowsTheLastTrade() {
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        PreTradeRiskCheck check = new PreTradeRiskCheck(book, 2, 64);
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"),
+            new TradeRingBuffer(1024, BackpressurePolicy.DROP), TimeSource.SYSTEM, check);
+        check.setLimits(1, PreTradeRiskCheck.NO_LIMIT, PreTradeRiskCheck.NO_NOTIONAL_LIMIT, PreTradeRiskCheck.NO_LIMIT,
+            500);
+
+        // No band until the symbol trades
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(order(1, Order.Type.BUY, 150.0, 1)));
+        book.addOrder(new Order("AAPL", Order.Type.SELL, 100.0, 5));
+        book.addOrder(new Order("AAPL", Order.Type.BUY, 100.0, 5));
+        matcher.matchOrders("AAPL");
+        int symbolId = SymbolRegistry.intern("AAPL");
+        assertEquals(TickSizes.toTicks(symbolId, 100.0), check.getLastTradeTicks(symbolId));
+
+        // 5% either side of 100
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(order(1, Order.Type.BUY, 105.0, 1)));
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(order(1, Order.Type.SELL, 95.0, 1)));
+        assertEquals(PreTradeRiskCheck.Result.PRICE_BAND, check.check(order(1, Order.Type.BUY, 105.01, 1)));
+        assertEquals(PreTradeRiskCheck.Result.PRICE_BAND, check.check(order(1, Order.Type.SELL, 94.99, 1)));
+        // A limit price far enough out to overflow the band arithmetic is still outside it
+        Order huge = Order.withPriceTicks("AAPL", Order.Type.SELL, Long.MAX_VALUE / 1_000, 1);
+        huge.setAccountId(1);
+        assertEquals(PreTradeRiskCheck.Result.PRICE_BAND, check.check(huge));
+        // Market orders have no limit price to band
+        Order market = Order.market("AAPL", Order.Type.SELL, 1);
+        market.setAccountId(1);
+        assertEquals(PreTradeRiskCheck.Result.ACCEPTED, check.check(market));
+    }
+
+    @Test
+    public void testOpenOrdersAreCountedUntilTheyLeaveTheBook() {
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"));
+        PreTradeRiskCheck check = new PreTradeRiskCheck(book, 2, 64);
+        check.setLimits(1, PreTradeRiskCheck.NO_LIMIT, PreTradeRiskCheck.NO_NOTIONAL_LIMIT, 2,
+            PreTradeRiskCheck.NO_LIMIT);
+        TradingEngine engine = new TradingEngine(book, matcher, null, null, EventLogger.console(), check);
+
+        Order first = order(1, Order.Type.BUY, 99.0, 5);
+        Order second = order(1, Order.Type.BUY, 98.0, 5);
+        assertTrue(engine.submitOrder(first));
+        assertTrue(engine.submitOrder(second));
+        // Orders that never rest do not count
+        Order ioc = new Order("AAPL", Order.Type.BUY, 98.0, 5, Order.TimeInForce.IOC);
+        ioc.setAccountId(1);
+        assertTrue(engine.submitOrder(ioc));
+
+        Order third = order(1, Order.Type.SELL, 101.0, 5);
+        assertFalse(engine.submitOrder(third));
+        assertNull(book.getOrder(third.getId()));
+        assertEquals(1, engine.getMetrics().get("orders_rejected_total"));
+        assertEquals(1, engine.getMetrics().get("risk_rejects_total{reason=\"open_orders\"}"));
+
+        // A cancel and a fill each free a place
+        assertTrue(engine.cancelOrder(first.getId()));
+        assertTrue(engine.submitOrder(third));
+        assertEquals(2, check.getOpenOrderCount(1));
+        Order taker = new Order("AAPL", Order.Type.SELL, 98.0, 5);
+        assertTrue(engine.submitOrder(taker));
+        matcher.matchOrders("AAPL");
+        assertNull(book.getOrder(second.getId()));
+        Order stop = Order.stop("AAPL", Order.Type.SELL, 90.0, 5);
+        stop.setAccountId(1);
+        assertTrue(engine.submitOrder(stop));
+        assertNotNull(book.getOrder(stop.getId()));
+        assertEquals(2, check.getOpenOrderCount(1));
+
+        // An armed stop is open too
+        assertFalse(engine.submitOrder(order(1, Order.Type.BUY, 97.0, 1)));
+        assertEquals(2, check.getRejectCount(PreTradeRiskCheck.Result.OPEN_ORDERS));
+    }
+}
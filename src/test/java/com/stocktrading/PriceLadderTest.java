@@ -0,0 +1,265 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the PriceLadder and PriceLadderOrderBook classes.
+ */
+public class PriceLadderTest {
+
+    private static Order buy(long priceTicks) {
+        return Order.withPriceTicks("AAPL", Order.Type.BUY, priceTicks, 1);
+    }
+
+    private static Order sell(long priceTicks) {
+        return Order.withPriceTicks("AAPL", Order.Type.SELL, priceTicks, 1);
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PriceLadder(true, 32));
+        assertThrows(IllegalArgumentException.class, () -> new PriceLadder(true, 100));
+    }
+
+    @Test
+    public void testBuySidePriority() {
+        PriceLadder ladder = new PriceLadder(true, 64);
+        Order order1 = buy(15000);
+        Order order2 = buy(15010);
+        Order order3 = buy(15010);
+        Order order4 = buy(14990);
+
+        ladder.add(order1);
+        ladder.add(order2);
+        ladder.add(order3);
+        ladder.add(order4);
+
+        assertEquals(4, ladder.getOrderCount());
+        assertEquals(3, ladder.getLevelCount());
+        assertEquals(15010, ladder.getBestPriceTicks());
+
+        // Highest price first, earliest first within a level
+        assertSame(order2, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order3, ladder.peekBest());
+        ladder.removeBest();
+        assertEquals(15000, ladder.getBestPriceTicks());
+        assertSame(order1, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order4, ladder.peekBest());
+        ladder.removeBest();
+
+        assertTrue(ladder.isEmpty());
+        assertNull(ladder.peekBest());
+        assertThrows(IllegalStateException.class, ladder::getBestPriceTicks);
+    }
+
+    @Test
+    public void testSellSidePriority() {
+        PriceLadder ladder = new PriceLadder(false, 256);
+        Order order1 = sell(15000);
+        Order order2 = sell(14950);
+        Order order3 = sell(15100);
+
+        ladder.add(order1);
+        ladder.add(order2);
+        ladder.add(order3);
+
+        assertSame(order2, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order1, ladder.peekBest());
+        ladder.removeBest();
+
+        // Skips 99 empty ticks across word boundaries in the bitmap
+        assertEquals(15100, ladder.getBestPriceTicks());
+        assertSame(order3, ladder.peekBest());
+    }
+
+    @Test
+    public void testRecenterKeepsLevels() {
+        PriceLadder ladder = new PriceLadder(false, 64);
+        ladder.add(sell(1000));
+        Order order1 = sell(1030);
+        Order order2 = sell(1030);
+        ladder.add(order1);
+        ladder.add(order2);
+        ladder.removeBest();
+        long oldBase = ladder.getBaseTick();
+
+        // Outside the window around 1000, but close to the remaining level
+        Order order3 = sell(1040);
+        ladder.add(order3);
+
+        assertEquals(64, ladder.getSize());
+        assertTrue(ladder.getBaseTick() > oldBase);
+        assertEquals(1030, ladder.getBestPriceTicks());
+        assertSame(order1, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order2, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order3, ladder.peekBest());
+        ladder.removeBest();
+        assertTrue(ladder.isEmpty());
+    }
+
+    @Test
+    public void testRecenterGrowsWindow() {
+        PriceLadder ladder = new PriceLadder(false, 64);
+        Order order1 = sell(1000);
+        Order order2 = sell(900);
+        ladder.add(order1);
+        ladder.add(order2);
+
+        // The occupied range is now wider than the window
+        assertTrue(ladder.getSize() >= 202);
+        assertEquals(900, ladder.getBestPriceTicks());
+        assertSame(order2, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order1, ladder.peekBest());
+        ladder.removeBest();
+        assertTrue(ladder.isEmpty());
+
+        // An empty ladder simply moves its window to the next price
+        Order order3 = sell(50000);
+        ladder.add(order3);
+        assertSame(order3, ladder.peekBest());
+    }
+
+    @Test
+    public void testOutlierPriceOverflowsTheWindow() {
+        PriceLadder ladder = new PriceLadder(true, 64);
+        Order near1 = buy(1_000_000_000);
+        Order near2 = buy(1_000_000_010);
+        Order far = buy(1);
+        ladder.add(near1);
+        ladder.add(near2);
+        ladder.add(far);
+
+        // The window stays around the near prices instead of spanning 10^9 ticks
+        assertTrue(ladder.getSize() <= PriceLadder.DEFAULT_MAX_SIZE);
+        assertEquals(1, ladder.getOverflowLevelCount());
+        assertEquals(3, ladder.getLevelCount());
+        assertEquals(3, ladder.getOrderCount());
+        assertEquals(1_000_000_010, ladder.getBestPriceTicks());
+
+        MarketDepth depth = new MarketDepth(8);
+        ladder.copyDepth(true, 8, depth);
+        assertEquals(3, depth.getBidLevels());
+        assertEquals(1_000_000_010, depth.getBidPriceTicks(0));
+        assertEquals(1_000_000_000, depth.getBidPriceTicks(1));
+        assertEquals(1, depth.getBidPriceTicks(2));
+        assertEquals(3, ladder.crossingQuantity(sell(1), 10));
+        assertEquals(2, ladder.crossingQuantity(sell(2), 10));
+
+        assertSame(near2, ladder.peekBest());
+        ladder.removeBest();
+        assertTrue(ladder.remove(near1));
+        assertSame(far, ladder.peekBest());
+        assertEquals(1, ladder.getBestPriceTicks());
+        ladder.removeBest();
+        assertTrue(ladder.isEmpty());
+        assertEquals(0, ladder.getLevelCount());
+    }
+
+    @Test
+    public void testOverflowLevelsBeatTheWindowAndRejoinIt() {
+        PriceLadder ladder = new PriceLadder(false, 64, 128);
+        Order order1 = sell(10_000);
+        Order order2 = sell(1);
+        ladder.add(order1);
+        ladder.add(order2);
+
+        // A better price outside the window still comes first
+        assertEquals(64, ladder.getSize());
+        assertEquals(1, ladder.getOverflowLevelCount());
+        assertSame(order2, ladder.peekBest());
+        assertEquals(1, ladder.crossingQuantity(buy(1), 5));
+        assertEquals(2, ladder.crossingQuantity(buy(10_000), 5));
+
+        // Once the window empties it moves to the next price and takes in the overflow level
+        ladder.remove(order1);
+        Order order3 = sell(2);
+        ladder.add(order3);
+        assertEquals(0, ladder.getOverflowLevelCount());
+        assertEquals(2, ladder.getLevelCount());
+        assertSame(order2, ladder.peekBest());
+        ladder.removeBest();
+        assertSame(order3, ladder.peekBest());
+        ladder.removeBest();
+        assertTrue(ladder.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new PriceLadder(true, 128, 64));
+    }
+
+    @Test
+    public void testOrderBook() {
+        PriceLadderOrderBook orderBook = new PriceLadderOrderBook(Arrays.asList("AAPL", "MSFT"), 128);
+
+        orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 150.0, 10));
+        orderBook.addOrder(new Order("MSFT", Order.Type.SELL, 250.0, 5));
+
+        assertTrue(orderBook.hasBuyOrders("AAPL"));
+        assertFalse(orderBook.hasSellOrders("AAPL"));
+        assertTrue(orderBook.hasSellOrders("MSFT"));
+        assertFalse(orderBook.hasBuyOrders("MSFT"));
+        assertEquals(15000, orderBook.getBook("AAPL").getBuyLevels().getBestPriceTicks());
+
+        assertFalse(orderBook.hasBuyOrders("GOOGL"));
+        assertThrows(IllegalArgumentException.class, () ->
+            orderBook.addOrder(new Order("GOOGL", Order.Type.BUY, 2000.0, 1)));
+    }
+
+    @Test
+    public void testOrderBookCancelAndAmend() {
+        PriceLadderOrderBook orderBook = new PriceLadderOrderBook(Arrays.asList("AAPL"), 128);
+        Order order1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        orderBook.addOrder(order1);
+        orderBook.addOrder(order2);
+        SymbolBook book = orderBook.getBook("AAPL");
+
+        assertTrue(orderBook.amendOrder(order1.getId(), 8, 150.0));
+        assertSame(order1, book.peekBestBuy());
+
+        assertTrue(orderBook.amendOrder(order1.getId(), 8, 149.0));
+        assertSame(order2, book.peekBestBuy());
+        assertEquals(2, book.getBuyLevels().getLevelCount());
+
+        assertTrue(orderBook.cancelOrder(order2.getId()));
+        assertFalse(orderBook.cancelOrder(order2.getId()));
+        assertSame(order1, book.peekBestBuy());
+        assertEquals(14900, book.getBuyLevels().getBestPriceTicks());
+        assertEquals(1, book.getBuyOrderCount());
+    }
+
+    @Test
+    public void testDepthWalksOccupiedTicks() {
+        PriceLadderOrderBook orderBook = new PriceLadderOrderBook(Arrays.asList("AAPL"));
+        // Levels far apart, so the walk crosses empty bitmap words
+        for (long tick : new long[] { 10000, 10001, 9800, 9500 }) {
+            orderBook.addOrder(buy(tick));
+        }
+        for (long tick : new long[] { 10300, 10002, 10002 }) {
+            orderBook.addOrder(sell(tick));
+        }
+
+        MarketDepth depth = orderBook.depth("AAPL", 3, new MarketDepth(8));
+        assertEquals(3, depth.getBidLevels());
+        assertEquals(10001, depth.getBidPriceTicks(0));
+        assertEquals(10000, depth.getBidPriceTicks(1));
+        assertEquals(9800, depth.getBidPriceTicks(2));
+        assertEquals(2, depth.getAskLevels());
+        assertEquals(10002, depth.getAskPriceTicks(0));
+        assertEquals(2, depth.getAskQuantity(0));
+        assertEquals(10300, depth.getAskPriceTicks(1));
+
+        assertEquals(0, orderBook.depth("MSFT", 3, depth).getBidLevels());
+    }
+}
@@ -0,0 +1,148 @@
+package com.stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the PriceLevel and BookSide classes.
+ */
+public class PriceLevelTest {
+
+    private static Order buy(long priceTicks, int quantity) {
+        return Order.withPriceTicks("AAPL", Order.Type.BUY, priceTicks, quantity);
+    }
+
+    @Test
+    public void testTimePriorityAndTotals() {
+        PriceLevel level = new PriceLevel(15000);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15000, 200);
+        Order order3 = buy(15000, 300);
+
+        level.add(order1);
+        level.add(order2);
+        level.add(order3);
+
+        assertEquals(3, level.size());
+        assertEquals(600, level.getTotalQuantity());
+        assertSame(order1, level.poll());
+        assertSame(order2, level.poll());
+        assertSame(order3, level.poll());
+        assertNull(level.poll());
+        assertTrue(level.isEmpty());
+        assertEquals(0, level.getTotalQuantity());
+    }
+
+    @Test
+    public void testRemoveFromMiddle() {
+        PriceLevel level = new PriceLevel(15000);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15000, 200);
+        Order order3 = buy(15000, 300);
+        level.add(order1);
+        level.add(order2);
+        level.add(order3);
+
+        assertTrue(level.remove(order2));
+        assertFalse(level.remove(order2));
+
+        assertEquals(2, level.size());
+        assertEquals(400, level.getTotalQuantity());
+        assertSame(order1, level.poll());
+        assertSame(order3, level.poll());
+        assertTrue(level.isEmpty());
+    }
+
+    @Test
+    public void testRemoveHeadAndTail() {
+        PriceLevel level = new PriceLevel(15000);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15000, 200);
+        Order order3 = buy(15000, 300);
+        level.add(order1);
+        level.add(order2);
+        level.add(order3);
+
+        assertTrue(level.remove(order3));
+        assertTrue(level.remove(order1));
+
+        assertSame(order2, level.peek());
+        Order order4 = buy(15000, 50);
+        level.add(order4);
+        assertSame(order2, level.poll());
+        assertSame(order4, level.poll());
+    }
+
+    @Test
+    public void testReduceQuantityKeepsPriority() {
+        PriceLevel level = new PriceLevel(15000);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15000, 200);
+        level.add(order1);
+        level.add(order2);
+
+        level.reduceQuantity(order1, 40);
+
+        assertEquals(60, order1.getQuantity());
+        assertEquals(260, level.getTotalQuantity());
+        assertSame(order1, level.peek());
+    }
+
+    @Test
+    public void testOrderCannotRestTwice() {
+        PriceLevel level = new PriceLevel(15000);
+        PriceLevel other = new PriceLevel(15000);
+        Order order = buy(15000, 100);
+        level.add(order);
+
+        assertThrows(IllegalStateException.class, () -> other.add(order));
+        assertFalse(other.remove(order));
+
+        // Once unlinked the order can rest again
+        level.poll();
+        other.add(order);
+        assertSame(order, other.peek());
+    }
+
+    @Test
+    public void testBookSideRemove() {
+        BookSide side = new BookSide(true);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15100, 200);
+        Order order3 = buy(15100, 300);
+        side.add(order1);
+        side.add(order2);
+        side.add(order3);
+
+        assertTrue(side.remove(order2));
+        assertEquals(2, side.size());
+        assertEquals(300, side.getLevel(15100).getTotalQuantity());
+
+        assertTrue(side.remove(order3));
+        assertNull(side.getLevel(15100));
+        assertEquals(1, side.getLevelCount());
+        assertSame(order1, side.poll());
+        assertTrue(side.isEmpty());
+    }
+
+    @Test
+    public void testPriceLadderRemove() {
+        PriceLadder ladder = new PriceLadder(true, 64);
+        Order order1 = buy(15000, 100);
+        Order order2 = buy(15010, 200);
+        ladder.add(order1);
+        ladder.add(order2);
+
+        assertTrue(ladder.remove(order2));
+        assertFalse(ladder.remove(order2));
+
+        assertEquals(15000, ladder.getBestPriceTicks());
+        assertEquals(1, ladder.getLevelCount());
+        assertSame(order1, ladder.peekBest());
+    }
+}
@@ -0,0 +1,134 @@
+package com.stocktrading;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import com.stocktrading.ring.OrderEventHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the ShardedOrderBook class.
+ */
+public class ShardedOrderBookTest {
+
+    @Test
+    public void testEverySymbolOwnedByOneShard() {
+        List<String> symbols = Arrays.asList("AAPL", "MSFT", "GOOGL", "AMZN", "TSLA");
+        ShardedOrderBook orderBook = new ShardedOrderBook(symbols, 3);
+
+        assertEquals(3, orderBook.getShards().length);
+
+        int ownedBooks = 0;
+        for (OrderBookShard shard : orderBook.getShards()) {
+            ownedBooks += shard.getBooks().size();
+        }
+        assertEquals(symbols.size(), ownedBooks);
+
+        for (String symbol : symbols) {
+            OrderBookShard shard = orderBook.shardFor(symbol);
+            assertNotNull(shard.getBook(symbol));
+            assertSame(shard, orderBook.shardFor(symbol));
+        }
+    }
+
+    @Test
+    public void testUnknownSymbolRejected() {
+        ShardedOrderBook orderBook = new ShardedOrderBook(Arrays.asList("AAPL"), 2);
+
+        assertNull(orderBook.getBook("MSFT"));
+        assertFalse(orderBook.hasBuyOrders("MSFT"));
+        assertThrows(IllegalArgumentException.class, () ->
+            orderBook.addOrder(new Order("MSFT", Order.Type.BUY, 250.0, 5)));
+    }
+
+    @Test
+    public void testInvalidShardCount() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new ShardedOrderBook(Arrays.asList("AAPL"), 0));
+    }
+
+    @Test
+    public void testSymbolBookPriority() {
+        SymbolBook book = new SymbolBook("AAPL");
+
+        Order buy1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order buy2 = new Order("AAPL", Order.Type.BUY, 155.0, 10);
+        Order buy3 = new Order("AAPL", Order.Type.BUY, 155.0, 10);
+        Order sell1 = new Order("AAPL", Order.Type.SELL, 160.0, 10);
+        Order sell2 = new Order("AAPL", Order.Type.SELL, 158.0, 10);
+
+        book.addOrder(buy1);
+        book.addOrder(buy2);
+        book.addOrder(buy3);
+        book.addOrder(sell1);
+        book.addOrder(sell2);
+
+        assertEquals(3, book.getBuyOrderCount());
+        assertEquals(2, book.getSellOrderCount());
+
+        // Best price first, then earliest at that price
+        assertSame(buy2, book.peekBestBuy());
+        book.removeBestBuy();
+        assertSame(buy3, book.peekBestBuy());
+        book.removeBestBuy();
+        assertSame(buy1, book.peekBestBuy());
+
+        assertSame(sell2, book.peekBestSell());
+        book.removeBestSell();
+        assertSame(sell1, book.peekBestSell());
+
+        assertEquals(1, book.getBuyOrderCount());
+        assertEquals(1, book.getSellOrderCount());
+    }
+
+    @Test
+    public void testHandOffAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ShardedOrderBook orderBook = new ShardedOrderBook(Arrays.asList("AAPL"), 1, 2048);
+        OrderBookShard shard = orderBook.shardFor("AAPL");
+        int[] handled = new int[1];
+        // Stands in for the shard thread, so the submitting thread is all that is measured
+        OrderEventHandler handler = (event, sequence, endOfBatch) -> {
+            orderBook.getOrderIndex().remove(event.getOrder().getId());
+            handled[0]++;
+        };
+        Order[][] rounds = new Order[2][500];
+        for (Order[] orders : rounds) {
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+            }
+        }
+
+        // The first round brings the index stripes to their working size
+        for (Order[] orders : rounds) {
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (Order order : orders) {
+                orderBook.addOrder(order);
+                orderBook.cancelOrder(order.getId());
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            shard.drainInbox(handler);
+            if (orders == rounds[1]) {
+                // Allow for the measurement itself, not for anything per command
+                assertTrue(allocated < 1024, "Allocated " + allocated + " bytes over 1000 commands");
+            }
+        }
+        assertEquals(2000, handled[0]);
+    }
+}
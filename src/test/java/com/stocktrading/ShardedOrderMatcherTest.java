@@ -0,0 +1,219 @@
+package com.stocktrading;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.stocktrading.metrics.LatencyTracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the ShardedOrderMatcher class.
+ */
+public class ShardedOrderMatcherTest {
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testExactMatch() throws InterruptedException {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(Arrays.asList("AAPL"), 2);
+        engine.start();
+
+        Order buyOrder = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order sellOrder = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+        engine.submitOrder(buyOrder);
+        engine.submitOrder(sellOrder);
+
+        waitFor(() -> engine.getOrderMatcher().getTrades().size() == 1);
+
+        assertEquals(1, engine.getOrderMatcher().getTrades().size());
+        Trade trade = engine.getOrderMatcher().getTrades().poll();
+        assertEquals("AAPL", trade.getSymbol());
+        assertEquals(150.0, trade.getPrice());
+        assertEquals(10, trade.getQuantity());
+        assertEquals(buyOrder.getId(), trade.getBuyOrderId());
+        assertEquals(sellOrder.getId(), trade.getSellOrderId());
+
+        assertFalse(engine.getOrderBook().hasBuyOrders("AAPL"));
+        assertFalse(engine.getOrderBook().hasSellOrders("AAPL"));
+
+        engine.stop();
+    }
+
+    @Test
+    public void testPartialMatchKeepsPriority() throws InterruptedException {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(Arrays.asList("AAPL"), 1);
+        ShardedOrderBook orderBook = (ShardedOrderBook) engine.getOrderBook();
+        engine.start();
+
+        Order buyOrder1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order buyOrder2 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        engine.submitOrder(buyOrder1);
+        engine.submitOrder(buyOrder2);
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 149.0, 4));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 149.0, 4));
+
+        waitFor(() -> engine.getOrderMatcher().getTrades().size() == 2);
+
+        // Both fills go to the first buy order, which keeps its place at the front
+        Trade[] trades = new Trade[4];
+        assertEquals(2, engine.getOrderMatcher().getTrades().drainTo(trades, trades.length));
+        assertEquals(buyOrder1.getId(), trades[0].getBuyOrderId());
+        assertEquals(buyOrder1.getId(), trades[1].getBuyOrderId());
+        assertEquals(149.0, trades[0].getPrice());
+        assertEquals(2, buyOrder1.getQuantity());
+        assertEquals(2, orderBook.getBook("AAPL").getBuyOrderCount());
+        assertFalse(orderBook.hasSellOrders("AAPL"));
+
+        engine.stop();
+    }
+
+    @Test
+    public void testMultipleSymbolsAcrossShards() throws InterruptedException {
+        List<String> symbols = Arrays.asList("AAPL", "MSFT", "GOOGL", "AMZN");
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(symbols, 3);
+        engine.start();
+
+        for (String symbol : symbols) {
+            engine.submitOrder(new Order(symbol, Order.Type.BUY, 100.0, 5));
+            engine.submitOrder(new Order(symbol, Order.Type.SELL, 100.0, 5));
+        }
+
+        waitFor(() -> engine.getOrderMatcher().getTrades().size() == symbols.size());
+
+        assertEquals(symbols.size(), engine.getOrderMatcher().getTrades().size());
+        for (String symbol : symbols) {
+            assertFalse(engine.getOrderBook().hasBuyOrders(symbol));
+            assertFalse(engine.getOrderBook().hasSellOrders(symbol));
+        }
+
+        engine.stop();
+    }
+
+    @Test
+    public void testConcurrentSubmission() throws InterruptedException {
+        List<String> symbols = Arrays.asList("AAPL", "MSFT", "GOOGL");
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(symbols, 2);
+        engine.start();
+
+        int numThreads = 8;
+        int ordersPerThread = 600;
+        CountDownLatch latch = new CountDownLatch(numThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        // Every buy crosses every sell, so each pair of orders produces one trade
+        for (int i = 0; i < numThreads; i++) {
+            executor.submit(() -> {
+                try {
+                    for (int j = 0; j < ordersPerThread; j++) {
+                        String symbol = symbols.get(j % symbols.size());
+                        Order.Type type = (j / symbols.size()) % 2 == 0 ? Order.Type.BUY : Order.Type.SELL;
+                        double price = type == Order.Type.BUY ? 101.0 : 99.0;
+                        engine.submitOrder(new Order(symbol, type, price, 1));
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        int totalOrders = numThreads * ordersPerThread;
+        waitFor(() -> engine.getOrderMatcher().getTrades().size() == totalOrders / 2);
+        engine.stop();
+
+        assertEquals(totalOrders / 2, engine.getOrderMatcher().getTrades().size());
+        for (String symbol : symbols) {
+            assertFalse(engine.getOrderBook().hasBuyOrders(symbol));
+            assertFalse(engine.getOrderBook().hasSellOrders(symbol));
+        }
+    }
+
+    @Test
+    public void testCancelAndAmend() throws InterruptedException {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(Arrays.asList("AAPL"), 2);
+        engine.start();
+
+        Order buyOrder = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order sellOrder = new Order("AAPL", Order.Type.SELL, 151.0, 10);
+        engine.submitOrder(buyOrder);
+        engine.submitOrder(sellOrder);
+
+        // Cancels apply in order after the add, even if it is still in the inbox
+        assertTrue(engine.cancelOrder(buyOrder.getId()));
+        waitFor(() -> engine.getOrderBook().getOrder(buyOrder.getId()) == null);
+        assertFalse(engine.getOrderBook().hasBuyOrders("AAPL"));
+        assertFalse(engine.cancelOrder(buyOrder.getId()));
+
+        // Moving the sell down to a resting bid crosses the book
+        Order lateBuy = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        engine.submitOrder(lateBuy);
+        assertTrue(engine.amendOrder(sellOrder.getId(), 10, 150.0));
+        waitFor(() -> engine.getOrderMatcher().getTrades().size() == 1);
+
+        assertEquals(1, engine.getOrderMatcher().getTrades().size());
+        assertEquals(150.0, engine.getOrderMatcher().getTrades().poll().getPrice());
+        waitFor(() -> engine.getOrderBook().getOrder(sellOrder.getId()) == null);
+        assertNull(engine.getOrderBook().getOrder(sellOrder.getId()));
+
+        engine.stop();
+    }
+
+    @Test
+    public void testRestIsTimedOnTheShardThread() throws InterruptedException {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(Arrays.asList("AAPL"), 1);
+        LatencyTracker latencies = engine.getLatencyTracker();
+
+        // Until the shard thread runs the order has only reached its inbox
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150.0, 10));
+        assertEquals(0, latencies.snapshot(LatencyTracker.Stage.REST).getCount());
+
+        engine.start();
+        waitFor(() -> latencies.snapshot(LatencyTracker.Stage.REST).getCount() == 1);
+        assertEquals(1, latencies.snapshot("AAPL", LatencyTracker.Stage.REST).getCount());
+        engine.stop();
+    }
+
+    @Test
+    public void testShardSurvivesAFailingCommand() throws InterruptedException {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(Arrays.asList("AAPL"), 1);
+        ShardedOrderMatcher matcher = (ShardedOrderMatcher) engine.getOrderMatcher();
+        engine.start();
+        waitFor(() -> matcher.getLiveShardCount() == 1);
+        assertEquals(1, engine.getMetrics().get("shards_live"));
+
+        // Adding an order that already rests throws on the shard thread
+        Order buyOrder = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        engine.getOrderBook().addOrder(buyOrder);
+        engine.getOrderBook().addOrder(buyOrder);
+        waitFor(() -> matcher.getFailedCommandCount() == 1);
+        assertEquals(1, engine.getMetrics().get("shard_commands_failed_total"));
+
+        // The shard drops the command and goes on matching
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 150.0, 4));
+        waitFor(() -> matcher.getTrades().size() == 1);
+        assertEquals(1, matcher.getTrades().size());
+        assertEquals(6, buyOrder.getQuantity());
+        assertEquals(1, engine.getMetrics().get("shard_alive{shard=\"0\"}"));
+
+        engine.stop();
+        waitFor(() -> matcher.getLiveShardCount() == 0);
+        assertEquals(0, engine.getMetrics().get("shards_live"));
+    }
+}
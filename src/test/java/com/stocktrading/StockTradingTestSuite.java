@@ -1,5 +1,20 @@
 package com.stocktrading;
 
+import com.stocktrading.fix.FixAcceptorTest;
+import com.stocktrading.fix.FixParserTest;
+import com.stocktrading.gateway.OrderGatewayTest;
+import com.stocktrading.journal.JournalReplayerTest;
+import com.stocktrading.journal.OrderBookSnapshotTest;
+import com.stocktrading.journal.OrderJournalTest;
+import com.stocktrading.log.EventLoggerTest;
+import com.stocktrading.marketdata.MarketDataPublisherTest;
+import com.stocktrading.metrics.LatencyHistogramTest;
+import com.stocktrading.metrics.LatencyTrackerTest;
+import com.stocktrading.metrics.MetricsRegistryTest;
+import com.stocktrading.ring.OrderRingBufferTest;
+import com.stocktrading.util.IntHashMapTest;
+import com.stocktrading.util.LongHashMapTest;
+
 import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
 
@@ -17,7 +32,35 @@ import org.junit.platform.suite.api.Suite;
 	LockFreeOrderMatcherTest.class,
     TradingEngineTest.class,
     LockedTradingEngineRaceConditionTest.class,
-	LockedOrderMatcherRaceConditionTest.class
+	LockedOrderMatcherRaceConditionTest.class,
+	DirtySymbolQueueTest.class,
+	ShardedOrderBookTest.class,
+	ShardedOrderMatcherTest.class,
+	OrderRingBufferTest.class,
+	TickSizesTest.class,
+	PriceLadderTest.class,
+	PriceLevelTest.class,
+	LongHashMapTest.class,
+	IntHashMapTest.class,
+	SymbolRegistryTest.class,
+	OrderPoolTest.class,
+	TradeRingBufferTest.class,
+	OrderJournalTest.class,
+	JournalReplayerTest.class,
+	OrderBookSnapshotTest.class,
+	MarketDataPublisherTest.class,
+	OrderGatewayTest.class,
+	FixParserTest.class,
+	FixAcceptorTest.class,
+	EventLoggerTest.class,
+	LatencyHistogramTest.class,
+	LatencyTrackerTest.class,
+	MetricsRegistryTest.class,
+	TimeInForceTest.class,
+	IcebergOrderTest.class,
+	StopOrderTest.class,
+	PreTradeRiskCheckTest.class,
+	PositionKeeperTest.class
 })
 public class StockTradingTestSuite {
     // This class serves as a test suite container
@@ -0,0 +1,260 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for stop and stop-limit orders on every matcher.
+ */
+public class StopOrderTest {
+
+    // A book and the matcher that matches it
+    private interface Venue {
+        void rest(Order order);
+        void match();
+        boolean cancel(Order order);
+        MarketDepth depth();
+        List<String> trades();
+    }
+
+    private static String describe(Trade trade) {
+        return trade.getQuantity() + "@" + trade.getPrice() + " " + trade.getBuyOrderId() + "/" + trade.getSellOrderId();
+    }
+
+    private static List<String> drain(TradeSink trades) {
+        List<String> result = new ArrayList<>();
+        Trade trade;
+        while ((trade = trades.poll()) != null) {
+            result.add(describe(trade));
+        }
+        return result;
+    }
+
+    private static Venue locked() {
+        LockedOrderBook book = new LockedOrderBook();
+        LockedOrderMatcher matcher = new LockedOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.matchOrders("AAPL"); }
+            public boolean cancel(Order order) { return book.cancelOrder(order.getId()); }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    private static Venue lockFree() {
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.matchOrders("AAPL"); }
+            public boolean cancel(Order order) { return book.cancelOrder(order.getId()); }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    // A shard's book and matcher, driven as the shard thread drives them
+    private static Venue ladder() {
+        SymbolBook book = new SymbolBook("AAPL");
+        List<String> trades = new ArrayList<>();
+        SymbolBookMatcher matcher = new SymbolBookMatcher(new TradePool(1, TimeSource.SYSTEM), trade -> {
+            trades.add(describe(trade));
+            trade.release();
+        });
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public void match() { matcher.match(book); }
+            public boolean cancel(Order order) { return book.removeOrder(order); }
+            public MarketDepth depth() { return book.depth(10, new MarketDepth(10)); }
+            public List<String> trades() {
+                List<String> result = new ArrayList<>(trades);
+                trades.clear();
+                return result;
+            }
+        };
+    }
+
+    private static List<Venue> venues() {
+        return Arrays.asList(locked(), lockFree(), ladder());
+    }
+
+    @Test
+    public void testStopWaitsForATradeAtItsPrice() {
+        Order stop = Order.stop("AAPL", Order.Type.BUY, 100.5, 3);
+        assertTrue(stop.isStop());
+        assertTrue(stop.isStopArmed());
+        assertTrue(stop.rests());
+        assertEquals(Order.TimeInForce.MARKET, stop.getTimeInForce());
+        assertEquals(100.5, stop.getStopPrice());
+
+        for (Venue venue : venues()) {
+            Order first = new Order("AAPL", Order.Type.SELL, 100.0, 5);
+            Order second = new Order("AAPL", Order.Type.SELL, 101.0, 5);
+            venue.rest(first);
+            venue.rest(second);
+            stop = Order.stop("AAPL", Order.Type.BUY, 100.5, 3);
+            venue.rest(stop);
+
+            // A stop is not in the depth, and a trade below its price leaves it armed
+            assertEquals(0, venue.depth().getBidLevels());
+            Order small = new Order("AAPL", Order.Type.BUY, 100.0, 1);
+            venue.rest(small);
+            venue.match();
+            assertEquals(1, venue.trades().size());
+            assertTrue(stop.isStopArmed());
+
+            // A trade through its price triggers it, and it executes within the same pass
+            Order sweep = new Order("AAPL", Order.Type.BUY, 101.0, 5);
+            venue.rest(sweep);
+            venue.match();
+            assertEquals(Arrays.asList("4@100.0 " + sweep.getId() + "/" + first.getId(),
+                "1@101.0 " + sweep.getId() + "/" + second.getId(),
+                "3@101.0 " + stop.getId() + "/" + second.getId()), venue.trades());
+            assertEquals(1, venue.depth().getAskQuantity(0));
+            assertEquals(0, venue.depth().getBidLevels());
+        }
+    }
+
+    @Test
+    public void testStopLimitRestsOnceTriggered() {
+        for (Venue venue : venues()) {
+            venue.rest(new Order("AAPL", Order.Type.BUY, 99.0, 2));
+            venue.rest(new Order("AAPL", Order.Type.BUY, 98.0, 5));
+            Order stopLimit = Order.stopLimit("AAPL", Order.Type.SELL, 99.0, 98.5, 10);
+            assertEquals(Order.TimeInForce.LIMIT, stopLimit.getTimeInForce());
+            venue.rest(stopLimit);
+
+            venue.rest(new Order("AAPL", Order.Type.SELL, 99.0, 2));
+            venue.match();
+            assertEquals(1, venue.trades().size());
+
+            // Its limit is above the remaining bid, so it joins the asks rather than trading
+            assertFalse(stopLimit.isStopArmed());
+            assertTrue(stopLimit.isResting());
+            MarketDepth depth = venue.depth();
+            assertEquals(98.5, depth.getAskPrice(0));
+            assertEquals(10, depth.getAskQuantity(0));
+            assertEquals(5, depth.getBidQuantity(0));
+        }
+    }
+
+    @Test
+    public void testStopsTriggerNearestPriceFirstThenInArrivalOrder() {
+        for (Venue venue : venues()) {
+            Order seller = new Order("AAPL", Order.Type.SELL, 101.0, 10);
+            venue.rest(seller);
+            Order far = Order.stop("AAPL", Order.Type.BUY, 100.5, 1);
+            Order nearFirst = Order.stop("AAPL", Order.Type.BUY, 100.2, 1);
+            Order nearSecond = Order.stop("AAPL", Order.Type.BUY, 100.2, 1);
+            Order later = Order.stop("AAPL", Order.Type.BUY, 100.6, 1);
+            venue.rest(far);
+            venue.rest(nearFirst);
+            venue.rest(nearSecond);
+            venue.rest(later);
+
+            venue.rest(new Order("AAPL", Order.Type.SELL, 100.5, 1));
+            venue.rest(new Order("AAPL", Order.Type.BUY, 100.5, 1));
+            venue.match();
+            // The trades at 101 go on to reach the last stop as well
+            List<String> trades = venue.trades();
+            assertEquals(5, trades.size());
+            assertEquals(Arrays.asList("1@101.0 " + nearFirst.getId() + "/" + seller.getId(),
+                "1@101.0 " + nearSecond.getId() + "/" + seller.getId(),
+                "1@101.0 " + far.getId() + "/" + seller.getId(),
+                "1@101.0 " + later.getId() + "/" + seller.getId()), trades.subList(1, 5));
+        }
+    }
+
+    @Test
+    public void testCancelledStopNeverTriggers() {
+        for (Venue venue : venues()) {
+            Order stop = Order.stop("AAPL", Order.Type.SELL, 100.0, 4);
+            venue.rest(stop);
+            assertTrue(venue.cancel(stop));
+            assertFalse(venue.cancel(stop));
+
+            venue.rest(new Order("AAPL", Order.Type.BUY, 100.0, 10));
+            venue.rest(new Order("AAPL", Order.Type.SELL, 100.0, 1));
+            venue.match();
+            assertEquals(1, venue.trades().size());
+            assertEquals(9, venue.depth().getBidQuantity(0));
+        }
+    }
+
+    @Test
+    public void testTriggeredStopsCascadeWithinOnePass() {
+        for (Venue venue : venues()) {
+            venue.rest(new Order("AAPL", Order.Type.BUY, 99.0, 2));
+            venue.rest(new Order("AAPL", Order.Type.BUY, 98.0, 5));
+            venue.rest(new Order("AAPL", Order.Type.BUY, 97.0, 5));
+            Order first = Order.stop("AAPL", Order.Type.SELL, 99.0, 5);
+            Order second = Order.stop("AAPL", Order.Type.SELL, 98.5, 3);
+            venue.rest(first);
+            venue.rest(second);
+
+            // The trade at 99 triggers the first stop, whose trade at 98 triggers the second
+            venue.rest(new Order("AAPL", Order.Type.SELL, 99.0, 2));
+            venue.match();
+            List<String> trades = venue.trades();
+            assertEquals(3, trades.size());
+            assertTrue(trades.get(0).startsWith("2@99.0 "));
+            assertTrue(trades.get(1).startsWith("5@98.0 "));
+            assertTrue(trades.get(1).endsWith("/" + first.getId()));
+            assertTrue(trades.get(2).startsWith("3@97.0 "));
+            assertTrue(trades.get(2).endsWith("/" + second.getId()));
+            assertEquals(2, venue.depth().getBidQuantity(0));
+        }
+    }
+
+    @Test
+    public void testIndexTriggersOnlyTheStopsATradeReaches() {
+        StopIndex index = new StopIndex();
+        List<Order> buys = new ArrayList<>();
+        List<Order> sells = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Order buy = Order.stop("AAPL", Order.Type.BUY, 101.0 + (i % 20) / 10.0, 1);
+            Order sell = Order.stop("AAPL", Order.Type.SELL, 99.0 - (i % 20) / 10.0, 1);
+            buys.add(buy);
+            sells.add(sell);
+            index.add(buy);
+            index.add(sell);
+        }
+        assertEquals(80, index.size());
+
+        index.onTrade(TickSizes.toTicks("AAPL", 100.0));
+        assertEquals(null, index.pollTriggered());
+
+        // 101.0 to 101.4 hold ten buy stops, two per price, which come out lowest price first
+        index.onTrade(TickSizes.toTicks("AAPL", 101.4));
+        List<Order> triggered = new ArrayList<>();
+        Order order;
+        while ((order = index.pollTriggered()) != null) {
+            assertFalse(order.isStopArmed());
+            triggered.add(order);
+        }
+        assertEquals(10, triggered.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(buys.get(i), triggered.get(2 * i));
+            assertEquals(buys.get(i + 20), triggered.get(2 * i + 1));
+        }
+
+        assertTrue(index.remove(sells.get(3)));
+        assertFalse(index.remove(sells.get(3)));
+        assertFalse(index.remove(buys.get(0)));
+        index.onTrade(TickSizes.toTicks("AAPL", 98.7));
+        int count = 0;
+        while (index.pollTriggered() != null) {
+            count++;
+        }
+        // 99.0 to 98.7 hold eight sell stops, one of them cancelled
+        assertEquals(7, count);
+        assertEquals(62, index.size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the SymbolRegistry and SymbolTable classes.
+ */
+public class SymbolRegistryTest {
+
+    @Test
+    public void testInternIsStable() {
+        int id = SymbolRegistry.intern("REG1");
+
+        assertTrue(id >= 0);
+        assertEquals(id, SymbolRegistry.intern("REG1"));
+        assertEquals(id, SymbolRegistry.idOf("REG1"));
+        assertEquals("REG1", SymbolRegistry.getSymbol(id));
+        assertNotEquals(id, SymbolRegistry.intern("REG2"));
+    }
+
+    @Test
+    public void testUnknownSymbol() {
+        assertEquals(-1, SymbolRegistry.idOf("NEVER-INTERNED"));
+        assertThrows(IllegalArgumentException.class, () -> SymbolRegistry.getSymbol(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testIdsAreDense() {
+        int first = SymbolRegistry.intern("DENSE0");
+        // Enough symbols to grow the id table
+        for (int i = 1; i < 200; i++) {
+            assertEquals(first + i, SymbolRegistry.intern("DENSE" + i));
+        }
+        assertEquals("DENSE150", SymbolRegistry.getSymbol(first + 150));
+    }
+
+    @Test
+    public void testOrderCarriesSymbolId() {
+        Order order = new Order("REG3", Order.Type.BUY, 10.0, 1);
+        Order sameSymbol = Order.withPriceTicks(order.getSymbolId(), Order.Type.SELL, 1000, 1);
+
+        assertEquals(SymbolRegistry.idOf("REG3"), order.getSymbolId());
+        assertEquals("REG3", sameSymbol.getSymbol());
+        assertEquals(10.0, sameSymbol.getPrice());
+    }
+
+    @Test
+    public void testSymbolTable() {
+        SymbolTable<StringBuilder> table = new SymbolTable<>();
+        int id = SymbolRegistry.intern("REG4");
+
+        assertNull(table.get(id));
+        StringBuilder value = table.computeIfAbsent(id, k -> new StringBuilder("REG4"));
+        assertSame(value, table.computeIfAbsent(id, k -> new StringBuilder()));
+        assertSame(value, table.get("REG4"));
+        assertNull(table.get("NEVER-INTERNED"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.stocktrading;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the TickSizes class.
+ */
+public class TickSizesTest {
+
+    @Test
+    public void testDefaultTickSize() {
+        assertEquals(TickSizes.DEFAULT_TICK_SIZE, TickSizes.getTickSize("TICK-DEFAULT"));
+        assertEquals(15001L, TickSizes.toTicks("TICK-DEFAULT", 150.01));
+        assertEquals(150.01, TickSizes.toPrice("TICK-DEFAULT", 15001L));
+    }
+
+    @Test
+    public void testCustomTickSize() {
+        TickSizes.setTickSize("TICK-NICKEL", 0.05);
+
+        assertEquals(0.05, TickSizes.getTickSize("TICK-NICKEL"), 1e-12);
+        assertEquals(2001L, TickSizes.toTicks("TICK-NICKEL", 100.05));
+
+        // Off-tick prices round to the nearest tick
+        assertEquals(2001L, TickSizes.toTicks("TICK-NICKEL", 100.06));
+        assertEquals(100.05, TickSizes.toPrice("TICK-NICKEL", 2001L));
+
+        Order order = new Order("TICK-NICKEL", Order.Type.BUY, 100.04, 1);
+        assertEquals(2001L, order.getPriceTicks());
+        assertEquals(100.05, order.getPrice());
+    }
+
+    @Test
+    public void testInvalidTickSize() {
+        assertThrows(IllegalArgumentException.class, () -> TickSizes.setTickSize("TICK-BAD", 0));
+        assertThrows(IllegalArgumentException.class, () -> TickSizes.setTickSize("TICK-BAD", -0.01));
+    }
+}
@@ -0,0 +1,211 @@
+package com.stocktrading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for market, immediate-or-cancel and fill-or-kill orders on every matcher.
+ */
+public class TimeInForceTest {
+
+    // A book and the matcher that executes incoming orders against it
+    private interface Venue {
+        void rest(Order order);
+        int execute(Order order);
+        MarketDepth depth();
+        List<String> trades();
+    }
+
+    private static String describe(Trade trade) {
+        return trade.getQuantity() + "@" + trade.getPrice() + " " + trade.getBuyOrderId() + "/" + trade.getSellOrderId();
+    }
+
+    private static List<String> drain(TradeSink trades) {
+        List<String> result = new ArrayList<>();
+        Trade trade;
+        while ((trade = trades.poll()) != null) {
+            result.add(describe(trade));
+        }
+        return result;
+    }
+
+    private static Venue locked() {
+        LockedOrderBook book = new LockedOrderBook();
+        LockedOrderMatcher matcher = new LockedOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public int execute(Order order) { return matcher.matchIncoming(order); }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    private static Venue lockFree() {
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"));
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public int execute(Order order) { return matcher.matchIncoming(order); }
+            public MarketDepth depth() { return book.depth("AAPL", 10, new MarketDepth(10)); }
+            public List<String> trades() { return drain(matcher.getTrades()); }
+        };
+    }
+
+    // The shard matcher on its own, as the shard thread drives it
+    private static Venue ladder() {
+        SymbolBook book = new SymbolBook("AAPL");
+        List<String> trades = new ArrayList<>();
+        SymbolBookMatcher matcher = new SymbolBookMatcher(new TradePool(1, TimeSource.SYSTEM), trade -> {
+            trades.add(describe(trade));
+            trade.release();
+        });
+        return new Venue() {
+            public void rest(Order order) { book.addOrder(order); }
+            public int execute(Order order) {
+                int quantity = order.getQuantity();
+                matcher.matchIncoming(book, order);
+                return quantity - order.getQuantity();
+            }
+            public MarketDepth depth() { return book.depth(10, new MarketDepth(10)); }
+            public List<String> trades() {
+                List<String> result = new ArrayList<>(trades);
+                trades.clear();
+                return result;
+            }
+        };
+    }
+
+    private static List<Venue> venues() {
+        return Arrays.asList(locked(), lockFree(), ladder());
+    }
+
+    private static String asks(MarketDepth depth) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < depth.getAskLevels(); i++) {
+            result.append(i == 0 ? "" : " ").append(depth.getAskQuantity(i)).append("@").append(depth.getAskPrice(i));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testImmediateOrCancelTradesUpToItsLimit() {
+        for (Venue venue : venues()) {
+            Order first = new Order("AAPL", Order.Type.SELL, 100.0, 5);
+            Order second = new Order("AAPL", Order.Type.SELL, 101.0, 5);
+            venue.rest(first);
+            venue.rest(second);
+            venue.rest(new Order("AAPL", Order.Type.SELL, 103.0, 5));
+
+            Order ioc = new Order("AAPL", Order.Type.BUY, 101.0, 12, Order.TimeInForce.IOC);
+            assertEquals(10, venue.execute(ioc));
+
+            // Trades print at the resting prices, and the remainder is left on the order rather than the book
+            assertEquals(Arrays.asList("5@100.0 " + ioc.getId() + "/" + first.getId(),
+                "5@101.0 " + ioc.getId() + "/" + second.getId()), venue.trades());
+            assertEquals(2, ioc.getQuantity());
+            MarketDepth depth = venue.depth();
+            assertEquals(0, depth.getBidLevels());
+            assertEquals("5@103.0", asks(depth));
+        }
+    }
+
+    @Test
+    public void testFillOrKillTradesInFullOrNotAtAll() {
+        for (Venue venue : venues()) {
+            venue.rest(new Order("AAPL", Order.Type.SELL, 100.0, 5));
+            venue.rest(new Order("AAPL", Order.Type.SELL, 101.0, 5));
+            venue.rest(new Order("AAPL", Order.Type.SELL, 101.0, 3));
+            venue.rest(new Order("AAPL", Order.Type.SELL, 104.0, 50));
+
+            // 13 cross at 101 or better, one short
+            Order killed = new Order("AAPL", Order.Type.BUY, 101.0, 14, Order.TimeInForce.FOK);
+            assertEquals(0, venue.execute(killed));
+            assertEquals(14, killed.getQuantity());
+            assertTrue(venue.trades().isEmpty());
+            assertEquals("5@100.0 8@101.0 50@104.0", asks(venue.depth()));
+
+            Order filled = new Order("AAPL", Order.Type.BUY, 101.0, 12, Order.TimeInForce.FOK);
+            assertEquals(12, venue.execute(filled));
+            assertEquals(3, venue.trades().size());
+            assertEquals("1@101.0 50@104.0", asks(venue.depth()));
+        }
+    }
+
+    @Test
+    public void testFillOrKillCrossesADeepBook() {
+        // Far more levels than a recursive lock-per-level walk has stack for
+        LockFreeOrderBook book = new LockFreeOrderBook();
+        TradeRingBuffer trades = new TradeRingBuffer(1 << 17, BackpressurePolicy.DROP);
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(book, Arrays.asList("AAPL"), trades);
+        int levels = 50_000;
+        for (int i = 0; i < levels; i++) {
+            book.addOrder(Order.withPriceTicks("AAPL", Order.Type.SELL, 10_000 + i, 1));
+        }
+
+        double limit = TickSizes.toPrice("AAPL", 10_000 + levels);
+        Order killed = new Order("AAPL", Order.Type.BUY, limit, levels + 1, Order.TimeInForce.FOK);
+        assertEquals(0, matcher.matchIncoming(killed));
+        assertEquals(0, trades.size());
+
+        Order filled = new Order("AAPL", Order.Type.BUY, limit, levels, Order.TimeInForce.FOK);
+        assertEquals(levels, matcher.matchIncoming(filled));
+        assertEquals(levels, trades.size());
+        assertFalse(book.hasSellOrders("AAPL"));
+    }
+
+    @Test
+    public void testLockedMatcherLocksTheBooksOwnSides() {
+        // Executing against a symbol with no sides yet creates the sides every later user locks
+        LockedOrderBook book = new LockedOrderBook();
+        LockedOrderMatcher matcher = new LockedOrderMatcher(book, Arrays.asList("MSFT"));
+        assertEquals(0, matcher.matchIncoming(Order.market("MSFT", Order.Type.BUY, 5)));
+        assertSame(book.getBuyOrders("MSFT"), book.getBuyOrders("MSFT"));
+        assertSame(book.getSellOrders("MSFT"), book.getSellOrders("MSFT"));
+    }
+
+    @Test
+    public void testMarketOrderSweepsEveryPrice() {
+        for (Venue venue : venues()) {
+            venue.rest(new Order("AAPL", Order.Type.BUY, 99.0, 5));
+            venue.rest(new Order("AAPL", Order.Type.BUY, 50.0, 5));
+
+            Order market = Order.market("AAPL", Order.Type.SELL, 20);
+            assertEquals(Order.TimeInForce.MARKET, market.getTimeInForce());
+            assertEquals(10, venue.execute(market));
+            List<String> trades = venue.trades();
+            assertEquals(2, trades.size());
+            assertTrue(trades.get(0).startsWith("5@99.0 "));
+            assertTrue(trades.get(1).startsWith("5@50.0 "));
+            assertEquals(0, venue.depth().getBidLevels());
+
+            // Nothing to trade against leaves the order untouched
+            assertEquals(0, venue.execute(Order.market("AAPL", Order.Type.BUY, 1)));
+        }
+    }
+
+    @Test
+    public void testEngineNeverRestsOrdersThatExecuteOnArrival() {
+        TradingEngine engine = TradingEngineFactory.createLockFreeTradingEngine(Arrays.asList("AAPL"));
+        engine.getOrderBook().addOrder(new Order("AAPL", Order.Type.SELL, 100.0, 5));
+
+        Order ioc = new Order("AAPL", Order.Type.BUY, 100.0, 8, Order.TimeInForce.IOC);
+        engine.submitOrder(ioc);
+        assertEquals(3, ioc.getQuantity());
+        assertNull(engine.getOrderBook().getOrder(ioc.getId()));
+        assertEquals(1, engine.getOrderMatcher().getTrades().size());
+
+        Order fok = new Order("AAPL", Order.Type.SELL, 90.0, 1, Order.TimeInForce.FOK);
+        engine.submitOrder(fok);
+        assertNull(engine.getOrderBook().getOrder(fok.getId()));
+        assertEquals("AAPL SELL 1@90.0 FOK", fok.getSymbol() + " " + fok.getType() + " " + fok.getQuantity()
+            + "@" + fok.getPrice() + " " + fok.getTimeInForce());
+    }
+}
@@ -0,0 +1,227 @@
+package com.stocktrading;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the TradeRingBuffer class.
+ */
+public class TradeRingBufferTest {
+
+    private static boolean publish(TradeSink sink, long buyOrderId) {
+        return sink.publish(SymbolRegistry.intern("AAPL"), 15000L, 10, buyOrderId, 1000L + buyOrderId, 42L);
+    }
+
+    @Test
+    public void testConstructorChecks() {
+        assertThrows(IllegalArgumentException.class, () -> new TradeRingBuffer(12, BackpressurePolicy.DROP));
+        assertThrows(IllegalArgumentException.class, () -> new TradeRingBuffer(1, BackpressurePolicy.DROP));
+        assertThrows(IllegalArgumentException.class, () -> new TradeRingBuffer(16, BackpressurePolicy.SPILL));
+        assertEquals(16, new TradeRingBuffer(16, BackpressurePolicy.BLOCK).getCapacity());
+    }
+
+    @Test
+    public void testDrainInBatchesReusesBuffer() {
+        TradeRingBuffer sink = new TradeRingBuffer(8, BackpressurePolicy.BLOCK);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(publish(sink, i));
+        }
+        assertEquals(5, sink.size());
+
+        Trade[] buffer = new Trade[3];
+        assertEquals(3, sink.drainTo(buffer, 10));
+        Trade first = buffer[0];
+        assertEquals("AAPL", first.getSymbol());
+        assertEquals(150.0, first.getPrice());
+        assertEquals(0, first.getBuyOrderId());
+        assertEquals(1000, first.getSellOrderId());
+        assertEquals(42, first.getTimestamp());
+
+        // The second batch is copied into the same trade objects
+        assertEquals(2, sink.drainTo(buffer, 10));
+        assertSame(first, buffer[0]);
+        assertEquals(3, buffer[0].getBuyOrderId());
+        assertEquals(4, buffer[1].getBuyOrderId());
+        assertEquals(0, sink.drainTo(buffer, 10));
+        assertTrue(sink.isEmpty());
+        assertNull(sink.poll());
+    }
+
+    @Test
+    public void testPublishCopiesTrade() {
+        TradeRingBuffer sink = new TradeRingBuffer(4, BackpressurePolicy.BLOCK);
+        TradePool pool = new TradePool();
+        Trade trade = pool.acquire(SymbolRegistry.intern("AAPL"), 15000L, 7, 1L, 2L);
+        sink.onTrade(trade);
+        trade.release();
+
+        Trade published = sink.poll();
+        assertEquals(7, published.getQuantity());
+        assertEquals(1, published.getBuyOrderId());
+        assertFalse(published == trade);
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        TradeRingBuffer sink = new TradeRingBuffer(2, BackpressurePolicy.DROP);
+        assertTrue(publish(sink, 1));
+        assertTrue(publish(sink, 2));
+        assertFalse(publish(sink, 3));
+        assertEquals(1, sink.getDroppedCount());
+
+        // Draining frees the slots for later trades
+        assertEquals(1, sink.poll().getBuyOrderId());
+        assertTrue(publish(sink, 4));
+        assertEquals(2, sink.poll().getBuyOrderId());
+        assertEquals(4, sink.poll().getBuyOrderId());
+    }
+
+    @Test
+    public void testSpillWhenFull() throws Exception {
+        Path path = Files.createTempFile("trades", ".spill");
+        Files.delete(path);
+        try {
+            int symbolId = SymbolRegistry.intern("AAPL");
+            TradeSpillFile spillFile = new TradeSpillFile(path);
+            TradeRingBuffer sink = new TradeRingBuffer(2, spillFile);
+            for (int i = 0; i < 5; i++) {
+                assertTrue(sink.publish(symbolId, 15000L, 10, i, 1000L + i, i % 3, 7, 42L));
+            }
+            assertEquals(3, sink.getSpilledCount());
+            assertEquals(5, sink.size());
+
+            // The ring drains first, and a trade published meanwhile queues behind the spilled ones
+            Trade[] buffer = new Trade[8];
+            assertEquals(2, sink.drainTo(buffer, 8));
+            assertEquals(1, buffer[1].getBuyOrderId());
+            assertTrue(publish(sink, 5));
+            assertEquals(4, sink.getSpilledCount());
+            assertEquals(3, sink.drainTo(buffer, 3));
+            assertEquals(2, buffer[0].getBuyOrderId());
+            assertEquals(4, buffer[2].getBuyOrderId());
+            assertEquals(1, buffer[2].getBuyAccountId());
+            assertEquals(7, buffer[2].getSellAccountId());
+            assertEquals(1004, buffer[2].getSellOrderId());
+            assertEquals(symbolId, buffer[2].getSymbolId());
+            assertEquals(5, sink.poll().getBuyOrderId());
+            assertNull(sink.poll());
+
+            // Once the spilled trades are read back the ring takes trades again
+            assertTrue(publish(sink, 6));
+            assertEquals(4, sink.getSpilledCount());
+            assertEquals(6, sink.poll().getBuyOrderId());
+            spillFile.close();
+
+            List<Trade> spilled = TradeSpillFile.readAll(path);
+            assertEquals(4, spilled.size());
+            assertEquals(2, spilled.get(0).getBuyOrderId());
+            assertEquals(2, spilled.get(0).getBuyAccountId());
+            assertEquals(5, spilled.get(3).getBuyOrderId());
+            assertEquals("AAPL", spilled.get(0).getSymbol());
+            assertEquals(15000, spilled.get(0).getPriceTicks());
+            assertEquals(42, spilled.get(0).getTimestamp());
+
+            // Reopening appends, and only trades spilled after that are read back
+            try (TradeSpillFile reopened = new TradeSpillFile(path)) {
+                assertEquals(0, reopened.getUnreadCount());
+                reopened.write(symbolId, 15100L, 1, 9, 1009, 0, 0, 43L);
+                assertEquals(1, reopened.read(buffer, 8));
+                assertEquals(9, buffer[0].getBuyOrderId());
+            }
+            assertEquals(5, TradeSpillFile.readAll(path).size());
+
+            // Anything else is not mistaken for a spill file
+            Files.write(path, new byte[] { 0, 4, 'A', 'A', 'P', 'L', 0, 0 });
+            assertThrows(IOException.class, () -> new TradeSpillFile(path));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testBlockUntilDrained() throws InterruptedException {
+        TradeRingBuffer sink = new TradeRingBuffer(2, BackpressurePolicy.BLOCK);
+        publish(sink, 1);
+        publish(sink, 2);
+
+        CountDownLatch published = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            publish(sink, 3);
+            published.countDown();
+        });
+        producer.start();
+
+        assertFalse(published.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, sink.poll().getBuyOrderId());
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        assertEquals(2, sink.poll().getBuyOrderId());
+        assertEquals(3, sink.poll().getBuyOrderId());
+        assertEquals(0, sink.getDroppedCount());
+    }
+
+    @Test
+    public void testInterruptedPublisherDrops() throws InterruptedException {
+        TradeRingBuffer sink = new TradeRingBuffer(2, BackpressurePolicy.BLOCK);
+        publish(sink, 1);
+        publish(sink, 2);
+
+        Thread producer = new Thread(() -> publish(sink, 3));
+        producer.start();
+        producer.interrupt();
+        producer.join(5000);
+
+        assertFalse(producer.isAlive());
+        assertEquals(1, sink.getDroppedCount());
+        assertEquals(2, sink.size());
+    }
+
+    @Test
+    public void testConcurrentConsumersSeeEachTradeOnce() throws InterruptedException {
+        TradeRingBuffer sink = new TradeRingBuffer(64, BackpressurePolicy.BLOCK);
+        int numTrades = 20000;
+        int numConsumers = 3;
+        AtomicLongArray seen = new AtomicLongArray(numTrades);
+        AtomicLong consumed = new AtomicLong();
+
+        Thread[] consumers = new Thread[numConsumers];
+        for (int c = 0; c < numConsumers; c++) {
+            consumers[c] = new Thread(() -> {
+                Trade[] buffer = new Trade[16];
+                while (consumed.get() < numTrades) {
+                    int count = sink.drainTo(buffer, buffer.length);
+                    for (int i = 0; i < count; i++) {
+                        seen.incrementAndGet((int) buffer[i].getBuyOrderId());
+                    }
+                    consumed.addAndGet(count);
+                }
+            });
+            consumers[c].start();
+        }
+
+        for (int i = 0; i < numTrades; i++) {
+            publish(sink, i);
+        }
+        for (Thread consumer : consumers) {
+            consumer.join(10000);
+        }
+
+        assertEquals(numTrades, consumed.get());
+        for (int i = 0; i < numTrades; i++) {
+            assertEquals(1, seen.get(i));
+        }
+    }
+}
@@ -1,8 +1,23 @@
 package com.stocktrading;
 
 import org.junit.jupiter.api.Test;
+
+import com.stocktrading.journal.OrderJournal;
+import com.stocktrading.ring.BusySpinWaitStrategy;
+import com.stocktrading.ring.OrderRingBuffer;
+import com.stocktrading.ring.ParkingWaitStrategy;
+import com.stocktrading.ring.YieldingWaitStrategy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -116,4 +131,141 @@ public class TradingEngineTest {
         // Stop the engine
         engine.stop();
     }
-} 
\ No newline at end of file
+    
+    @Test
+    public void testRingBufferIngress() throws InterruptedException {
+        List<String> symbols = Arrays.asList("AAPL");
+        TradingEngine[] engines = {
+            TradingEngineFactory.createLockedTradingEngine(symbols, 1024, new BusySpinWaitStrategy()),
+            TradingEngineFactory.createLockFreeTradingEngine(symbols, 1024, new YieldingWaitStrategy()),
+            TradingEngineFactory.createLockFreeTradingEngine(symbols, 1024, new ParkingWaitStrategy())
+        };
+        
+        for (TradingEngine engine : engines) {
+            engine.start();
+            
+            // Orders pass through the ring and are matched once the consumer hands them over
+            for (int i = 0; i < 100; i++) {
+                engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150.0, 1));
+                engine.submitOrder(new Order("AAPL", Order.Type.SELL, 150.0, 1));
+            }
+            
+            Thread.sleep(200);
+            
+            assertFalse(engine.getOrderBook().hasBuyOrders("AAPL"));
+            assertFalse(engine.getOrderBook().hasSellOrders("AAPL"));
+            assertEquals(100, engine.getOrderMatcher().getTrades().size());
+            
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void testIngressSurvivesAFailingOrder() throws InterruptedException {
+        List<String> symbols = Arrays.asList("AAPL");
+        LockFreeOrderBook orderBook = new LockFreeOrderBook() {
+            @Override
+            public void addOrder(Order order) {
+                if (order.getQuantity() == 13) {
+                    throw new IllegalStateException("Unlucky order");
+                }
+                super.addOrder(order);
+            }
+        };
+        TradingEngine engine = new TradingEngine(orderBook, new LockFreeOrderMatcher(orderBook, symbols),
+            new OrderRingBuffer(1024, new YieldingWaitStrategy()));
+        engine.start();
+
+        // The failing order is dropped, and the consumer goes on with the rest of the ring
+        assertTrue(engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150.0, 13)));
+        for (int i = 0; i < 20; i++) {
+            engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150.0, 1));
+            engine.submitOrder(new Order("AAPL", Order.Type.SELL, 150.0, 1));
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        while (engine.getOrderMatcher().getTrades().size() < 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(20, engine.getOrderMatcher().getTrades().size());
+        assertEquals(1, engine.getMetrics().get("ingress_orders_failed_total"));
+        engine.stop();
+    }
+
+    @Test
+    public void testCancelAndAmend() throws InterruptedException {
+        List<String> symbols = Arrays.asList("AAPL");
+        for (TradingEngine engine : Arrays.asList(
+                TradingEngineFactory.createLockedTradingEngine(symbols),
+                TradingEngineFactory.createLockFreeTradingEngine(symbols))) {
+            engine.start();
+
+            Order buyOrder = new Order("AAPL", Order.Type.BUY, 149.0, 10);
+            Order sellOrder = new Order("AAPL", Order.Type.SELL, 150.0, 10);
+            engine.submitOrder(buyOrder);
+            engine.submitOrder(sellOrder);
+
+            // Raising the bid to the ask crosses the book
+            assertTrue(engine.amendOrder(buyOrder.getId(), 10, 150.0));
+            Thread.sleep(100);
+            assertEquals(1, engine.getOrderMatcher().getTrades().size());
+            assertFalse(engine.amendOrder(buyOrder.getId(), 5, 150.0));
+
+            Order restingOrder = new Order("AAPL", Order.Type.SELL, 155.0, 10);
+            engine.submitOrder(restingOrder);
+            assertTrue(engine.cancelOrder(restingOrder.getId()));
+            assertFalse(engine.cancelOrder(restingOrder.getId()));
+            assertFalse(engine.getOrderBook().hasSellOrders("AAPL"));
+
+            engine.stop();
+        }
+    }
+
+    @Test
+    public void testSymbolLockOnlyTakenWithAJournal() throws Exception {
+        List<String> symbols = Arrays.asList("AAPL");
+        int symbolId = SymbolRegistry.intern("AAPL");
+        Path path = Files.createTempFile("orders", ".journal");
+        Files.delete(path);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LockFreeOrderBook plainBook = new LockFreeOrderBook();
+        TradingEngine plain = new TradingEngine(plainBook, new LockFreeOrderMatcher(plainBook, symbols));
+        try (OrderJournal journal = new OrderJournal(path)) {
+            LockFreeOrderBook journaledBook = new LockFreeOrderBook();
+            TradingEngine journaled = new TradingEngine(journaledBook,
+                new LockFreeOrderMatcher(journaledBook, symbols), null, journal);
+            for (TradingEngine engine : Arrays.asList(plain, journaled)) {
+                // Another thread holds the symbol's lock for as long as the commands take
+                CountDownLatch held = new CountDownLatch(1);
+                CountDownLatch release = new CountDownLatch(1);
+                executor.submit(() -> {
+                    synchronized (engine.lockFor(symbolId)) {
+                        held.countDown();
+                        release.await();
+                    }
+                    return null;
+                });
+                assertTrue(held.await(1, TimeUnit.SECONDS));
+
+                Future<Boolean> commands = executor.submit(() -> {
+                    Order order = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+                    engine.submitOrder(order);
+                    return engine.amendOrder(order.getId(), 5, 150.0) && engine.cancelOrder(order.getId());
+                });
+                if (engine == plain) {
+                    assertTrue(commands.get(1, TimeUnit.SECONDS));
+                    release.countDown();
+                } else {
+                    // Journaled commands wait for the lock, so a snapshot can pause the symbol
+                    assertThrows(TimeoutException.class, () -> commands.get(100, TimeUnit.MILLISECONDS));
+                    release.countDown();
+                    assertTrue(commands.get(1, TimeUnit.SECONDS));
+                }
+            }
+            assertThrows(IllegalStateException.class, () -> plain.writeSnapshot(path, symbols));
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(path);
+        }
+    }
+}
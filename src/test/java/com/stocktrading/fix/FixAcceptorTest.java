@@ -0,0 +1,424 @@
+package com.stocktrading.fix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.stocktrading.MarketDepth;
+import com.stocktrading.TimeSource;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.TradingEngineFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the FixAcceptor and FixSession classes, driven over loopback by a simulated
+ * counterparty.
+ */
+public class FixAcceptorTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+    private static final String ACCEPTOR = "EXCH";
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // The initiator side of a session, with its own sequence numbers
+    private static class Counterparty implements AutoCloseable {
+        final byte[] compId;
+        final InetSocketAddress address;
+        final FixEncoder encoder = new FixEncoder();
+        final FixParser parser = new FixParser();
+        final ByteBuffer out = ByteBuffer.allocate(4096);
+        final byte[] data = new byte[1 << 16];
+        final ByteBuffer view = ByteBuffer.wrap(data);
+        int start;
+        int end;
+        int nextSeqNum = 1;
+        Socket socket;
+        InputStream input;
+        OutputStream output;
+
+        Counterparty(String compId, InetSocketAddress address) throws IOException {
+            this.compId = ascii(compId);
+            this.address = address;
+            connect();
+        }
+
+        void connect() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), address.getPort());
+            socket.setSoTimeout(5000);
+            socket.setTcpNoDelay(true);
+            input = socket.getInputStream();
+            output = socket.getOutputStream();
+            start = 0;
+            end = 0;
+        }
+
+        FixEncoder begin(byte msgType) {
+            return begin(msgType, nextSeqNum);
+        }
+
+        FixEncoder begin(byte msgType, int seqNum) {
+            return encoder.begin(msgType)
+                .addBytes(FixTags.SENDER_COMP_ID, compId)
+                .addBytes(FixTags.TARGET_COMP_ID, ascii(ACCEPTOR))
+                .addLong(FixTags.MSG_SEQ_NUM, seqNum)
+                .addTimestamp(FixTags.SENDING_TIME, System.currentTimeMillis());
+        }
+
+        void send() throws IOException {
+            out.clear();
+            encoder.writeTo(out);
+            output.write(out.array(), 0, out.position());
+            nextSeqNum++;
+        }
+
+        void logon(int heartBtInt) throws IOException {
+            begin(FixTags.LOGON).addLong(FixTags.ENCRYPT_METHOD, 0).addLong(FixTags.HEART_BT_INT, heartBtInt);
+            send();
+            assertEquals(FixTags.LOGON, receive().getMsgType());
+            assertEquals(heartBtInt, parser.getLong(FixTags.HEART_BT_INT));
+        }
+
+        void newOrder(String clOrdId, String symbol, boolean buy, int quantity, double price) throws IOException {
+            begin(FixTags.NEW_ORDER_SINGLE)
+                .addBytes(FixTags.CL_ORD_ID, ascii(clOrdId))
+                .addBytes(FixTags.SYMBOL, ascii(symbol))
+                .addChar(FixTags.SIDE, buy ? (byte) '1' : (byte) '2')
+                .addLong(FixTags.ORDER_QTY, quantity)
+                .addChar(FixTags.ORD_TYPE, (byte) '2')
+                .addPrice(FixTags.PRICE, price);
+            send();
+        }
+
+        void cancel(String clOrdId, String origClOrdId) throws IOException {
+            begin(FixTags.ORDER_CANCEL_REQUEST)
+                .addBytes(FixTags.ORIG_CL_ORD_ID, ascii(origClOrdId))
+                .addBytes(FixTags.CL_ORD_ID, ascii(clOrdId))
+                .addChar(FixTags.SIDE, (byte) '1');
+            send();
+        }
+
+        // Reads the next message, or returns null once the acceptor has closed the connection
+        FixParser receive() throws IOException {
+            while (true) {
+                int length = parser.parse(view, start, end);
+                assertTrue(length != FixParser.MALFORMED);
+                if (length > 0) {
+                    assertTrue(parser.isChecksumValid());
+                    start += length;
+                    return parser;
+                }
+                if (start > 0) {
+                    System.arraycopy(data, start, data, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                int read = input.read(data, end, data.length - end);
+                if (read < 0) {
+                    return null;
+                }
+                end += read;
+            }
+        }
+
+        String text(int tag) {
+            int offset = parser.getValueOffset(tag);
+            return offset < 0 ? null : new String(data, offset, parser.getValueLength(tag), StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private interface AcceptorTest {
+        void run(FixAcceptor acceptor, TradingEngine engine) throws Exception;
+    }
+
+    private static FixAcceptor runAcceptor(TimeSource timeSource, AcceptorTest test) throws Exception {
+        TradingEngine engine = TradingEngineFactory.createLockedTradingEngine(SYMBOLS);
+        FixAcceptor acceptor = new FixAcceptor(engine, SYMBOLS, ACCEPTOR,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), timeSource);
+        Thread thread = new Thread(acceptor);
+        engine.start();
+        thread.start();
+        try {
+            test.run(acceptor, engine);
+        } finally {
+            acceptor.stop();
+            thread.join(1000);
+            acceptor.close();
+            engine.stop();
+        }
+        return acceptor;
+    }
+
+    @Test
+    public void testOrderEntry() throws Exception {
+        FixAcceptor acceptor = runAcceptor(TimeSource.SYSTEM, (a, engine) -> {
+            try (Counterparty client = new Counterparty("CLIENT", a.getLocalAddress())) {
+                client.logon(30);
+
+                client.newOrder("1", "AAPL", true, 10, 150.25);
+                FixParser report = client.receive();
+                assertEquals(FixTags.EXECUTION_REPORT, report.getMsgType());
+                assertEquals("1", client.text(FixTags.CL_ORD_ID));
+                assertEquals('0', report.getByte(FixTags.EXEC_TYPE));
+                assertEquals(10, report.getLong(FixTags.LEAVES_QTY));
+                assertEquals(150.25, report.getDouble(FixTags.PRICE));
+                long orderId = report.getLong(FixTags.ORDER_ID);
+                assertTrue(engine.getOrderBook().hasBuyOrders("AAPL"));
+
+                client.newOrder("2", "AAPL", false, 4, 150.0);
+                client.receive();
+                assertEquals("0", client.text(FixTags.EXEC_TYPE));
+                Map<String, String> fills = new HashMap<>();
+                while (fills.size() < 2) {
+                    client.receive();
+                    assertEquals("F", client.text(FixTags.EXEC_TYPE));
+                    fills.put(client.text(FixTags.CL_ORD_ID), client.text(FixTags.ORD_STATUS) + " "
+                        + client.text(FixTags.LAST_QTY) + "@" + client.text(FixTags.LAST_PX) + " leaves "
+                        + client.text(FixTags.LEAVES_QTY) + " cum " + client.text(FixTags.CUM_QTY));
+                }
+                assertEquals("1 4@150 leaves 6 cum 4", fills.get("1"));
+                assertEquals("2 4@150 leaves 0 cum 4", fills.get("2"));
+
+                client.cancel("3", "1");
+                client.receive();
+                assertEquals("4", client.text(FixTags.EXEC_TYPE));
+                assertEquals("3", client.text(FixTags.CL_ORD_ID));
+                assertEquals("1", client.text(FixTags.ORIG_CL_ORD_ID));
+                assertEquals(orderId, client.parser.getLong(FixTags.ORDER_ID));
+                assertEquals("0 4 150", client.text(FixTags.LEAVES_QTY) + " " + client.text(FixTags.CUM_QTY)
+                    + " " + client.text(FixTags.AVG_PX));
+                assertFalse(engine.getOrderBook().hasBuyOrders("AAPL"));
+
+                client.cancel("4", "1");
+                assertEquals(FixTags.ORDER_CANCEL_REJECT, client.receive().getMsgType());
+                assertEquals("4", client.text(FixTags.CL_ORD_ID));
+
+                client.newOrder("5", "IBM", true, 10, 10.0);
+                client.receive();
+                assertEquals("8", client.text(FixTags.EXEC_TYPE));
+                assertEquals(1, client.parser.getLong(FixTags.ORD_REJ_REASON));
+
+                // Client order ids need only be unique among open orders, so a filled one can be reused
+                client.newOrder("2", "MSFT", false, 1, 300.0);
+                client.receive();
+                assertEquals("0", client.text(FixTags.EXEC_TYPE));
+                client.newOrder("2", "MSFT", false, 1, 300.0);
+                client.receive();
+                assertEquals(6, client.parser.getLong(FixTags.ORD_REJ_REASON));
+
+                client.begin((byte) 'V').addBytes(262, ascii("md"));
+                client.send();
+                assertEquals(FixTags.REJECT, client.receive().getMsgType());
+                assertEquals(11, client.parser.getLong(FixTags.SESSION_REJECT_REASON));
+
+                client.begin(FixTags.LOGOUT);
+                client.send();
+                assertEquals(FixTags.LOGOUT, client.receive().getMsgType());
+                assertNull(client.receive());
+            }
+        });
+        FixSession session = acceptor.getSession("CLIENT");
+        assertFalse(session.isLoggedOn());
+        assertEquals(11, session.getNextTargetSeqNum());
+        assertEquals(13, session.getNextSenderSeqNum());
+    }
+
+    @Test
+    public void testInboundGapIsRecoveredByResend() throws Exception {
+        runAcceptor(TimeSource.SYSTEM, (acceptor, engine) -> {
+            try (Counterparty client = new Counterparty("CLIENT", acceptor.getLocalAddress())) {
+                client.logon(30);
+
+                // Sequence number 2 goes missing, so the order at 3 is held back until it is resent
+                client.nextSeqNum = 3;
+                client.newOrder("B", "MSFT", true, 1, 99.0);
+                assertEquals(FixTags.RESEND_REQUEST, client.receive().getMsgType());
+                assertEquals(2, client.parser.getLong(FixTags.BEGIN_SEQ_NO));
+                assertEquals(0, client.parser.getLong(FixTags.END_SEQ_NO));
+
+                client.nextSeqNum = 2;
+                client.newOrder("A", "MSFT", true, 1, 98.0);
+                client.begin(FixTags.NEW_ORDER_SINGLE)
+                    .addChar(FixTags.POSS_DUP_FLAG, (byte) 'Y')
+                    .addBytes(FixTags.CL_ORD_ID, ascii("B"))
+                    .addBytes(FixTags.SYMBOL, ascii("MSFT"))
+                    .addChar(FixTags.SIDE, (byte) '1')
+                    .addLong(FixTags.ORDER_QTY, 1)
+                    .addChar(FixTags.ORD_TYPE, (byte) '2')
+                    .addPrice(FixTags.PRICE, 99.0);
+                client.send();
+                client.receive();
+                assertEquals("A", client.text(FixTags.CL_ORD_ID));
+                client.receive();
+                assertEquals("B", client.text(FixTags.CL_ORD_ID));
+                assertEquals(2, engine.getOrderBook().depth("MSFT", 5, new MarketDepth(5)).getBidLevels());
+
+                // A duplicate of a processed message is ignored, a plain one is fatal
+                client.begin(FixTags.HEARTBEAT, 3).addChar(FixTags.POSS_DUP_FLAG, (byte) 'Y');
+                client.send();
+                client.begin(FixTags.HEARTBEAT, 3);
+                client.send();
+                assertEquals(FixTags.LOGOUT, client.receive().getMsgType());
+                assertEquals("MsgSeqNum too low", client.text(FixTags.TEXT));
+                assertNull(client.receive());
+            }
+        });
+    }
+
+    @Test
+    public void testExecutionsMissedWhileLoggedOutAreResent() throws Exception {
+        runAcceptor(TimeSource.SYSTEM, (acceptor, engine) -> {
+            Counterparty buyer = new Counterparty("BUYER", acceptor.getLocalAddress());
+            buyer.logon(30);
+            buyer.newOrder("A1", "AAPL", true, 5, 100.0);
+            assertEquals(2, buyer.receive().getLong(FixTags.MSG_SEQ_NUM));
+            buyer.begin(FixTags.LOGOUT);
+            buyer.send();
+            assertEquals(FixTags.LOGOUT, buyer.receive().getMsgType());
+            assertNull(buyer.receive());
+            buyer.close();
+
+            try (Counterparty seller = new Counterparty("SELLER", acceptor.getLocalAddress())) {
+                seller.logon(30);
+                seller.newOrder("S1", "AAPL", false, 5, 100.0);
+                seller.receive();
+                seller.receive();
+                assertEquals("F", seller.text(FixTags.EXEC_TYPE));
+            }
+
+            // The buyer's fill was stored at sequence number 4 while it was away
+            buyer.connect();
+            buyer.begin(FixTags.LOGON).addLong(FixTags.ENCRYPT_METHOD, 0).addLong(FixTags.HEART_BT_INT, 30);
+            buyer.send();
+            assertEquals(FixTags.LOGON, buyer.receive().getMsgType());
+            assertEquals(5, buyer.parser.getLong(FixTags.MSG_SEQ_NUM));
+            buyer.begin(FixTags.RESEND_REQUEST)
+                .addLong(FixTags.BEGIN_SEQ_NO, 4)
+                .addLong(FixTags.END_SEQ_NO, 0);
+            buyer.send();
+
+            FixParser resent = buyer.receive();
+            assertEquals(FixTags.EXECUTION_REPORT, resent.getMsgType());
+            assertEquals(4, resent.getLong(FixTags.MSG_SEQ_NUM));
+            assertEquals('Y', resent.getByte(FixTags.POSS_DUP_FLAG));
+            assertTrue(resent.has(FixTags.ORIG_SENDING_TIME));
+            assertEquals("A1", buyer.text(FixTags.CL_ORD_ID));
+            assertEquals("2", buyer.text(FixTags.ORD_STATUS));
+
+            // The logon is an admin message, so it is gap-filled rather than resent
+            FixParser gapFill = buyer.receive();
+            assertEquals(FixTags.SEQUENCE_RESET, gapFill.getMsgType());
+            assertEquals(5, gapFill.getLong(FixTags.MSG_SEQ_NUM));
+            assertEquals('Y', gapFill.getByte(FixTags.GAP_FILL_FLAG));
+            assertEquals(6, gapFill.getLong(FixTags.NEW_SEQ_NO));
+
+            buyer.newOrder("A2", "AAPL", true, 1, 90.0);
+            assertEquals(6, buyer.receive().getLong(FixTags.MSG_SEQ_NUM));
+            buyer.close();
+        });
+    }
+
+    @Test
+    public void testResendRequestBeyondAGapIsServiced() throws Exception {
+        runAcceptor(TimeSource.SYSTEM, (acceptor, engine) -> {
+            try (Counterparty client = new Counterparty("CLIENT", acceptor.getLocalAddress())) {
+                client.logon(30);
+                client.newOrder("A1", "AAPL", true, 5, 100.0);
+                assertEquals(2, client.receive().getLong(FixTags.MSG_SEQ_NUM));
+
+                // Both sides see a gap: the client lost the report at 2 and its own 3 and 4 never arrive
+                client.nextSeqNum = 5;
+                client.begin(FixTags.RESEND_REQUEST)
+                    .addLong(FixTags.BEGIN_SEQ_NO, 2)
+                    .addLong(FixTags.END_SEQ_NO, 0);
+                client.send();
+
+                // The acceptor resends first, then asks for its own gap
+                FixParser resent = client.receive();
+                assertEquals(FixTags.EXECUTION_REPORT, resent.getMsgType());
+                assertEquals(2, resent.getLong(FixTags.MSG_SEQ_NUM));
+                assertEquals('Y', resent.getByte(FixTags.POSS_DUP_FLAG));
+                assertEquals("A1", client.text(FixTags.CL_ORD_ID));
+                assertEquals(FixTags.RESEND_REQUEST, client.receive().getMsgType());
+                assertEquals(3, client.parser.getLong(FixTags.BEGIN_SEQ_NO));
+
+                client.begin(FixTags.SEQUENCE_RESET, 3)
+                    .addChar(FixTags.POSS_DUP_FLAG, (byte) 'Y')
+                    .addChar(FixTags.GAP_FILL_FLAG, (byte) 'Y')
+                    .addLong(FixTags.NEW_SEQ_NO, 6);
+                client.send();
+
+                // A logout beyond a gap still ends the session
+                client.nextSeqNum = 8;
+                client.begin(FixTags.LOGOUT);
+                client.send();
+                assertEquals(FixTags.RESEND_REQUEST, client.receive().getMsgType());
+                assertEquals(6, client.parser.getLong(FixTags.BEGIN_SEQ_NO));
+                assertEquals(FixTags.LOGOUT, client.receive().getMsgType());
+                assertNull(client.receive());
+            }
+        });
+    }
+
+    @Test
+    public void testHeartbeatsAndTestRequests() throws Exception {
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+        runAcceptor(now::get, (acceptor, engine) -> {
+            try (Counterparty client = new Counterparty("CLIENT", acceptor.getLocalAddress())) {
+                client.logon(10);
+                assertEquals("20231114-22:13:20.000", client.text(FixTags.SENDING_TIME));
+
+                now.addAndGet(10_000);
+                assertEquals(FixTags.HEARTBEAT, client.receive().getMsgType());
+
+                // Silence past the interval plus a fifth draws a test request
+                now.addAndGet(2_000);
+                assertEquals(FixTags.TEST_REQUEST, client.receive().getMsgType());
+                String testReqId = client.text(FixTags.TEST_REQ_ID);
+                client.begin(FixTags.HEARTBEAT).addBytes(FixTags.TEST_REQ_ID, ascii(testReqId));
+                client.send();
+
+                client.begin(FixTags.TEST_REQUEST).addBytes(FixTags.TEST_REQ_ID, ascii("ping"));
+                client.send();
+                assertEquals(FixTags.HEARTBEAT, client.receive().getMsgType());
+                assertEquals("ping", client.text(FixTags.TEST_REQ_ID));
+
+                now.addAndGet(12_000);
+                assertEquals(FixTags.TEST_REQUEST, client.receive().getMsgType());
+                assertFalse(testReqId.equals(client.text(FixTags.TEST_REQ_ID)));
+                // An unanswered test request drops the connection
+                now.addAndGet(12_000);
+                assertNull(client.receive());
+            }
+        });
+    }
+
+    @Test
+    public void testRejectsPriceLadderBooks() {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(SYMBOLS, 2);
+        assertThrows(IllegalArgumentException.class, () -> new FixAcceptor(engine, SYMBOLS, ACCEPTOR,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+    }
+}
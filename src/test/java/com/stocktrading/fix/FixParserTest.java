@@ -0,0 +1,145 @@
+package com.stocktrading.fix;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the FixParser and FixEncoder classes.
+ */
+public class FixParserTest {
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String encode(FixEncoder encoder) {
+        ByteBuffer buffer = ByteBuffer.allocate(encoder.encodedLength());
+        assertEquals(buffer.capacity(), encoder.writeTo(buffer));
+        return new String(buffer.array(), StandardCharsets.US_ASCII).replace('\u0001', '|');
+    }
+
+    private static ByteBuffer buffer(String message) {
+        return ByteBuffer.wrap(ascii(message.replace('|', '\u0001')));
+    }
+
+    @Test
+    public void testEncodesHeaderAndChecksum() {
+        FixEncoder encoder = new FixEncoder();
+        encoder.begin(FixTags.HEARTBEAT)
+            .addBytes(FixTags.SENDER_COMP_ID, ascii("A"))
+            .addBytes(FixTags.TARGET_COMP_ID, ascii("B"))
+            .addLong(FixTags.MSG_SEQ_NUM, 1)
+            .addTimestamp(FixTags.SENDING_TIME, 1_700_000_000_000L);
+        assertEquals("8=FIX.4.4|9=45|35=0|49=A|56=B|34=1|52=20231114-22:13:20.000|10=064|", encode(encoder));
+
+        encoder.begin(FixTags.HEARTBEAT)
+            .addTimestamp(FixTags.SENDING_TIME, 951_782_400_000L + 3_723_004L)
+            .addPrice(FixTags.PRICE, 150.25)
+            .addPrice(FixTags.LAST_PX, 100.0)
+            .addPrice(FixTags.AVG_PX, -0.000001)
+            .addLong(FixTags.ORDER_QTY, -42);
+        String message = encode(encoder);
+        assertTrue(message.contains("|52=20000229-01:02:03.004|44=150.25|31=100|6=-0.000001|38=-42|"), message);
+    }
+
+    @Test
+    public void testParsesNewOrderSingle() {
+        FixEncoder encoder = new FixEncoder();
+        encoder.begin(FixTags.NEW_ORDER_SINGLE)
+            .addBytes(FixTags.SENDER_COMP_ID, ascii("CLIENT"))
+            .addBytes(FixTags.TARGET_COMP_ID, ascii("EXCH"))
+            .addLong(FixTags.MSG_SEQ_NUM, 12)
+            .addTimestamp(FixTags.SENDING_TIME, 1_700_000_000_000L)
+            .addBytes(FixTags.CL_ORD_ID, ascii("order-7"))
+            .addBytes(FixTags.SYMBOL, ascii("AAPL"))
+            .addChar(FixTags.SIDE, (byte) '1')
+            .addLong(FixTags.ORDER_QTY, 250)
+            .addChar(FixTags.ORD_TYPE, (byte) '2')
+            .addPrice(FixTags.PRICE, 150.07);
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        buffer.put((byte) 'x');
+        int length = encoder.writeTo(buffer);
+        FixParser parser = new FixParser();
+
+        assertEquals(length, parser.parse(buffer, 1, 1 + length));
+        assertTrue(parser.isChecksumValid());
+        assertEquals(FixTags.NEW_ORDER_SINGLE, parser.getMsgType());
+        assertEquals(12, parser.getLong(FixTags.MSG_SEQ_NUM));
+        assertEquals(250, parser.getLong(FixTags.ORDER_QTY));
+        assertEquals(150.07, parser.getDouble(FixTags.PRICE));
+        assertEquals('1', parser.getByte(FixTags.SIDE));
+        assertTrue(parser.valueEquals(FixTags.SYMBOL, ascii("AAPL")));
+        assertFalse(parser.valueEquals(FixTags.SYMBOL, ascii("AAP")));
+        assertEquals(FixParser.hash(ascii("order-7")), parser.hashValue(FixTags.CL_ORD_ID));
+        byte[] clOrdId = new byte[16];
+        assertEquals(7, parser.copyValue(FixTags.CL_ORD_ID, clOrdId));
+        assertEquals(-1, parser.copyValue(FixTags.CL_ORD_ID, new byte[6]));
+        assertEquals(FixParser.NO_VALUE, parser.getLong(FixTags.SYMBOL));
+        assertEquals(FixParser.NO_VALUE, parser.getLong(FixTags.ORIG_CL_ORD_ID));
+        assertTrue(Double.isNaN(parser.getDouble(FixTags.SYMBOL)));
+        assertEquals(0, parser.getByte(FixTags.TEXT));
+        assertEquals(FixTags.BEGIN_STRING, parser.getTag(0));
+        assertEquals(FixTags.CHECKSUM, parser.getTag(parser.getFieldCount() - 1));
+
+        // Every prefix of the message is incomplete rather than malformed
+        for (int limit = 1; limit < 1 + length; limit++) {
+            assertEquals(FixParser.INCOMPLETE, parser.parse(buffer, 1, limit));
+        }
+    }
+
+    @Test
+    public void testParsesExecutionReportsBackToBack() {
+        String report = "8=FIX.4.4|9=104|35=8|49=EXCH|56=CLIENT|34=3|52=20231114-22:13:20.000|37=41|17=9|11=A|"
+            + "150=F|39=1|31=99.5|32=3|151=7|14=3|10=";
+        int sum = 0;
+        // The checksum covers everything before the "10=" field
+        for (byte b : ascii(report.substring(0, report.length() - 3).replace('|', '\u0001'))) {
+            sum += b;
+        }
+        String checksum = String.format("%03d|", sum & 0xFF);
+        assertEquals(104, report.length() - report.indexOf("35=") - 3);
+        ByteBuffer buffer = buffer(report + checksum + report + checksum);
+        FixParser parser = new FixParser();
+
+        int length = parser.parse(buffer, 0, buffer.limit());
+        assertEquals(buffer.limit() / 2, length);
+        assertTrue(parser.isChecksumValid());
+        assertEquals(FixTags.EXECUTION_REPORT, parser.getMsgType());
+        assertEquals('F', parser.getByte(FixTags.EXEC_TYPE));
+        assertEquals(99.5, parser.getDouble(FixTags.LAST_PX));
+        assertEquals(7, parser.getLong(FixTags.LEAVES_QTY));
+        assertEquals(length, parser.parse(buffer, length, buffer.limit()));
+        assertEquals(41, parser.getLong(FixTags.ORDER_ID));
+    }
+
+    @Test
+    public void testRejectsBadFraming() {
+        FixParser parser = new FixParser();
+        ByteBuffer wrongChecksum = buffer("8=FIX.4.4|9=5|35=0|10=000|");
+        assertEquals(wrongChecksum.limit(), parser.parse(wrongChecksum, 0, wrongChecksum.limit()));
+        assertFalse(parser.isChecksumValid());
+
+        String[] malformed = {
+            "8=FIX.4.2|9=5|35=0|10=000|",
+            "8=FIX.4.4|9=x|35=0|10=000|",
+            "8=FIX.4.4|9=4|35=0|10=000|",
+            "8=FIX.4.4|9=5|35=0|11=000|",
+            "8=FIX.4.4|9=5|3x=0|10=000|",
+            "8=FIX.4.4|9=7|49=A|0|10=000|",
+            "8=FIX.4.4|9=5|49=A|10=000|"
+        };
+        for (String message : malformed) {
+            ByteBuffer buffer = buffer(message);
+            assertEquals(FixParser.MALFORMED, parser.parse(buffer, 0, buffer.limit()), message);
+        }
+
+        FixParser small = new FixParser(4);
+        ByteBuffer tooManyFields = buffer("8=FIX.4.4|9=10|35=0|49=A|10=000|");
+        assertEquals(FixParser.MALFORMED, small.parse(tooManyFields, 0, tooManyFields.limit()));
+    }
+}
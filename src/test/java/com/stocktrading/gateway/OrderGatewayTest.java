@@ -0,0 +1,193 @@
+package com.stocktrading.gateway;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import com.stocktrading.TradingEngine;
+import com.stocktrading.TradingEngineFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the OrderGateway class, driven over loopback by a blocking client.
+ */
+public class OrderGatewayTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+
+    // A blocking client that reads the gateway's replies one message at a time
+    private static class Client implements AutoCloseable {
+        final SocketChannel channel;
+        final ByteBuffer out = ByteBuffer.allocate(GatewayProtocol.MAX_MESSAGE_LENGTH);
+        final ByteBuffer in = ByteBuffer.allocate(GatewayProtocol.MAX_MESSAGE_LENGTH);
+
+        Client(InetSocketAddress address) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), address.getPort()));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+
+        void newOrder(long clientOrderId, String symbol, boolean buy, long priceTicks, int quantity)
+                throws IOException {
+            out.clear();
+            GatewayProtocol.putNewOrder(out, clientOrderId, GatewayProtocol.packSymbol(symbol), buy, priceTicks,
+                quantity);
+            send();
+        }
+
+        void cancel(long clientOrderId, long orderId) throws IOException {
+            out.clear();
+            GatewayProtocol.putCancel(out, clientOrderId, orderId);
+            send();
+        }
+
+        void send() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+
+        // Reads the next whole message into in, positioned after the header; returns its type or -1 at end of stream
+        int read() throws IOException {
+            in.clear().limit(GatewayProtocol.HEADER_LENGTH);
+            if (!fill()) {
+                return -1;
+            }
+            int length = in.getShort(0) & 0xFFFF;
+            in.limit(length);
+            assertTrue(fill());
+            in.position(GatewayProtocol.HEADER_LENGTH);
+            return in.get(2);
+        }
+
+        boolean fill() throws IOException {
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private interface GatewayTest {
+        void run(OrderGateway gateway) throws Exception;
+    }
+
+    private static OrderGateway runGateway(TradingEngine engine, GatewayTest test) throws Exception {
+        OrderGateway gateway = new OrderGateway(engine, SYMBOLS, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread thread = new Thread(gateway);
+        engine.start();
+        thread.start();
+        try {
+            test.run(gateway);
+        } finally {
+            gateway.stop();
+            thread.join(1000);
+            gateway.close();
+            engine.stop();
+        }
+        return gateway;
+    }
+
+    @Test
+    public void testLoadGeneratorGetsAcksAndFills() throws Exception {
+        int pairs = 2000;
+        long[] roundTrips = new long[2 * pairs];
+        TradingEngine engine = TradingEngineFactory.createLockFreeTradingEngine(SYMBOLS);
+        OrderGateway gateway = runGateway(engine, g -> {
+            try (Client client = new Client(g.getLocalAddress())) {
+                int fills = 0;
+                for (int i = 0; i < 2 * pairs; i++) {
+                    long start = System.nanoTime();
+                    // Alternate buys and sells at one price, so every sell fills the buy before it
+                    client.newOrder(i, "AAPL", i % 2 == 0, 15000, 10);
+                    int type;
+                    while ((type = client.read()) != GatewayProtocol.ACK) {
+                        assertEquals(GatewayProtocol.FILL, type);
+                        fills++;
+                    }
+                    roundTrips[i] = System.nanoTime() - start;
+                    assertEquals(i, client.in.getLong());
+                }
+                while (fills < 2 * pairs) {
+                    assertEquals(GatewayProtocol.FILL, client.read());
+                    client.in.getLong();
+                    client.in.getLong();
+                    assertEquals(15000, client.in.getLong());
+                    assertEquals(10, client.in.getInt());
+                    assertEquals(0, client.in.getInt());
+                    fills++;
+                }
+            }
+        });
+
+        Arrays.sort(roundTrips);
+        System.out.println("Gateway ack round trip: p50 " + roundTrips[roundTrips.length / 2] / 1000
+            + "us, p99 " + roundTrips[roundTrips.length * 99 / 100] / 1000 + "us");
+        // Filled orders go back to the pool, so it stays at the handful open at once
+        assertTrue(gateway.getCreatedOrderCount() < pairs);
+        assertTrue(!engine.getOrderBook().hasBuyOrders("AAPL") && !engine.getOrderBook().hasSellOrders("AAPL"));
+    }
+
+    @Test
+    public void testRejectsAndCancels() throws Exception {
+        TradingEngine engine = TradingEngineFactory.createLockedTradingEngine(SYMBOLS);
+        runGateway(engine, gateway -> {
+            try (Client client = new Client(gateway.getLocalAddress())) {
+                client.newOrder(1, "IBM", true, 100, 10);
+                assertEquals(GatewayProtocol.REJECT, client.read());
+                assertEquals(1, client.in.getLong());
+                assertEquals(GatewayProtocol.REJECT_UNKNOWN_SYMBOL, client.in.get());
+
+                client.newOrder(2, "MSFT", true, 100, 0);
+                assertEquals(GatewayProtocol.REJECT, client.read());
+                assertEquals(2, client.in.getLong());
+                assertEquals(GatewayProtocol.REJECT_INVALID_ORDER, client.in.get());
+
+                client.newOrder(3, "MSFT", false, 30000, 5);
+                assertEquals(GatewayProtocol.ACK, client.read());
+                assertEquals(3, client.in.getLong());
+                long orderId = client.in.getLong();
+                assertTrue(engine.getOrderBook().hasSellOrders("MSFT"));
+
+                client.cancel(4, orderId);
+                assertEquals(GatewayProtocol.CANCELLED, client.read());
+                assertEquals(4, client.in.getLong());
+                assertEquals(orderId, client.in.getLong());
+                assertTrue(!engine.getOrderBook().hasSellOrders("MSFT"));
+
+                client.cancel(5, orderId);
+                assertEquals(GatewayProtocol.REJECT, client.read());
+                assertEquals(5, client.in.getLong());
+                assertEquals(GatewayProtocol.REJECT_UNKNOWN_ORDER, client.in.get());
+
+                // A malformed frame drops the connection
+                client.out.clear();
+                client.out.putShort((short) 7).put((byte) 9).putInt(0);
+                client.send();
+                assertEquals(-1, client.read());
+            }
+        });
+    }
+
+    @Test
+    public void testRejectsPriceLadderBooks() {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(SYMBOLS, 2);
+        assertThrows(IllegalArgumentException.class,
+            () -> new OrderGateway(engine, SYMBOLS, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+    }
+}
@@ -0,0 +1,245 @@
+package com.stocktrading.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.stocktrading.BackpressurePolicy;
+import com.stocktrading.LockFreeOrderBook;
+import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.Trade;
+import com.stocktrading.TradeRingBuffer;
+import com.stocktrading.TradeSink;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.ring.OrderRingBuffer;
+import com.stocktrading.ring.YieldingWaitStrategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the JournalReplayer class.
+ */
+public class JournalReplayerTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT", "GOOGL", "AMZN");
+
+    // Journals a seeded random run of orders of every time in force, icebergs, stops, amends and cancels on a
+    // running engine, from one submitting thread per seed and through the ingress ring if there is one
+    private static List<Long> journalRun(Path path, OrderRingBuffer ingress, List<String> liveTrades,
+            List<String> liveState, long... seeds) throws Exception {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(orderBook, SYMBOLS,
+            new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP), new ReplayTimeSource());
+        List<Long> orderIds = new ArrayList<>();
+        ExecutorService submitters = Executors.newFixedThreadPool(seeds.length);
+        try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+            TradingEngine engine = new TradingEngine(orderBook, matcher, ingress, journal);
+            // The matcher thread runs, but journaled commands are matched as they are applied
+            engine.start();
+            List<Future<List<Long>>> runs = new ArrayList<>();
+            for (long seed : seeds) {
+                runs.add(submitters.submit(() -> submitRandomly(engine, new Random(seed))));
+            }
+            for (Future<List<Long>> run : runs) {
+                orderIds.addAll(run.get());
+            }
+            engine.stop();
+        } finally {
+            submitters.shutdown();
+        }
+        liveTrades.addAll(describe(matcher.getTrades(), true));
+        liveState.addAll(bookState(orderBook, orderIds));
+        return orderIds;
+    }
+
+    private static List<Long> submitRandomly(TradingEngine engine, Random random) {
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int action = random.nextInt(10);
+            if (action < 8 || orderIds.isEmpty()) {
+                String symbol = SYMBOLS.get(random.nextInt(SYMBOLS.size()));
+                Order.Type type = random.nextBoolean() ? Order.Type.BUY : Order.Type.SELL;
+                // Mostly resting limits, with some that execute on arrival
+                Order.TimeInForce timeInForce = random.nextInt(4) == 0
+                    ? Order.TimeInForce.fromOrdinal(1 + random.nextInt(3)) : Order.TimeInForce.LIMIT;
+                double price = 95.0 + random.nextInt(100) / 10.0;
+                int kind = random.nextInt(8);
+                Order order;
+                if (kind == 0) {
+                    order = Order.iceberg(symbol, type, price, 1 + random.nextInt(60), 1 + random.nextInt(5));
+                } else if (kind == 1) {
+                    order = Order.stop(symbol, type, price, 1 + random.nextInt(20));
+                } else if (kind == 2) {
+                    order = Order.stopLimit(symbol, type, price, 95.0 + random.nextInt(100) / 10.0,
+                        1 + random.nextInt(20));
+                } else {
+                    order = new Order(symbol, type, price, 1 + random.nextInt(20), timeInForce);
+                }
+                orderIds.add(order.getId());
+                engine.submitOrder(order);
+            } else {
+                long orderId = orderIds.get(random.nextInt(orderIds.size()));
+                if (action == 8) {
+                    engine.cancelOrder(orderId);
+                } else {
+                    engine.amendOrder(orderId, 1 + random.nextInt(20), 95.0 + random.nextInt(100) / 10.0);
+                }
+            }
+        }
+        return orderIds;
+    }
+
+    // Trades in sink order, optionally with their timestamps
+    private static List<String> describe(TradeSink trades, boolean withTimestamps) {
+        List<String> result = new ArrayList<>();
+        Trade trade;
+        while ((trade = trades.poll()) != null) {
+            result.add(trade.getSymbol() + " " + trade.getQuantity() + "@" + trade.getPriceTicks() + " "
+                + trade.getBuyOrderId() + "/" + trade.getSellOrderId()
+                + (withTimestamps ? " " + trade.getTimestamp() : ""));
+        }
+        return result;
+    }
+
+    // Trades of one symbol, which keep their order whatever the number of replay threads
+    private static List<String> forSymbol(List<String> trades, String symbol) {
+        List<String> result = new ArrayList<>();
+        for (String trade : trades) {
+            if (trade.startsWith(symbol + " ")) {
+                result.add(trade);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> bookState(OrderBook orderBook, List<Long> orderIds) {
+        List<String> state = new ArrayList<>();
+        for (long orderId : orderIds) {
+            Order order = orderBook.getOrder(orderId);
+            state.add(order == null ? "-"
+                : order.getQuantity() + "+" + order.getHiddenQuantity() + "@" + order.getPriceTicks()
+                    + (order.isStopArmed() ? " stop " + order.getStopPriceTicks() : ""));
+        }
+        return state;
+    }
+
+    private static class Replay {
+        final LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        final ReplayTimeSource clock = new ReplayTimeSource();
+        final LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(orderBook, SYMBOLS,
+            new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP), clock);
+        List<String> trades;
+
+        Replay(Path path, int numThreads) throws IOException {
+            new JournalReplayer(path, numThreads).replay(orderBook, matcher, clock);
+            trades = describe(matcher.getTrades(), true);
+        }
+    }
+
+    @Test
+    public void testReplayReproducesBooksAndTrades() throws Exception {
+        Path path = Files.createTempFile("orders", ".journal");
+        Files.delete(path);
+        try {
+            List<String> liveTrades = new ArrayList<>();
+            List<String> liveState = new ArrayList<>();
+            List<Long> orderIds = journalRun(path, null, liveTrades, liveState, 42);
+            assertTrue(liveTrades.size() > 100);
+
+            Replay single = new Replay(path, 1);
+            Replay parallel = new Replay(path, 3);
+            Replay again = new Replay(path, 3);
+
+            // The books come back exactly as the live run left them
+            assertEquals(liveState, bookState(single.orderBook, orderIds));
+            assertEquals(liveState, bookState(parallel.orderBook, orderIds));
+
+            // With one thread the whole trade sequence, timestamps included, matches the live run
+            assertEquals(liveTrades, single.trades);
+
+            // Across threads each symbol's trades, timestamps included, are the same every time
+            assertEquals(single.trades.size(), parallel.trades.size());
+            for (String symbol : SYMBOLS) {
+                assertEquals(forSymbol(single.trades, symbol), forSymbol(parallel.trades, symbol));
+                assertEquals(forSymbol(parallel.trades, symbol), forSymbol(again.trades, symbol));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayReproducesConcurrentIngressRuns() throws Exception {
+        Path path = Files.createTempFile("orders", ".journal");
+        Files.delete(path);
+        try {
+            // Two submitters race into the ring, and the consumer journals what it takes off it
+            List<String> liveTrades = new ArrayList<>();
+            List<String> liveState = new ArrayList<>();
+            List<Long> orderIds = journalRun(path, new OrderRingBuffer(1024, new YieldingWaitStrategy()),
+                liveTrades, liveState, 7, 11);
+            assertTrue(liveTrades.size() > 100);
+
+            Replay single = new Replay(path, 1);
+            Replay parallel = new Replay(path, 3);
+            assertEquals(liveState, bookState(single.orderBook, orderIds));
+            assertEquals(liveState, bookState(parallel.orderBook, orderIds));
+
+            // Symbols trade on both the consumer and the submitters, so only each symbol's trades keep their order
+            assertEquals(liveTrades.size(), single.trades.size());
+            for (String symbol : SYMBOLS) {
+                assertEquals(forSymbol(liveTrades, symbol), forSymbol(single.trades, symbol));
+                assertEquals(forSymbol(liveTrades, symbol), forSymbol(parallel.trades, symbol));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayedIdsAreNotReused() throws IOException {
+        Path path = Files.createTempFile("orders", ".journal");
+        Files.delete(path);
+        try {
+            long journaledId;
+            try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+                Order order = Order.restore(1_000_000_000L, SymbolRegistry.intern("AAPL"),
+                    Order.Type.BUY, 15000L, 10, 1234L);
+                journaledId = order.getId();
+                journal.appendAdd(order);
+            }
+
+            Replay replay = new Replay(path, 2);
+            Order replayed = replay.orderBook.getOrder(journaledId);
+            assertEquals(1234L, replayed.getTimestamp());
+            assertEquals(10, replayed.getQuantity());
+            assertTrue(new Order("AAPL", Order.Type.BUY, 150.0, 1).getId() > journaledId);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReplayTimeSourceFallsBackOffReplayThreads() {
+        ReplayTimeSource clock = new ReplayTimeSource(() -> 99L);
+        assertEquals(99L, clock.currentTimeMillis());
+        clock.set(5L);
+        assertEquals(5L, clock.currentTimeMillis());
+        clock.clear();
+        assertNotEquals(5L, clock.currentTimeMillis());
+        assertThrows(IllegalArgumentException.class, () -> new JournalReplayer(Path.of("unused"), 0));
+    }
+}
@@ -0,0 +1,271 @@
+package com.stocktrading.journal;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.stocktrading.BackpressurePolicy;
+import com.stocktrading.LockFreeOrderBook;
+import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.LockedOrderBook;
+import com.stocktrading.LockedOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.OrderBook;
+import com.stocktrading.OrderMatcher;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TradeRingBuffer;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.ring.BusySpinWaitStrategy;
+import com.stocktrading.ring.OrderRingBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the OrderBookSnapshot and SnapshotWriter classes.
+ */
+public class OrderBookSnapshotTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT", "GOOGL", "AMZN");
+
+    // Submits, amends and cancels seeded random orders for one symbol, matching after each
+    private static void trade(TradingEngine engine, String symbol, long seed, int count, List<Long> orderIds) {
+        OrderBook orderBook = engine.getOrderBook();
+        OrderMatcher matcher = engine.getOrderMatcher();
+        Random random = new Random(seed);
+        List<Long> own = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int action = random.nextInt(10);
+            if (action < 8 || own.isEmpty()) {
+                Order.Type type = random.nextBoolean() ? Order.Type.BUY : Order.Type.SELL;
+                double price = 95.0 + random.nextInt(100) / 10.0;
+                // Some are icebergs, whose displayed and hidden split must survive the snapshot, and some
+                // are stop orders, which must come back armed if they had not triggered
+                int kind = random.nextInt(10);
+                Order order;
+                if (kind < 2) {
+                    order = Order.iceberg(symbol, type, price, 1 + random.nextInt(60), 1 + random.nextInt(5));
+                } else if (kind == 2) {
+                    order = Order.stop(symbol, type, price, 1 + random.nextInt(20));
+                } else if (kind == 3) {
+                    order = Order.stopLimit(symbol, type, price, 95.0 + random.nextInt(100) / 10.0,
+                        1 + random.nextInt(20));
+                } else {
+                    order = new Order(symbol, type, price, 1 + random.nextInt(20));
+                }
+                order.setAccountId(random.nextInt(4));
+                own.add(order.getId());
+                engine.submitOrder(order);
+            } else {
+                long orderId = own.get(random.nextInt(own.size()));
+                if (action == 8) {
+                    engine.cancelOrder(orderId);
+                } else if (orderBook.getOrder(orderId) != null) {
+                    engine.amendOrder(orderId, 1 + random.nextInt(20), 95.0 + random.nextInt(100) / 10.0);
+                }
+            }
+            matcher.matchOrders(symbol);
+        }
+        synchronized (orderIds) {
+            orderIds.addAll(own);
+        }
+    }
+
+    private static List<String> bookState(OrderBook orderBook, List<Long> orderIds) {
+        List<String> state = new ArrayList<>();
+        for (long orderId : orderIds) {
+            Order order = orderBook.getOrder(orderId);
+            state.add(order == null ? "-"
+                : order.getQuantity() + "+" + order.getHiddenQuantity() + "@" + order.getPriceTicks()
+                    + "#" + order.getAccountId()
+                    + (order.isStopArmed() ? " stop " + order.getStopPriceTicks() : ""));
+        }
+        return state;
+    }
+
+    // Recovers a fresh lock-free book from the snapshot, if any, and the journal
+    private static LockFreeOrderBook recover(Path snapshot, Path journal) throws IOException {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        ReplayTimeSource clock = new ReplayTimeSource();
+        LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(orderBook, SYMBOLS,
+            new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP), clock);
+        new JournalReplayer(journal, 2).recover(snapshot, orderBook, matcher, clock);
+        return orderBook;
+    }
+
+    private static void assertRecovers(TradingEngine engine, Path snapshot, Path journal) throws IOException {
+        List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        try {
+            for (int i = 0; i < SYMBOLS.size(); i++) {
+                trade(engine, SYMBOLS.get(i), i, 300, orderIds);
+            }
+            engine.writeSnapshot(snapshot, SYMBOLS);
+            for (int i = 0; i < SYMBOLS.size(); i++) {
+                trade(engine, SYMBOLS.get(i), 100 + i, 300, orderIds);
+            }
+        } finally {
+            engine.getJournal().close();
+        }
+
+        List<String> liveState = bookState(engine.getOrderBook(), orderIds);
+        OrderBookSnapshot loaded = OrderBookSnapshot.load(snapshot, new LockFreeOrderBook());
+        assertEquals(SYMBOLS, loaded.getSymbols());
+        assertTrue(loaded.getOrderCount() > 0);
+
+        assertEquals(liveState, bookState(recover(snapshot, journal), orderIds));
+        // Without a snapshot the whole journal gives the same books
+        assertEquals(liveState, bookState(recover(snapshot.resolveSibling("missing.snapshot"), journal), orderIds));
+    }
+
+    @Test
+    public void testLockFreeSnapshotPlusTailRecoversBook() throws IOException {
+        Path journal = Files.createTempFile("orders", ".journal");
+        Path snapshot = Files.createTempFile("orders", ".snapshot");
+        Files.delete(journal);
+        try {
+            LockFreeOrderBook orderBook = new LockFreeOrderBook();
+            TradingEngine engine = new TradingEngine(orderBook, new LockFreeOrderMatcher(orderBook, SYMBOLS,
+                new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP)), null, new OrderJournal(journal, 4096, -1));
+            assertRecovers(engine, snapshot, journal);
+            assertFalse(Files.exists(snapshot.resolveSibling(snapshot.getFileName() + ".tmp")));
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testLockedSnapshotPlusTailRecoversBook() throws IOException {
+        Path journal = Files.createTempFile("orders", ".journal");
+        Path snapshot = Files.createTempFile("orders", ".snapshot");
+        Files.delete(journal);
+        try {
+            LockedOrderBook orderBook = new LockedOrderBook();
+            TradingEngine engine = new TradingEngine(orderBook, new LockedOrderMatcher(orderBook, SYMBOLS,
+                new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP)), null, new OrderJournal(journal, 4096, -1));
+            assertRecovers(engine, snapshot, journal);
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testSnapshotWhileTrading() throws Exception {
+        Path journal = Files.createTempFile("orders", ".journal");
+        Path snapshot = Files.createTempFile("orders", ".snapshot");
+        Files.delete(journal);
+        try {
+            LockFreeOrderBook orderBook = new LockFreeOrderBook();
+            TradingEngine engine = new TradingEngine(orderBook, new LockFreeOrderMatcher(orderBook, SYMBOLS,
+                new TradeRingBuffer(1 << 14, BackpressurePolicy.DROP)), null, new OrderJournal(journal, 4096, -1));
+            List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            try {
+                // One trading thread per symbol keeps each symbol's journal order its matching order
+                List<Thread> threads = new ArrayList<>();
+                for (int i = 0; i < SYMBOLS.size(); i++) {
+                    String symbol = SYMBOLS.get(i);
+                    long seed = 200 + i;
+                    Thread thread = new Thread(() -> {
+                        try {
+                            trade(engine, symbol, seed, 2000, orderIds);
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        }
+                    });
+                    threads.add(thread);
+                    thread.start();
+                }
+                for (int i = 0; i < 5; i++) {
+                    engine.writeSnapshot(snapshot, SYMBOLS);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } finally {
+                engine.getJournal().close();
+            }
+            assertEquals(null, failure.get());
+
+            assertEquals(bookState(orderBook, orderIds), bookState(recover(snapshot, journal), orderIds));
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testSnapshotPositionsAndRejections() throws IOException {
+        Path snapshot = Files.createTempFile("orders", ".snapshot");
+        try {
+            LockedOrderBook orderBook = new LockedOrderBook();
+            orderBook.addOrder(new Order("AAPL", Order.Type.BUY, 150.0, 10));
+            try (SnapshotWriter writer = new SnapshotWriter(snapshot, 2)) {
+                writer.copySymbol("AAPL", 64, orderBook);
+                writer.writeCopied();
+                writer.copySymbol("MSFT", 128, orderBook);
+                writer.writeCopied();
+                assertThrows(IllegalStateException.class, writer::writeCopied);
+                writer.commit();
+            }
+
+            OrderBookSnapshot loaded = OrderBookSnapshot.load(snapshot, new LockedOrderBook());
+            assertEquals(1, loaded.getOrderCount());
+            assertEquals(64, loaded.getMinJournalPosition());
+            assertEquals(128, loaded.getJournalPosition(SymbolRegistry.intern("MSFT")));
+            assertEquals(0, loaded.getJournalPosition(SymbolRegistry.intern("GOOGL")));
+
+            // Orders waiting in an ingress ring are journaled but not in the book
+            LockedOrderBook ringBook = new LockedOrderBook();
+            TradingEngine ringEngine = new TradingEngine(ringBook, new LockedOrderMatcher(ringBook, SYMBOLS),
+                new OrderRingBuffer(1024, new BusySpinWaitStrategy()));
+            assertThrows(IllegalStateException.class, () -> ringEngine.writeSnapshot(snapshot, SYMBOLS));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testVersion3SnapshotLoadsAsAccountZero() throws IOException {
+        Path snapshot = Files.createTempFile("orders", ".snapshot");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshot))) {
+                out.writeInt(SnapshotWriter.MAGIC);
+                out.writeInt(3);
+                out.writeInt(1);
+                out.writeUTF("AAPL");
+                out.writeLong(64);
+                out.writeInt(1);
+                out.writeLong(1_000_000_001L);
+                out.writeByte(0);
+                out.writeLong(15000);
+                out.writeInt(10);
+                out.writeLong(1234L);
+                out.writeInt(0);
+                out.writeInt(0);
+                out.writeByte(0);
+                out.writeLong(0);
+            }
+
+            LockedOrderBook orderBook = new LockedOrderBook();
+            OrderBookSnapshot loaded = OrderBookSnapshot.load(snapshot, orderBook);
+            assertEquals(1, loaded.getOrderCount());
+            Order order = orderBook.getOrder(1_000_000_001L);
+            assertEquals(0, order.getAccountId());
+            assertEquals(10, order.getQuantity());
+            assertEquals(1234L, order.getTimestamp());
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.stocktrading.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.stocktrading.LockedOrderBook;
+import com.stocktrading.LockedOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TradingEngine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the OrderJournal and JournalReader classes.
+ */
+public class OrderJournalTest {
+
+    // Collects records as strings, so whole journals can be compared at once
+    private static class RecordingHandler implements JournalHandler {
+        final List<String> records = new ArrayList<>();
+        final List<Long> positions = new ArrayList<>();
+
+        @Override
+        public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                          int quantity, long timestamp) {
+            records.add("ADD " + orderId + " " + SymbolRegistry.getSymbol(symbolId) + " " + type
+                + " " + priceTicks + " " + quantity + " " + timestamp);
+            positions.add(position);
+        }
+
+        @Override
+        public void onCancel(long position, long orderId, long timestamp) {
+            records.add("CANCEL " + orderId + " " + timestamp);
+            positions.add(position);
+        }
+
+        @Override
+        public void onAmend(long position, long orderId, int quantity, long priceTicks, long timestamp) {
+            records.add("AMEND " + orderId + " " + quantity + " " + priceTicks + " " + timestamp);
+            positions.add(position);
+        }
+    }
+
+    private static Path tempJournal() throws IOException {
+        Path path = Files.createTempFile("orders", ".journal");
+        Files.delete(path);
+        return path;
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        Path path = tempJournal();
+        try {
+            Order buy = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+            Order sell = new Order("MSFT", Order.Type.SELL, 250.5, 3);
+            long end;
+            try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+                journal.appendAdd(buy);
+                journal.appendAdd(sell);
+                journal.appendAmend(buy.getId(), 5, 14900L, 7L);
+                end = journal.appendCancel(sell.getId(), 8L);
+                assertEquals(end, journal.getPosition());
+            }
+
+            RecordingHandler handler = new RecordingHandler();
+            JournalReader reader = new JournalReader(path);
+            assertEquals(end, reader.read(handler));
+            assertEquals(Arrays.asList(
+                "ADD " + buy.getId() + " AAPL BUY 15000 10 " + buy.getTimestamp(),
+                "ADD " + sell.getId() + " MSFT SELL 25050 3 " + sell.getTimestamp(),
+                "AMEND " + buy.getId() + " 5 14900 7",
+                "CANCEL " + sell.getId() + " 8"), handler.records);
+            assertEquals(Arrays.asList("AAPL", "MSFT"), reader.getSymbols());
+
+            // Reading from a record's position skips it and everything before it
+            RecordingHandler tail = new RecordingHandler();
+            reader.read(handler.positions.get(1), tail);
+            assertEquals(handler.records.subList(2, 4), tail.records);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testAccountIdsRoundTrip() throws IOException {
+        Path path = tempJournal();
+        try {
+            Order plain = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+            Order owned = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+            owned.setAccountId(7);
+            Order iceberg = Order.iceberg("AAPL", Order.Type.SELL, 151.0, 30, 5);
+            iceberg.setAccountId(3);
+            Order stop = Order.stop("AAPL", Order.Type.SELL, 149.0, 4);
+            stop.setAccountId(5);
+            long[] ends = new long[4];
+            try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+                ends[0] = journal.appendAdd(plain);
+                ends[1] = journal.appendAdd(owned);
+                ends[2] = journal.appendAdd(iceberg);
+                ends[3] = journal.appendAdd(stop);
+            }
+            // Account 0 keeps the short record; another account needs the longer one
+            assertEquals(OrderJournal.ICEBERG_ADD_LENGTH, ends[1] - ends[0]);
+
+            List<String> accounts = new ArrayList<>();
+            new JournalReader(path).read(new RecordingHandler() {
+                @Override
+                public void onAdd(long position, long orderId, int symbolId, Order.Type type, long priceTicks,
+                                  int quantity, Order.TimeInForce timeInForce, int displayQuantity,
+                                  long stopPriceTicks, int accountId, long timestamp) {
+                    accounts.add(orderId + "#" + accountId + " " + displayQuantity + " " + stopPriceTicks);
+                }
+            });
+            assertEquals(Arrays.asList(
+                plain.getId() + "#0 0 0",
+                owned.getId() + "#7 0 0",
+                iceberg.getId() + "#3 5 0",
+                stop.getId() + "#5 0 14900"), accounts);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testReopenAppendsAfterLastRecord() throws IOException {
+        Path path = tempJournal();
+        try {
+            Order first = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+            Order second = new Order("AAPL", Order.Type.SELL, 151.0, 10);
+            try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+                journal.appendAdd(first);
+            }
+            // The existing journal's chunk size wins over the one asked for
+            try (OrderJournal journal = new OrderJournal(path, 8192, -1)) {
+                assertEquals(4096, journal.getChunkSize());
+                journal.appendAdd(second);
+            }
+
+            RecordingHandler handler = new RecordingHandler();
+            JournalReader reader = new JournalReader(path);
+            reader.read(handler);
+            assertEquals(2, handler.records.size());
+            assertTrue(handler.records.get(1).startsWith("ADD " + second.getId() + " AAPL SELL"));
+            // AAPL was already defined, so it is not written again
+            assertEquals(Arrays.asList("AAPL"), reader.getSymbols());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testRecordsNeverSpanChunks() throws IOException {
+        Path path = tempJournal();
+        try {
+            int numOrders = 500;
+            try (OrderJournal journal = new OrderJournal(path, 1024, -1)) {
+                for (int i = 0; i < numOrders; i++) {
+                    journal.appendAdd(new Order("AAPL", Order.Type.BUY, 100.0 + i, 1 + i));
+                }
+                assertTrue(journal.getPosition() > 10 * 1024);
+            }
+
+            RecordingHandler handler = new RecordingHandler();
+            new JournalReader(path).read(handler);
+            assertEquals(numOrders, handler.records.size());
+            assertTrue(handler.records.get(numOrders - 1).contains(" " + numOrders + " "));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testGroupCommitSyncsInBackground() throws Exception {
+        Path path = tempJournal();
+        try (OrderJournal journal = new OrderJournal(path, 4096, 100)) {
+            long end = journal.appendAdd(new Order("AAPL", Order.Type.BUY, 150.0, 10));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (journal.getSyncedPosition() < end && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(end, journal.getSyncedPosition());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        Path path = tempJournal();
+        try {
+            int numThreads = 4;
+            int ordersPerThread = 1000;
+            CountDownLatch latch = new CountDownLatch(numThreads);
+            try (OrderJournal journal = new OrderJournal(path, 4096, 0)) {
+                for (int t = 0; t < numThreads; t++) {
+                    new Thread(() -> {
+                        for (int i = 0; i < ordersPerThread; i++) {
+                            journal.appendAdd(new Order("AAPL", Order.Type.SELL, 100.0, 1));
+                        }
+                        latch.countDown();
+                    }).start();
+                }
+                assertTrue(latch.await(10, TimeUnit.SECONDS));
+                assertEquals(journal.getPosition(), journal.getSyncedPosition());
+            }
+
+            RecordingHandler handler = new RecordingHandler();
+            new JournalReader(path).read(handler);
+            assertEquals(numThreads * ordersPerThread, handler.records.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testClosedJournalRejectsAppends() throws IOException {
+        Path path = tempJournal();
+        try {
+            OrderJournal journal = new OrderJournal(path, 4096, -1);
+            journal.close();
+            assertThrows(IllegalStateException.class, () -> journal.appendCancel(1L, 0L));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testEngineJournalsAcceptedCommands() throws IOException {
+        Path path = tempJournal();
+        try {
+            LockedOrderBook orderBook = new LockedOrderBook();
+            LockedOrderMatcher matcher = new LockedOrderMatcher(orderBook, Arrays.asList("AAPL"));
+            try (OrderJournal journal = new OrderJournal(path, 4096, -1)) {
+                TradingEngine engine = new TradingEngine(orderBook, matcher, null, journal);
+                Order order = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+                engine.submitOrder(order);
+                assertTrue(engine.amendOrder(order.getId(), 5, 150.0));
+                assertTrue(engine.cancelOrder(order.getId()));
+                // A rejected cancel is not journaled
+                assertFalse(engine.cancelOrder(order.getId()));
+            }
+
+            RecordingHandler handler = new RecordingHandler();
+            new JournalReader(path).read(handler);
+            assertEquals(3, handler.records.size());
+            assertTrue(handler.records.get(0).startsWith("ADD"));
+            assertTrue(handler.records.get(1).startsWith("AMEND"));
+            assertTrue(handler.records.get(2).startsWith("CANCEL"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
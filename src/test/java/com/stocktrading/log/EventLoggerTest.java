@@ -0,0 +1,251 @@
+package com.stocktrading.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.stocktrading.BackpressurePolicy;
+import com.stocktrading.LockFreeOrderBook;
+import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.PreTradeRiskCheck;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TimeSource;
+import com.stocktrading.TradeRingBuffer;
+import com.stocktrading.TradingEngine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the EventLogger class and its encoders.
+ */
+public class EventLoggerTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+    private static final TimeSource FIXED_TIME = () -> 1_700_000_000_000L;
+
+    private static EventLogger openLogger(Path path, EventEncoder encoder, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new EventLogger(channel, encoder, capacity, FIXED_TIME);
+    }
+
+    @Test
+    public void testWritesTextLines() throws Exception {
+        Path path = Files.createTempFile("events", ".log");
+        try {
+            Order order = new Order("AAPL", Order.Type.BUY, 150.25, 100);
+            Order stop = Order.stop("AAPL", Order.Type.SELL, 149.0, 5);
+            try (EventLogger logger = openLogger(path, new TextEventEncoder(), 16)) {
+                logger.logEngine(EventType.ENGINE_STARTED);
+                logger.logOrder(EventType.ORDER_SUBMITTED, order);
+                logger.logOrder(EventType.ORDER_SUBMITTED, stop);
+                logger.logTrade(SymbolRegistry.intern("AAPL"), 15000, 40, order.getId(), 9, 1_700_000_000_001L);
+                logger.logEngine(EventType.ENGINE_STOPPED);
+            }
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+            assertEquals(Arrays.asList(
+                "1700000000000 ENGINE_STARTED",
+                "1700000000000 ORDER_SUBMITTED AAPL id=" + order.getId() + " BUY 100@150.25",
+                "1700000000000 ORDER_SUBMITTED AAPL id=" + stop.getId() + " SELL 5@MKT",
+                "1700000000001 TRADE AAPL 40@150 buy=" + order.getId() + " sell=9",
+                "1700000000000 ENGINE_STOPPED"), lines);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        Path path = Files.createTempFile("events", ".bin");
+        try {
+            Order buy = new Order("MSFT", Order.Type.BUY, 310.5, 7);
+            Order sell = new Order("AAPL", Order.Type.SELL, 151, 3);
+            EventLogger logger = openLogger(path, new BinaryEventEncoder(), 16);
+            logger.logOrder(EventType.ORDER_SUBMITTED, buy);
+            logger.logOrder(EventType.ORDER_CANCELLED, sell);
+            logger.logTrade(buy.getSymbolId(), buy.getPriceTicks(), 5, buy.getId(), 42, 1234);
+            logger.logEngine(EventType.ENGINE_STOPPED);
+            logger.close();
+            assertEquals(4, logger.getWrittenCount());
+
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            Map<Integer, String> symbols = new HashMap<>();
+            LogEvent event = new LogEvent();
+
+            assertTrue(BinaryEventEncoder.decode(buffer, event, symbols));
+            assertEquals(EventType.ORDER_SUBMITTED, event.getType());
+            assertEquals("MSFT", symbols.get(event.getSymbolId()));
+            assertEquals(buy.getId(), event.getOrderId());
+            assertEquals(Order.Type.BUY, event.getSide());
+            assertEquals(buy.getPriceTicks(), event.getPriceTicks());
+            assertEquals(7, event.getQuantity());
+            assertEquals(1_700_000_000_000L, event.getTimestamp());
+
+            assertTrue(BinaryEventEncoder.decode(buffer, event, symbols));
+            assertEquals(EventType.ORDER_CANCELLED, event.getType());
+            assertEquals("AAPL", symbols.get(event.getSymbolId()));
+            assertEquals(Order.Type.SELL, event.getSide());
+
+            assertTrue(BinaryEventEncoder.decode(buffer, event, symbols));
+            assertEquals(EventType.TRADE, event.getType());
+            assertEquals("MSFT", symbols.get(event.getSymbolId()));
+            assertEquals(buy.getId(), event.getBuyOrderId());
+            assertEquals(42, event.getSellOrderId());
+            assertEquals(1234, event.getTimestamp());
+            assertNull(event.getSide());
+
+            assertTrue(BinaryEventEncoder.decode(buffer, event, symbols));
+            assertEquals(EventType.ENGINE_STOPPED, event.getType());
+            assertFalse(BinaryEventEncoder.decode(buffer, event, symbols));
+            // Each symbol is defined once, before its first event
+            assertEquals(2, symbols.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testDropsWhenFullInsteadOfBlocking() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int[] bytes = new int[1];
+        WritableByteChannel stalled = new WritableByteChannel() {
+            private boolean open = true;
+
+            @Override
+            public int write(ByteBuffer src) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int length = src.remaining();
+                src.position(src.limit());
+                bytes[0] += length;
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                open = false;
+            }
+        };
+
+        EventLogger logger = new EventLogger(stalled, new TextEventEncoder(), 4, FIXED_TIME);
+        logger.logEngine(EventType.ENGINE_STARTED);
+        writing.await();
+        // The writer is stuck in the channel, so the ring fills and later events are dropped
+        for (int i = 0; i < 10; i++) {
+            logger.logEngine(EventType.ENGINE_STOPPED);
+        }
+        assertEquals(6, logger.getDroppedCount());
+
+        release.countDown();
+        logger.close();
+        assertEquals(5, logger.getWrittenCount());
+        assertFalse(stalled.isOpen());
+        logger.logEngine(EventType.ENGINE_STARTED);
+        assertEquals(7, logger.getDroppedCount());
+        assertTrue(bytes[0] > 0);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        Path path = Files.createTempFile("events", ".log");
+        try {
+            int threads = 4;
+            int perThread = 5000;
+            EventLogger logger = openLogger(path, new TextEventEncoder(), 1 << 15);
+            Thread[] producers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int sellOrderId = t;
+                producers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        logger.logTrade(SymbolRegistry.intern("AAPL"), 15000 + i, 1, i, sellOrderId, i);
+                    }
+                });
+                producers[t].start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            logger.flush();
+            assertEquals(threads * perThread, logger.getWrittenCount());
+            logger.close();
+
+            int[] perProducer = new int[threads];
+            for (String line : Files.readAllLines(path, StandardCharsets.US_ASCII)) {
+                perProducer[line.charAt(line.length() - 1) - '0']++;
+            }
+            for (int count : perProducer) {
+                assertEquals(perThread, count);
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testEngineAndTradeAudit() throws Exception {
+        Path path = Files.createTempFile("events", ".log");
+        try {
+            EventLogger logger = openLogger(path, new TextEventEncoder(), 64);
+            LockFreeOrderBook orderBook = new LockFreeOrderBook();
+            AuditTradeSink trades = new AuditTradeSink(new TradeRingBuffer(64, BackpressurePolicy.DROP), logger);
+            LockFreeOrderMatcher matcher = new LockFreeOrderMatcher(orderBook, SYMBOLS, trades);
+            PreTradeRiskCheck riskCheck = new PreTradeRiskCheck(orderBook, 2, 0);
+            riskCheck.setLimits(1, 100, PreTradeRiskCheck.NO_NOTIONAL_LIMIT, PreTradeRiskCheck.NO_LIMIT,
+                PreTradeRiskCheck.NO_LIMIT);
+            TradingEngine engine = new TradingEngine(orderBook, matcher, null, null, logger, riskCheck);
+            assertTrue(engine.getEventLogger() == logger);
+
+            // A rejected order is logged as rejected only
+            Order tooLarge = new Order("MSFT", Order.Type.BUY, 300, 500);
+            tooLarge.setAccountId(1);
+            assertFalse(engine.submitOrder(tooLarge));
+            Order buy = new Order("MSFT", Order.Type.BUY, 300, 10);
+            Order sell = new Order("MSFT", Order.Type.SELL, 300, 4);
+            engine.submitOrder(buy);
+            engine.submitOrder(sell);
+            matcher.matchOrders("MSFT");
+            assertTrue(engine.amendOrder(buy.getId(), 5, 299.5));
+            assertTrue(engine.cancelOrder(buy.getId()));
+            logger.close();
+
+            assertEquals(1, trades.size());
+            List<String> lines = Files.readAllLines(path, StandardCharsets.US_ASCII);
+            assertEquals(Arrays.asList(
+                "1700000000000 ORDER_REJECTED MSFT id=" + tooLarge.getId() + " BUY 500@300",
+                "1700000000000 ORDER_SUBMITTED MSFT id=" + buy.getId() + " BUY 10@300",
+                "1700000000000 ORDER_SUBMITTED MSFT id=" + sell.getId() + " SELL 4@300",
+                lines.get(3),
+                "1700000000000 ORDER_AMENDED MSFT id=" + buy.getId() + " BUY 5@299.5",
+                "1700000000000 ORDER_CANCELLED MSFT id=" + buy.getId() + " BUY 5@299.5"), lines);
+            assertTrue(lines.get(3).endsWith(" TRADE MSFT 4@300 buy=" + buy.getId() + " sell=" + sell.getId()),
+                lines.get(3));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.stocktrading.marketdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.stocktrading.BackpressurePolicy;
+import com.stocktrading.LockFreeOrderBook;
+import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.LockedOrderBook;
+import com.stocktrading.LockedOrderMatcher;
+import com.stocktrading.MarketDepth;
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TimeSource;
+import com.stocktrading.TradeRingBuffer;
+import com.stocktrading.TradingEngine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the MarketDataPublisher and MarketDataSubscription classes.
+ */
+public class MarketDataPublisherTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+
+    // Rebuilds each symbol's levels from refreshes and deltas, checking sequence numbers
+    private static class BookModel implements MarketDataListener {
+        final Map<Integer, TreeMap<Long, Long>> bids = new HashMap<>();
+        final Map<Integer, TreeMap<Long, Long>> asks = new HashMap<>();
+        final Map<Integer, Long> sequences = new HashMap<>();
+        final List<String> events = new ArrayList<>();
+        final Map<Integer, String> quotes = new HashMap<>();
+        int refreshes;
+
+        @Override
+        public void onQuote(Level1Quote quote) {
+            quotes.put(quote.getSymbolId(), quote.getBidQuantity() + "@" + quote.getBidPriceTicks() + " "
+                + quote.getAskQuantity() + "@" + quote.getAskPriceTicks() + " last "
+                + quote.getLastQuantity() + "@" + quote.getLastPriceTicks() + " vol " + quote.getVolume());
+        }
+
+        @Override
+        public void onLevel(int symbolId, long sequence, LevelAction action, boolean bid, long priceTicks,
+                            long quantity, int orderCount) {
+            assertEquals(sequences.get(symbolId) + 1, sequence);
+            sequences.put(symbolId, sequence);
+            TreeMap<Long, Long> side = (bid ? bids : asks).get(symbolId);
+            if (action == LevelAction.REMOVED) {
+                assertTrue(side.remove(priceTicks) != null);
+            } else {
+                assertEquals(action == LevelAction.ADDED, !side.containsKey(priceTicks));
+                side.put(priceTicks, quantity);
+            }
+            events.add(action + " " + (bid ? "bid " : "ask ") + quantity + "@" + priceTicks);
+        }
+
+        @Override
+        public void onRefresh(long sequence, MarketDepth depth) {
+            TreeMap<Long, Long> bidSide = new TreeMap<>(Collections.reverseOrder());
+            TreeMap<Long, Long> askSide = new TreeMap<>();
+            for (int i = 0; i < depth.getBidLevels(); i++) {
+                bidSide.put(depth.getBidPriceTicks(i), depth.getBidQuantity(i));
+            }
+            for (int i = 0; i < depth.getAskLevels(); i++) {
+                askSide.put(depth.getAskPriceTicks(i), depth.getAskQuantity(i));
+            }
+            bids.put(depth.getSymbolId(), bidSide);
+            asks.put(depth.getSymbolId(), askSide);
+            sequences.put(depth.getSymbolId(), sequence);
+            refreshes++;
+        }
+
+        String levels(String symbol) {
+            int symbolId = SymbolRegistry.intern(symbol);
+            return bids.get(symbolId) + " " + asks.get(symbolId);
+        }
+    }
+
+    private static String levels(MarketDepth depth) {
+        TreeMap<Long, Long> bidSide = new TreeMap<>(Collections.reverseOrder());
+        TreeMap<Long, Long> askSide = new TreeMap<>();
+        for (int i = 0; i < depth.getBidLevels(); i++) {
+            bidSide.put(depth.getBidPriceTicks(i), depth.getBidQuantity(i));
+        }
+        for (int i = 0; i < depth.getAskLevels(); i++) {
+            askSide.put(depth.getAskPriceTicks(i), depth.getAskQuantity(i));
+        }
+        return bidSide + " " + askSide;
+    }
+
+    private static TradingEngine lockedEngine(MarketDataPublisher publisher, LockedOrderBook orderBook) {
+        return new TradingEngine(orderBook, new LockedOrderMatcher(orderBook, SYMBOLS,
+            new TradeRingBuffer(1 << 12, BackpressurePolicy.DROP), TimeSource.SYSTEM, publisher));
+    }
+
+    @Test
+    public void testLevelDeltasAndQuotes() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        MarketDataPublisher publisher = new MarketDataPublisher(orderBook, SYMBOLS, 5, 0);
+        TradingEngine engine = lockedEngine(publisher, orderBook);
+        MarketDataSubscription subscription = publisher.subscribe(64);
+        BookModel model = new BookModel();
+
+        Order bid = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        engine.submitOrder(bid);
+        assertEquals(1, publisher.publishPending());
+        // The first poll starts from a refresh of every symbol
+        subscription.poll(model);
+        assertEquals(2, model.refreshes);
+        assertEquals("{15000=10} {}", model.levels("AAPL"));
+
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150.0, 5));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 151.0, 7));
+        publisher.publishPending();
+        subscription.poll(model);
+        // Two changes to the same level between publishes conflate into one delta
+        assertEquals(Arrays.asList("CHANGED bid 15@15000", "ADDED ask 7@15100"), model.events);
+        assertEquals("15@15000 7@15100 last 0@0 vol 0", model.quotes.get(SymbolRegistry.intern("AAPL")));
+
+        model.events.clear();
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 150.0, 15));
+        engine.getOrderMatcher().matchOrders("AAPL");
+        engine.cancelOrder(bid.getId());
+        publisher.publishPending();
+        assertEquals(0, publisher.publishPending());
+        subscription.poll(model);
+        assertEquals(Arrays.asList("REMOVED bid 0@15000"), model.events);
+        assertEquals("0@0 7@15100 last 5@15000 vol 15", model.quotes.get(SymbolRegistry.intern("AAPL")));
+        assertEquals(0, subscription.poll(model));
+        assertThrows(IllegalArgumentException.class, () -> publisher.subscribe(4));
+    }
+
+    @Test
+    public void testDeltasRebuildTheBook() {
+        LockFreeOrderBook orderBook = new LockFreeOrderBook();
+        MarketDataPublisher publisher = new MarketDataPublisher(orderBook, SYMBOLS, 4, 0);
+        TradingEngine engine = new TradingEngine(orderBook, new LockFreeOrderMatcher(orderBook, SYMBOLS,
+            new TradeRingBuffer(1 << 12, BackpressurePolicy.DROP), TimeSource.SYSTEM, publisher));
+        MarketDataSubscription subscription = publisher.subscribe(1024);
+        BookModel model = new BookModel();
+        MarketDepth depth = new MarketDepth(4);
+
+        Random random = new Random(7);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String symbol = SYMBOLS.get(random.nextInt(SYMBOLS.size()));
+            if (random.nextInt(4) > 0 || orderIds.isEmpty()) {
+                Order.Type type = random.nextBoolean() ? Order.Type.BUY : Order.Type.SELL;
+                Order order = new Order(symbol, type, 99.0 + random.nextInt(20) / 10.0, 1 + random.nextInt(10));
+                orderIds.add(order.getId());
+                engine.submitOrder(order);
+                engine.getOrderMatcher().matchOrders(symbol);
+            } else {
+                engine.cancelOrder(orderIds.get(random.nextInt(orderIds.size())));
+            }
+            if (random.nextInt(5) == 0) {
+                publisher.publishPending();
+                subscription.poll(model);
+                for (String s : SYMBOLS) {
+                    assertEquals(levels(orderBook.depth(s, 4, depth)), model.levels(s));
+                }
+            }
+        }
+        assertEquals(0, subscription.getOverflowCount());
+        assertEquals(2, model.refreshes);
+    }
+
+    @Test
+    public void testSlowSubscriberGetsConflatedState() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        AtomicLong now = new AtomicLong(1000);
+        MarketDataPublisher publisher = new MarketDataPublisher(orderBook, SYMBOLS, 5, 500, now::get);
+        TradingEngine engine = lockedEngine(publisher, orderBook);
+        MarketDataSubscription slow = publisher.subscribe(20);
+        MarketDataSubscription fast = publisher.subscribe(20);
+        BookModel slowModel = new BookModel();
+        BookModel fastModel = new BookModel();
+        publisher.publishPending();
+        slow.poll(slowModel);
+        fast.poll(fastModel);
+
+        for (int i = 0; i < 100; i++) {
+            engine.submitOrder(new Order("AAPL", Order.Type.BUY, 100.0 + (i % 5), 1));
+            publisher.publishPending();
+            fast.poll(fastModel);
+        }
+        assertEquals(0, fast.getOverflowCount());
+        assertTrue(slow.getOverflowCount() > 0);
+
+        // The lagging subscriber skips the missed deltas and lands on the current book
+        slowModel.events.clear();
+        slow.poll(slowModel);
+        assertTrue(slowModel.events.isEmpty());
+        assertEquals(4, slowModel.refreshes);
+        assertEquals(fastModel.levels("AAPL"), slowModel.levels("AAPL"));
+        assertEquals(fastModel.sequences, slowModel.sequences);
+
+        // Refreshes also arrive on the interval
+        int refreshes = fastModel.refreshes;
+        now.addAndGet(499);
+        publisher.publishPending();
+        fast.poll(fastModel);
+        assertEquals(refreshes, fastModel.refreshes);
+        now.addAndGet(1);
+        publisher.publishPending();
+        fast.poll(fastModel);
+        assertEquals(refreshes + 2, fastModel.refreshes);
+
+        fast.close();
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 90.0, 1));
+        publisher.publishPending();
+        assertEquals(0, fast.poll(fastModel));
+        assertFalse(slow.isClosed());
+    }
+
+    @Test
+    public void testPublisherThread() throws InterruptedException {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        MarketDataPublisher publisher = new MarketDataPublisher(orderBook, SYMBOLS, 5, 10);
+        TradingEngine engine = lockedEngine(publisher, orderBook);
+        MarketDataSubscription subscription = publisher.subscribe(64);
+        BookModel model = new BookModel();
+        Thread thread = new Thread(publisher);
+        thread.start();
+        try {
+            engine.submitOrder(new Order("MSFT", Order.Type.SELL, 300.0, 3));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"{} {30000=3}".equals(model.levels("MSFT")) && System.currentTimeMillis() < deadline) {
+                subscription.poll(model);
+                Thread.sleep(1);
+            }
+            assertEquals("{} {30000=3}", model.levels("MSFT"));
+        } finally {
+            publisher.stop();
+            thread.join(1000);
+        }
+        assertFalse(thread.isAlive());
+    }
+}
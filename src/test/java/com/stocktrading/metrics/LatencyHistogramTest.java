@@ -0,0 +1,93 @@
+package com.stocktrading.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the LatencyHistogram and HistogramSnapshot classes.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguousAndPrecise() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 20; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index == previous || index == previous + 1, "Gap at " + value);
+            previous = index;
+            long low = LatencyHistogram.lowestEquivalentValue(index);
+            long high = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(low <= value && value <= high, "Value " + value + " outside its bucket");
+            // Two significant digits: a bucket is less than 1% of its values wide
+            assertTrue(high - low <= value / 100 + 1, "Bucket too wide at " + value);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(LatencyHistogram.HIGHEST_TRACKABLE_VALUE));
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_VALUE,
+            LatencyHistogram.highestEquivalentValue(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1002, snapshot.getCount());
+        assertWithin(501_000, snapshot.getP50());
+        assertWithin(991_000, snapshot.getP99());
+        assertWithin(1_000_000, snapshot.getP999());
+        assertEquals(LatencyHistogram.HIGHEST_TRACKABLE_VALUE, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertTrue(snapshot.getMean() > 500_000);
+
+        HistogramSnapshot empty = new LatencyHistogram().snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getP99());
+        assertEquals(0, empty.getMax());
+    }
+
+    @Test
+    public void testIntervalSnapshots() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(200);
+        HistogramSnapshot first = histogram.snapshot();
+        histogram.record(50_000);
+
+        HistogramSnapshot second = histogram.snapshot();
+        HistogramSnapshot interval = second.since(first);
+        assertEquals(3, second.getCount());
+        assertEquals(1, interval.getCount());
+        assertWithin(50_000, interval.getP50());
+        assertWithin(50_000, interval.getMax());
+        assertEquals(0, histogram.snapshot().since(second).getCount());
+        assertEquals(first.getCount(), first.since(null).getCount());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 100, "Expected about " + expected + " but was " + actual);
+    }
+}
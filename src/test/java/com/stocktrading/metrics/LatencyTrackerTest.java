@@ -0,0 +1,97 @@
+package com.stocktrading.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.stocktrading.LockedOrderBook;
+import com.stocktrading.LockedOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.SymbolRegistry;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.TradingEngineFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the LatencyTracker and LatencyCsvReporter classes.
+ */
+public class LatencyTrackerTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+
+    @Test
+    public void testRecordsPerSymbolAndStage() {
+        LatencyTracker tracker = new LatencyTracker("TestEngine");
+        int aapl = SymbolRegistry.intern("AAPL");
+        tracker.record(aapl, LatencyTracker.Stage.REST, 1000);
+        tracker.record(aapl, LatencyTracker.Stage.REST, 2000);
+        tracker.record(SymbolRegistry.intern("MSFT"), LatencyTracker.Stage.FIRST_TRADE, 3000);
+        // A symbol id beyond the initial table grows it
+        tracker.record(SymbolRegistry.intern("LATENCY-TRACKER-SYMBOL-" + 100), LatencyTracker.Stage.REST, 10);
+
+        assertEquals(2, tracker.snapshot("AAPL", LatencyTracker.Stage.REST).getCount());
+        assertEquals(0, tracker.snapshot("AAPL", LatencyTracker.Stage.FIRST_TRADE).getCount());
+        // Reported as the top of 2000's bucket, 2000 to 2007
+        assertEquals(2007, tracker.snapshot("AAPL", LatencyTracker.Stage.REST).getMax());
+        assertEquals(1, tracker.snapshot("MSFT", LatencyTracker.Stage.FIRST_TRADE).getCount());
+        assertEquals(0, tracker.snapshot("NOT-TRACKED", LatencyTracker.Stage.REST).getCount());
+        assertEquals(3, tracker.snapshot(LatencyTracker.Stage.REST).getCount());
+        assertTrue(tracker.getSymbols().containsAll(Arrays.asList("AAPL", "MSFT", "LATENCY-TRACKER-SYMBOL-100")));
+    }
+
+    @Test
+    public void testEngineRecordsAggressorFirstTradeOnly() {
+        LockedOrderBook orderBook = new LockedOrderBook();
+        LockedOrderMatcher matcher = new LockedOrderMatcher(orderBook, SYMBOLS);
+        TradingEngine engine = new TradingEngine(orderBook, matcher);
+        LatencyTracker tracker = engine.getLatencyTracker();
+        assertEquals("LockedOrderMatcher", tracker.getEngineType());
+
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 150, 5));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 151, 5));
+        // Sweeps both levels: one first trade for the aggressor, none for the resting sells
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 151, 10));
+        matcher.matchOrders("AAPL");
+
+        assertEquals(3, tracker.snapshot("AAPL", LatencyTracker.Stage.REST).getCount());
+        assertEquals(1, tracker.snapshot("AAPL", LatencyTracker.Stage.FIRST_TRADE).getCount());
+        assertEquals(0, tracker.snapshot("MSFT", LatencyTracker.Stage.REST).getCount());
+
+        // A resting buy hit by a later sell: the sell is the aggressor
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 149, 5));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 149, 2));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 149, 2));
+        matcher.matchOrders("AAPL");
+        assertEquals(3, tracker.snapshot("AAPL", LatencyTracker.Stage.FIRST_TRADE).getCount());
+    }
+
+    @Test
+    public void testCsvReportsIntervals() {
+        TradingEngine lockFree = TradingEngineFactory.createLockFreeTradingEngine(SYMBOLS);
+        TradingEngine locked = TradingEngineFactory.createLockedTradingEngine(SYMBOLS);
+        StringBuilder csv = new StringBuilder();
+        LatencyCsvReporter reporter = new LatencyCsvReporter(csv, () -> 1234L);
+        reporter.add(lockFree.getLatencyTracker());
+        reporter.add(locked.getLatencyTracker());
+
+        lockFree.submitOrder(new Order("MSFT", Order.Type.BUY, 300, 1));
+        lockFree.submitOrder(new Order("MSFT", Order.Type.BUY, 300, 1));
+        locked.submitOrder(new Order("MSFT", Order.Type.SELL, 301, 1));
+        reporter.run();
+        String[] lines = csv.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(LatencyCsvReporter.HEADER, lines[0]);
+        assertTrue(lines[1].startsWith("1234,LockFreeOrderMatcher,MSFT,REST,2,"), lines[1]);
+        assertTrue(lines[2].startsWith("1234,LockedOrderMatcher,MSFT,REST,1,"), lines[2]);
+        assertEquals(9, lines[1].split(",").length);
+
+        // The next report only covers what was recorded since
+        csv.setLength(0);
+        reporter.report();
+        assertEquals("", csv.toString());
+        locked.submitOrder(new Order("MSFT", Order.Type.SELL, 302, 1));
+        reporter.report();
+        assertTrue(csv.toString().startsWith("1234,LockedOrderMatcher,MSFT,REST,1,"), csv.toString());
+    }
+}
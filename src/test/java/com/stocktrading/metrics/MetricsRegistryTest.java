@@ -0,0 +1,153 @@
+package com.stocktrading.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.stocktrading.BackpressurePolicy;
+import com.stocktrading.LockFreeOrderMatcher;
+import com.stocktrading.Order;
+import com.stocktrading.Trade;
+import com.stocktrading.TradeRingBuffer;
+import com.stocktrading.TradingEngine;
+import com.stocktrading.TradingEngineFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the MetricsRegistry class and its exporters.
+ */
+public class MetricsRegistryTest {
+    private static final List<String> SYMBOLS = Arrays.asList("AAPL", "MSFT");
+
+    @Test
+    public void testCountersAndGauges() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("events_total");
+        assertTrue(counter == registry.counter("events_total"));
+        long[] level = {7};
+        registry.gauge("level", () -> level[0]);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.increment();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        counter.add(5);
+        level[0] = 9;
+
+        assertEquals(40_005, registry.get("events_total"));
+        assertEquals(9, registry.get("level"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("level"));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("missing"));
+
+        StringBuilder text = new StringBuilder();
+        registry.writeText(text);
+        assertEquals("events_total 40005\nlevel 9\n", text.toString());
+    }
+
+    @Test
+    public void testEngineMetrics() {
+        TradingEngine engine = TradingEngineFactory.createLockFreeTradingEngine(SYMBOLS);
+        LockFreeOrderMatcher matcher = (LockFreeOrderMatcher) engine.getOrderMatcher();
+        MetricsRegistry metrics = engine.getMetrics();
+
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 150, 10));
+        engine.submitOrder(new Order("AAPL", Order.Type.BUY, 149, 10));
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 151, 10));
+        matcher.matchOrders("AAPL");
+        assertEquals(2, metrics.get("book_bid_levels{symbol=\"AAPL\"}"));
+        assertEquals(1, metrics.get("book_ask_levels{symbol=\"AAPL\"}"));
+        assertFalse(metrics.contains("book_bid_levels{symbol=\"MSFT\"}"));
+
+        engine.submitOrder(new Order("AAPL", Order.Type.SELL, 149, 15));
+        matcher.matchOrders("AAPL");
+
+        assertEquals(4, metrics.get("orders_accepted_total"));
+        assertEquals(2, metrics.get("trades_total"));
+        assertEquals(2, metrics.get("matcher_loop_iterations_total"));
+        assertEquals(1, metrics.get("matcher_empty_sweeps_total"));
+        assertEquals(2, metrics.get("trade_queue_backlog"));
+        assertEquals(0, metrics.get("trade_cas_retries_total"));
+        assertEquals(0, metrics.get("trades_dropped_total"));
+        // With nothing draining it, a full default ring drops trades instead of stalling the matcher
+        assertEquals(BackpressurePolicy.DROP, ((TradeRingBuffer) matcher.getTrades()).getPolicy());
+        assertEquals(1, metrics.get("book_bid_levels{symbol=\"AAPL\"}"));
+
+        engine.getOrderMatcher().getTrades().drainTo(new Trade[4], 4);
+        assertEquals(0, metrics.get("trade_queue_backlog"));
+    }
+
+    @Test
+    public void testShardedEngineHasNoDepthGauges() {
+        TradingEngine engine = TradingEngineFactory.createShardedTradingEngine(SYMBOLS, 2);
+        engine.submitOrder(new Order("MSFT", Order.Type.BUY, 300, 1));
+        assertEquals(1, engine.getMetrics().get("orders_accepted_total"));
+        assertFalse(engine.getMetrics().contains("book_bid_levels{symbol=\"MSFT\"}"));
+    }
+
+    @Test
+    public void testJmxAttributes() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("orders_accepted_total").add(3);
+        ObjectName name = registry.registerMBean("com.stocktrading:type=Test,name=metrics-registry-test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(3L, server.getAttribute(name, "orders_accepted_total"));
+            registry.gauge("trade_queue_backlog", () -> 11);
+            MBeanAttributeInfo[] attributes = server.getMBeanInfo(name).getAttributes();
+            assertEquals(2, attributes.length);
+            assertEquals(11L, server.getAttribute(name, "trade_queue_backlog"));
+        } finally {
+            MetricsRegistry.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testHttpEndpoint() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("trades_total").add(42);
+        try (MetricsHttpServer server = new MetricsHttpServer(registry,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(),
+                MetricsHttpServer.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                assertEquals(200, connection.getResponseCode());
+                assertTrue(connection.getContentType().startsWith("text/plain"));
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (InputStream in = connection.getInputStream()) {
+                    byte[] chunk = new byte[256];
+                    for (int n; (n = in.read(chunk)) > 0; ) {
+                        body.write(chunk, 0, n);
+                    }
+                }
+                assertEquals("trades_total 42\n", new String(body.toByteArray(), StandardCharsets.UTF_8));
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.stocktrading.ring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.stocktrading.Order;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the OrderRingBuffer class.
+ */
+public class OrderRingBufferTest {
+
+    @Test
+    public void testCapacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderRingBuffer(0, new BusySpinWaitStrategy()));
+        assertThrows(IllegalArgumentException.class, () -> new OrderRingBuffer(12, new BusySpinWaitStrategy()));
+        assertEquals(16, new OrderRingBuffer(16, new BusySpinWaitStrategy()).getCapacity());
+    }
+
+    @Test
+    public void testDrainInBatches() {
+        OrderRingBuffer ring = new OrderRingBuffer(8, new BusySpinWaitStrategy());
+        Order order1 = new Order("AAPL", Order.Type.BUY, 150.0, 10);
+        Order order2 = new Order("AAPL", Order.Type.SELL, 151.0, 5);
+        Order order3 = new Order("MSFT", Order.Type.BUY, 250.0, 1);
+
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.publish(order1));
+        assertEquals(1, ring.publish(order2));
+        assertEquals(2, ring.publish(order3));
+        assertFalse(ring.isEmpty());
+
+        List<Order> drained = new ArrayList<>();
+        List<Boolean> endOfBatch = new ArrayList<>();
+        List<OrderEvent> events = new ArrayList<>();
+        int count = ring.drain((event, sequence, last) -> {
+            drained.add(event.getOrder());
+            endOfBatch.add(last);
+            events.add(event);
+        });
+
+        assertEquals(3, count);
+        assertSame(order1, drained.get(0));
+        assertSame(order2, drained.get(1));
+        assertSame(order3, drained.get(2));
+        assertEquals(List.of(false, false, true), endOfBatch);
+
+        // Slots are released and cleared once handled
+        assertTrue(ring.isEmpty());
+        assertNull(events.get(0).getOrder());
+        assertEquals(0, ring.drain((event, sequence, last) -> { }));
+    }
+
+    @Test
+    public void testSlotsReusedAcrossLaps() {
+        OrderRingBuffer ring = new OrderRingBuffer(4, new BusySpinWaitStrategy());
+        List<Long> sequences = new ArrayList<>();
+
+        for (int lap = 0; lap < 5; lap++) {
+            for (int i = 0; i < 4; i++) {
+                ring.publish(new Order("AAPL", Order.Type.BUY, 100.0 + i, 1));
+            }
+            assertEquals(4, ring.drain((event, sequence, last) -> sequences.add(sequence)));
+        }
+
+        assertEquals(20, sequences.size());
+        for (int i = 0; i < sequences.size(); i++) {
+            assertEquals(i, (long) sequences.get(i));
+        }
+    }
+
+    @Test
+    public void testMultipleProducersWithBackpressure() throws InterruptedException {
+        // A small ring forces producers to wait for the consumer
+        OrderRingBuffer ring = new OrderRingBuffer(16, new ParkingWaitStrategy());
+        int numProducers = 4;
+        int ordersPerProducer = 5000;
+
+        List<Order> consumed = new ArrayList<>();
+        OrderEventProcessor processor = new OrderEventProcessor(ring,
+            (event, sequence, last) -> consumed.add(event.getOrder()));
+        Thread consumer = new Thread(processor);
+        consumer.start();
+
+        CountDownLatch latch = new CountDownLatch(numProducers);
+        for (int p = 0; p < numProducers; p++) {
+            final int quantity = p + 1;
+            new Thread(() -> {
+                for (int i = 0; i < ordersPerProducer; i++) {
+                    ring.publish(new Order("AAPL", Order.Type.BUY, 100.0, quantity));
+                }
+                latch.countDown();
+            }).start();
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        processor.halt();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+
+        assertEquals(numProducers * ordersPerProducer, consumed.size());
+
+        // Each producer's orders arrive in the order it published them
+        long[] lastId = new long[numProducers + 1];
+        for (Order order : consumed) {
+            assertTrue(order.getId() > lastId[order.getQuantity()]);
+            lastId[order.getQuantity()] = order.getId();
+        }
+    }
+}
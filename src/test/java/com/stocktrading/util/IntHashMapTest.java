@@ -0,0 +1,66 @@
+package com.stocktrading.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the IntHashMap class.
+ */
+public class IntHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        IntHashMap<String> map = new IntHashMap<>();
+
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-3, "minus three"));
+        assertEquals("zero", map.put(0, "nil"));
+
+        assertEquals(2, map.size());
+        assertEquals("nil", map.get(0));
+        assertEquals("minus three", map.get(-3));
+        assertEquals("nil", map.remove(0));
+        assertNull(map.get(0));
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(512) << 10;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        IntHashMap<String> map = new IntHashMap<>();
+        map.put(1, "one");
+
+        IntHashMap<String> copy = new IntHashMap<>(map);
+        copy.put(2, "two");
+        map.remove(1);
+
+        assertEquals("one", copy.get(1));
+        assertEquals("two", copy.get(2));
+        assertNull(map.get(2));
+        assertEquals(2, copy.size());
+    }
+}
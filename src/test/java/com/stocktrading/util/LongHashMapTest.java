@@ -0,0 +1,90 @@
+package com.stocktrading.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the LongHashMap class.
+ */
+public class LongHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+
+        assertNull(map.put(1L, "one"));
+        assertNull(map.put(-7L, "minus seven"));
+        assertEquals("one", map.put(1L, "uno"));
+
+        assertEquals(2, map.size());
+        assertEquals("uno", map.get(1L));
+        assertEquals("minus seven", map.get(-7L));
+        assertNull(map.get(2L));
+
+        assertEquals("uno", map.remove(1L));
+        assertNull(map.remove(1L));
+        assertFalse(map.containsKey(1L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testNullValueRejected() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertThrows(NullPointerException.class, () -> map.put(1L, null));
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        LongHashMap<Long> map = new LongHashMap<>(4);
+        for (long i = 0; i < 10_000; i++) {
+            map.put(i, i * 10);
+        }
+
+        assertEquals(10_000, map.size());
+        for (long i = 0; i < 10_000; i++) {
+            assertEquals(i * 10, map.get(i));
+        }
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        // Small key range forces long probe chains and many shifted removals
+        LongHashMap<Long> map = new LongHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(512) * 1024L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        LongHashMap<String> map = new LongHashMap<>();
+        map.put(1L, "one");
+        map.put(2L, "two");
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1L));
+    }
+}